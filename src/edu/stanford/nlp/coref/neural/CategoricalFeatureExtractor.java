@@ -1,6 +1,7 @@
 package edu.stanford.nlp.coref.neural;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -49,23 +50,49 @@ public class CategoricalFeatureExtractor {
 
   public SimpleMatrix getPairFeatures(Pair<Integer, Integer> pair, Document document,
       Map<Integer, List<Mention>> mentionsByHeadIndex) {
-    Mention m1 = document.predictedMentionsByID.get(pair.first);
-    Mention m2 = document.predictedMentionsByID.get(pair.second);
-    List<Integer> featureVals = pairwiseFeatures(document, m1, m2, dictionaries, conll);
-    SimpleMatrix features = new SimpleMatrix(featureVals.size(), 1);
-    for (int i = 0; i < featureVals.size(); i++) {
-      features.set(i, featureVals.get(i));
-    }
-    features = NeuralUtils.concatenate(features,
-        encodeDistance(m2.sentNum - m1.sentNum),
-        encodeDistance(m2.mentionNum - m1.mentionNum - 1),
-        new SimpleMatrix(new double[][] {{
-          m1.sentNum == m2.sentNum && m1.endIndex > m2.startIndex ? 1 : 0}}),
-        getMentionFeatures(m1, document, mentionsByHeadIndex),
-        getMentionFeatures(m2, document, mentionsByHeadIndex),
-        encodeGenre(document));
+    return getPairFeatures(Collections.singletonList(pair), document, mentionsByHeadIndex);
+  }
 
-    return features;
+  /**
+   * The features of many (antecedent, anaphor) pairs, as one dense block with a column per pair,
+   * in the layout of {@link #getPairFeatures(Pair, Document, Map)}.
+   * The features of each mention are only computed once, however many pairs it is in.
+   */
+  public SimpleMatrix getPairFeatures(List<Pair<Integer, Integer>> pairs, Document document,
+      Map<Integer, List<Mention>> mentionsByHeadIndex) {
+    if (pairs.isEmpty()) {
+      throw new IllegalArgumentException("No pairs to extract features for");
+    }
+    Map<Integer, SimpleMatrix> mentionFeatures = new HashMap<>();
+    SimpleMatrix genre = encodeGenre(document);
+    SimpleMatrix block = null;
+    for (int col = 0; col < pairs.size(); col++) {
+      Pair<Integer, Integer> pair = pairs.get(col);
+      Mention m1 = document.predictedMentionsByID.get(pair.first);
+      Mention m2 = document.predictedMentionsByID.get(pair.second);
+      SimpleMatrix features1 = mentionFeatures.computeIfAbsent(pair.first,
+          id -> getMentionFeatures(m1, document, mentionsByHeadIndex));
+      SimpleMatrix features2 = mentionFeatures.computeIfAbsent(pair.second,
+          id -> getMentionFeatures(m2, document, mentionsByHeadIndex));
+      List<Integer> featureVals = pairwiseFeatures(document, m1, m2, dictionaries, conll);
+      if (block == null) {
+        block = new SimpleMatrix(featureVals.size() + 11 + 11 + 1 + features1.numRows()
+            + features2.numRows() + genre.numRows(), pairs.size());
+      }
+      int row = 0;
+      for (int val : featureVals) {
+        block.set(row++, col, val);
+      }
+      row = encodeDistance(m2.sentNum - m1.sentNum, block, row, col);
+      row = encodeDistance(m2.mentionNum - m1.mentionNum - 1, block, row, col);
+      block.set(row++, col, m1.sentNum == m2.sentNum && m1.endIndex > m2.startIndex ? 1 : 0);
+      block.insertIntoThis(row, col, features1);
+      row += features1.numRows();
+      block.insertIntoThis(row, col, features2);
+      row += features2.numRows();
+      block.insertIntoThis(row, col, genre);
+    }
+    return block;
   }
 
   public static List<Integer> pairwiseFeatures(Document document, Mention m1, Mention m2,
@@ -108,21 +135,27 @@ public class CategoricalFeatureExtractor {
 
   private static SimpleMatrix encodeDistance(int d) {
     SimpleMatrix m = new SimpleMatrix(11, 1);
+    encodeDistance(d, m, 0, 0);
+    return m;
+  }
+
+  /** Write the encoding of a distance into 11 rows of a column, returning the row after it. */
+  private static int encodeDistance(int d, SimpleMatrix m, int row, int col) {
     if (d < 5) {
-      m.set(d, 1);
+      m.set(row + d, col, 1);
     } else if (d < 8) {
-      m.set(5, 1);
+      m.set(row + 5, col, 1);
     } else if (d < 16) {
-      m.set(6, 1);
+      m.set(row + 6, col, 1);
     } else if (d < 32) {
-      m.set(7, 1);
+      m.set(row + 7, col, 1);
     } else if (d < 64) {
-      m.set(8, 1);
+      m.set(row + 8, col, 1);
     } else {
-      m.set(9, 1);
+      m.set(row + 9, col, 1);
     }
-    m.set(10, Math.min(d, 64) / 64.0);
-    return m;
+    m.set(row + 10, col, Math.min(d, 64) / 64.0);
+    return row + 11;
   }
 
   private SimpleMatrix encodeGenre(Document document) {
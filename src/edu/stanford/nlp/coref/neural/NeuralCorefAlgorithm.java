@@ -13,8 +13,6 @@ import edu.stanford.nlp.coref.data.Dictionaries;
 import edu.stanford.nlp.coref.data.Document;
 import edu.stanford.nlp.coref.data.Mention;
 import edu.stanford.nlp.io.IOUtils;
-import edu.stanford.nlp.stats.ClassicCounter;
-import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.logging.Redwood;
 import org.ejml.simple.SimpleMatrix;
@@ -36,6 +34,9 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
 
   private static Redwood.RedwoodChannels log = Redwood.channels(NeuralCorefAlgorithm.class);
 
+  /** How many candidate pairs are scored together */
+  private static final int PAIR_BATCH_SIZE = 512;
+
   private final double greedyness;
   private final int maxMentionDistance;
   private final int maxMentionDistanceWithStringMatch;
@@ -67,29 +68,60 @@ public class NeuralCorefAlgorithm implements CorefAlgorithm {
       withIndex.add(m);
     }
 
+    // Embed and score all the mentions at once, one column per mention
     SimpleMatrix documentEmbedding = embeddingExtractor.getDocumentEmbedding(document);
-    Map<Integer, SimpleMatrix> antecedentEmbeddings = new HashMap<>();
-    Map<Integer, SimpleMatrix> anaphorEmbeddings = new HashMap<>();
-    Counter<Integer> anaphoricityScores = new ClassicCounter<>();
-    for (Mention m : sortedMentions) {
+    Map<Integer, Integer> mentionColumns = new HashMap<>();
+    SimpleMatrix mentionEmbeddings = null;
+    SimpleMatrix anaphoricityFeatures = null;
+    for (int i = 0; i < sortedMentions.size(); i++) {
+      Mention m = sortedMentions.get(i);
       SimpleMatrix mentionEmbedding = embeddingExtractor.getMentionEmbeddings(m, documentEmbedding);
-      antecedentEmbeddings.put(m.mentionID, model.getAntecedentEmbedding(mentionEmbedding));
-      anaphorEmbeddings.put(m.mentionID, model.getAnaphorEmbedding(mentionEmbedding));
-      anaphoricityScores.incrementCount(m.mentionID,
-          model.getAnaphoricityScore(mentionEmbedding,
-              featureExtractor.getAnaphoricityFeatures(m, document, mentionsByHeadIndex)));
+      SimpleMatrix features = featureExtractor.getAnaphoricityFeatures(m, document, mentionsByHeadIndex);
+      if (mentionEmbeddings == null) {
+        mentionEmbeddings = new SimpleMatrix(mentionEmbedding.numRows(), sortedMentions.size());
+        anaphoricityFeatures = new SimpleMatrix(features.numRows(), sortedMentions.size());
+      }
+      mentionEmbeddings.insertIntoThis(0, i, mentionEmbedding);
+      anaphoricityFeatures.insertIntoThis(0, i, features);
+      mentionColumns.put(m.mentionID, i);
     }
+    if (mentionEmbeddings == null) {
+      return;
+    }
+    SimpleMatrix antecedentEmbeddings = model.getAntecedentEmbeddings(mentionEmbeddings);
+    SimpleMatrix anaphorEmbeddings = model.getAnaphorEmbeddings(mentionEmbeddings);
+    double[] anaphoricityScores = model.getAnaphoricityScores(mentionEmbeddings, anaphoricityFeatures);
 
+    // Score all the candidate pairs, a batch at a time; none of their features depend on the clusters
     Map<Integer, List<Integer>> mentionToCandidateAntecedents = CorefUtils.heuristicFilter(sortedMentions,
         maxMentionDistance, maxMentionDistanceWithStringMatch);
+    List<Pair<Integer, Integer>> pairs = new ArrayList<>();
+    for (Map.Entry<Integer, List<Integer>> e : mentionToCandidateAntecedents.entrySet()) {
+      for (int ca : e.getValue()) {
+        pairs.add(new Pair<>(ca, e.getKey()));
+      }
+    }
+    double[] pairScores = new double[pairs.size()];
+    for (int start = 0; start < pairs.size(); start += PAIR_BATCH_SIZE) {
+      List<Pair<Integer, Integer>> batch = pairs.subList(start, Math.min(pairs.size(), start + PAIR_BATCH_SIZE));
+      int[] antecedents = new int[batch.size()];
+      int[] anaphors = new int[batch.size()];
+      for (int i = 0; i < batch.size(); i++) {
+        antecedents[i] = mentionColumns.get(batch.get(i).first);
+        anaphors[i] = mentionColumns.get(batch.get(i).second);
+      }
+      double[] scores = model.getPairwiseScores(antecedentEmbeddings, anaphorEmbeddings, antecedents, anaphors,
+          featureExtractor.getPairFeatures(batch, document, mentionsByHeadIndex));
+      System.arraycopy(scores, 0, pairScores, start, scores.length);
+    }
+
+    int pairIndex = 0;
     for (Map.Entry<Integer, List<Integer>> e : mentionToCandidateAntecedents.entrySet()) {
-      double bestScore = anaphoricityScores.getCount(e.getKey()) - 50 * (greedyness - 0.5);
       int m = e.getKey();
+      double bestScore = anaphoricityScores[mentionColumns.get(m)] - 50 * (greedyness - 0.5);
       Integer antecedent = null;
       for (int ca : e.getValue()) {
-        double score = model.getPairwiseScore(antecedentEmbeddings.get(ca),
-            anaphorEmbeddings.get(m), featureExtractor.getPairFeatures(
-                  new Pair<>(ca, m), document, mentionsByHeadIndex));
+        double score = pairScores[pairIndex++];
         if (score > bestScore) {
           bestScore = score;
           antecedent = ca;
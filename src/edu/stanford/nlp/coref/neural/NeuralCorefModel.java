@@ -5,6 +5,8 @@ import java.util.List;
 
 import edu.stanford.nlp.neural.Embedding;
 import edu.stanford.nlp.neural.NeuralUtils;
+import org.ejml.data.DenseMatrix64F;
+import org.ejml.ops.CommonOps;
 import org.ejml.simple.SimpleMatrix;
 
 /**
@@ -50,6 +52,74 @@ public class NeuralCorefModel implements Serializable {
     return score(firstLayerOutput, pairwiseModel);
   }
 
+  /**
+   * Batched version of {@link #getAnaphoricityScore}: column i of each matrix is one mention.
+   */
+  public double[] getAnaphoricityScores(SimpleMatrix mentionEmbeddings,
+      SimpleMatrix anaphoricityFeatures) {
+    DenseMatrix64F input = new DenseMatrix64F(
+        mentionEmbeddings.numRows() + anaphoricityFeatures.numRows(), mentionEmbeddings.numCols());
+    CommonOps.insert(mentionEmbeddings.getMatrix(), input, 0, 0);
+    CommonOps.insert(anaphoricityFeatures.getMatrix(), input, mentionEmbeddings.numRows(), 0);
+    return scoreColumns(input, anaphoricityModel);
+  }
+
+  /**
+   * Batched version of {@link #getPairwiseScore}, which scores many candidate pairs with
+   * a few matrix multiplications instead of many matrix-vector ones.
+   *
+   * @param antecedentEmbeddings The antecedent embedding of each mention, one per column
+   * @param anaphorEmbeddings The anaphor embedding of each mention, one per column
+   * @param antecedents For each pair, the column of its antecedent
+   * @param anaphors For each pair, the column of its anaphor
+   * @param pairFeatures The features of each pair, one per column
+   * @return The score of each pair
+   */
+  public double[] getPairwiseScores(SimpleMatrix antecedentEmbeddings, SimpleMatrix anaphorEmbeddings,
+      int[] antecedents, int[] anaphors, SimpleMatrix pairFeatures) {
+    int pairs = antecedents.length;
+    DenseMatrix64F firstLayer = new DenseMatrix64F(pairFeaturesMatrix.numRows(), pairs);
+    CommonOps.mult(pairFeaturesMatrix.getMatrix(), pairFeatures.getMatrix(), firstLayer);
+    double[] data = firstLayer.data;
+    DenseMatrix64F antecedent = antecedentEmbeddings.getMatrix();
+    DenseMatrix64F anaphor = anaphorEmbeddings.getMatrix();
+    DenseMatrix64F bias = pairwiseFirstLayerBias.getMatrix();
+    for (int row = 0, index = 0; row < firstLayer.numRows; ++row) {
+      double b = bias.get(row, 0);
+      for (int pair = 0; pair < pairs; ++pair, ++index) {
+        double value = antecedent.get(row, antecedents[pair]) + anaphor.get(row, anaphors[pair]) + data[index] + b;
+        data[index] = Math.max(0, value);
+      }
+    }
+    return scoreColumns(firstLayer, pairwiseModel);
+  }
+
+  /** The batched version of {@link #score}: the score of each column of features. */
+  private static double[] scoreColumns(DenseMatrix64F features, List<SimpleMatrix> weights) {
+    for (int i = 0; i < weights.size(); i += 2) {
+      DenseMatrix64F weight = weights.get(i).getMatrix();
+      DenseMatrix64F bias = weights.get(i + 1).getMatrix();
+      DenseMatrix64F output = new DenseMatrix64F(weight.numRows, features.numCols);
+      CommonOps.mult(weight, features, output);
+      boolean relu = weight.numRows > 1;
+      for (int row = 0, index = 0; row < output.numRows; ++row) {
+        double b = bias.get(row, 0);
+        for (int col = 0; col < output.numCols; ++col, ++index) {
+          double value = output.data[index] + b;
+          output.data[index] = relu ? Math.max(0, value) : value;
+        }
+      }
+      features = output;
+    }
+    double[] scores = new double[features.numCols];
+    for (int row = 0, index = 0; row < features.numRows; ++row) {
+      for (int col = 0; col < features.numCols; ++col, ++index) {
+        scores[col] += features.data[index];
+      }
+    }
+    return scores;
+  }
+
   private static double score(SimpleMatrix features, List<SimpleMatrix> weights) {
     for (int i = 0; i < weights.size(); i += 2) {
       features = weights.get(i).mult(features).plus(weights.get(i + 1));
@@ -68,6 +138,16 @@ public class NeuralCorefModel implements Serializable {
     return antecedentMatrix.mult(mentionEmbedding);
   }
 
+  /** The antecedent embeddings of many mentions, given one mention embedding per column. */
+  public SimpleMatrix getAntecedentEmbeddings(SimpleMatrix mentionEmbeddings) {
+    return antecedentMatrix.mult(mentionEmbeddings);
+  }
+
+  /** The anaphor embeddings of many mentions, given one mention embedding per column. */
+  public SimpleMatrix getAnaphorEmbeddings(SimpleMatrix mentionEmbeddings) {
+    return anaphorMatrix.mult(mentionEmbeddings);
+  }
+
   public Embedding getWordEmbeddings() {
     return wordEmbeddings;
   }
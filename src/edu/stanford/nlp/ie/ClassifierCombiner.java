@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import edu.stanford.nlp.io.IOUtils;
@@ -22,6 +23,7 @@ import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.pipeline.DefaultPaths;
+import edu.stanford.nlp.pipeline.ModelRegistry;
 import edu.stanford.nlp.sequences.DocumentReaderAndWriter;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.CoreMap;
@@ -266,8 +268,24 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
       AbstractSequenceClassifier<IN> presetASC = new PresetSequenceClassifier(props);
       baseClassifiers.add(presetASC);
     }
+    // the classifiers are shared with any other combiner loading them with the same flags
+    String options = classifierOptions(props);
     for(String path: paths){
-      AbstractSequenceClassifier<IN> cls = loadClassifierFromPath(props, path);
+      AbstractSequenceClassifier<IN> cls;
+      try {
+        cls = ModelRegistry.SINGLETON.acquire(this, "ner", path, options, () -> {
+          try {
+            return loadClassifierFromPath(props, path);
+          } catch (IOException e) {
+            throw new RuntimeIOException(e);
+          }
+        });
+      } catch (RuntimeIOException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw e;
+      }
       baseClassifiers.add(cls);
       if(DEBUG){
         System.err.printf("Successfully loaded classifier #%d from %s.%n", baseClassifiers.size(), path);
@@ -279,6 +297,22 @@ public class ClassifierCombiner<IN extends CoreMap & HasWord> extends AbstractSe
   }
 
 
+  /**
+   * The properties which change a classifier loaded with them, in a canonical order.
+   * These are the flags it reads ({@link SeqClassifierFlags}), none of which contain a dot:
+   * the dotted properties ({@code ner.applyNumericClassifiers}, the {@code sutime.} options, ...)
+   * are for the annotators, and the few {@code ner.} flags are not used by the classifiers.
+   */
+  static String classifierOptions(Properties props) {
+    TreeMap<String,String> options = new TreeMap<>();
+    for (String key : props.stringPropertyNames()) {
+      if (key.indexOf('.') < 0) {
+        options.put(key, props.getProperty(key));
+      }
+    }
+    return options.toString();
+  }
+
   public static <INN extends CoreMap & HasWord> AbstractSequenceClassifier<INN> loadClassifierFromPath(Properties props, String path)
       throws IOException {
     //try loading as a CRFClassifier
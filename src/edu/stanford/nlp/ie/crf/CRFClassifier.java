@@ -44,6 +44,8 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.*;
@@ -219,6 +221,9 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @return number of weights
    */
   public int getNumWeights() {
+    if (weights == null && cliquePotentialFunction instanceof FloatLinearCliquePotentialFunction) {
+      return ((FloatLinearCliquePotentialFunction) cliquePotentialFunction).numWeights();
+    }
     if (weights == null) return 0;
     int numWeights = 0;
     for (double[] wts : weights) {
@@ -269,6 +274,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param scale The scale to multiply by
    */
   public void scaleWeights(double scale) {
+    checkNotCompact("rescaled");
     for (int i = 0; i < weights.length; i++) {
       for (int j = 0; j < weights[i].length; j++) {
         weights[i][j] *= scale;
@@ -353,6 +359,8 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    * @param weight Amount to scale the other CRF's weights by
    */
   public void combine(CRFClassifier<IN> crf, double weight) {
+    checkNotCompact("combined");
+    crf.checkNotCompact("combined");
     Timing timer = new Timing();
 
     // Check the CRFClassifiers are compatible
@@ -396,6 +404,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   public void dropFeaturesBelowThreshold(double threshold) {
+    checkNotCompact("pruned");
     Index<String> newFeatureIndex = new HashIndex<>();
     for (int i = 0; i < weights.length; i++) {
       double smallest = weights[i][0];
@@ -569,7 +578,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
               double[] values = new double[labelIndices.get(0).size()];
               for (CRFLabel label : labelIndices.get(k)) {
                 int[] l = label.getLabel();
-                double v = weights[index][labelIndices.get(k).indexOf(label)];
+                double v = weight(index, labelIndices.get(k).indexOf(label));
                 values[l[l.length - 1 - p]] += v;
               }
               for (double value : values) {
@@ -1220,10 +1229,100 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       return document;
     }
 
+    if (canUseWorkspace()) {
+      // The clique tree is built on this thread's reusable workspace,
+      // which is fine since it is thrown away as soon as the best
+      // sequence has been found
+      CRFInferenceWorkspace workspace = CRFInferenceWorkspace.get();
+      workspace.reset();
+      int[][][] data = documentToData(document, workspace);
+      CRFCliqueTree<String> cliqueTree = CRFCliqueTree.getCalibratedCliqueTree(data, labelIndices, classIndex.size(), classIndex,
+          flags.backgroundSymbol, getCliquePotentialFunctionForTest(), null, workspace);
+      SequenceModel model = labelDictionary == null ? new TestSequenceModel(cliqueTree) :
+        new TestSequenceModel(cliqueTree, labelDictionary, document);
+      return classifyMaxEnt(document, model);
+    }
+
     SequenceModel model = getSequenceModel(document);
     return classifyMaxEnt(document, model);
   }
 
+  private Boolean canUseWorkspace;
+
+  /**
+   * The workspace path featurizes documents itself rather than through
+   * {@link #makeDatum}, so it is only used when that gives the same
+   * features: no embeddings, no feature printing, and no subclass
+   * changing how the data is made.
+   */
+  private boolean canUseWorkspace() {
+    if (flags.useEmbedding || flags.printFeatures != null) {
+      return false;
+    }
+    if (canUseWorkspace == null) {
+      try {
+        canUseWorkspace = getClass().getMethod("makeDatum", List.class, int.class, List.class).getDeclaringClass() == CRFClassifier.class &&
+          getClass().getMethod("documentToDataAndLabels", List.class).getDeclaringClass() == CRFClassifier.class;
+      } catch (NoSuchMethodException e) {
+        canUseWorkspace = false;
+      }
+    }
+    return canUseWorkspace;
+  }
+
+  /**
+   * Computes the same data as {@link #documentToDataAndLabels}, but
+   * looks up each feature in the feature index as the feature factories
+   * produce it, collecting the ids in the workspace's buffer, instead
+   * of first building a {@link CRFDatum} of feature string lists.
+   */
+  private int[][][] documentToData(List<IN> document, CRFInferenceWorkspace workspace) {
+    int docSize = document.size();
+    int[][][] data = new int[docSize][windowSize][];
+
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+
+    // the same cliques makeDatum uses for each part of the window
+    List<List<Clique>> cliquesByWindow = new ArrayList<>(windowSize);
+    Collection<Clique> done = Generics.newHashSet();
+    for (int i = 0; i < windowSize; i++) {
+      List<Clique> windowCliques = FeatureFactory.getCliques(i, 0);
+      windowCliques.removeAll(done);
+      done.addAll(windowCliques);
+      cliquesByWindow.add(windowCliques);
+    }
+
+    PaddedList<IN> pInfo = new PaddedList<>(document, pad);
+    for (int j = 0; j < docSize; j++) {
+      for (int i = 0; i < windowSize; i++) {
+        int[] ids = workspace.featureIds(0);
+        int m = 0;
+        for (Clique c : cliquesByWindow.get(i)) {
+          for (FeatureFactory<IN> featureFactory : featureFactories) {
+            for (String feature : featureFactory.getCliqueFeatures(pInfo, j, c)) {
+              int index = featureIndex.indexOf(feature);
+              if (index >= 0) {
+                if (m == ids.length) {
+                  ids = workspace.featureIds(m + 1);
+                }
+                ids[m++] = index;
+              }
+            }
+          }
+        }
+        data[j][i] = Arrays.copyOf(ids, m);
+      }
+    }
+
+    if (flags.useReverse) {
+      Collections.reverse(document);
+    }
+
+    return data;
+  }
+
   private List<IN> classifyMaxEnt(List<IN> document, Triple<int[][][], int[], double[][][]> documentDataAndLabels) {
     if (document.isEmpty()) {
       return document;
@@ -2340,6 +2439,7 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
   }
 
   protected void serializeTextClassifier(PrintWriter pw) throws Exception {
+    checkNotCompact("serialized");
     pw.printf("labelIndices.length=\t%d%n", labelIndices.size());
     for (int i = 0; i < labelIndices.size(); i++) {
       pw.printf("labelIndices[%d].size()=\t%d%n", i, labelIndices.get(i).size());
@@ -2534,6 +2634,15 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
    */
   @Override
   public void serializeClassifier(ObjectOutputStream oos) {
+    checkNotCompact("serialized");
+    serializeClassifier(oos, featureIndex, weights);
+  }
+
+  /**
+   * Serialize everything but the features and weights given, which
+   * the compact model format writes as null and stores separately.
+   */
+  private void serializeClassifier(ObjectOutputStream oos, Index<String> featureIndex, double[][] weights) {
     try {
       oos.writeObject(labelIndices);
       oos.writeObject(classIndex);
@@ -2646,6 +2755,172 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
     }
   }
 
+  /**
+   * First bytes of a compact model file, which {@link #loadClassifier(String, Properties)}
+   * uses to tell it apart from a serialized classifier
+   */
+  private static final byte[] COMPACT_MODEL_MAGIC = "CRFCMP32".getBytes(StandardCharsets.US_ASCII);
+  private static final int COMPACT_MODEL_VERSION = 1;
+
+  /**
+   * Write the classifier as a compact model file, for NER servers that load
+   * the same large CRF in many processes.  Instead of an {@link Index} of
+   * feature strings and a {@code double[][]} of weights, the file holds
+   * those two as flat blocks that {@link #loadClassifier(String, Properties)}
+   * maps read-only: a {@link CompactFeatureIndex} (the feature strings as
+   * UTF-8 plus an open addressing table for lookups) and a
+   * {@link FloatLinearCliquePotentialFunction} (the weights rounded to
+   * floats, one row per feature).
+   * <br>
+   * Layout: {@code CRFCMP32}, the format version and the header length;
+   * the header, which is what {@link #serializeClassifier(ObjectOutputStream)}
+   * writes with the features and weights left out, plus the block sizes
+   * and padding to 8 bytes; then the feature and weight blocks in
+   * little-endian order.  The path has to be a plain file, not a gzipped or
+   * classpath resource.  The loaded classifier's features and weights are
+   * immutable, so it can only be used for tagging.
+   *
+   * @param serializePath Path of the file to write
+   */
+  public void serializeCompactClassifier(String serializePath) {
+    checkNotCompact("serialized");
+    if (weights == null) {
+      throw new UnsupportedOperationException("Only classifiers with linear weights can be written as compact model files");
+    }
+    CompactFeatureIndex features = CompactFeatureIndex.fromIndex(featureIndex);
+    FloatLinearCliquePotentialFunction floatWeights = FloatLinearCliquePotentialFunction.fromWeights(weights);
+    try {
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      ObjectOutputStream header = new ObjectOutputStream(headerBytes);
+      serializeClassifier(header, null, null);
+      header.writeInt(features.size());
+      header.writeInt(features.capacity());
+      header.writeInt(features.stringBytes());
+      header.writeInt(floatWeights.numWeights());
+      header.flush();
+      // pad so that the blocks start on an 8 byte boundary
+      while ((headerBytes.size() + COMPACT_MODEL_MAGIC.length + 8) % 8 != 0) {
+        headerBytes.write(0);
+      }
+
+      try (FileOutputStream fos = new FileOutputStream(serializePath);
+           FileChannel channel = fos.getChannel()) {
+        DataOutputStream output = new DataOutputStream(fos);
+        output.write(COMPACT_MODEL_MAGIC);
+        output.writeInt(COMPACT_MODEL_VERSION);
+        output.writeInt(headerBytes.size());
+        headerBytes.writeTo(output);
+        output.flush();
+        features.writeTo(channel);
+        floatWeights.writeTo(channel);
+      }
+      log.info("Serializing compact classifier to " + serializePath + "... done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException("Serializing compact classifier to " + serializePath + "... FAILED", e);
+    }
+  }
+
+  /**
+   * Throw an IllegalStateException if this classifier was loaded from a
+   * compact model file, whose features and weights can't be changed or
+   * written out again.
+   *
+   * @param what What can't be done to the classifier, e.g., "serialized"
+   */
+  private void checkNotCompact(String what) {
+    if (featureIndex instanceof CompactFeatureIndex) {
+      throw new IllegalStateException("A classifier loaded from a compact model file cannot be " + what);
+    }
+  }
+
+  /**
+   * The weight of a feature for a label, read from the mapped weights
+   * if this classifier was loaded from a compact model file.
+   */
+  private double weight(int feature, int labelIndex) {
+    if (weights == null && cliquePotentialFunction instanceof FloatLinearCliquePotentialFunction) {
+      return ((FloatLinearCliquePotentialFunction) cliquePotentialFunction).weight(feature, labelIndex);
+    }
+    return weights[feature][labelIndex];
+  }
+
+  /** Whether the given path is a file starting with {@link #COMPACT_MODEL_MAGIC}. */
+  private static boolean isCompactModelFile(File file) {
+    if (!file.isFile()) {
+      return false;
+    }
+    byte[] magic = new byte[COMPACT_MODEL_MAGIC.length];
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      input.readFully(magic);
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(magic, COMPACT_MODEL_MAGIC);
+  }
+
+  /**
+   * Read the header of a compact model file and map its features and weights.
+   *
+   * @see #serializeCompactClassifier(String)
+   */
+  private void loadCompactClassifier(File file, Properties props) throws IOException, ClassNotFoundException {
+    try (FileInputStream fis = new FileInputStream(file);
+         FileChannel channel = fis.getChannel()) {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(fis));
+      input.readFully(new byte[COMPACT_MODEL_MAGIC.length]);
+      int version = input.readInt();
+      if (version != COMPACT_MODEL_VERSION) {
+        throw new IOException("Unknown compact model version " + version + " in " + file);
+      }
+      int headerLength = input.readInt();
+      long[] position = { COMPACT_MODEL_MAGIC.length + 8 + headerLength };
+
+      ObjectInputStream header = new ObjectInputStream(input);
+      loadClassifier(header, props);
+      int numFeatures = header.readInt();
+      int capacity = header.readInt();
+      int stringBytes = header.readInt();
+      int numWeights = header.readInt();
+
+      featureIndex = CompactFeatureIndex.map(channel, position, numFeatures, capacity, stringBytes);
+      weights = null;
+      cliquePotentialFunction = FloatLinearCliquePotentialFunction.map(channel, position, numFeatures, numWeights);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>
+   * A compact model file (see {@link #serializeCompactClassifier(String)})
+   * on the file system is memory-mapped rather than deserialized.
+   */
+  @Override
+  public void loadClassifier(String loadPath, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    File file = new File(loadPath);
+    if (isCompactModelFile(file)) {
+      loadClassifier(file, props);
+    } else {
+      super.loadClassifier(loadPath, props);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>
+   * A compact model file (see {@link #serializeCompactClassifier(String)})
+   * is memory-mapped rather than deserialized.
+   */
+  @Override
+  public void loadClassifier(File file, Properties props) throws ClassCastException, IOException, ClassNotFoundException {
+    if (isCompactModelFile(file)) {
+      Timing t = new Timing();
+      loadCompactClassifier(file, props);
+      t.done(log, "Loading compact classifier from " + file.getAbsolutePath());
+    } else {
+      super.loadClassifier(file, props);
+    }
+  }
+
   /**
    * This is used to load the default supplied classifier stored within the jar
    * file. THIS FUNCTION WILL ONLY WORK IF THE CODE WAS LOADED FROM A JAR FILE
@@ -2752,11 +3027,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
       Index<CRFLabel> l = this.labelIndices.get(0);
       p.println(feature + "\t\t");
       for (CRFLabel label : l) {
-        p.print(label.toString(classIndex) + ":" + v[l.indexOf(label)] + "\t");
+        p.print(label.toString(classIndex) + ":" + weight(index, l.indexOf(label)) + "\t");
       }
       p.println();
 
@@ -2769,12 +3043,11 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       int index = featureIndex.indexOf(feature);
       // line.add(feature+"["+(-p)+"]");
       // rowHeaders.add(feature + '[' + (-p) + ']');
-      double[] v = weights[index];
       Index<CRFLabel> l = this.labelIndices.get(0);
       for (CRFLabel label : l) {
         if(!w.containsKey(label.toString(classIndex)))
           w.put(label.toString(classIndex), new ClassicCounter<>());
-        w.get(label.toString(classIndex)).setCount(feature, v[l.indexOf(label)]);
+        w.get(label.toString(classIndex)).setCount(feature, weight(index, l.indexOf(label)));
       }
     }
     return w;
@@ -3020,6 +3293,10 @@ public class CRFClassifier<IN extends CoreMap> extends AbstractSequenceClassifie
       crf.serializeTextClassifier(serializeToText);
     }
 
+    if (crf.flags.serializeToCompact != null) {
+      crf.serializeCompactClassifier(crf.flags.serializeToCompact);
+    }
+
     if (testFile != null) {
       // todo: Change testFile to call testFiles with a singleton list
       DocumentReaderAndWriter<CoreLabel> readerAndWriter = crf.defaultReaderAndWriter();
@@ -553,6 +553,17 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel  {
    */
   public static <E> CRFCliqueTree<E> getCalibratedCliqueTree(int[][][] data, List<Index<CRFLabel>> labelIndices,
       int numClasses, Index<E> classIndex, E backgroundSymbol, CliquePotentialFunction cliquePotentialFunc, double[][][] featureVals) {
+    return getCalibratedCliqueTree(data, labelIndices, numClasses, classIndex, backgroundSymbol, cliquePotentialFunc, featureVals, null);
+  }
+
+  /**
+   * As above, but if {@code workspace} is not null, all of the factor
+   * tables come from the workspace, so the returned tree is only
+   * valid until the workspace is next reset.
+   */
+  static <E> CRFCliqueTree<E> getCalibratedCliqueTree(int[][][] data, List<Index<CRFLabel>> labelIndices,
+      int numClasses, Index<E> classIndex, E backgroundSymbol, CliquePotentialFunction cliquePotentialFunc, double[][][] featureVals,
+      CRFInferenceWorkspace workspace) {
 
     FactorTable[] factorTables = new FactorTable[data.length];
     FactorTable[] messages = new FactorTable[data.length - 1];
@@ -561,12 +572,13 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel  {
       double[][] featureValByCliqueSize = null;
       if (featureVals != null)
         featureValByCliqueSize = featureVals[i];
-      factorTables[i] = getFactorTable(data[i], labelIndices, numClasses, cliquePotentialFunc, featureValByCliqueSize, i);
+      factorTables[i] = getFactorTable(data[i], labelIndices, numClasses, cliquePotentialFunc, featureValByCliqueSize, i, workspace);
 
       // log.info("before calibration,FT["+i+"] = " + factorTables[i].toProbString());
 
       if (i > 0) {
-        messages[i - 1] = factorTables[i - 1].sumOutFront();
+        messages[i - 1] = newFactorTable(workspace, numClasses, factorTables[i - 1].windowSize() - 1);
+        factorTables[i - 1].sumOutFront(messages[i - 1]);
         // log.info("forward message, message["+(i-1)+"] = " + messages[i-1].toProbString());
         factorTables[i].multiplyInFront(messages[i - 1]);
         // log.info("after forward calibration, FT["+i+"] = " + factorTables[i].toProbString());
@@ -574,7 +586,8 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel  {
     }
 
     for (int i = factorTables.length - 2; i >= 0; i--) {
-      FactorTable summedOut = factorTables[i + 1].sumOutEnd();
+      FactorTable summedOut = newFactorTable(workspace, numClasses, factorTables[i + 1].windowSize() - 1);
+      factorTables[i + 1].sumOutEnd(summedOut);
       summedOut.divideBy(messages[i]);
       // log.info("backward summedOut, summedOut= " + summedOut.toProbString());
       factorTables[i].multiplyInEnd(summedOut);
@@ -584,6 +597,10 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel  {
     return new CRFCliqueTree<>(factorTables, classIndex, backgroundSymbol);
   }
 
+  private static FactorTable newFactorTable(CRFInferenceWorkspace workspace, int numClasses, int windowSize) {
+    return workspace == null ? new FactorTable(numClasses, windowSize) : workspace.newFactorTable(numClasses, windowSize);
+  }
+
   /**
    * This function assumes a LinearCliquePotentialFunction is used for wrapping the weights
    * @return a new CRFCliqueTree for the weights on the data
@@ -659,11 +676,17 @@ public class CRFCliqueTree<E> implements ListeningSequenceModel  {
 
   static FactorTable getFactorTable(int[][] data, List<Index<CRFLabel>> labelIndices, int numClasses,
       CliquePotentialFunction cliquePotentialFunc, double[][] featureValByCliqueSize, int posInSent) {
+    return getFactorTable(data, labelIndices, numClasses, cliquePotentialFunc, featureValByCliqueSize, posInSent, null);
+  }
+
+  private static FactorTable getFactorTable(int[][] data, List<Index<CRFLabel>> labelIndices, int numClasses,
+      CliquePotentialFunction cliquePotentialFunc, double[][] featureValByCliqueSize, int posInSent,
+      CRFInferenceWorkspace workspace) {
     FactorTable factorTable = null;
 
     for (int j = 0, sz = labelIndices.size(); j < sz; j++) {
       Index<CRFLabel> labelIndex = labelIndices.get(j);
-      FactorTable ft = new FactorTable(numClasses, j + 1);
+      FactorTable ft = newFactorTable(workspace, numClasses, j + 1);
       double[] featureVal = null;
       if (featureValByCliqueSize != null)
         featureVal = featureValByCliqueSize[j];
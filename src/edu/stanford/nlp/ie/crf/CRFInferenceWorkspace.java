@@ -0,0 +1,85 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.math.SloppyMath;
+
+/**
+ * Scratch space for test time CRF inference, kept by each thread and
+ * reused from one sentence to the next.
+ * <br>
+ * Calibrating a clique tree takes several factor tables per token, and
+ * featurizing a sentence takes a buffer of feature ids per clique.
+ * Allocating these anew for every sentence makes NER one of the main
+ * sources of garbage in a pipeline, so instead the arrays come from
+ * this workspace and are handed out again once {@link #reset} is
+ * called for the next sentence.  Anything built on them, such as a
+ * {@link CRFCliqueTree}, must therefore not be used after the next
+ * reset on the same thread.
+ */
+class CRFInferenceWorkspace {
+
+  private static final ThreadLocal<CRFInferenceWorkspace> workspaces = ThreadLocal.withInitial(CRFInferenceWorkspace::new);
+
+  /**
+   * At most this many arrays of each size are kept between sentences,
+   * so one enormous sentence does not pin its tables forever.
+   */
+  static final int MAX_RETAINED_TABLES = 8192;
+
+  private static class TablePool {
+    final List<double[]> tables = new ArrayList<>();
+    int used;
+  }
+
+  /** Factor table arrays, by number of entries */
+  private final Map<Integer, TablePool> pools = new HashMap<>();
+
+  private int[] featureIds = new int[256];
+
+  /** Returns the workspace of the current thread. */
+  static CRFInferenceWorkspace get() {
+    return workspaces.get();
+  }
+
+  /** Makes all of the arrays available again.  Call this before each sentence. */
+  void reset() {
+    for (TablePool pool : pools.values()) {
+      pool.used = 0;
+    }
+  }
+
+  /** Returns an empty factor table backed by a reused array. */
+  FactorTable newFactorTable(int numClasses, int windowSize) {
+    int size = SloppyMath.intPow(numClasses, windowSize);
+    TablePool pool = pools.get(size);
+    if (pool == null) {
+      pool = new TablePool();
+      pools.put(size, pool);
+    }
+    double[] table;
+    if (pool.used < pool.tables.size()) {
+      table = pool.tables.get(pool.used);
+    } else {
+      table = new double[size];
+      if (pool.tables.size() < MAX_RETAINED_TABLES) {
+        pool.tables.add(table);
+      }
+    }
+    pool.used++;
+    return new FactorTable(numClasses, windowSize, table);
+  }
+
+  /** Returns the feature id buffer, grown to hold at least {@code size} ids; earlier contents are kept. */
+  int[] featureIds(int size) {
+    if (featureIds.length < size) {
+      featureIds = Arrays.copyOf(featureIds, Math.max(size, featureIds.length * 2));
+    }
+    return featureIds;
+  }
+
+}
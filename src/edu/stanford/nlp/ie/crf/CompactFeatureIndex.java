@@ -0,0 +1,338 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * A read-only {@link Index} of feature strings which keeps all of its
+ * data in three flat blocks rather than as millions of String objects
+ * in a hash map: the features as UTF-8 bytes laid end to end, the
+ * offset of each feature in those bytes, and an open-addressing hash
+ * table from {@link String#hashCode()} to feature number.
+ * <br>
+ * The blocks are {@link java.nio.Buffer}s, so they can either live on
+ * the heap or be memory-mapped read-only from a compact model file (see
+ * {@link CRFClassifier#serializeCompactClassifier(String)}), in which
+ * case every JVM on a machine shares one copy of them in the page
+ * cache.  Lookups only use absolute gets, so the index may be shared
+ * between threads.
+ */
+public class CompactFeatureIndex extends AbstractCollection<String> implements Index<String> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int size;
+
+  /** Start of each feature in {@link #strings}, with one more entry for the end of the last feature */
+  private final transient IntBuffer offsets;
+
+  /** Hash table slots, each holding a feature number plus one, or 0 when empty */
+  private final transient IntBuffer slots;
+
+  private final transient ByteBuffer strings;
+
+  private final int mask;
+
+  CompactFeatureIndex(int size, IntBuffer offsets, IntBuffer slots, ByteBuffer strings) {
+    this.size = size;
+    this.offsets = offsets;
+    this.slots = slots;
+    this.strings = strings;
+    this.mask = slots.capacity() - 1;
+    if (offsets.capacity() != size + 1) {
+      throw new IllegalArgumentException("Feature offsets have " + offsets.capacity() + " entries, expected " + (size + 1));
+    }
+    if (Integer.bitCount(slots.capacity()) != 1 || slots.capacity() < size) {
+      throw new IllegalArgumentException("Bad hash table capacity " + slots.capacity() + " for " + size + " features");
+    }
+  }
+
+  /** Copies the features of the given index, keeping their numbers. */
+  public static CompactFeatureIndex fromIndex(Index<String> index) {
+    int size = index.size();
+    int capacity = 2;
+    while (capacity < size * 2) {
+      capacity <<= 1;
+    }
+    IntBuffer offsets = IntBuffer.allocate(size + 1);
+    List<byte[]> encoded = new ArrayList<>(size);
+    long total = 0;
+    for (int i = 0; i < size; ++i) {
+      offsets.put(i, (int) total);
+      byte[] bytes = index.get(i).getBytes(StandardCharsets.UTF_8);
+      encoded.add(bytes);
+      total += bytes.length;
+      if (total > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Features take more than " + Integer.MAX_VALUE + " bytes");
+      }
+    }
+    offsets.put(size, (int) total);
+
+    ByteBuffer strings = ByteBuffer.allocate((int) total);
+    for (byte[] bytes : encoded) {
+      strings.put(bytes);
+    }
+    strings.clear();
+
+    IntBuffer slots = IntBuffer.allocate(capacity);
+    int mask = capacity - 1;
+    for (int i = 0; i < size; ++i) {
+      int slot = slot(index.get(i).hashCode(), mask);
+      while (slots.get(slot) != 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots.put(slot, i + 1);
+    }
+    return new CompactFeatureIndex(size, offsets, slots, strings);
+  }
+
+  private static int slot(int hash, int mask) {
+    // String hash codes of similar features differ only in their low bits, so spread them out (murmur3 finalizer)
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return hash & mask;
+  }
+
+  /**
+   * Memory-map the blocks written by {@link #writeTo}, starting at
+   * {@code position[0]}, which is advanced past them.
+   */
+  static CompactFeatureIndex map(FileChannel channel, long[] position, int size, int capacity, int stringBytes) throws IOException {
+    IntBuffer offsets = mapBlock(channel, position, (long) (size + 1) * Integer.BYTES).asIntBuffer();
+    IntBuffer slots = mapBlock(channel, position, (long) capacity * Integer.BYTES).asIntBuffer();
+    ByteBuffer strings = mapBlock(channel, position, stringBytes);
+    position[0] += padding(stringBytes);
+    return new CompactFeatureIndex(size, offsets, slots, strings);
+  }
+
+  static ByteBuffer mapBlock(FileChannel channel, long[] position, long bytes) throws IOException {
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IOException("Block of " + bytes + " bytes is too large to map");
+    }
+    ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position[0], bytes);
+    position[0] += bytes;
+    return block.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /** Bytes of padding after the strings, so that the next block starts on a 4 byte boundary */
+  private static int padding(int stringBytes) {
+    return (Integer.BYTES - stringBytes % Integer.BYTES) % Integer.BYTES;
+  }
+
+  /**
+   * Write the offsets, the hash table and the strings, little-endian
+   * and padded to a multiple of 4 bytes.  The sizes are not written;
+   * the caller stores {@link #size()}, {@link #capacity()} and
+   * {@link #stringBytes()} in its own header.
+   */
+  void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    for (IntBuffer block : new IntBuffer[] { offsets, slots }) {
+      for (int i = 0, length = block.capacity(); i < length; ++i) {
+        if (bytes.remaining() < Integer.BYTES) {
+          drain(bytes, channel);
+        }
+        bytes.putInt(block.get(i));
+      }
+    }
+    for (int i = 0, length = strings.capacity() + padding(strings.capacity()); i < length; ++i) {
+      if (!bytes.hasRemaining()) {
+        drain(bytes, channel);
+      }
+      bytes.put(i < strings.capacity() ? strings.get(i) : 0);
+    }
+    drain(bytes, channel);
+  }
+
+  static void drain(ByteBuffer bytes, WritableByteChannel channel) throws IOException {
+    bytes.flip();
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    bytes.clear();
+  }
+
+  /** The number of slots in the hash table. */
+  int capacity() {
+    return slots.capacity();
+  }
+
+  /** The number of bytes taken by the UTF-8 strings. */
+  int stringBytes() {
+    return strings.capacity();
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public String get(int i) {
+    if (i < 0 || i >= size) {
+      throw new ArrayIndexOutOfBoundsException("Index " + i + " outside the bounds [0," + size + ")");
+    }
+    int start = offsets.get(i);
+    byte[] bytes = new byte[offsets.get(i + 1) - start];
+    for (int j = 0; j < bytes.length; ++j) {
+      bytes[j] = strings.get(start + j);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public int indexOf(String o) {
+    if (o == null) {
+      return -1;
+    }
+    int slot = slot(o.hashCode(), mask);
+    int entry;
+    while ((entry = slots.get(slot)) != 0) {
+      if (matches(entry - 1, o)) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /** Whether feature {@code i} is {@code feature}, compared without decoding it in the common ASCII case */
+  private boolean matches(int i, String feature) {
+    int position = offsets.get(i);
+    int end = offsets.get(i + 1);
+    int length = feature.length();
+    // UTF-8 never takes fewer bytes than there are chars
+    if (end - position < length) {
+      return false;
+    }
+    for (int j = 0; j < length; ++j) {
+      char c = feature.charAt(j);
+      if (c >= 0x80) {
+        return get(i).equals(feature);
+      }
+      if (position >= end || strings.get(position++) != c) {
+        return false;
+      }
+    }
+    return position == end;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof String && indexOf((String) o) >= 0;
+  }
+
+  @Override
+  public List<String> objectsList() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return CompactFeatureIndex.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  @Override
+  public Collection<String> objects(int[] indices) {
+    List<String> objects = new ArrayList<>(indices.length);
+    for (int i : indices) {
+      objects.add(get(i));
+    }
+    return objects;
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return objectsList().iterator();
+  }
+
+  /** Always true: a compact index cannot be changed. */
+  @Override
+  public boolean isLocked() {
+    return true;
+  }
+
+  @Override
+  public void lock() {
+    // already locked
+  }
+
+  @Override
+  public void unlock() {
+    throw new UnsupportedOperationException("A CompactFeatureIndex is read-only");
+  }
+
+  /** Returns the number of an existing feature, or -1, as the index is always locked. */
+  @Override
+  public int addToIndex(String o) {
+    return indexOf(o);
+  }
+
+  @Override
+  @Deprecated
+  public int indexOf(String o, boolean add) {
+    return indexOf(o);
+  }
+
+  @Override
+  public boolean add(String s) {
+    throw new UnsupportedOperationException("A CompactFeatureIndex is read-only");
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends String> c) {
+    throw new UnsupportedOperationException("A CompactFeatureIndex is read-only");
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A CompactFeatureIndex is read-only");
+  }
+
+  @Override
+  public void saveToWriter(Writer out) throws IOException {
+    for (int i = 0; i < size; i++) {
+      out.write(i + "=" + get(i) + '\n');
+    }
+  }
+
+  @Override
+  public void saveToFilename(String file) {
+    try (Writer out = IOUtils.getPrintWriter(file)) {
+      saveToWriter(out);
+    } catch (IOException e) {
+      throw new RuntimeIOException("Writing features to " + file, e);
+    }
+  }
+
+  /** Serialized as a {@link HashIndex}, since the buffers cannot be. */
+  private Object writeReplace() {
+    return new HashIndex<>(objectsList());
+  }
+
+}
@@ -37,6 +37,23 @@ public class FactorTable  {
     Arrays.fill(table, Double.NEGATIVE_INFINITY);
   }
 
+  /**
+   * Builds an empty factor table on top of the given array, which must
+   * have room for exactly numClasses ^ windowSize entries.  This lets
+   * {@link CRFInferenceWorkspace} reuse the arrays from one sentence
+   * to the next.
+   */
+  FactorTable(int numClasses, int windowSize, double[] table) {
+    this.numClasses = numClasses;
+    this.windowSize = windowSize;
+
+    if (table.length != SloppyMath.intPow(numClasses, windowSize)) {
+      throw new IllegalArgumentException("Table of size " + table.length + " does not fit " + numClasses + " classes and window size " + windowSize);
+    }
+    this.table = table;
+    Arrays.fill(table, Double.NEGATIVE_INFINITY);
+  }
+
   public FactorTable(FactorTable t) {
     numClasses = t.numClasses();
     windowSize = t.windowSize();
@@ -466,6 +483,12 @@ public class FactorTable  {
 
   public FactorTable sumOutEnd() {
     FactorTable ft = new FactorTable(numClasses, windowSize - 1);
+    sumOutEnd(ft);
+    return ft;
+  }
+
+  /** Like {@link #sumOutEnd()}, but writes the result into {@code ft}, whose window must be one smaller. */
+  void sumOutEnd(FactorTable ft) {
     for (int i = 0, sz = ft.size(); i < sz; i++) {
       ft.table[i] = ArrayMath.logSum(table, i * numClasses, (i+1) * numClasses);
     }
@@ -474,16 +497,20 @@ public class FactorTable  {
       ft.logIncrementValue(i / numClasses, table[i]);
     }
     */
-    return ft;
   }
 
   public FactorTable sumOutFront() {
     FactorTable ft = new FactorTable(numClasses, windowSize - 1);
+    sumOutFront(ft);
+    return ft;
+  }
+
+  /** Like {@link #sumOutFront()}, but writes the result into {@code ft}, whose window must be one smaller. */
+  void sumOutFront(FactorTable ft) {
     int stride = ft.size();
     for (int i = 0; i < stride; i++) {
       ft.setValue(i, ArrayMath.logSum(table, i, table.length, stride));
     }
-    return ft;
   }
 
   public void divideBy(FactorTable other) {
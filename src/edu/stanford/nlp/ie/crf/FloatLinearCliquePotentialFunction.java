@@ -0,0 +1,118 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link LinearCliquePotentialFunction} whose weights are single
+ * precision floats in one flat block instead of a jagged
+ * {@code double[][]}.  The row of feature {@code i} starts at
+ * {@code rowStart[i]} and has one weight per label of its clique.
+ * <br>
+ * Like {@link CompactFeatureIndex}, the blocks may be on the heap or
+ * memory-mapped from a compact model file.  Potentials differ from
+ * those computed with the double precision weights only by float
+ * rounding of the weights.
+ */
+public class FloatLinearCliquePotentialFunction implements CliquePotentialFunction {
+
+  private final IntBuffer rowStart;
+  private final FloatBuffer weights;
+
+  FloatLinearCliquePotentialFunction(IntBuffer rowStart, FloatBuffer weights) {
+    this.rowStart = rowStart;
+    this.weights = weights;
+    int numFeatures = rowStart.capacity() - 1;
+    if (numFeatures < 0 || rowStart.get(numFeatures) != weights.capacity()) {
+      throw new IllegalArgumentException("Weight rows end at " + (numFeatures < 0 ? 0 : rowStart.get(numFeatures)) +
+          " but there are " + weights.capacity() + " weights");
+    }
+  }
+
+  /** Rounds the given weights, {@code weights[featureIndex][labelIndex]}, to floats. */
+  public static FloatLinearCliquePotentialFunction fromWeights(double[][] weights) {
+    IntBuffer rowStart = IntBuffer.allocate(weights.length + 1);
+    long total = 0;
+    for (int i = 0; i < weights.length; ++i) {
+      rowStart.put(i, (int) total);
+      total += weights[i].length;
+      if (total > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("More than " + Integer.MAX_VALUE + " weights");
+      }
+    }
+    rowStart.put(weights.length, (int) total);
+    FloatBuffer flat = FloatBuffer.allocate((int) total);
+    for (double[] row : weights) {
+      for (double weight : row) {
+        flat.put((float) weight);
+      }
+    }
+    flat.clear();
+    return new FloatLinearCliquePotentialFunction(rowStart, flat);
+  }
+
+  /**
+   * Memory-map the blocks written by {@link #writeTo}, starting at
+   * {@code position[0]}, which is advanced past them.
+   */
+  static FloatLinearCliquePotentialFunction map(FileChannel channel, long[] position, int numFeatures, int numWeights) throws IOException {
+    IntBuffer rowStart = CompactFeatureIndex.mapBlock(channel, position, (long) (numFeatures + 1) * Integer.BYTES).asIntBuffer();
+    FloatBuffer weights = CompactFeatureIndex.mapBlock(channel, position, (long) numWeights * Float.BYTES).asFloatBuffer();
+    return new FloatLinearCliquePotentialFunction(rowStart, weights);
+  }
+
+  /**
+   * Write the row starts and then the weights, little-endian.  The
+   * sizes are not written; the caller stores {@link #numFeatures()} and
+   * {@link #numWeights()} in its own header.
+   */
+  void writeTo(WritableByteChannel channel) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0, length = rowStart.capacity(); i < length; ++i) {
+      if (bytes.remaining() < Integer.BYTES) {
+        CompactFeatureIndex.drain(bytes, channel);
+      }
+      bytes.putInt(rowStart.get(i));
+    }
+    for (int i = 0, length = weights.capacity(); i < length; ++i) {
+      if (bytes.remaining() < Float.BYTES) {
+        CompactFeatureIndex.drain(bytes, channel);
+      }
+      bytes.putFloat(weights.get(i));
+    }
+    CompactFeatureIndex.drain(bytes, channel);
+  }
+
+  int numFeatures() {
+    return rowStart.capacity() - 1;
+  }
+
+  int numWeights() {
+    return weights.capacity();
+  }
+
+  /** The weight of the given feature for the given label. */
+  public double weight(int feature, int labelIndex) {
+    return weights.get(rowStart.get(feature) + labelIndex);
+  }
+
+  @Override
+  public double computeCliquePotential(int cliqueSize, int labelIndex,
+      int[] cliqueFeatures, double[] featureVal, int posInSent) {
+    double output = 0.0;
+    for (int m = 0; m < cliqueFeatures.length; m++) {
+      double dotProd = weights.get(rowStart.get(cliqueFeatures[m]) + labelIndex);
+      if (featureVal != null) {
+        dotProd *= featureVal[m];
+      }
+      output += dotProd;
+    }
+    return output;
+  }
+
+}
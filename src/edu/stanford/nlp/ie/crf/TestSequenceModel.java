@@ -21,6 +21,9 @@ public class TestSequenceModel implements SequenceModel {
   private final int[] allTags;
   private final int[][] allowedTagsAtPosition;
 
+  /** Scratch space for the previous tags, reused by every call */
+  private final int[] previous;
+
   public TestSequenceModel(CRFCliqueTree<? extends CharSequence> cliqueTree) {
     this(cliqueTree, null, null);
   }
@@ -31,6 +34,7 @@ public class TestSequenceModel implements SequenceModel {
     this.cliqueTree = cliqueTree;
     // this.window = factorTables[0].windowSize();
     this.window = cliqueTree.window();
+    this.previous = new int[window - 1];
     // this.numClasses = factorTables[0].numClasses();
     int numClasses = cliqueTree.getNumClasses();
 
@@ -85,7 +89,6 @@ public class TestSequenceModel implements SequenceModel {
    */
   @Override
   public double scoreOf(int[] tags, int pos) {
-    int[] previous = new int[window - 1];
     int realPos = pos - window + 1;
     for (int i = 0; i < window - 1; i++) {
       previous[i] = tags[realPos + i];
@@ -97,7 +100,6 @@ public class TestSequenceModel implements SequenceModel {
   public double[] scoresOf(int[] tags, int pos) {
     int[] allowedTags = getPossibleValues(pos);
     int realPos = pos - window + 1;
-    int[] previous = new int[window - 1];
     for (int i = 0; i < window - 1; i++) {
       previous[i] = tags[realPos + i];
     }
@@ -0,0 +1,706 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.IntervalTree;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read only {@link PhraseTable}, compiled into a file which is memory mapped when it is loaded.
+ *
+ * A phrase table is built from text every time it is read, into a tree of hash maps.
+ * For a large dictionary that takes a long time and a lot of memory, in every process which uses it.
+ * {@link #compile} writes a table out as a double-array trie over ids of the (normalized) words,
+ * and {@link #load} maps that file read only, so loading takes no time and the operating system
+ * shares one copy of the table between all the threads and processes using it.
+ * The file is mapped in one piece, so it can be at most 2 GB; {@link #compile} refuses larger tables.
+ *
+ * The lookup functions of {@link PhraseLookup} find the same phrases as those of the {@link PhraseTable}
+ * that was compiled, normalizing words the same way, so either can be used where phrases are only looked up.
+ * Matches are listed by where they begin, shortest first.
+ * The {@link PhraseTable.Phrase}s returned have the text, tag and words of the phrases, but not
+ * their data or alternate forms, which are not stored, and a new one is made for each match.
+ * A tokenizer set on the phrase table is not stored either, so text given as a string is always
+ * split into words the way a phrase table without a tokenizer splits it.
+ *
+ * <p>The file starts with {@link #MAGIC}, followed by the normalization flags and the sizes
+ * of the sections which follow it: the start of each word in the character section, a hash table
+ * of word ids, the base and check arrays of the trie, the start of each phrase in the phrase
+ * section, the phrases (the start and length of their text and tag in the character section,
+ * and the ids of their words), and the characters.
+ * The trie has a cell for each node, the root being cell 0.
+ * The child of cell {@code s} for word id {@code c} is cell {@code base[s] + c}, if that cell's
+ * check is {@code s}; a node at the end of phrase {@code p} has a child for the id 0, whose base
+ * is {@code -(p + 1)}.
+ *
+ * <p>To compile a file of phrases (as read by {@link PhraseTable#readPhrases(String, boolean)}), run:
+ * {@code java edu.stanford.nlp.ling.tokensregex.CompiledPhraseTable [-caseInsensitive] phrases.tsv phrases.table}
+ */
+public class CompiledPhraseTable implements PhraseLookup {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(CompiledPhraseTable.class);
+
+  /** The first bytes of every compiled phrase table */
+  public static final byte[] MAGIC = "CNLPPHR1".getBytes(StandardCharsets.US_ASCII);
+
+  /** The flags, the six section sizes and a reserved int */
+  private static final int HEADER_LENGTH = MAGIC.length + 8 * 4;
+
+  private static final int NORMALIZE = 1;
+  private static final int CASE_INSENSITIVE = 2;
+  private static final int IGNORE_PUNCTUATION = 4;
+  private static final int IGNORE_PUNCTUATION_TOKENS = 8;
+
+  /** The word id for the end of a phrase */
+  private static final int END = 0;
+  private static final int ROOT = 0;
+
+  /** Normalized forms are cached until there are this many of them */
+  private static final int NORMALIZED_CACHE_SIZE = 50000;
+
+  public final boolean normalize;
+  public final boolean caseInsensitive;
+  public final boolean ignorePunctuation;
+  public final boolean ignorePunctuationTokens;
+
+  private final int phraseCount;
+  private final int cellCount;
+  /** By word id, where the word starts in chars; the word ends where the next one starts */
+  private final IntBuffer wordStart;
+  /** Word ids by the hash of the word, with open addressing; 0 is an empty slot */
+  private final IntBuffer wordTable;
+  private final int wordMask;
+  private final IntBuffer base;
+  private final IntBuffer check;
+  private final IntBuffer phraseStart;
+  private final IntBuffer phrases;
+  private final CharBuffer chars;
+
+  private final Map<String,String> normalizedCache = new ConcurrentHashMap<>();
+
+  private CompiledPhraseTable(ByteBuffer buffer, String path) throws IOException {
+    if (buffer.capacity() < HEADER_LENGTH) {
+      throw new IOException("Too short to be a compiled phrase table: " + path);
+    }
+    byte[] magic = new byte[MAGIC.length];
+    buffer.get(magic);
+    if ( ! Arrays.equals(MAGIC, magic)) {
+      throw new IOException("Not a compiled phrase table: " + path);
+    }
+    int flags = buffer.getInt();
+    normalize = (flags & NORMALIZE) != 0;
+    caseInsensitive = (flags & CASE_INSENSITIVE) != 0;
+    ignorePunctuation = (flags & IGNORE_PUNCTUATION) != 0;
+    ignorePunctuationTokens = (flags & IGNORE_PUNCTUATION_TOKENS) != 0;
+    int wordCount = buffer.getInt();
+    int wordTableSize = buffer.getInt();
+    cellCount = buffer.getInt();
+    phraseCount = buffer.getInt();
+    int phrasesSize = buffer.getInt();
+    int charCount = buffer.getInt();
+    buffer.getInt(); // reserved
+    if (buffer.capacity() != fileLength(wordCount, wordTableSize, cellCount, phraseCount, phrasesSize, charCount)) {
+      throw new IOException("Truncated or corrupt compiled phrase table: " + path);
+    }
+    int offset = HEADER_LENGTH;
+    wordStart = slice(buffer, offset, 4 * (wordCount + 2)).asIntBuffer();
+    offset += 4 * (wordCount + 2);
+    wordTable = slice(buffer, offset, 4 * wordTableSize).asIntBuffer();
+    wordMask = wordTableSize - 1;
+    offset += 4 * wordTableSize;
+    base = slice(buffer, offset, 4 * cellCount).asIntBuffer();
+    offset += 4 * cellCount;
+    check = slice(buffer, offset, 4 * cellCount).asIntBuffer();
+    offset += 4 * cellCount;
+    phraseStart = slice(buffer, offset, 4 * (phraseCount + 1)).asIntBuffer();
+    offset += 4 * (phraseCount + 1);
+    phrases = slice(buffer, offset, 4 * phrasesSize).asIntBuffer();
+    offset += 4 * phrasesSize;
+    chars = slice(buffer, offset, 2 * charCount).asCharBuffer();
+  }
+
+  /** The length of a compiled table with sections of these sizes */
+  private static long fileLength(int wordCount, int wordTableSize, int cellCount, int phraseCount,
+                                 long phrasesSize, long charCount) {
+    return HEADER_LENGTH + 4L * ((wordCount + 2L) + wordTableSize + 2L * cellCount + (phraseCount + 1L) + phrasesSize) + 2L * charCount;
+  }
+
+  /**
+   * A table is mapped in one piece, and a single mapping of a file is limited to 2 GB.
+   *
+   * @throws IOException If a table of this length could not be mapped
+   */
+  static void checkMappable(long length, String path) throws IOException {
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("A compiled phrase table is memory mapped in one piece, which limits it to 2 GB, but " +
+              path + " is " + length + " bytes; split the phrases into several tables");
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer section = buffer.duplicate();
+    ((Buffer) section).position(offset);
+    ((Buffer) section).limit(offset + length);
+    return section.slice();
+  }
+
+  /**
+   * Loads a table written by {@link #compile}, by memory mapping it.
+   * The table can be used from many threads at once.
+   */
+  public static CompiledPhraseTable load(File file) throws IOException {
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+      FileChannel channel = in.getChannel();
+      long size = channel.size();
+      checkMappable(size, file.getPath());
+      // the mapping stays valid after the file is closed
+      return new CompiledPhraseTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), file.getPath());
+    }
+  }
+
+  public static CompiledPhraseTable load(String filename) throws IOException {
+    return load(new File(filename));
+  }
+
+  /** The number of phrases in the table */
+  public int size() {
+    return phraseCount;
+  }
+
+  public boolean isEmpty() {
+    return phraseCount == 0;
+  }
+
+  public String getNormalizedForm(String word)
+  {
+    String normalized = normalizedCache.get(word);
+    if (normalized == null) {
+      normalized = PhraseTable.createNormalizedForm(word, normalize, caseInsensitive, ignorePunctuation, ignorePunctuationTokens);
+      if (normalizedCache.size() >= NORMALIZED_CACHE_SIZE) {
+        normalizedCache.clear();
+      }
+      normalizedCache.put(word, normalized);
+    }
+    return normalized;
+  }
+
+  private static int slot(int hash, int mask) {
+    int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  /** The id of a word, or -1 if it is in none of the phrases */
+  private int wordId(String word) {
+    for (int i = slot(word.hashCode(), wordMask); ; i = (i + 1) & wordMask) {
+      int id = wordTable.get(i);
+      if (id == 0) {
+        return -1;
+      }
+      int start = wordStart.get(id);
+      int length = wordStart.get(id + 1) - start;
+      if (length == word.length()) {
+        int k = 0;
+        while (k < length && chars.get(start + k) == word.charAt(k)) {
+          k++;
+        }
+        if (k == length) {
+          return id;
+        }
+      }
+    }
+  }
+
+  private String string(int start, int length) {
+    char[] value = new char[length];
+    for (int k = 0; k < length; k++) {
+      value[k] = chars.get(start + k);
+    }
+    return new String(value);
+  }
+
+  /** The child of a cell for a word id, or -1 */
+  private int child(int cell, int id) {
+    int next = base.get(cell) + id;
+    return (next > 0 && next < cellCount && check.get(next) == cell) ? next : -1;
+  }
+
+  /** The phrase ending at a cell, or -1 */
+  private int phraseAt(int cell) {
+    int end = child(cell, END);
+    return (end < 0) ? -1 : -base.get(end) - 1;
+  }
+
+  private PhraseTable.Phrase phrase(int p) {
+    int at = phraseStart.get(p);
+    String text = string(phrases.get(at), phrases.get(at + 1));
+    int tagLength = phrases.get(at + 3);
+    String tag = (tagLength < 0) ? null : string(phrases.get(at + 2), tagLength);
+    int wordCount = phrases.get(at + 4);
+    String[] words = new String[wordCount];
+    for (int i = 0; i < wordCount; i++) {
+      int id = phrases.get(at + 5 + i);
+      int start = wordStart.get(id);
+      words[i] = string(start, wordStart.get(id + 1) - start);
+    }
+    return new PhraseTable.Phrase(new PhraseTable.StringList(words), text, tag, null);
+  }
+
+  public PhraseTable.WordList toWordList(String phraseText)
+  {
+    return new PhraseTable.StringList(PhraseTable.splitTextDefault(phraseText));
+  }
+
+  public PhraseTable.WordList toNormalizedWordList(String phraseText)
+  {
+    String[] words = PhraseTable.splitTextDefault(phraseText);
+    List<String> list = new ArrayList<>(words.length);
+    for (String word:words) {
+      word = getNormalizedForm(word);
+      if (word.length() > 0) {
+        list.add(word);
+      }
+    }
+    return new PhraseTable.StringList(list);
+  }
+
+  public PhraseTable.Phrase lookup(String phrase)
+  {
+    return lookup(toWordList(phrase));
+  }
+
+  public PhraseTable.Phrase lookupNormalized(String phrase)
+  {
+    return lookup(toNormalizedWordList(phrase));
+  }
+
+  public PhraseTable.Phrase lookup(PhraseTable.WordList wordList)
+  {
+    if (wordList == null) return null;
+    int cell = ROOT;
+    for (int i = 0; i < wordList.size() && cell >= 0; i++) {
+      int id = wordId(wordList.getWord(i));
+      cell = (id < 0) ? -1 : child(cell, id);
+    }
+    int p = (cell < 0) ? -1 : phraseAt(cell);
+    return (p < 0) ? null : phrase(p);
+  }
+
+  /**
+   * Given a segment of text, returns list of spans (PhraseMatch) that corresponds
+   *  to a phrase in the table
+   * @param text Input text to search over
+   * @return List of all matched spans
+   */
+  public List<PhraseTable.PhraseMatch> findAllMatches(String text)
+  {
+    PhraseTable.WordList tokens = toNormalizedWordList(text);
+    return findAllMatches(tokens, 0, tokens.size(), false);
+  }
+
+  /**
+   * Given a list of tokens, returns list of spans (PhraseMatch) that corresponds
+   *  to a phrase in the table
+   * @param tokens List of tokens to search over
+   * @return List of all matched spans
+   */
+  public List<PhraseTable.PhraseMatch> findAllMatches(PhraseTable.WordList tokens)
+  {
+    return findAllMatches(tokens, 0, tokens.size(), true);
+  }
+
+  public List<PhraseTable.PhraseMatch> findAllMatches(PhraseTable.WordList tokens,
+                                                      int tokenStart, int tokenEnd,
+                                                      boolean needNormalization)
+  {
+    return findMatches(tokens, tokenStart, tokenEnd, needNormalization, true /* find all */);
+  }
+
+  public List<PhraseTable.PhraseMatch> findMatches(String text)
+  {
+    PhraseTable.WordList tokens = toNormalizedWordList(text);
+    return findMatches(tokens, 0, tokens.size(), false);
+  }
+
+  public List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens)
+  {
+    return findMatches(tokens, 0, tokens.size(), true);
+  }
+
+  /** Finds the phrases starting at tokenStart */
+  public List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens,
+                                                   int tokenStart, int tokenEnd,
+                                                   boolean needNormalization)
+  {
+    return findMatches(tokens, tokenStart, tokenEnd, needNormalization, false /* don't need to find all */);
+  }
+
+  public List<PhraseTable.PhraseMatch> findNonOverlappingPhrases(List<PhraseTable.PhraseMatch> phraseMatches)
+  {
+    if (phraseMatches.size() > 1) {
+      return IntervalTree.getNonOverlapping(phraseMatches, PhraseTable.PHRASEMATCH_LENGTH_ENDPOINTS_COMPARATOR);
+    } else {
+      return phraseMatches;
+    }
+  }
+
+  private List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens, int tokenStart, int tokenEnd,
+                                                    boolean needNormalization, boolean findAll)
+  {
+    // the word ids of the tokens searched, and which token each came from
+    // (normalization leaves out tokens which normalize to nothing)
+    int[] ids = new int[Math.max(tokenEnd - tokenStart, 0)];
+    int[] tokenIndex = new int[ids.length];
+    int n = 0;
+    for (int i = tokenStart; i < tokenEnd; i++) {
+      String word = tokens.getWord(i);
+      if (needNormalization) {
+        word = getNormalizedForm(word);
+        if (word.length() == 0) continue;
+      }
+      ids[n] = wordId(word);
+      tokenIndex[n] = i;
+      n++;
+    }
+    List<PhraseTable.PhraseMatch> matched = new ArrayList<>();
+    int lastStart = findAll ? n : Math.min(n, 1);
+    for (int start = 0; start < lastStart; start++) {
+      int cell = ROOT;
+      for (int i = start; i < n; i++) {
+        if (ids[i] < 0) break;
+        cell = child(cell, ids[i]);
+        if (cell < 0) break;
+        int p = phraseAt(cell);
+        if (p >= 0) {
+          matched.add(new PhraseTable.PhraseMatch(phrase(p), tokenIndex[start], tokenIndex[i] + 1));
+        }
+      }
+    }
+    return matched;
+  }
+
+
+  /**
+   * Writes a phrase table out to a file, to be loaded with {@link #load}.
+   * The phrases are stored with the words they were added to the table with (normalized,
+   * unless they were added as a list of words), and the table's normalization settings.
+   */
+  public static void compile(PhraseTable table, File file) throws IOException {
+    Timing timer = new Timing();
+    timer.doing("Compiling phrase table: " + file);
+    List<PhraseTable.Phrase> all = new ArrayList<>();
+    if ( ! table.isEmpty()) {
+      for (Iterator<PhraseTable.Phrase> iter = table.iterator(); iter.hasNext(); ) {
+        all.add(iter.next());
+      }
+    }
+
+    // give the most frequent words the smallest ids, which keeps the trie dense
+    Map<String,Integer> counts = new HashMap<>();
+    for (PhraseTable.Phrase phrase : all) {
+      PhraseTable.WordList words = phrase.getWordList();
+      for (int i = 0; i < words.size(); i++) {
+        counts.merge(words.getWord(i), 1, Integer::sum);
+      }
+    }
+    List<String> vocabulary = new ArrayList<>(counts.keySet());
+    vocabulary.sort((w1, w2) -> {
+      int cmp = Integer.compare(counts.get(w2), counts.get(w1));
+      return (cmp != 0) ? cmp : w1.compareTo(w2);
+    });
+    Map<String,Integer> ids = new HashMap<>(vocabulary.size() * 2);
+    for (String word : vocabulary) {
+      ids.put(word, ids.size() + 1);
+    }
+
+    // the phrases, in order of their word ids
+    int[][] keys = new int[all.size()][];
+    Integer[] order = new Integer[all.size()];
+    for (int p = 0; p < keys.length; p++) {
+      PhraseTable.WordList words = all.get(p).getWordList();
+      keys[p] = new int[words.size()];
+      for (int i = 0; i < words.size(); i++) {
+        keys[p][i] = ids.get(words.getWord(i));
+      }
+      order[p] = p;
+    }
+    Arrays.sort(order, (p1, p2) -> compareKeys(keys[p1], keys[p2]));
+    List<PhraseTable.Phrase> sortedPhrases = new ArrayList<>(keys.length);
+    List<int[]> sortedKeys = new ArrayList<>(keys.length);
+    for (int p : order) {
+      int[] key = keys[p];
+      if (key.length == 0) continue;
+      if ( ! sortedKeys.isEmpty() && compareKeys(sortedKeys.get(sortedKeys.size() - 1), key) == 0) {
+        log.warn("Skipping duplicate phrase " + all.get(p).getText());
+        continue;
+      }
+      sortedPhrases.add(all.get(p));
+      sortedKeys.add(key);
+    }
+
+    TrieBuilder trie = new TrieBuilder();
+    trie.add(ROOT, sortedKeys, 0, sortedKeys.size(), 0);
+
+    StringBuilder text = new StringBuilder();
+    int[] wordStart = new int[vocabulary.size() + 2];
+    for (int id = 1; id <= vocabulary.size(); id++) {
+      wordStart[id] = text.length();
+      text.append(vocabulary.get(id - 1));
+    }
+    wordStart[vocabulary.size() + 1] = text.length();
+    int wordTableSize = 2;
+    while (wordTableSize < 2 * vocabulary.size()) {
+      wordTableSize *= 2;
+    }
+    int[] wordTable = new int[wordTableSize];
+    for (int id = 1; id <= vocabulary.size(); id++) {
+      int i = slot(vocabulary.get(id - 1).hashCode(), wordTableSize - 1);
+      while (wordTable[i] != 0) {
+        i = (i + 1) & (wordTableSize - 1);
+      }
+      wordTable[i] = id;
+    }
+
+    // check the size before the offsets into the file, which are ints, could overflow
+    long phrasesLength = 0;
+    long charCount = text.length();
+    for (int p = 0; p < sortedPhrases.size(); p++) {
+      PhraseTable.Phrase phrase = sortedPhrases.get(p);
+      phrasesLength += 5 + sortedKeys.get(p).length;
+      charCount += phrase.getText().length() + (phrase.getTag() == null ? 0 : phrase.getTag().length());
+    }
+    checkMappable(fileLength(vocabulary.size(), wordTableSize, trie.cellCount, sortedPhrases.size(), phrasesLength, charCount),
+            file.getPath());
+
+    int[] phraseStart = new int[sortedPhrases.size() + 1];
+    int phrasesSize = 0;
+    for (int p = 0; p < sortedPhrases.size(); p++) {
+      phraseStart[p] = phrasesSize;
+      phrasesSize += 5 + sortedKeys.get(p).length;
+    }
+    phraseStart[sortedPhrases.size()] = phrasesSize;
+
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.write(MAGIC);
+      out.writeInt((table.normalize ? NORMALIZE : 0) |
+              (table.caseInsensitive ? CASE_INSENSITIVE : 0) |
+              (table.ignorePunctuation ? IGNORE_PUNCTUATION : 0) |
+              (table.ignorePunctuationTokens ? IGNORE_PUNCTUATION_TOKENS : 0));
+      out.writeInt(vocabulary.size());
+      out.writeInt(wordTableSize);
+      out.writeInt(trie.cellCount);
+      out.writeInt(sortedPhrases.size());
+      out.writeInt(phrasesSize);
+      // the characters of the phrase texts and tags are appended below
+      StringBuilder phraseText = new StringBuilder();
+      int[] phrases = new int[phrasesSize];
+      for (int p = 0; p < sortedPhrases.size(); p++) {
+        PhraseTable.Phrase phrase = sortedPhrases.get(p);
+        int at = phraseStart[p];
+        phrases[at] = text.length() + phraseText.length();
+        phrases[at + 1] = phrase.getText().length();
+        phraseText.append(phrase.getText());
+        if (phrase.getTag() == null) {
+          phrases[at + 2] = 0;
+          phrases[at + 3] = -1;
+        } else {
+          phrases[at + 2] = text.length() + phraseText.length();
+          phrases[at + 3] = phrase.getTag().length();
+          phraseText.append(phrase.getTag());
+        }
+        int[] key = sortedKeys.get(p);
+        phrases[at + 4] = key.length;
+        System.arraycopy(key, 0, phrases, at + 5, key.length);
+      }
+      text.append(phraseText);
+      out.writeInt(text.length());
+      out.writeInt(0); // reserved
+      writeInts(out, wordStart, wordStart.length);
+      writeInts(out, wordTable, wordTable.length);
+      writeInts(out, trie.base, trie.cellCount);
+      writeInts(out, trie.check, trie.cellCount);
+      writeInts(out, phraseStart, phraseStart.length);
+      writeInts(out, phrases, phrases.length);
+      out.writeChars(text.toString());
+    }
+    timer.done("Compiled " + sortedPhrases.size() + " phrases into " + file.length() + " bytes");
+  }
+
+  private static int compareKeys(int[] key1, int[] key2) {
+    int n = Math.min(key1.length, key2.length);
+    for (int i = 0; i < n; i++) {
+      if (key1[i] != key2[i]) {
+        return (key1[i] < key2[i]) ? -1 : 1;
+      }
+    }
+    return Integer.compare(key1.length, key2.length);
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values, int length) throws IOException {
+    for (int i = 0; i < length; i++) {
+      out.writeInt(values[i]);
+    }
+  }
+
+
+  /** Builds the base and check arrays of a double-array trie from sorted keys. */
+  private static class TrieBuilder {
+    int[] base;
+    int[] check;
+    /**
+     * The free cells to try putting a first child in, as a doubly linked list in order.
+     * The entry after the last cell stands for all the cells beyond it, which are free.
+     */
+    int[] nextFree;
+    int[] prevFree;
+    int firstFree;
+    /** How many times each free cell has been tried for a first child, or -1 once off the list */
+    byte[] tries;
+    int cellCount = 1;
+
+    private static final int MAX_TRIES = 16;
+
+    TrieBuilder() {
+      base = new int[0];
+      check = new int[0];
+      tries = new byte[0];
+      nextFree = new int[] { 0 };
+      prevFree = new int[] { -1 };
+      firstFree = 0;
+      ensureCapacity(1024);
+      unlink(ROOT);
+      check[ROOT] = ROOT;
+    }
+
+    private void ensureCapacity(int size) {
+      int oldLength = check.length;
+      if (size <= oldLength) {
+        return;
+      }
+      int capacity = Math.max(size, oldLength * 2);
+      base = Arrays.copyOf(base, capacity);
+      check = Arrays.copyOf(check, capacity);
+      Arrays.fill(check, oldLength, capacity, -1);
+      tries = Arrays.copyOf(tries, capacity);
+      nextFree = Arrays.copyOf(nextFree, capacity + 1);
+      prevFree = Arrays.copyOf(prevFree, capacity + 1);
+      // the entry which stood for the cells beyond becomes the first of them
+      for (int i = oldLength; i < capacity; i++) {
+        nextFree[i] = i + 1;
+        prevFree[i + 1] = i;
+      }
+    }
+
+    /** Takes a cell off the free list */
+    private void unlink(int cell) {
+      if (tries[cell] < 0) {
+        return;
+      }
+      tries[cell] = -1;
+      int prev = prevFree[cell];
+      int next = nextFree[cell];
+      if (prev < 0) {
+        firstFree = next;
+      } else {
+        nextFree[prev] = next;
+      }
+      prevFree[next] = prev;
+    }
+
+    /**
+     * Adds the children of a cell, for the keys in [lo, hi), which all start with the
+     * same depth ids, and then their children.
+     * Keys are sorted, so a key of length depth (the phrase ending here) comes first.
+     */
+    void add(int cell, List<int[]> keys, int lo, int hi, int depth) {
+      if (lo == hi) {
+        base[cell] = 1;
+        return;
+      }
+      // the ids of the children, and where the keys of each begin
+      int[] childIds = new int[hi - lo];
+      int[] childLo = new int[hi - lo + 1];
+      int children = 0;
+      for (int k = lo; k < hi; k++) {
+        int[] key = keys.get(k);
+        int id = (key.length == depth) ? END : key[depth];
+        if (children == 0 || childIds[children - 1] != id) {
+          childIds[children] = id;
+          childLo[children] = k;
+          children++;
+        }
+      }
+      childLo[children] = hi;
+
+      int begin = findBase(childIds, children);
+      base[cell] = begin;
+      for (int c = 0; c < children; c++) {
+        unlink(begin + childIds[c]);
+        check[begin + childIds[c]] = cell;
+      }
+      cellCount = Math.max(cellCount, begin + childIds[children - 1] + 1);
+      for (int c = 0; c < children; c++) {
+        int child = begin + childIds[c];
+        if (childIds[c] == END) {
+          base[child] = -(childLo[c] + 1);
+        } else {
+          add(child, keys, childLo[c], childLo[c + 1], depth + 1);
+        }
+      }
+    }
+
+    /** Finds the first base at which all the child cells are free */
+    private int findBase(int[] childIds, int children) {
+      int first = childIds[0];
+      int last = childIds[children - 1];
+      for (int pos = firstFree; ; pos = nextFree[pos]) {
+        // pos may be the entry standing for the cells beyond the end
+        ensureCapacity(pos + 1);
+        int begin = pos - first;
+        if (begin < 1) {
+          continue;
+        }
+        ensureCapacity(begin + last + 1);
+        boolean fits = true;
+        for (int c = 1; c < children && fits; c++) {
+          fits = check[begin + childIds[c]] < 0;
+        }
+        if (fits) {
+          return begin;
+        }
+        // a cell which keeps failing is in a crowded part of the array: stop trying it
+        if (++tries[pos] >= MAX_TRIES) {
+          unlink(pos);
+        }
+      }
+    }
+  }
+
+
+  public static void main(String[] args) throws IOException {
+    boolean caseInsensitive = false;
+    int arg = 0;
+    if (args.length > 0 && args[0].equals("-caseInsensitive")) {
+      caseInsensitive = true;
+      arg++;
+    }
+    if (args.length - arg != 2) {
+      log.info("Usage: java " + CompiledPhraseTable.class.getName() + " [-caseInsensitive] phrasesFile compiledFile");
+      return;
+    }
+    PhraseTable table = new PhraseTable();
+    table.caseInsensitive = caseInsensitive;
+    table.readPhrases(args[arg], true);
+    compile(table, new File(args[arg + 1]));
+  }
+
+}
@@ -0,0 +1,564 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import java.util.*;
+
+import edu.stanford.nlp.ling.tokensregex.BasicSequenceMatchResult.MatchedGroup;
+import edu.stanford.nlp.util.HasInterval;
+import edu.stanford.nlp.util.Interval;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+/**
+ * A {@link SequencePattern} compiled for {@link SequencePattern.MatchMode#COMPILED} matching,
+ * where all the branches of the pattern are followed at once instead of one at a time.
+ *
+ * <p>
+ * The states of the pattern are numbered, and for each state, the paths from it through
+ * the states that consume no element are worked out ahead of time, along with the groups
+ * started and ended on the way.  A match attempt then steps through the sequence once,
+ * keeping the live branches in the order the backtracking matcher would prefer them.
+ * A branch is dropped when an earlier branch is already waiting in the same state, since
+ * whatever it could go on to match, the earlier branch matches too and is preferred.
+ * So there are never more branches than states, each node pattern is tested at most once
+ * per element, and a match attempt takes time linear in the length of the sequence
+ * (times the size of the pattern), however much the backtracking matcher would have to backtrack.
+ * </p>
+ *
+ * <p>
+ * The match found, and its groups, are the same as with backtracking.
+ * Backreferences, conjunctions, repeats which are not expanded into copies of the repeated
+ * pattern (nongreedy, or bounds above 5), and multi-node patterns inside a repeat are
+ * not supported: {@link #compile} throws an {@link UnsupportedOperationException} for them,
+ * and such patterns are matched by backtracking.
+ * </p>
+ *
+ * @see SequenceMatcher
+ */
+final class CompiledSequencePattern {
+
+  // What a state does
+  private static final int PASS = 0;         // consumes nothing (includes values)
+  private static final int NODE = 1;         // matches one element
+  private static final int MULTI = 2;        // matches several elements
+  private static final int GROUP_START = 3;  // waits for the next element to start a group
+  private static final int GROUP_END = 4;
+  private static final int SEQ_START = 5;
+  private static final int SEQ_END = 6;
+  private static final int MATCH = 7;
+
+  /**
+   * A path through states which consume nothing, ending at a state which consumes
+   * an element (when consuming) or waits for the next one (when not).
+   */
+  private static class Path {
+    final int target;
+    /** Whether the path goes through a sequence start (when consuming) or a sequence end (when not) */
+    final boolean anchored;
+    /** Groups started (the group id) and ended (-(id+1)) along the path, in order */
+    final int[] groupOps;
+    /** The value of each group ended */
+    final Object[] values;
+
+    Path(int target, boolean anchored, int[] groupOps, Object[] values) {
+      this.target = target;
+      this.anchored = anchored;
+      this.groupOps = groupOps;
+      this.values = values;
+    }
+  }
+
+  /** One branch of the match: the state it is in and what it has matched so far */
+  private static class Branch {
+    final int state;
+    /** When stepping through the elements matched by a multi-node state, the end of its match, else -1 */
+    final int multiEnd;
+    final MatchedGroup[] groups;
+    final Result results;
+
+    Branch(int state, int multiEnd, MatchedGroup[] groups, Result results) {
+      this.state = state;
+      this.multiEnd = multiEnd;
+      this.groups = groups;
+      this.results = results;
+    }
+  }
+
+  /** Results of node pattern matches, most recent first */
+  private static class Result {
+    final int index;
+    final Object value;
+    final Result next;
+
+    Result(int index, Object value, Result next) {
+      this.index = index;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  private final int totalGroups;
+  private final int start;
+  private final int[] kind;
+  private final int[][] next;
+  /** Per state: its node pattern (and its index, as several states may share one) or multi-node pattern */
+  private final NodePattern<?>[] nodePatterns;
+  private final int[] nodePatternIds;
+  private final int nodePatternCount;
+  private final MultiNodePattern<?>[] multiNodePatterns;
+  /** Per state: the paths taken when the next element is about to be consumed, and when it has been */
+  private final Path[][] consumePaths;
+  private final Path[][] closurePaths;
+
+  private CompiledSequencePattern(SequencePattern<?> pattern) {
+    totalGroups = pattern.totalGroups;
+    Map<SequencePattern.State, Integer> ids = new IdentityHashMap<>();
+    List<SequencePattern.State> states = new ArrayList<>();
+    ids.put(pattern.root, 0);
+    states.add(pattern.root);
+    for (int i = 0; i < states.size(); ++i) {
+      SequencePattern.State s = states.get(i);
+      if (s.next != null) {
+        for (SequencePattern.State n : s.next) {
+          if ( ! ids.containsKey(n)) {
+            ids.put(n, states.size());
+            states.add(n);
+          }
+        }
+      }
+    }
+    int n = states.size();
+    start = 0;
+    kind = new int[n];
+    next = new int[n][];
+    nodePatterns = new NodePattern<?>[n];
+    nodePatternIds = new int[n];
+    multiNodePatterns = new MultiNodePattern<?>[n];
+    int[] groupIds = new int[n];
+    Object[] values = new Object[n];
+    Map<NodePattern<?>, Integer> patternIds = new IdentityHashMap<>();
+    for (int i = 0; i < n; ++i) {
+      SequencePattern.State s = states.get(i);
+      Class<?> c = s.getClass();
+      if (s == SequencePattern.MATCH_STATE) {
+        kind[i] = MATCH;
+      } else if (c == SequencePattern.State.class) {
+        kind[i] = PASS;
+      } else if (c == SequencePattern.ValueState.class) {
+        kind[i] = PASS;
+        values[i] = ((SequencePattern.ValueState) s).value;
+      } else if (c == SequencePattern.NodePatternState.class) {
+        kind[i] = NODE;
+        nodePatterns[i] = ((SequencePattern.NodePatternState) s).pattern;
+        Integer id = patternIds.get(nodePatterns[i]);
+        if (id == null) {
+          id = patternIds.size();
+          patternIds.put(nodePatterns[i], id);
+        }
+        nodePatternIds[i] = id;
+      } else if (c == SequencePattern.MultiNodePatternState.class) {
+        kind[i] = MULTI;
+        multiNodePatterns[i] = ((SequencePattern.MultiNodePatternState) s).pattern;
+      } else if (c == SequencePattern.GroupStartState.class) {
+        kind[i] = GROUP_START;
+        groupIds[i] = ((SequencePattern.GroupStartState) s).captureGroupId;
+      } else if (c == SequencePattern.GroupEndState.class) {
+        kind[i] = GROUP_END;
+        groupIds[i] = ((SequencePattern.GroupEndState) s).captureGroupId;
+      } else if (c == SequencePattern.SeqStartState.class) {
+        kind[i] = SEQ_START;
+      } else if (c == SequencePattern.SeqEndState.class) {
+        kind[i] = SEQ_END;
+      } else if (c == SequencePattern.BackRefState.class) {
+        throw new UnsupportedOperationException("backreference");
+      } else if (c == SequencePattern.ConjStartState.class || c == SequencePattern.ConjEndState.class) {
+        throw new UnsupportedOperationException("conjunction");
+      } else if (c == SequencePattern.RepeatState.class) {
+        throw new UnsupportedOperationException("repeat which is not expanded (nongreedy or with bounds above 5)");
+      } else {
+        throw new UnsupportedOperationException("unsupported state " + c.getSimpleName());
+      }
+      if (s.next == null) {
+        next[i] = new int[0];
+      } else {
+        next[i] = new int[s.next.size()];
+        int j = 0;
+        for (SequencePattern.State ns : s.next) {
+          next[i][j++] = ids.get(ns);
+        }
+      }
+    }
+    nodePatternCount = patternIds.size();
+    for (int i = 0; i < n; ++i) {
+      // A branch remembers one match of a multi-node state, which would be reused if the state came round again
+      if (kind[i] == MULTI && reaches(next[i], i)) {
+        throw new UnsupportedOperationException("multi-node pattern inside a repeat");
+      }
+    }
+
+    consumePaths = new Path[n][];
+    closurePaths = new Path[n][];
+    PathFinder finder = new PathFinder(groupIds, values);
+    for (int i = 0; i < n; ++i) {
+      consumePaths[i] = finder.paths(i, true);
+      closurePaths[i] = finder.paths(i, false);
+    }
+  }
+
+  /**
+   * Compiles a pattern.
+   *
+   * @throws UnsupportedOperationException If the pattern cannot be compiled, with the reason as its message
+   */
+  static CompiledSequencePattern compile(SequencePattern<?> pattern) {
+    return new CompiledSequencePattern(pattern);
+  }
+
+  private boolean reaches(int[] from, int target) {
+    boolean[] seen = new boolean[kind.length];
+    Deque<Integer> todo = new ArrayDeque<>();
+    for (int s : from) {
+      todo.push(s);
+    }
+    while ( ! todo.isEmpty()) {
+      int s = todo.pop();
+      if (s == target) {
+        return true;
+      }
+      if ( ! seen[s]) {
+        seen[s] = true;
+        for (int ns : next[s]) {
+          todo.push(ns);
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Finds the paths from a state in the order the backtracking matcher would follow them.
+   * A path reaching a state already reached is dropped, as the earlier path is preferred and
+   * goes on the same way; but an anchored path does not hide a later unanchored one, since
+   * the anchored path may not apply.
+   */
+  private class PathFinder {
+    private final int[] groupIds;
+    private final Object[] values;
+    private final boolean[] reached;
+    private final boolean[] reachedAnchored;
+    private final List<Integer> groupOps = new ArrayList<>();
+    private final List<Object> groupValues = new ArrayList<>();
+    private final List<Path> paths = new ArrayList<>();
+
+    PathFinder(int[] groupIds, Object[] values) {
+      this.groupIds = groupIds;
+      this.values = values;
+      reached = new boolean[kind.length];
+      reachedAnchored = new boolean[kind.length];
+    }
+
+    Path[] paths(int from, boolean consume) {
+      Arrays.fill(reached, false);
+      Arrays.fill(reachedAnchored, false);
+      paths.clear();
+      visit(from, -1, consume, false);
+      return paths.toArray(new Path[paths.size()]);
+    }
+
+    private void visit(int s, int prev, boolean consume, boolean anchored) {
+      if (reached[s] || (anchored && reachedAnchored[s])) {
+        return;
+      }
+      if (anchored) {
+        reachedAnchored[s] = true;
+      } else {
+        reached[s] = true;
+      }
+      switch (kind[s]) {
+        case MATCH:
+        case NODE:
+        case MULTI:
+          addPath(s, anchored);
+          break;
+        case GROUP_START:
+          if ( ! consume) {
+            addPath(s, anchored);
+          } else {
+            visitNext(s, consume, anchored, groupOp(groupIds[s], true), null);
+          }
+          break;
+        case GROUP_END:
+          // the value of a group is the value of the state just before its end, if any
+          Object value = (prev >= 0) ? values[prev] : null;
+          visitNext(s, consume, anchored, groupOp(groupIds[s], false), value);
+          break;
+        case SEQ_START:
+          if (consume) {
+            visitNext(s, consume, true, null, null);
+          }
+          break;
+        case SEQ_END:
+          if ( ! consume) {
+            visitNext(s, consume, true, null, null);
+          }
+          break;
+        default:
+          visitNext(s, consume, anchored, null, null);
+      }
+    }
+
+    private void visitNext(int s, boolean consume, boolean anchored, Integer groupOp, Object value) {
+      if (groupOp != null) {
+        groupOps.add(groupOp);
+        groupValues.add(value);
+      }
+      for (int ns : next[s]) {
+        visit(ns, s, consume, anchored);
+      }
+      if (groupOp != null) {
+        groupOps.remove(groupOps.size() - 1);
+        groupValues.remove(groupValues.size() - 1);
+      }
+    }
+
+    /** The op for the start or end of a group, or null if the group is not captured */
+    private Integer groupOp(int groupId, boolean isStart) {
+      if (groupId < 0) {
+        return null;
+      }
+      return isStart ? groupId : -(groupId + 1);
+    }
+
+    private void addPath(int target, boolean anchored) {
+      int[] ops = new int[groupOps.size()];
+      for (int i = 0; i < ops.length; ++i) {
+        ops[i] = groupOps.get(i);
+      }
+      paths.add(new Path(target, anchored, ops, groupValues.toArray()));
+    }
+  }
+
+  /**
+   * Applies the group starts and ends along a path.
+   * As with backtracking, starting a group again restarts it, and a group which has already ended
+   * keeps its end.
+   */
+  private MatchedGroup[] apply(Path path, MatchedGroup[] groups, int position) {
+    if (path.groupOps.length == 0) {
+      return groups;
+    }
+    MatchedGroup[] updated = groups.clone();
+    for (int i = 0; i < path.groupOps.length; ++i) {
+      int op = path.groupOps[i];
+      if (op >= 0) {
+        updated[op] = new MatchedGroup(position, -1, null);
+      } else {
+        int group = -op - 1;
+        MatchedGroup mg = updated[group];
+        if (mg != null && mg.matchEnd == -1) {
+          updated[group] = new MatchedGroup(mg.matchBegin, position, path.values[i]);
+        }
+      }
+    }
+    return updated;
+  }
+
+  /**
+   * Matches the pattern starting at the given position, setting the matched groups of the matcher
+   * if there is a match.
+   *
+   * @param matcher The matcher, for its elements, region and options
+   * @param start Where the match should start
+   * @param matchAllTokens If true, prefers the longest match (for {@link SequenceMatcher#matches()}),
+   *                       otherwise prefers matches in the order the pattern gives
+   * @return Whether there was a match
+   */
+  <T> boolean match(SequenceMatcher<T> matcher, int start, boolean matchAllTokens) {
+    List<? extends T> elements = matcher.elements();
+    // the patterns were compiled from a SequencePattern<T>, so they match elements of type T
+    @SuppressWarnings("unchecked")
+    NodePattern<T>[] nodePatterns = (NodePattern<T>[]) this.nodePatterns;
+    @SuppressWarnings("unchecked")
+    MultiNodePattern<T>[] multiNodePatterns = (MultiNodePattern<T>[]) this.multiNodePatterns;
+    int size = elements.size();
+    // results of node patterns at the current position: stamp is the position + 1 when computed
+    int[] testedAt = new int[nodePatternCount];
+    Object[] tested = new Object[nodePatternCount];
+    // when a state was last reached, by step
+    int[] reachedAt = new int[kind.length];
+    Set<Long> reachedWith = new HashSet<>();
+
+    List<Branch> branches = new ArrayList<>();
+    List<Branch> pending = new ArrayList<>();
+    List<Branch> reached = new ArrayList<>();
+    branches.add(new Branch(this.start, -1, new MatchedGroup[totalGroups], null));
+    int step = 0;
+    for (int p = start; p < matcher.regionEnd && ! branches.isEmpty(); p++) {
+      if (Thread.interrupted()) {
+        throw new RuntimeInterruptedException();
+      }
+      step++;
+      // Consume element p
+      pending.clear();
+      for (Branch b : branches) {
+        if (b.multiEnd >= 0) {
+          if (b.multiEnd - 1 <= p) {
+            addNext(pending, b.state, b.groups, b.results);
+          } else {
+            pending.add(b);
+          }
+          continue;
+        }
+        for (Path path : consumePaths[b.state]) {
+          if (path.anchored && p != 0) {
+            continue;
+          }
+          int s = path.target;
+          switch (kind[s]) {
+            case MATCH:
+              pending.add(new Branch(s, -1, apply(path, b.groups, p), b.results));
+              break;
+            case NODE: {
+              int id = nodePatternIds[s];
+              if (testedAt[id] != p + 1) {
+                tested[id] = test(matcher, nodePatterns[s], p);
+                testedAt[id] = p + 1;
+              }
+              Object obj = tested[id];
+              if (obj != null) {
+                Result results = (obj != Boolean.TRUE) ? new Result(p, obj, b.results) : b.results;
+                addNext(pending, s, apply(path, b.groups, p), results);
+              }
+              break;
+            }
+            case MULTI: {
+              Collection<? extends HasInterval<Integer>> found = multiNodePatterns[s].match(elements, p);
+              if (found != null && ! found.isEmpty()) {
+                List<HasInterval<Integer>> matched = new ArrayList<>(found);
+                matched.sort(multiNodePatterns[s].isGreedyMatch() ?
+                    Interval.LENGTH_GT_COMPARATOR : Interval.LENGTH_LT_COMPARATOR);
+                MatchedGroup[] groups = apply(path, b.groups, p);
+                for (HasInterval<Integer> interval : matched) {
+                  int end = interval.getInterval().getEnd();
+                  if (end - 1 <= p) {
+                    addNext(pending, s, groups, b.results);
+                  } else {
+                    pending.add(new Branch(s, end, groups, b.results));
+                  }
+                }
+              }
+              break;
+            }
+            default:
+              throw new IllegalStateException("Unexpected state after consuming paths: " + kind[s]);
+          }
+        }
+      }
+
+      // Go on through the states which consume nothing, to the states waiting for the next element
+      reached.clear();
+      reachedWith.clear();
+      for (Branch b : pending) {
+        if (b.multiEnd >= 0) {
+          addReached(reached, b, step, reachedAt, reachedWith, matchAllTokens);
+          continue;
+        }
+        for (Path path : closurePaths[b.state]) {
+          if (path.anchored && p != size - 1) {
+            continue;
+          }
+          Branch nb = new Branch(path.target, -1, apply(path, b.groups, p + 1), b.results);
+          addReached(reached, nb, step, reachedAt, reachedWith, matchAllTokens);
+        }
+      }
+      List<Branch> tmp = branches;
+      branches = reached;
+      reached = tmp;
+
+      if ( ! matchAllTokens) {
+        // branches after a match are never preferred to it
+        for (int i = 0; i < branches.size(); i++) {
+          if (kind[branches.get(i).state] == MATCH) {
+            branches.subList(i + 1, branches.size()).clear();
+            break;
+          }
+        }
+        if ( ! branches.isEmpty() && kind[branches.get(0).state] == MATCH) {
+          break;
+        }
+      }
+    }
+
+    // Pick the match: the first one, or the longest one (the first of those) when matching all tokens
+    Branch best = null;
+    int bestLength = -1;
+    for (Branch b : branches) {
+      if (kind[b.state] == MATCH) {
+        if ( ! matchAllTokens) {
+          best = b;
+          break;
+        }
+        int length = (b.groups[0] != null) ? b.groups[0].matchLength() : -1;
+        if (best == null || length > bestLength) {
+          best = b;
+          bestLength = length;
+        }
+      }
+    }
+    if (best == null) {
+      return false;
+    }
+    matcher.clearMatched();
+    for (int g = 0; g < totalGroups; g++) {
+      if (best.groups[g] != null) {
+        matcher.matchedGroups[g] = best.groups[g];
+      }
+    }
+    if (best.results != null) {
+      if (matcher.matchedResults == null) {
+        matcher.matchedResults = new Object[size];
+      }
+      // the most recent result for an element wins
+      for (Result r = best.results; r != null; r = r.next) {
+        if (matcher.matchedResults[r.index] == null) {
+          matcher.matchedResults[r.index] = r.value;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static <T> Object test(SequenceMatcher<T> matcher, NodePattern<T> pattern, int position) {
+    if (matcher.matchWithResult) {
+      return pattern.matchWithResult(matcher.get(position));
+    } else {
+      return matcher.matchNode(pattern, position) ? Boolean.TRUE : null;
+    }
+  }
+
+  private void addNext(List<Branch> pending, int s, MatchedGroup[] groups, Result results) {
+    for (int ns : next[s]) {
+      pending.add(new Branch(ns, -1, groups, results));
+    }
+  }
+
+  /**
+   * Adds a branch waiting for the next element, unless an earlier branch already waits in the same state.
+   * Branches in the middle of a multi-node match also need the same end, and when the longest match
+   * is wanted, matched branches need the same length.
+   */
+  private void addReached(List<Branch> reached, Branch b, int step, int[] reachedAt, Set<Long> reachedWith,
+                          boolean matchAllTokens) {
+    if (b.multiEnd >= 0 || (matchAllTokens && kind[b.state] == MATCH)) {
+      int extra = (b.multiEnd >= 0) ? b.multiEnd : ((b.groups[0] != null) ? b.groups[0].matchLength() : -1);
+      if ( ! reachedWith.add(((long) b.state << 32) | (extra & 0xffffffffL))) {
+        return;
+      }
+    } else {
+      if (reachedAt[b.state] == step) {
+        return;
+      }
+      reachedAt[b.state] = step;
+    }
+    reached.add(b);
+  }
+
+}
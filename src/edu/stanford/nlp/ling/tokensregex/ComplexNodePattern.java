@@ -43,9 +43,17 @@ public class ComplexNodePattern<M,K> extends NodePattern<M> {
   // TODO: make this a pattern of non special characters: [,],?,.,\,^,$,(,),*,+,{,},| ... what else?
   private static final Pattern LITERAL_PATTERN = Pattern.compile("[^\\[\\]?.\\\\^$()*+{}|]*");
   //private static final Pattern LITERAL_PATTERN = Pattern.compile("[A-Za-z0-9_\\-']*");
+
+  /**
+   * Whether {@link #newStringRegexPattern} treats the regex as a literal string,
+   * matched with {@link StringAnnotationPattern} instead of as a regular expression.
+   */
+  public static boolean isLiteralStringPattern(String regex, int flags) {
+    return ((flags & Pattern.LITERAL) != 0) || LITERAL_PATTERN.matcher(regex).matches();
+  }
+
   public static NodePattern<String> newStringRegexPattern(String regex, int flags) {
-    boolean isLiteral = ((flags & Pattern.LITERAL) != 0) || LITERAL_PATTERN.matcher(regex).matches();
-    if (isLiteral) {
+    if (isLiteralStringPattern(regex, flags)) {
       boolean caseInsensitive = (flags & (Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)) != 0;
       int stringMatchFlags = (caseInsensitive)? (CASE_INSENSITIVE | UNICODE_CASE):0;
       return new StringAnnotationPattern(regex, stringMatchFlags);
@@ -16,7 +16,10 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 
 /**
@@ -37,6 +40,22 @@ import java.util.function.Predicate;
  * The different stages are numbered and are applied in numeric order.
  * </p>
  *
+ * <p>The token patterns of the rules of a stage share a {@link NodePatternCache}, so that each node pattern
+ * (for instance a check of the NER tag or of a list of words) is tested at most once per token
+ * in each pass of the rules over a sentence, however many rules use it.
+ * This can be turned off with the default {@code stage.memoizeNodePatterns = false}.
+ * The time spent in each rule can be collected with {@link #setRuleTimings} (or the variable {@code ruleTimings}),
+ * to find the rules that are expensive.
+ * </p>
+ *
+ * <p>Two options skip the rules for annotations on which they cannot extract anything, with the same results.
+ * With {@link #setPrefilter} (or the variable {@code prefilter}), annotations are first checked for
+ * tokens that the token pattern rules need (see {@link SequencePatternPrefilter}) and for matches of the text patterns.
+ * With {@link #setNoMatchCacheSize} (or the variable {@code noMatchCacheSize}), annotations on which no rule
+ * matched anything are remembered, and the rules are not applied again to an annotation with the same
+ * content (the same text and tokens, wherever they are in the document).
+ * </p>
+ *
  * @author Angel Chang
  * @see SequenceMatchRules
  */
@@ -56,6 +75,23 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
   private boolean collapseExtractionRules = false;
   private final Class<CoreAnnotation<List<? extends CoreMap>>> tokensAnnotationKey;
   private final Map<Integer, Stage<T>> stages;
+  /* Time spent in each extraction rule (null if not collected) */
+  private volatile Map<SequenceMatchRules.ExtractRule<?,?>, RuleTiming> ruleTimings;
+
+  /* Whether to check that some rule may match before applying the rules */
+  private boolean usePrefilter = false;
+  /* Token pattern rules, and the annotation fields with the tokens they are applied to */
+  private final SequencePatternPrefilter prefilter = new SequencePatternPrefilter();
+  private final Set<Class<?>> prefilterTokenFields = new LinkedHashSet<>();
+  /* Text pattern rules, and the annotation fields with the text they are applied to */
+  private final List<Pair<Class<?>, Pattern>> prefilterTextPatterns = new ArrayList<>();
+  /* Annotation fields read by the rules */
+  private final Set<Class<?>> ruleFields = new LinkedHashSet<>();
+  /* Content of the annotations on which no rule matched anything (null if not kept) */
+  private Map<Object, Boolean> noMatchCache;
+  private final LongAdder extractCount = new LongAdder();
+  private final LongAdder prefilteredCount = new LongAdder();
+  private final LongAdder noMatchCacheHits = new LongAdder();
 
   /**
    * Describes one stage of extraction.
@@ -79,6 +115,10 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
     SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule;
     /** Filtering rule */
     Predicate<T> filterRule;
+    /** Whether to remember the node patterns matched on each token while applying the rules */
+    boolean memoizeNodePatterns = true;
+    /** Node patterns of the token pattern rules of this stage */
+    final NodePatternCache nodePatternCache = new NodePatternCache();
 
     private static <I,O> SequenceMatchRules.ExtractRule<I,O> addRule(SequenceMatchRules.ExtractRule<I, O> origRule,
                                                                      SequenceMatchRules.ExtractRule<I, O> rule) {
@@ -140,6 +180,11 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
       if (env.get("verbose") != null)
         verbose =  (env.get("verbose") != null) &&
                 Objects.equals((Boolean) env.get("verbose"), true);
+      setRuleTimings(Objects.equals((Boolean) env.get("ruleTimings"), true));
+      this.usePrefilter = Objects.equals((Boolean) env.get("prefilter"), true);
+      if (env.get("noMatchCacheSize") != null) {
+        setNoMatchCacheSize(((Number) env.get("noMatchCacheSize")).intValue());
+      }
     }
   }
 
@@ -186,11 +231,19 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
           if (limitIters != null) {
             stage.limitIters = limitIters;
           }
+          Boolean memoizeNodePatterns = (Boolean) env.getDefaults().get("stage.memoizeNodePatterns");
+          if (memoizeNodePatterns != null) {
+            stage.memoizeNodePatterns = memoizeNodePatterns;
+          }
         }
         if (aer.active) {
           if (SequenceMatchRules.FILTER_RULE_TYPE.equals(aer.ruleType)) {
             stage.addFilterRule(aer);
           } else {
+            if (aer.hasTokensRegexPattern()) {
+              stage.nodePatternCache.addPattern((TokenSequencePattern) aer.pattern);
+            }
+            addToPrefilter(aer);
             if (aer.isComposite) {
 //            if (SequenceMatchRules.COMPOSITE_RULE_TYPE.equals(aer.ruleType)) {
               stage.addCompositeRule(aer);
@@ -205,6 +258,22 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
     }
   }
 
+  private void addToPrefilter(SequenceMatchRules.AnnotationExtractRule<?, ?> aer) {
+    Class<?> field = aer.isComposite ? tokensAnnotationKey : aer.annotationField;
+    if (field == null) {
+      field = CoreMap.class;
+    }
+    ruleFields.add(field);
+    if (aer.hasTokensRegexPattern()) {
+      prefilter.addPattern((TokenSequencePattern) aer.pattern);
+      prefilterTokenFields.add(field);
+    } else if (aer.pattern instanceof Pattern && field != CoreMap.class) {
+      prefilterTextPatterns.add(Pair.makePair(field, (Pattern) aer.pattern));
+    } else {
+      prefilter.setAlwaysMayMatch();
+    }
+  }
+
   private SequenceMatchRules.AnnotationExtractRule createMergedRule(SequenceMatchRules.AnnotationExtractRule aerTemplate, List<TokenSequencePattern> patterns) {
     return SequenceMatchRules.createMultiTokenPatternRule(env, aerTemplate, patterns);
   }
@@ -417,20 +486,63 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
     }
   }
 
-  private Pair<List<? extends CoreMap>, List<T>> applyCompositeRule(
+  /**
+   * Applies the rules of a stage (sharing the results of node patterns between rules, unless turned off).
+   * Expressions are annotated (running the actions of the rules, which may change the tokens)
+   * only after all the rules have been applied.
+   */
+  private <I> boolean extract(Stage<T> stage, SequenceMatchRules.ExtractRule<I, T> rule, I in, List<T> out) {
+    if (stage.memoizeNodePatterns) {
+      NodePatternCache.Scope scope = stage.nodePatternCache.use();
+      try {
+        return timedExtract(rule, in, out);
+      } finally {
+        scope.close();
+      }
+    } else {
+      return timedExtract(rule, in, out);
+    }
+  }
+
+  private <I> boolean timedExtract(SequenceMatchRules.ExtractRule<I, T> rule, I in, List<T> out) {
+    Map<SequenceMatchRules.ExtractRule<?,?>, RuleTiming> timings = ruleTimings;
+    if (timings == null) {
+      return rule.extract(in, out);
+    }
+    if (rule instanceof SequenceMatchRules.ListExtractRule) {
+      boolean extracted = false;
+      for (SequenceMatchRules.ExtractRule<I, T> r : ((SequenceMatchRules.ListExtractRule<I, T>) rule).rules) {
+        if (timedExtract(r, in, out)) {
+          extracted = true;
+        }
+      }
+      return extracted;
+    }
+    int before = out.size();
+    long start = System.nanoTime();
+    boolean extracted = rule.extract(in, out);
+    long nanos = System.nanoTime() - start;
+    timings.computeIfAbsent(rule, RuleTiming::new).add(nanos, out.size() - before);
+    return extracted;
+  }
+
+  private Triple<List<? extends CoreMap>, List<T>, Boolean> applyCompositeRule(
+          Stage<T> stage,
           SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule,
           List<? extends CoreMap> merged,
           List<T> matchedExpressions, int limit) {
     // Apply higher order rules
     boolean done = false;
+    boolean extractedAny = false;
     // Limit of number of times rules are applied just in case
     int maxIters = limit;
     int iters = 0;
     while (! done) {
       List<T> newExprs = new ArrayList<>();
-      boolean extracted = compositeExtractRule.extract(merged, newExprs);
+      boolean extracted = extract(stage, compositeExtractRule, merged, newExprs);
       if (verbose && extracted) log.info("applyCompositeRule() extracting with " + compositeExtractRule + " from " + merged + " gives " + newExprs);
       if (extracted) {
+        extractedAny = true;
         annotateExpressions(merged, newExprs);
         newExprs = MatchedExpression.removeNullValues(newExprs);
         if ( ! newExprs.isEmpty()) {
@@ -454,7 +566,7 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
         break;
       }
     }
-    return new Pair<>(merged, matchedExpressions);
+    return new Triple<>(merged, matchedExpressions, extractedAny);
   }
 
   private static class CompositeMatchState<T> {
@@ -470,6 +582,23 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
   }
 
   public List<T> extractExpressions(CoreMap annotation) {
+    extractCount.increment();
+    Object content = null;
+    if (noMatchCache != null) {
+      content = ruleContent(annotation);
+      if (content != null && noMatchCache.containsKey(content)) {
+        noMatchCacheHits.increment();
+        return noExpressions(annotation);
+      }
+    }
+    if (usePrefilter && ! mayMatch(annotation)) {
+      prefilteredCount.increment();
+      if (content != null) {
+        noMatchCache.put(content, true);
+      }
+      return noExpressions(annotation);
+    }
+    boolean extracted = false;
     // Extract potential expressions
     List<T> matchedExpressions = new ArrayList<>();
     List<Integer> stageIds = new ArrayList<>(stages.keySet());
@@ -481,7 +610,10 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
         matchedExpressions.clear();
       }
       if (basicExtractRule != null) {
-        basicExtractRule.extract(annotation, matchedExpressions);
+        int nMatched = matchedExpressions.size();
+        if (extract(stage, basicExtractRule, annotation, matchedExpressions) || matchedExpressions.size() > nMatched) {
+          extracted = true;
+        }
         if (verbose && matchedExpressions != null) {
           log.info("extractExpressions() extracting with " + basicExtractRule + " from " + annotation + " gives " + matchedExpressions);
         }
@@ -494,8 +626,11 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
       List<? extends CoreMap> merged = MatchedExpression.replaceMergedUsingTokenOffsets(annotation.get(tokensAnnotationKey), matchedExpressions);
       SequenceMatchRules.ExtractRule<List<? extends CoreMap>, T> compositeExtractRule = stage.compositeExtractRule;
       if (compositeExtractRule != null) {
-        Pair<List<? extends CoreMap>, List<T>> p = applyCompositeRule(
-                compositeExtractRule, merged, matchedExpressions, stage.limitIters);
+        Triple<List<? extends CoreMap>, List<T>, Boolean> p = applyCompositeRule(
+                stage, compositeExtractRule, merged, matchedExpressions, stage.limitIters);
+        if (p.third()) {
+          extracted = true;
+        }
         merged = p.first();
         matchedExpressions = p.second();
       }
@@ -505,9 +640,136 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
     if (!keepTags) {
       cleanupTags(annotation);
     }
+    if (content != null && ! extracted) {
+      noMatchCache.put(content, true);
+    }
     return matchedExpressions;
   }
 
+  /** What {@link #extractExpressions} returns when no rule matches anything */
+  private List<T> noExpressions(CoreMap annotation) {
+    if (!keepTags) {
+      cleanupTags(annotation);
+    }
+    return new ArrayList<>();
+  }
+
+  /**
+   * Whether some rule may match the annotation: if false, no rule can match it.
+   */
+  private boolean mayMatch(CoreMap annotation) {
+    if (prefilter.isAlwaysMayMatch()) {
+      return true;
+    }
+    List<CoreMap> tokens = new ArrayList<>();
+    for (Class<?> field : prefilterTokenFields) {
+      if (field == CoreMap.class) {
+        tokens.add(annotation);
+      } else {
+        Object value = get(annotation, field);
+        if ( ! (value instanceof List)) {
+          // let the rules deal with it
+          return true;
+        }
+        for (Object token : (List<?>) value) {
+          if ( ! (token instanceof CoreMap)) {
+            return true;
+          }
+          tokens.add((CoreMap) token);
+        }
+      }
+    }
+    if (prefilter.mayMatch(tokens)) {
+      return true;
+    }
+    for (Pair<Class<?>, Pattern> textPattern : prefilterTextPatterns) {
+      Object text = get(annotation, textPattern.first());
+      if ( ! (text instanceof String) || textPattern.second().matcher((String) text).find()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Positions of tokens, rather than what they are */
+  private static final Set<Class<?>> POSITION_KEYS = new HashSet<>(Arrays.asList(
+      CoreAnnotations.CharacterOffsetBeginAnnotation.class, CoreAnnotations.CharacterOffsetEndAnnotation.class,
+      CoreAnnotations.TokenBeginAnnotation.class, CoreAnnotations.TokenEndAnnotation.class,
+      CoreAnnotations.IndexAnnotation.class, CoreAnnotations.SentenceIndexAnnotation.class,
+      CoreAnnotations.LineNumberAnnotation.class, CoreAnnotations.DocIDAnnotation.class));
+  private static final int MAX_CONTENT_DEPTH = 4;
+  private static final Object NULL_CONTENT = new Object();
+
+  /**
+   * The content of the fields of the annotation read by the rules (leaving out positions),
+   * or null if it cannot be compared (it has values which are not strings, numbers, enums or classes,
+   * or lists, maps and CoreMaps of them).
+   */
+  private Object ruleContent(CoreMap annotation) {
+    List<Object> content = new ArrayList<>(ruleFields.size() + 1);
+    for (Class<?> field : ruleFields) {
+      Object value = content((field == CoreMap.class) ? annotation : get(annotation, field), 0);
+      if (value == null) {
+        return null;
+      }
+      content.add(value);
+    }
+    return content;
+  }
+
+  private static Object content(Object value, int depth) {
+    if (value == null) {
+      return NULL_CONTENT;
+    } else if (value instanceof String || value instanceof Number || value instanceof Boolean
+        || value instanceof Character || value instanceof Enum || value instanceof Class) {
+      return value;
+    } else if (depth >= MAX_CONTENT_DEPTH) {
+      return null;
+    } else if (value instanceof CoreMap) {
+      CoreMap cm = (CoreMap) value;
+      Map<Class<?>, Object> content = new HashMap<>();
+      for (Class<?> key : cm.keySet()) {
+        if ( ! POSITION_KEYS.contains(key)) {
+          Object v = content(get(cm, key), depth + 1);
+          if (v == null) {
+            return null;
+          }
+          content.put(key, v);
+        }
+      }
+      return content;
+    } else if (value instanceof Map) {
+      // e.g., the CoNLLUFeats of tokens read from a CoNLL-U file
+      Map<Object, Object> content = new HashMap<>();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        Object k = content(entry.getKey(), depth + 1);
+        Object v = content(entry.getValue(), depth + 1);
+        if (k == null || v == null) {
+          return null;
+        }
+        content.put(k, v);
+      }
+      return content;
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      List<Object> content = new ArrayList<>(list.size());
+      for (Object element : list) {
+        Object v = content(element, depth + 1);
+        if (v == null) {
+          return null;
+        }
+        content.add(v);
+      }
+      return content;
+    }
+    return null;
+  }
+
+  /** The value of the annotation for a key which is only known as a class */
+  private static Object get(CoreMap annotation, Class<?> key) {
+    return annotation.get(ErasureUtils.uncheckedCast(key));
+  }
+
   private void annotateExpressions(CoreMap annotation, List<T> expressions) {
     // TODO: Logging can be excessive
     List<T> toDiscard = new ArrayList<>();
@@ -595,4 +857,105 @@ public class CoreMapExpressionExtractor<T extends MatchedExpression>  {
     verbose = v;
   }
 
+  /**
+   * Whether to check that an annotation has the tokens (or text) that some rule needs,
+   * before applying the rules to it.
+   */
+  public void setPrefilter(boolean prefilter) {
+    this.usePrefilter = prefilter;
+  }
+
+  /**
+   * Sets how many annotations on which no rule matched anything are remembered (0 for none).
+   */
+  public void setNoMatchCacheSize(int size) {
+    noMatchCache = (size > 0) ? Collections.synchronizedMap(new CacheMap<>(size, 0.75f, true)) : null;
+  }
+
+  /** Number of annotations expressions were extracted from */
+  public long getExtractCount() {
+    return extractCount.sum();
+  }
+
+  /** Number of annotations on which the rules were not applied, because none could match */
+  public long getPrefilteredCount() {
+    return prefilteredCount.sum();
+  }
+
+  /** Number of annotations on which the rules were not applied, because they matched nothing on the same content before */
+  public long getNoMatchCacheHits() {
+    return noMatchCacheHits.sum();
+  }
+
+  /**
+   * Starts (or stops) collecting the time spent in each extraction rule.
+   * Starting again clears the timings collected so far.
+   */
+  public void setRuleTimings(boolean collect) {
+    ruleTimings = collect ? new ConcurrentHashMap<>() : null;
+  }
+
+  /**
+   * The time spent in each extraction rule applied since timings were turned on,
+   * from the most expensive rule to the least.
+   */
+  public List<RuleTiming> getRuleTimings() {
+    Map<SequenceMatchRules.ExtractRule<?,?>, RuleTiming> timings = ruleTimings;
+    if (timings == null) {
+      return Collections.emptyList();
+    }
+    List<RuleTiming> list = new ArrayList<>(timings.values());
+    list.sort((t1, t2) -> Long.compare(t2.getNanos(), t1.getNanos()));
+    return list;
+  }
+
+  /**
+   * Time spent in one extraction rule.
+   */
+  public static class RuleTiming {
+    private final String rule;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder extracted = new LongAdder();
+
+    private RuleTiming(SequenceMatchRules.ExtractRule<?,?> rule) {
+      if (rule instanceof SequenceMatchRules.AnnotationExtractRule && ((SequenceMatchRules.AnnotationExtractRule) rule).name != null) {
+        this.rule = ((SequenceMatchRules.AnnotationExtractRule) rule).name;
+      } else {
+        this.rule = rule.toString();
+      }
+    }
+
+    private void add(long time, int found) {
+      calls.increment();
+      nanos.add(time);
+      extracted.add(found);
+    }
+
+    /** Name of the rule, or its pattern if it has no name */
+    public String getRule() {
+      return rule;
+    }
+
+    /** Number of times the rule was applied */
+    public long getCalls() {
+      return calls.sum();
+    }
+
+    /** Total time spent applying the rule, in nanoseconds */
+    public long getNanos() {
+      return nanos.sum();
+    }
+
+    /** Number of expressions extracted by the rule */
+    public long getExtracted() {
+      return extracted.sum();
+    }
+
+    @Override
+    public String toString() {
+      return rule + ": " + getCalls() + " calls, " + (getNanos() / 1000000) + " ms, " + getExtracted() + " extracted";
+    }
+  }
+
 }
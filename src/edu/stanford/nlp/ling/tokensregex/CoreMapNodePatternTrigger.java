@@ -19,6 +19,7 @@ public class CoreMapNodePatternTrigger implements MultiPatternMatcher.NodePatter
           new TwoDimensionalCollectionValuedMap<>();
   TwoDimensionalCollectionValuedMap<Class, String, SequencePattern<CoreMap>> lowercaseStringTriggers =
           new TwoDimensionalCollectionValuedMap<>();
+  Set<SequencePattern<CoreMap>> lowercaseTriggered = Collections.newSetFromMap(new IdentityHashMap<>());
 
   public CoreMapNodePatternTrigger(SequencePattern<CoreMap>... patterns) {
     this(Arrays.asList(patterns));
@@ -50,6 +51,7 @@ public class CoreMapNodePatternTrigger implements MultiPatternMatcher.NodePatter
       if (!triggerCandidates.isEmpty()) {
         if (trigger.ignoreCase) {
           lowercaseStringTriggers.add(trigger.key, trigger.value.toLowerCase(), pattern);
+          lowercaseTriggered.add(pattern);
         } else {
           annotationTriggers.add(trigger.key, trigger.value, pattern);
         }
@@ -91,6 +93,15 @@ public class CoreMapNodePatternTrigger implements MultiPatternMatcher.NodePatter
       }
     };
 
+  /**
+   * Whether the pattern is triggered by a string compared ignoring case.
+   * For a node, {@link #apply} returns the patterns which are always triggered first,
+   * then those triggered by a string compared exactly, then those triggered ignoring case.
+   */
+  public boolean isTriggeredIgnoringCase(SequencePattern<CoreMap> pattern) {
+    return lowercaseTriggered.contains(pattern);
+  }
+
   @Override
   public Collection<SequencePattern<CoreMap>> apply(CoreMap in) {
     Set<SequencePattern<CoreMap>> triggeredPatterns = new LinkedHashSet<>();
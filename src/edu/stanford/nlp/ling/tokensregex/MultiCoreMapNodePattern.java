@@ -53,15 +53,16 @@ public class MultiCoreMapNodePattern extends MultiNodePattern<CoreMap> {
 
   public static class StringSequenceAnnotationPattern extends MultiNodePattern<CoreMap> {
     Class textKey;
-    PhraseTable phraseTable;
+    PhraseLookup phraseTable;
 
     public StringSequenceAnnotationPattern(Class textKey, Set<List<String>> targets, boolean ignoreCase) {
       this.textKey = textKey;
-      phraseTable = new PhraseTable(false, ignoreCase, false);
+      PhraseTable phraseTable = new PhraseTable(false, ignoreCase, false);
       for (List<String> target:targets) {
         phraseTable.addPhrase(target);
         if (maxNodes < 0 || target.size() > maxNodes) maxNodes = target.size();
       }
+      this.phraseTable = phraseTable;
     }
 
     public StringSequenceAnnotationPattern(Class textKey, Set<List<String>> targets) {
@@ -70,17 +71,27 @@ public class MultiCoreMapNodePattern extends MultiNodePattern<CoreMap> {
 
     public StringSequenceAnnotationPattern(Class textKey, Map<List<String>, Object> targets, boolean ignoreCase) {
       this.textKey = textKey;
-      phraseTable = new PhraseTable(false, ignoreCase, false);
+      PhraseTable phraseTable = new PhraseTable(false, ignoreCase, false);
       for (List<String> target:targets.keySet()) {
         phraseTable.addPhrase(target, null, targets.get(target));
         if (maxNodes < 0 || target.size() > maxNodes) maxNodes = target.size();
       }
+      this.phraseTable = phraseTable;
     }
 
     public StringSequenceAnnotationPattern(Class textKey, Map<List<String>, Object> targets) {
       this(textKey, targets, false);
     }
 
+    /**
+     * Matches the phrases of a table which is already built, such as a {@link CompiledPhraseTable}.
+     * The words of the tokens are looked up as they are, without normalizing them.
+     */
+    public StringSequenceAnnotationPattern(Class<?> textKey, PhraseLookup phraseTable) {
+      this.textKey = textKey;
+      this.phraseTable = phraseTable;
+    }
+
     protected Collection<Interval<Integer>> match(List<? extends CoreMap> nodes, int start) {
       PhraseTable.WordList words = new PhraseTable.TokenList(nodes, textKey);
       List<PhraseTable.PhraseMatch> matches = phraseTable.findMatches(words, start, nodes.size(), false);
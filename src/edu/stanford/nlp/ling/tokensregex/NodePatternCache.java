@@ -0,0 +1,223 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import java.util.*;
+
+import edu.stanford.nlp.util.Pair;
+
+/**
+ * Remembers which node patterns match which elements of a sequence, so that many sequence patterns
+ * matched against the same sequence test each node pattern at most once per element.
+ *
+ * <p>
+ * The node patterns of the sequence patterns added to the cache are numbered.  Node patterns which are
+ * built the same way get the same number, even if each rule parsed its own copy: this is worked out for
+ * {@link CoreMapNodePattern}s over string, regex, numeric and nil checks, and for negations, conjunctions
+ * and disjunctions of them.  Other node patterns are only shared by the rules which use the same object
+ * (for instance through a variable).
+ * </p>
+ *
+ * <p>
+ * While the cache is in use by a thread (between {@link #use()} and closing the returned {@link Scope}),
+ * the matchers created by that thread keep, per element of the sequence they match, a bitset of the node
+ * patterns tested and of those which matched, shared with every other matcher over the same sequence.
+ * The elements must not change while the cache is in use.
+ * {@link CoreMapExpressionExtractor} uses a cache per stage, for the rules of the stage.
+ * Results of {@link NodePattern#matchWithResult} are not cached.
+ * </p>
+ */
+public class NodePatternCache {
+
+  /** Number of each node pattern (copied when patterns are added, so it can be read without locking) */
+  private volatile Map<NodePattern<?>, Integer> ids = new IdentityHashMap<>();
+  private final Map<String, Integer> idsByKey = new HashMap<>();
+  private int size;
+
+  private static final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+  /**
+   * Adds the node patterns of a sequence pattern.
+   */
+  public synchronized void addPattern(SequencePattern<?> pattern) {
+    Map<NodePattern<?>, Integer> updated = new IdentityHashMap<>(ids);
+    addNodePatterns(pattern, updated);
+    ids = updated;
+  }
+
+  private <T> void addNodePatterns(SequencePattern<T> pattern, Map<NodePattern<?>, Integer> updated) {
+    pattern.findNodePattern(p -> {
+      if ( ! updated.containsKey(p)) {
+        String key = key(p);
+        Integer id = (key != null) ? idsByKey.get(key) : null;
+        if (id == null) {
+          id = size++;
+          if (key != null) {
+            idsByKey.put(key, id);
+          }
+        }
+        updated.put(p, id);
+      }
+      return null;
+    });
+  }
+
+  /** The number of distinct node patterns. */
+  public synchronized int size() {
+    return size;
+  }
+
+  /** The number of node pattern objects added, some of which may be the same pattern. */
+  public int patterns() {
+    return ids.size();
+  }
+
+  /**
+   * A string which is the same for two node patterns if they match the same nodes,
+   * or null if the pattern is not one that is understood.
+   */
+  @SuppressWarnings("rawtypes") // getAnnotationPatterns() has raw types
+  static String key(NodePattern<?> p) {
+    if (p == NodePattern.ANY_NODE) {
+      return "*";
+    } else if (p.getClass() == CoreMapNodePattern.class) {
+      StringBuilder sb = new StringBuilder("{");
+      for (Pair<Class, NodePattern> entry : ((CoreMapNodePattern) p).getAnnotationPatterns()) {
+        String value = valueKey(entry.second);
+        if (value == null) {
+          return null;
+        }
+        sb.append(entry.first.getName()).append('=').append(value).append(';');
+      }
+      return sb.append('}').toString();
+    } else if (p.getClass() == NodePattern.NegateNodePattern.class) {
+      String key = key(((NodePattern.NegateNodePattern<?>) p).p);
+      return (key != null) ? "!(" + key + ')' : null;
+    } else if (p.getClass() == NodePattern.ConjNodePattern.class) {
+      return listKey("&(", ((NodePattern.ConjNodePattern<?>) p).nodePatterns);
+    } else if (p.getClass() == NodePattern.DisjNodePattern.class) {
+      return listKey("|(", ((NodePattern.DisjNodePattern<?>) p).nodePatterns);
+    }
+    return null;
+  }
+
+  private static String listKey(String prefix, List<? extends NodePattern<?>> patterns) {
+    StringBuilder sb = new StringBuilder(prefix);
+    for (NodePattern<?> p : patterns) {
+      String key = key(p);
+      if (key == null) {
+        return null;
+      }
+      sb.append(key).append(',');
+    }
+    return sb.append(')').toString();
+  }
+
+  /** Strings are prefixed by their length, so the keys cannot run into each other */
+  private static String valueKey(NodePattern<?> p) {
+    Class<?> c = p.getClass();
+    if (c == ComplexNodePattern.StringAnnotationPattern.class) {
+      ComplexNodePattern.StringAnnotationPattern sp = (ComplexNodePattern.StringAnnotationPattern) p;
+      return "s" + sp.flags + ':' + sp.target.length() + ':' + sp.target;
+    } else if (c == ComplexNodePattern.StringAnnotationRegexPattern.class) {
+      java.util.regex.Pattern pattern = ((ComplexNodePattern.StringAnnotationRegexPattern) p).pattern;
+      return "r" + pattern.flags() + ':' + pattern.pattern().length() + ':' + pattern.pattern();
+    } else if (c == ComplexNodePattern.StringInSetAnnotationPattern.class) {
+      ComplexNodePattern.StringInSetAnnotationPattern sp = (ComplexNodePattern.StringInSetAnnotationPattern) p;
+      StringBuilder sb = new StringBuilder("i").append(sp.flags).append(':');
+      for (String target : new TreeSet<>(sp.targets)) {
+        sb.append(target.length()).append(':').append(target);
+      }
+      return sb.toString();
+    } else if (c == ComplexNodePattern.NumericAnnotationPattern.class) {
+      ComplexNodePattern.NumericAnnotationPattern np = (ComplexNodePattern.NumericAnnotationPattern) p;
+      return "n" + np.cmpType + ':' + Double.doubleToLongBits(np.value);
+    } else if (c == ComplexNodePattern.NilAnnotationPattern.class) {
+      return "nil";
+    } else if (c == ComplexNodePattern.NotNilAnnotationPattern.class) {
+      return "notnil";
+    }
+    return null;
+  }
+
+  /**
+   * Starts using this cache for the matchers created by the current thread.
+   * Close the returned scope (with try-with-resources) to stop, when the sequences may change.
+   */
+  public Scope use() {
+    Scope scope = new Scope(this, current.get());
+    current.set(scope);
+    return scope;
+  }
+
+  /**
+   * The use of a cache by a thread, with the results of the node patterns for each sequence matched.
+   */
+  public static class Scope implements AutoCloseable {
+    private final NodePatternCache cache;
+    private final Scope previous;
+    private final Map<List<?>, Memo> memos = new IdentityHashMap<>();
+
+    private Scope(NodePatternCache cache, Scope previous) {
+      this.cache = cache;
+      this.previous = previous;
+    }
+
+    @Override
+    public void close() {
+      current.set(previous);
+    }
+  }
+
+  /**
+   * The node patterns matched so far on a sequence, for use by a matcher over that sequence
+   * created in a scope, or null if there is no scope (or no patterns to remember).
+   */
+  static Memo memoFor(List<?> elements) {
+    Scope scope = current.get();
+    if (scope == null) {
+      return null;
+    }
+    Memo memo = scope.memos.get(elements);
+    if (memo == null) {
+      Map<NodePattern<?>, Integer> ids = scope.cache.ids;
+      if (ids.isEmpty()) {
+        return null;
+      }
+      memo = new Memo(ids, scope.cache.size(), elements.size());
+      scope.memos.put(elements, memo);
+    }
+    return memo;
+  }
+
+  /** For each element of a sequence, bitsets of the node patterns tested on it and of those that matched */
+  static class Memo {
+    private final Map<NodePattern<?>, Integer> ids;
+    private final int words;
+    private final long[] tested;
+    private final long[] matched;
+
+    private Memo(Map<NodePattern<?>, Integer> ids, int patterns, int elements) {
+      this.ids = ids;
+      this.words = (patterns + 63) >>> 6;
+      this.tested = new long[words * elements];
+      this.matched = new long[words * elements];
+    }
+
+    /** Whether the node pattern matches the node at the given position */
+    <T> boolean match(NodePattern<T> pattern, int position, T node) {
+      Integer id = ids.get(pattern);
+      if (id == null) {
+        return pattern.match(node);
+      }
+      int word = position * words + (id >>> 6);
+      long bit = 1L << id;
+      if ((tested[word] & bit) == 0) {
+        if (pattern.match(node)) {
+          matched[word] |= bit;
+        }
+        tested[word] |= bit;
+      }
+      return (matched[word] & bit) != 0;
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import java.util.List;
+
+/**
+ * Finds phrases in text or in a list of tokens.
+ * This is what {@link PhraseTable} and {@link CompiledPhraseTable} have in common,
+ * so that code which only looks phrases up can take either of them.
+ *
+ * @see PhraseTable
+ */
+public interface PhraseLookup {
+
+  /** Whether there are no phrases to find */
+  boolean isEmpty();
+
+  /** The word as it is matched against the words of the phrases */
+  String getNormalizedForm(String word);
+
+  /** The phrase with exactly these words (split as a phrase is split), or null */
+  PhraseTable.Phrase lookup(String phrase);
+
+  /** The phrase with exactly these words, once normalized, or null */
+  PhraseTable.Phrase lookupNormalized(String phrase);
+
+  /** The phrase with exactly these words, or null */
+  PhraseTable.Phrase lookup(PhraseTable.WordList wordList);
+
+  /** All the phrases in a text, wherever they start */
+  List<PhraseTable.PhraseMatch> findAllMatches(String text);
+
+  /** All the phrases in a list of tokens, wherever they start */
+  List<PhraseTable.PhraseMatch> findAllMatches(PhraseTable.WordList tokens);
+
+  /** All the phrases in [tokenStart, tokenEnd) of a list of tokens, wherever they start */
+  List<PhraseTable.PhraseMatch> findAllMatches(PhraseTable.WordList tokens, int tokenStart, int tokenEnd,
+                                               boolean needNormalization);
+
+  /** The phrases at the start of a text */
+  List<PhraseTable.PhraseMatch> findMatches(String text);
+
+  /** The phrases at the start of a list of tokens */
+  List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens);
+
+  /** The phrases starting at tokenStart, and ending by tokenEnd */
+  List<PhraseTable.PhraseMatch> findMatches(PhraseTable.WordList tokens, int tokenStart, int tokenEnd,
+                                            boolean needNormalization);
+
+  /** The longest of the matches, such that none of them overlap */
+  List<PhraseTable.PhraseMatch> findNonOverlappingPhrases(List<PhraseTable.PhraseMatch> phraseMatches);
+
+}
@@ -38,9 +38,12 @@ import java.util.regex.Pattern;
  *   <li>findAllMatches</li>
  *   <li>findNonOverlappingPhrases</li>
  * </ul>
+ *
+ * A large table can be compiled once into a file with {@link CompiledPhraseTable#compile},
+ * and then loaded almost instantly with {@link CompiledPhraseTable#load}.
  * @author Angel Chang
  */
-public class PhraseTable implements Serializable
+public class PhraseTable implements PhraseLookup, Serializable
 {
 
   /** A logger for this class */
@@ -255,12 +258,18 @@ public class PhraseTable implements Serializable
         words[i] = tokens.get(i).word();
       }
     } else {
-      phraseText = possPattern.matcher(phraseText).replaceAll(" 's$1");
-      words = delimPattern.split(phraseText);
+      words = splitTextDefault(phraseText);
     }
     return words;
   }
 
+  /** Splits text into words, as {@link #splitText} does when there is no tokenizer */
+  static String[] splitTextDefault(String phraseText)
+  {
+    phraseText = possPattern.matcher(phraseText).replaceAll(" 's$1");
+    return delimPattern.split(phraseText);
+  }
+
   public WordList toWordList(String phraseText)
   {
     String[] words = splitText(phraseText);
@@ -499,6 +508,12 @@ public class PhraseTable implements Serializable
   private static final Pattern delimPattern = Pattern.compile("[\\s_-]+");
   private static final Pattern possPattern = Pattern.compile("'s(\\s+|$)");
   private String createNormalizedForm(String word)
+  {
+    return createNormalizedForm(word, normalize, caseInsensitive, ignorePunctuation, ignorePunctuationTokens);
+  }
+
+  static String createNormalizedForm(String word, boolean normalize, boolean caseInsensitive,
+                                     boolean ignorePunctuation, boolean ignorePunctuationTokens)
   {
     if (normalize) {
       word = StringUtils.normalize(word);
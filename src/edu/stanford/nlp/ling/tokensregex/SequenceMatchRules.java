@@ -147,6 +147,9 @@ import java.util.regex.Pattern;
  *   <tr><td>{@code matchWithResults}</td><td>{@code Boolean}</td>
  *      <td>{@code}</td><td>Whether results of the matches should be returned (default false).
  *        Set to true to access captured groups of embedded regular expressions.</td></tr>
+ *   <tr><td>{@code matchMode}</td><td>{@code BACKTRACKING | COMPILED}</td>
+ *      <td>{@code}</td><td>How token patterns are matched (default {@code BACKTRACKING}).
+ *        See {@link SequencePattern.MatchMode}.</td></tr>
  *   <tr><td>{@code matchedExpressionGroup}</td><td>{@code Integer}</td>
  *      <td>{@code 2}</td><td>What group should be treated as the matched expression group (default 0).</td></tr>
  * </table>
@@ -207,6 +210,8 @@ public class SequenceMatchRules {
     /** Which group to take as the matched expression - default is 0 */
     public int matchedExpressionGroup;
     public boolean matchWithResults;
+    /** How token patterns should be matched (null for the default) */
+    public SequencePattern.MatchMode matchMode;
     // TODO: Combine ruleType and isComposite
     /** Type of rule to apply: token string match, pattern string match */
     public String ruleType;
@@ -261,6 +266,9 @@ public class SequenceMatchRules {
           case "matchWithResults":
             matchWithResults = ((Boolean) Expressions.asObject(env, obj)).booleanValue();
             break;
+          case "matchMode":
+            matchMode = SequencePattern.MatchMode.valueOf((String) Expressions.asObject(env, obj));
+            break;
           case "matchedExpressionGroup":
             matchedExpressionGroup = ((Number) Expressions.asObject(env, obj)).intValue();
             break;
@@ -463,6 +471,9 @@ public class SequenceMatchRules {
       r.result = result;
       pattern.weight = r.weight;
       pattern.priority = r.priority;
+      if (r.matchMode != null) {
+        pattern.setMatchMode(r.matchMode);
+      }
     }
 
     protected AnnotationExtractRule create(Env env, SequencePattern.PatternExpr expr, Expression result) {
@@ -534,6 +545,9 @@ public class SequenceMatchRules {
       r.result = result;
       pattern.weight = r.weight;
       pattern.priority = r.priority;
+      if (r.matchMode != null) {
+        pattern.setMatchMode(r.matchMode);
+      }
     }
 
     protected AnnotationExtractRule create(Env env, SequencePattern.PatternExpr expr, Expression result) {
@@ -604,6 +618,7 @@ public class SequenceMatchRules {
       r.matchFindType = aerTemplate.matchFindType;
       r.matchedExpressionGroup = aerTemplate.matchedExpressionGroup;
       r.matchWithResults = aerTemplate.matchWithResults;
+      r.matchMode = aerTemplate.matchMode;
       r.ruleType = aerTemplate.ruleType;
       r.isComposite = aerTemplate.isComposite;
       r.includeNested = aerTemplate.includeNested;
@@ -612,6 +627,11 @@ public class SequenceMatchRules {
 
       if (r.annotationField == null) { r.annotationField = r.tokensAnnotationField;  }
       r.ruleType = TOKEN_PATTERN_RULE_TYPE;
+      if (r.matchMode != null) {
+        for (TokenSequencePattern pattern : patterns) {
+          pattern.setMatchMode(r.matchMode);
+        }
+      }
       MultiPatternMatcher<CoreMap> multiPatternMatcher = TokenSequencePattern.getMultiPatternMatcher(patterns);
       multiPatternMatcher.setMatchWithResult(r.matchWithResults);
       updateExtractRule(r, env, multiPatternMatcher, null, r.result);
@@ -88,6 +88,9 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   // Branching limit for searching with back tracking. Higher value makes the search faster but uses more memory.
   int branchLimit = 32;
 
+  // Node pattern results shared with other matchers over the same elements (null if none)
+  private final NodePatternCache.Memo nodePatternMemo;
+
   protected SequenceMatcher(SequencePattern<T> pattern, List<? extends T> elements)
   {
     this.pattern = pattern;
@@ -102,12 +105,25 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     this.score = pattern.weight;
     this.varGroupBindings = pattern.varGroupBindings;
     matchedGroups = new MatchedGroup[pattern.totalGroups];
+    nodePatternMemo = NodePatternCache.memoFor(elements);
   }
 
   public void setBranchLimit(int blimit){
     this.branchLimit = blimit;
   }
 
+  /**
+   * Whether the node pattern matches the element at the given position
+   * (using the results of other matchers over the same elements, if a {@link NodePatternCache} is in use).
+   */
+  boolean matchNode(NodePattern<T> pattern, int position) {
+    T node = get(position);
+    if (node == null) {
+      return false;
+    }
+    return (nodePatternMemo != null) ? nodePatternMemo.match(pattern, position, node) : pattern.match(node);
+  }
+
 
   /**
    * Interface that specifies what to replace a matched pattern with
@@ -467,6 +483,10 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
   protected boolean findMatchStart(int start, boolean matchAllTokens) {
     switch (findType) {
       case FIND_NONOVERLAPPING:
+        CompiledSequencePattern compiled = pattern.getCompiledPattern();
+        if (compiled != null) {
+          return compiled.match(this, start, matchAllTokens);
+        }
         return findMatchStartBacktracking(start, matchAllTokens);
       case FIND_ALL:
         // TODO: Should use backtracking here too, need to keep track of todo stack
@@ -559,7 +579,7 @@ public class SequenceMatcher<T> extends BasicSequenceMatchResult<T> {
     return status;
   }
 
-  private void clearMatched() {
+  void clearMatched() {
     for (int i = 0; i < matchedGroups.length; i++) {
       matchedGroups[i] = null;
     }
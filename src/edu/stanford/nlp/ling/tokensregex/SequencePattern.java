@@ -8,6 +8,8 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
 
 /**
  * Generic Sequence Pattern for regular expressions.
@@ -90,6 +92,9 @@ import java.util.function.Function;
  * @see SequenceMatcher
  */
 public class SequencePattern<T> implements Serializable {
+
+  private static final Logger logger = Logger.getLogger(SequencePattern.class.getName());
+
   // TODO:
   //  1. Validate backref capture groupid
   //  2. Actions
@@ -111,6 +116,31 @@ public class SequencePattern<T> implements Serializable {
   // Weight associated with the pattern
   double weight = 0.0;
 
+  // How matchers search for the pattern (not serialized)
+  private MatchMode matchMode = MatchMode.BACKTRACKING;
+  // The compiled pattern, if the match mode is COMPILED and the pattern could be compiled
+  private CompiledSequencePattern compiledPattern;
+  // Why the pattern could not be compiled
+  private String fallbackReason;
+
+  /**
+   * How a {@link SequenceMatcher} searches for matches of a pattern.
+   */
+  public enum MatchMode {
+    /** Follow one branch of the pattern at a time, backtracking to the others when it fails (the default) */
+    BACKTRACKING,
+    /**
+     * Follow all branches of the pattern at once, stepping through the sequence only once per match attempt,
+     * so matching takes linear time however much backtracking the pattern would need.
+     * Finds the same matches as backtracking.
+     * Patterns with backreferences, conjunctions, nongreedy or large bounded repeats
+     * (more than 5), or repeated multi-node patterns cannot be compiled,
+     * and are matched by backtracking instead.
+     * {@link SequenceMatcher.FindType#FIND_ALL} searches always backtrack.
+     */
+    COMPILED
+  }
+
   protected SequencePattern(SequencePattern.PatternExpr nodeSequencePattern) {
     this(null, nodeSequencePattern);
   }
@@ -185,6 +215,45 @@ public class SequencePattern<T> implements Serializable {
     return totalGroups;
   }
 
+  public MatchMode getMatchMode() {
+    return matchMode;
+  }
+
+  /**
+   * Sets how matchers search for this pattern.
+   * If the pattern cannot be matched in the mode asked for, it is matched by backtracking:
+   * {@link #getMatchModeUsed()} tells which mode is used, and {@link #getFallbackReason()} why.
+   */
+  public void setMatchMode(MatchMode matchMode) {
+    CompiledSequencePattern compiled = null;
+    String reason = null;
+    if (matchMode == MatchMode.COMPILED) {
+      try {
+        compiled = CompiledSequencePattern.compile(this);
+      } catch (UnsupportedOperationException ex) {
+        reason = ex.getMessage();
+        logger.fine("Matching pattern by backtracking, cannot compile " + reason + ": " + this);
+      }
+    }
+    this.matchMode = matchMode;
+    this.compiledPattern = compiled;
+    this.fallbackReason = reason;
+  }
+
+  /** The mode matchers actually use for this pattern. */
+  public MatchMode getMatchModeUsed() {
+    return (compiledPattern != null) ? MatchMode.COMPILED : MatchMode.BACKTRACKING;
+  }
+
+  /** Why the pattern is matched by backtracking instead of the mode asked for, or null if it is not. */
+  public String getFallbackReason() {
+    return fallbackReason;
+  }
+
+  CompiledSequencePattern getCompiledPattern() {
+    return compiledPattern;
+  }
+
   // Compiles string (regex) to NFA for doing pattern simulation
   public static <T> SequencePattern<T> compile(Env env, String string)
   {
@@ -256,6 +325,93 @@ public class SequencePattern<T> implements Serializable {
     }
     return outList;
   }
+
+  /**
+   * Finds node patterns (and multiple node patterns) that a sequence must have elements for,
+   * for this pattern to match it.
+   * Returns groups of patterns, each a {@link NodePattern} or a {@link MultiNodePattern}:
+   * for each group, any match of this pattern has elements matched by one of the patterns of the group.
+   * Each pattern which every match goes through is a group on its own, and the other patterns
+   * give one more group of patterns which cannot all be avoided, if there is one.
+   * The search is over the paths of the NFA, ignoring counts of repeats and looking only at the first
+   * pattern of conjunctions (as all of them have to match), so some groups may be missed,
+   * but all the groups returned are required.
+   *
+   * @param usable Whether a pattern can be put in a group
+   * @return Groups of patterns (empty if none could be found)
+   */
+  List<List<Object>> findRequiredPatterns(Predicate<Object> usable) {
+    Map<State, Object> candidates = new LinkedHashMap<>();
+    for (State state : reachableStates(Collections.emptySet())) {
+      Object pattern = null;
+      if (state instanceof NodePatternState) {
+        pattern = ((NodePatternState) state).pattern;
+      } else if (state instanceof MultiNodePatternState) {
+        pattern = ((MultiNodePatternState) state).pattern;
+      }
+      if (pattern != null && usable.test(pattern)) {
+        candidates.put(state, pattern);
+      }
+    }
+    List<List<Object>> required = new ArrayList<>();
+    for (Iterator<Map.Entry<State, Object>> it = candidates.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<State, Object> candidate = it.next();
+      if ( ! reachableStates(Collections.singleton(candidate.getKey())).contains(MATCH_STATE)) {
+        required.add(Collections.singletonList(candidate.getValue()));
+        it.remove();
+      }
+    }
+    if ( ! candidates.isEmpty()) {
+      // Look for a set of states which together cut all paths, and remove what is not needed
+      Set<State> cut = Collections.newSetFromMap(new IdentityHashMap<>());
+      cut.addAll(candidates.keySet());
+      if ( ! reachableStates(cut).contains(MATCH_STATE)) {
+        for (State state : candidates.keySet()) {
+          cut.remove(state);
+          if (reachableStates(cut).contains(MATCH_STATE)) {
+            cut.add(state);
+          }
+        }
+        List<Object> group = new ArrayList<>(cut.size());
+        for (Map.Entry<State, Object> candidate : candidates.entrySet()) {
+          if (cut.contains(candidate.getKey())) {
+            group.add(candidate.getValue());
+          }
+        }
+        required.add(group);
+      }
+    }
+    return required;
+  }
+
+  /**
+   * States reachable from the root without going through the given states
+   * (going only into the first pattern of conjunctions)
+   */
+  private Set<State> reachableStates(Set<State> avoid) {
+    Set<State> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    if (avoid.contains(root)) {
+      return seen;
+    }
+    Deque<State> todo = new ArrayDeque<>();
+    todo.add(root);
+    seen.add(root);
+    while (!todo.isEmpty()) {
+      State state = todo.poll();
+      if (state.next != null) {
+        for (State s : state.next) {
+          if ( ! avoid.contains(s) && seen.add(s)) {
+            todo.add(s);
+          }
+          if (state instanceof ConjStartState) {
+            break;
+          }
+        }
+      }
+    }
+    return seen;
+  }
+
   // Parses string to PatternExpr
   public interface Parser<T> {
     SequencePattern.PatternExpr parseSequence(Env env, String s) throws Exception;
@@ -1322,7 +1478,7 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State with associated value.
    */
-  private static class ValueState extends State {
+  static class ValueState extends State {
     final Object value;
 
     private ValueState(Object value) {
@@ -1336,7 +1492,7 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State for matching one element/node
    */
-  private static class NodePatternState extends State {
+  static class NodePatternState extends State {
     final NodePattern pattern;
 
     protected NodePatternState(NodePattern p) {
@@ -1363,7 +1519,7 @@ public class SequencePattern<T> implements Serializable {
             return false;
           }
         } else {
-          if (node != null && pattern.match(node)) {
+          if (matchedStates.matcher.matchNode(ErasureUtils.uncheckedCast(pattern), matchedStates.curPosition)) {
             // If matched, need to add next states to the queue of states to be processed
             matchedStates.addStates(bid, next);
             return true;
@@ -1384,9 +1540,9 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State for matching multiple elements/nodes.
    */
-  private static class MultiNodePatternState extends State {
+  static class MultiNodePatternState extends State {
 
-    private final MultiNodePattern pattern;
+    final MultiNodePattern pattern;
 
     protected MultiNodePatternState(MultiNodePattern p) {
       this.pattern = p;
@@ -1455,7 +1611,7 @@ public class SequencePattern<T> implements Serializable {
   /**
    * State that matches a pattern that can occur multiple times.
    */
-  private static class RepeatState extends State {
+  static class RepeatState extends State {
 
     private final State repeatStart;
     private final int minMatch;
@@ -1628,7 +1784,7 @@ public class SequencePattern<T> implements Serializable {
    */
   static class GroupStartState extends State {
 
-    private final int captureGroupId;
+    final int captureGroupId;
 
     public GroupStartState(int captureGroupId, State startState)
     {
@@ -1657,7 +1813,7 @@ public class SequencePattern<T> implements Serializable {
    */
   static class GroupEndState extends State {
 
-    private final int captureGroupId;
+    final int captureGroupId;
 
     public GroupEndState(int captureGroupId)
     {
@@ -1835,6 +1991,7 @@ public class SequencePattern<T> implements Serializable {
     this.root = f.start;
     varGroupBindings = new VarGroupBindings(totalGroups+1);
     patternExpr.updateBindings(varGroupBindings);
+    matchMode = MatchMode.BACKTRACKING;
   }
 
 
@@ -0,0 +1,255 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.ErasureUtils;
+import edu.stanford.nlp.util.Pair;
+
+import java.util.*;
+
+/**
+ * Rules out sequences which none of a set of token sequence patterns can match, without running the patterns.
+ *
+ * <p>
+ * For each pattern, the node patterns that every match must go through are found
+ * (see {@link SequencePattern#findRequiredPatterns}): the pattern can only match a sequence
+ * which has, for each of them, an element it matches (or elements, for a {@link MultiNodePattern}).
+ * The node patterns comparing an annotation to a string (or a set of strings) make up a vocabulary,
+ * looked up once per element; the other patterns are only tested when needed.
+ * If a pattern has no such node patterns (for instance {@code []*}), every sequence may be matched.
+ * </p>
+ *
+ * <p>
+ * Once all the patterns are added, the prefilter can be used from many threads at once.
+ * </p>
+ */
+public class SequencePatternPrefilter {
+
+  /** Per pattern, the groups of triggers it needs (a sequence needs an element for one trigger of each group) */
+  private final List<int[][]> patterns = new ArrayList<>();
+  /** Whether some pattern may match without any trigger */
+  private boolean alwaysMayMatch = false;
+
+  /**
+   * Node patterns and multiple node patterns which elements are checked against, numbered
+   * (node patterns built the same way share a number)
+   */
+  private final List<Object> triggers = new ArrayList<>();
+  private final Map<String, Integer> triggerIdsByKey = new HashMap<>();
+  private final Map<Object, Integer> triggerIds = new IdentityHashMap<>();
+
+  /** Triggers which only match elements with one of their words (and are found by looking up the words) */
+  private final BitSet wordTriggers = new BitSet();
+  /** Words of the triggers, by annotation key: compared exactly, ignoring case, and lowercased */
+  private final Map<Class<?>, Map<String, List<Integer>>> words = new HashMap<>();
+  private final Map<Class<?>, Map<String, List<Integer>>> caselessWords = new HashMap<>();
+  private final Map<Class<?>, Map<String, List<Integer>>> lowercaseWords = new HashMap<>();
+
+  private static final byte UNKNOWN = 0;
+  private static final byte FOUND = 1;
+  private static final byte NOT_FOUND = 2;
+
+  /**
+   * Adds a pattern.
+   *
+   * @return false if the pattern has no node patterns it needs, so that every sequence may be matched
+   */
+  public boolean addPattern(SequencePattern<CoreMap> pattern) {
+    List<List<Object>> required = pattern.findRequiredPatterns(
+        p -> p != NodePattern.ANY_NODE && ! (p instanceof NodePattern.NegateNodePattern));
+    if (required.isEmpty()) {
+      alwaysMayMatch = true;
+      return false;
+    }
+    int[][] groups = new int[required.size()][];
+    for (int i = 0; i < groups.length; i++) {
+      List<Object> group = required.get(i);
+      groups[i] = new int[group.size()];
+      for (int j = 0; j < groups[i].length; j++) {
+        groups[i][j] = triggerId(group.get(j));
+      }
+    }
+    patterns.add(groups);
+    return true;
+  }
+
+  /**
+   * Makes every sequence possibly matched (for patterns which cannot be added).
+   */
+  public void setAlwaysMayMatch() {
+    alwaysMayMatch = true;
+  }
+
+  /** Whether every sequence may be matched */
+  public boolean isAlwaysMayMatch() {
+    return alwaysMayMatch;
+  }
+
+  private int triggerId(Object p) {
+    Integer id = triggerIds.get(p);
+    if (id == null) {
+      String key = (p instanceof NodePattern) ? NodePatternCache.key((NodePattern<?>) p) : null;
+      id = (key != null) ? triggerIdsByKey.get(key) : null;
+      if (id == null) {
+        id = triggers.size();
+        triggers.add(p);
+        if (key != null) {
+          triggerIdsByKey.put(key, id);
+        }
+        if (p instanceof NodePattern) {
+          addWords(ErasureUtils.uncheckedCast(p), id);
+        }
+      }
+      triggerIds.put(p, id);
+    }
+    return id;
+  }
+
+  /** If the node pattern needs an annotation to be one of some strings, indexes it by these strings */
+  @SuppressWarnings("rawtypes") // getAnnotationPatterns() has raw types
+  private void addWords(NodePattern<CoreMap> p, int id) {
+    if (p.getClass() != CoreMapNodePattern.class) {
+      return;
+    }
+    for (Pair<Class, NodePattern> entry : ((CoreMapNodePattern) p).getAnnotationPatterns()) {
+      if (entry.second instanceof ComplexNodePattern.StringAnnotationPattern) {
+        ComplexNodePattern.StringAnnotationPattern sp = (ComplexNodePattern.StringAnnotationPattern) entry.second;
+        if ( ! sp.normalize()) {
+          if (sp.ignoreCase()) {
+            addWord(caselessWords, entry.first, foldCase(sp.target), id);
+          } else {
+            addWord(words, entry.first, sp.target, id);
+          }
+          wordTriggers.set(id);
+          return;
+        }
+      } else if (entry.second instanceof ComplexNodePattern.StringInSetAnnotationPattern) {
+        ComplexNodePattern.StringInSetAnnotationPattern sp = (ComplexNodePattern.StringInSetAnnotationPattern) entry.second;
+        if ( ! sp.normalize()) {
+          // the targets are lowercased already if case is ignored
+          for (String target : sp.targets) {
+            addWord(sp.ignoreCase() ? lowercaseWords : words, entry.first, target, id);
+          }
+          wordTriggers.set(id);
+          return;
+        }
+      }
+    }
+  }
+
+  private static void addWord(Map<Class<?>, Map<String, List<Integer>>> words, Class<?> key, String word, int id) {
+    words.computeIfAbsent(key, k -> new HashMap<>()).computeIfAbsent(word, w -> new ArrayList<>(1)).add(id);
+  }
+
+  /** Two strings are equal ignoring case ({@link String#equalsIgnoreCase}) if they have the same folded case */
+  private static String foldCase(String str) {
+    StringBuilder sb = new StringBuilder(str.length());
+    str.codePoints().forEach(c -> sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+    return sb.toString();
+  }
+
+  /**
+   * Whether some pattern may match the sequence (or a part of it).
+   * If false, none of the patterns can match it.
+   */
+  public boolean mayMatch(List<? extends CoreMap> elements) {
+    if (alwaysMayMatch) {
+      return true;
+    }
+    if (patterns.isEmpty()) {
+      return false;
+    }
+    byte[] found = new byte[triggers.size()];
+    for (CoreMap element : elements) {
+      lookup(words, element, found, false, false);
+      lookup(caselessWords, element, found, true, false);
+      lookup(lowercaseWords, element, found, false, true);
+    }
+    for (int id = wordTriggers.nextSetBit(0); id >= 0; id = wordTriggers.nextSetBit(id + 1)) {
+      if (found[id] == UNKNOWN) {
+        found[id] = NOT_FOUND;
+      }
+    }
+    for (int[][] groups : patterns) {
+      if (allFound(groups, found, elements)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void lookup(Map<Class<?>, Map<String, List<Integer>>> words, CoreMap element, byte[] found,
+                      boolean foldCase, boolean lowercase) {
+    for (Map.Entry<Class<?>, Map<String, List<Integer>>> entry : words.entrySet()) {
+      Object value = element.get(ErasureUtils.uncheckedCast(entry.getKey()));
+      if (value instanceof String) {
+        String word = (String) value;
+        if (foldCase) {
+          word = foldCase(word);
+        } else if (lowercase) {
+          word = word.toLowerCase();
+        }
+        List<Integer> ids = entry.getValue().get(word);
+        if (ids != null) {
+          for (int id : ids) {
+            if (found[id] != FOUND && matches(ErasureUtils.<NodePattern<CoreMap>>uncheckedCast(triggers.get(id)), element)) {
+              found[id] = FOUND;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private boolean allFound(int[][] groups, byte[] found, List<? extends CoreMap> elements) {
+    for (int[] group : groups) {
+      boolean groupFound = false;
+      for (int id : group) {
+        if (found[id] == UNKNOWN) {
+          found[id] = matches(triggers.get(id), elements) ? FOUND : NOT_FOUND;
+        }
+        if (found[id] == FOUND) {
+          groupFound = true;
+          break;
+        }
+      }
+      if ( ! groupFound) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Whether the trigger matches an element (or elements, starting anywhere) of the sequence */
+  private static boolean matches(Object trigger, List<? extends CoreMap> elements) {
+    if (trigger instanceof NodePattern) {
+      for (CoreMap element : elements) {
+        if (matches(ErasureUtils.<NodePattern<CoreMap>>uncheckedCast(trigger), element)) {
+          return true;
+        }
+      }
+    } else {
+      MultiNodePattern<CoreMap> multiNodePattern = ErasureUtils.uncheckedCast(trigger);
+      for (int start = 0; start < elements.size(); start++) {
+        try {
+          Collection<?> matched = multiNodePattern.match(elements, start);
+          if (matched != null && ! matched.isEmpty()) {
+            return true;
+          }
+        } catch (RuntimeException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean matches(NodePattern<CoreMap> trigger, CoreMap element) {
+    try {
+      return trigger.match(element);
+    } catch (RuntimeException e) {
+      // whatever went wrong will go wrong again when matching the patterns
+      return true;
+    }
+  }
+
+}
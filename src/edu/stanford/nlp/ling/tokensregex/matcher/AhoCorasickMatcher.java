@@ -0,0 +1,252 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import java.util.*;
+
+/**
+ * Finds all occurrences of many fixed sequences in one pass over a sequence
+ * (the Aho-Corasick algorithm, over sequence elements instead of characters).
+ *
+ * Keys are added with {@link #put}, and the automaton is compiled on the first search
+ * (or by calling {@link #compile}).  Searching takes time linear in the length of the
+ * searched sequence plus the number of matches, however many keys there are.
+ *
+ * Unlike {@link TrieMap}, the trie is stored in flat arrays, with one hash table for all
+ * the edges, so that it stays small with millions of keys.
+ * Several values can be added for the same key; each is reported as its own match.
+ * Once compiled, the matcher can be searched from many threads at once.
+ *
+ * @param <K> Key of the elements of the sequences
+ * @param <V> The value
+ */
+public class AhoCorasickMatcher<K,V> {
+
+  private static final int ROOT = 0;
+
+  /** Id of each distinct sequence element in the keys */
+  private final Map<K, Integer> symbols = new HashMap<>();
+
+  /** Per node: parent node, symbol of the edge from the parent, and depth (the length of the prefix) */
+  private int[] parent = new int[16];
+  private int[] symbol = new int[16];
+  private int[] depth = new int[16];
+  /** Per node: the first of its values, or -1, and per value, the next value of the same node, or -1 */
+  private int[] firstValue = new int[16];
+  private int[] nextValue = new int[16];
+  private int nodeCount = 1;
+  private final List<V> values = new ArrayList<>();
+
+  /** Edges, keyed by (node, symbol), in an open addressing hash table */
+  private long[] edgeKeys;
+  private int[] edgeChildren;
+  private int edgeCount;
+
+  /** Per node: the longest proper suffix of its prefix which is also in the trie */
+  private int[] fail;
+  /** Per node: the nearest node with values on its failure chain, starting with itself, or the root if none */
+  private int[] output;
+  private volatile boolean compiled;
+
+  public AhoCorasickMatcher() {
+    firstValue[ROOT] = -1;
+    edgeKeys = new long[64];
+    Arrays.fill(edgeKeys, -1L);
+    edgeChildren = new int[64];
+  }
+
+  /** The number of values added */
+  public int size() {
+    return values.size();
+  }
+
+  /**
+   * Adds a value to be matched by the given sequence.
+   *
+   * @param key A non empty sequence
+   * @param value The value reported when the sequence is found
+   */
+  public synchronized void put(List<K> key, V value) {
+    if (key.isEmpty()) {
+      throw new IllegalArgumentException("Cannot match an empty sequence");
+    }
+    int node = ROOT;
+    for (K element : key) {
+      Integer id = symbols.get(element);
+      if (id == null) {
+        id = symbols.size();
+        symbols.put(element, id);
+      }
+      int child = child(node, id);
+      if (child < 0) {
+        child = addNode(node, id);
+      }
+      node = child;
+    }
+    int v = values.size();
+    values.add(value);
+    if (v == nextValue.length) {
+      nextValue = Arrays.copyOf(nextValue, v * 2);
+    }
+    nextValue[v] = -1;
+    if (firstValue[node] < 0) {
+      firstValue[node] = v;
+    } else {
+      // keep the values of a node in the order they were added
+      int last = firstValue[node];
+      while (nextValue[last] >= 0) {
+        last = nextValue[last];
+      }
+      nextValue[last] = v;
+    }
+    compiled = false;
+  }
+
+  private int addNode(int from, int id) {
+    int node = nodeCount++;
+    if (node == parent.length) {
+      int capacity = node * 2;
+      parent = Arrays.copyOf(parent, capacity);
+      symbol = Arrays.copyOf(symbol, capacity);
+      depth = Arrays.copyOf(depth, capacity);
+      firstValue = Arrays.copyOf(firstValue, capacity);
+    }
+    parent[node] = from;
+    symbol[node] = id;
+    depth[node] = depth[from] + 1;
+    firstValue[node] = -1;
+    addEdge(from, id, node);
+    return node;
+  }
+
+  private static long edgeKey(int node, int id) {
+    return ((long) node << 32) | id;
+  }
+
+  private static int slot(long key, int mask) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private void addEdge(int node, int id, int child) {
+    if ((edgeCount + 1) * 4 > edgeKeys.length * 3) {
+      long[] oldKeys = edgeKeys;
+      int[] oldChildren = edgeChildren;
+      edgeKeys = new long[oldKeys.length * 2];
+      Arrays.fill(edgeKeys, -1L);
+      edgeChildren = new int[oldKeys.length * 2];
+      for (int i = 0; i < oldKeys.length; ++i) {
+        if (oldKeys[i] != -1L) {
+          insertEdge(oldKeys[i], oldChildren[i]);
+        }
+      }
+    }
+    insertEdge(edgeKey(node, id), child);
+    edgeCount++;
+  }
+
+  private void insertEdge(long key, int child) {
+    int mask = edgeKeys.length - 1;
+    int i = slot(key, mask);
+    while (edgeKeys[i] != -1L) {
+      i = (i + 1) & mask;
+    }
+    edgeKeys[i] = key;
+    edgeChildren[i] = child;
+  }
+
+  /** The child of node along the edge for the symbol, or -1 */
+  private int child(int node, int id) {
+    long key = edgeKey(node, id);
+    long[] keys = edgeKeys;
+    int mask = keys.length - 1;
+    for (int i = slot(key, mask); keys[i] != -1L; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return edgeChildren[i];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Computes the failure and output links of the automaton.
+   * Called by the first search after keys are added.
+   */
+  public synchronized void compile() {
+    if (compiled) {
+      return;
+    }
+    // visit the nodes by depth, so the failure link of a node's parent is always known
+    int maxDepth = 0;
+    for (int node = 0; node < nodeCount; ++node) {
+      maxDepth = Math.max(maxDepth, depth[node]);
+    }
+    int[] start = new int[maxDepth + 2];
+    for (int node = 0; node < nodeCount; ++node) {
+      start[depth[node] + 1]++;
+    }
+    for (int d = 1; d < start.length; ++d) {
+      start[d] += start[d - 1];
+    }
+    int[] byDepth = new int[nodeCount];
+    for (int node = 0; node < nodeCount; ++node) {
+      byDepth[start[depth[node]]++] = node;
+    }
+
+    int[] fail = new int[nodeCount];
+    int[] output = new int[nodeCount];
+    for (int node : byDepth) {
+      if (node == ROOT) {
+        continue;
+      }
+      int f = ROOT;
+      if (parent[node] != ROOT) {
+        f = fail[parent[node]];
+        int next;
+        while ((next = child(f, symbol[node])) < 0 && f != ROOT) {
+          f = fail[f];
+        }
+        f = Math.max(next, ROOT);
+      }
+      fail[node] = f;
+      output[node] = (firstValue[node] >= 0) ? node : output[f];
+    }
+    this.fail = fail;
+    this.output = output;
+    compiled = true;
+  }
+
+  /**
+   * Given a sequence to search through (e.g. piece of text would be a sequence of words),
+   * finds all sub-sequences that match keys.
+   * Matches are ordered by end position, then longest first, then by the order the values were added.
+   *
+   * @param list Sequence to search through
+   * @return List of matches
+   */
+  public List<Match<K,V>> findAllMatches(List<K> list) {
+    if ( ! compiled) {
+      compile();
+    }
+    List<Match<K,V>> matches = new ArrayList<>();
+    int state = ROOT;
+    for (int i = 0; i < list.size(); ++i) {
+      Integer id = symbols.get(list.get(i));
+      if (id == null) {
+        state = ROOT;
+        continue;
+      }
+      int next;
+      while ((next = child(state, id)) < 0 && state != ROOT) {
+        state = fail[state];
+      }
+      state = Math.max(next, ROOT);
+      for (int node = output[state]; node != ROOT; node = output[fail[node]]) {
+        int begin = i + 1 - depth[node];
+        for (int v = firstValue[node]; v >= 0; v = nextValue[v]) {
+          matches.add(new Match<>(list.subList(begin, i + 1), values.get(v), begin, i + 1));
+        }
+      }
+    }
+    return matches;
+  }
+
+}
@@ -6,6 +6,7 @@ import edu.stanford.nlp.util.Pair;
 import edu.stanford.nlp.util.concurrent.MulticoreWrapper;
 import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
 import java.util.stream.IntStream;
 
 /**
@@ -70,6 +72,23 @@ public class Classifier  {
    */
   private final Map<Integer, Integer> preMap;
 
+  /**
+   * The inverse of {@link #preMap}: the feature ID for each index into
+   * the saved hidden unit activation data.
+   */
+  private final int[] preComputedFeatures;
+
+  /**
+   * If set, pre-computed hidden layer activations are taken from this
+   * lazily filled, possibly shared table instead of {@link #saved}.
+   *
+   * @see #usePrecomputedActivations(PrecomputedActivations)
+   */
+  private PrecomputedActivations sharedSaved;
+
+  /** Computes one row of {@link #sharedSaved}; kept in a field to avoid allocating a lambda per lookup */
+  private final IntFunction<double[]> savedRowComputer = this::computeSavedRow;
+
   /**
    * Initial training state is dependent on how the classifier is
    * initialized. We use this flag to determine whether calls to
@@ -144,6 +163,9 @@ public class Classifier  {
     preMap = new HashMap<>();
     for (int i = 0; i < preComputed.size() && i < config.numPreComputed; ++i)
       preMap.put(preComputed.get(i), i);
+    preComputedFeatures = new int[preMap.size()];
+    for (Map.Entry<Integer, Integer> entry : preMap.entrySet())
+      preComputedFeatures[entry.getValue()] = entry.getKey();
 
     isTraining = dataset != null;
     if (isTraining)
@@ -637,12 +659,67 @@ public class Classifier  {
   }
 
   /**
+   * Pre-compute hidden layer activations for all of the features listed
+   * when this classifier was built. Does nothing if this classifier
+   * uses a lazily filled table instead.
+   *
    * @see #preCompute(java.util.Set)
+   * @see #usePrecomputedActivations(PrecomputedActivations)
    */
   public void preCompute() {
+    if (sharedSaved != null)
+      return;
     preCompute(preMap.keySet());
   }
 
+  /**
+   * Instead of pre-computing hidden layer activations up front, compute
+   * each one the first time it is needed and keep it in the given
+   * table, which may be shared with other classifiers having the same
+   * weights and the same pre-computed features. Only for inference: the
+   * weights must not change afterwards.
+   *
+   * @param table A table with room for every pre-computed feature of
+   *              this classifier
+   */
+  public void usePrecomputedActivations(PrecomputedActivations table) {
+    if (isTraining)
+      throw new IllegalStateException("Cannot share pre-computed activations while training");
+    if (table.capacity() != preMap.size())
+      throw new IllegalArgumentException("Table has room for " + table.capacity() + " features, but " +
+          preMap.size() + " are pre-computed");
+    sharedSaved = table;
+    saved = null;
+  }
+
+  /**
+   * The lazily filled table of pre-computed activations this classifier
+   * uses, or null if it pre-computes them up front.
+   */
+  public PrecomputedActivations getPrecomputedActivations() {
+    return sharedSaved;
+  }
+
+  /**
+   * Compute the hidden layer activations for one pre-computed feature,
+   * exactly as {@link #preCompute(java.util.Set)} would.
+   */
+  private double[] computeSavedRow(int mapX) {
+    int x = preComputedFeatures[mapX];
+    int tok = x / config.numTokens;
+    int pos = x % config.numTokens;
+    double[] row = new double[config.hiddenSize];
+    for (int j = 0; j < config.hiddenSize; ++j)
+      for (int k = 0; k < config.embeddingSize; ++k)
+        row[j] += W1[j][pos * config.embeddingSize + k] * E[tok][k];
+    return row;
+  }
+
+  /** The pre-computed hidden layer activations with the given index into {@link #saved}. */
+  private double[] savedRow(int id) {
+    return (sharedSaved != null) ? sharedSaved.get(id, savedRowComputer) : saved[id];
+  }
+
   /**
    * Pre-compute hidden layer activations for some set of possible
    * feature inputs.
@@ -688,9 +765,9 @@ public class Classifier  {
       int index = tok * config.numTokens + j;
 
       if (preMap.containsKey(index)) {
-        int id = preMap.get(index);
+        double[] savedRow = savedRow(preMap.get(index));
         for (int i = 0; i < config.hiddenSize; ++i)
-          hidden[i] += saved[id][i];
+          hidden[i] += savedRow[i];
       } else {
         for (int i = 0; i < config.hiddenSize; ++i)
           for (int k = 0; k < config.embeddingSize; ++k)
@@ -711,6 +788,76 @@ public class Classifier  {
     return scores;
   }
 
+  /**
+   * Feed a batch of feature vectors forward through the network at
+   * once. Each layer is computed for the whole batch before moving on
+   * to the next, so every row of {@code W2} is read once per batch
+   * rather than once per configuration. The scores are identical to
+   * those from {@link #computeScores(int[])}.
+   *
+   * @param features One feature vector per configuration; only the
+   *                 first {@code count} are used
+   * @param count Number of configurations in the batch
+   * @param hidden Scratch space for the hidden layer, of length at
+   *               least {@code count * hiddenSize}
+   * @param scores Filled with the output layer values in row-major
+   *               order: row {@code b}, of length {@link #numLabels()},
+   *               holds the scores for {@code features[b]}
+   */
+  void computeScores(int[][] features, int count, double[] hidden, double[] scores) {
+    final int hiddenSize = config.hiddenSize;
+    final int embeddingSize = config.embeddingSize;
+    Arrays.fill(hidden, 0, count * hiddenSize, 0.0);
+
+    for (int b = 0; b < count; ++b) {
+      int[] feature = features[b];
+      int base = b * hiddenSize;
+      int offset = 0;
+      for (int j = 0; j < feature.length; ++j) {
+        int tok = feature[j];
+        Integer id = preMap.get(tok * config.numTokens + j);
+
+        if (id != null) {
+          double[] savedRow = savedRow(id);
+          for (int i = 0; i < hiddenSize; ++i)
+            hidden[base + i] += savedRow[i];
+        } else {
+          double[] embedding = E[tok];
+          for (int i = 0; i < hiddenSize; ++i) {
+            double[] weights = W1[i];
+            for (int k = 0; k < embeddingSize; ++k)
+              hidden[base + i] += weights[offset + k] * embedding[k];
+          }
+        }
+        offset += embeddingSize;
+      }
+    }
+
+    for (int h = 0, size = count * hiddenSize; h < size; ++h) {
+      double value = hidden[h] + b1[h % hiddenSize];
+      hidden[h] = value * value * value;  // cube nonlinearity
+    }
+
+    for (int i = 0; i < numLabels; ++i) {
+      double[] weights = W2[i];
+      for (int b = 0; b < count; ++b) {
+        int base = b * hiddenSize;
+        double score = 0.0;
+        for (int j = 0; j < hiddenSize; ++j)
+          score += weights[j] * hidden[base + j];
+        scores[b * numLabels + i] = score;
+      }
+    }
+  }
+
+  /**
+   * Number of output units, which is the width of each row of scores
+   * returned by {@link #computeScores(int[][], int, double[], double[])}.
+   */
+  int numLabels() {
+    return numLabels;
+  }
+
   public double[][] getW1() {
     return W1;
   }
@@ -133,6 +133,15 @@ public class Config {
    */
   public int numPreComputed = 100000;
 
+  /**
+   * When loading a model for parsing, compute the pre-computed
+   * hidden-layer unit activations only as they are first needed, in a
+   * table shared by every parser which loads the same model (see
+   * {@link PrecomputedActivations}). If false, they are all computed
+   * when the model is loaded, separately for each parser.
+   */
+  public boolean lazyPreCompute = true;
+
   /**
    * During training, run a full UAS evaluation after every
    * {@code evalPerIter} iterations.
@@ -225,6 +234,7 @@ public class Config {
     hiddenSize = PropertiesUtils.getInt(props, "hiddenSize", hiddenSize);
     embeddingSize = PropertiesUtils.getInt(props, "embeddingSize", embeddingSize);
     numPreComputed = PropertiesUtils.getInt(props, "numPreComputed", numPreComputed);
+    lazyPreCompute = PropertiesUtils.getBool(props, "lazyPreCompute", lazyPreCompute);
     evalPerIter = PropertiesUtils.getInt(props, "evalPerIter", evalPerIter);
     clearGradientsPerIter = PropertiesUtils.getInt(props, "clearGradientsPerIter", clearGradientsPerIter);
     saveIntermediate = PropertiesUtils.getBool(props, "saveIntermediate", saveIntermediate);
@@ -287,6 +297,7 @@ public class Config {
     System.err.printf("hiddenSize = %d%n", hiddenSize);
     System.err.printf("embeddingSize = %d%n", embeddingSize);
     System.err.printf("numPreComputed = %d%n", numPreComputed);
+    System.err.printf("lazyPreCompute = %b%n", lazyPreCompute);
     System.err.printf("evalPerIter = %d%n", evalPerIter);
     System.err.printf("clearGradientsPerIter = %d%n", clearGradientsPerIter);
     System.err.printf("saveItermediate = %b%n", saveIntermediate);
@@ -28,14 +28,11 @@ import edu.stanford.nlp.trees.UniversalEnglishGrammaticalStructure;
 import edu.stanford.nlp.trees.international.pennchinese.ChineseGrammaticalRelations;
 import edu.stanford.nlp.trees.international.pennchinese.ChineseGrammaticalStructure;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-import static java.util.stream.Collectors.toList;
-
 /**
  * This class defines a transition-based dependency parser which makes
  * use of a classifier powered by a neural network. The neural network
@@ -112,6 +109,13 @@ public class DependencyParser  {
    * handles both training and inference.
    */
   private Classifier classifier;
+
+  /**
+   * Set instead of {@link #classifier} when the model was loaded from a
+   * binary model file; see {@link #writeBinaryModelFile(String)}.
+   */
+  private FloatClassifier floatClassifier;
+
   private ParsingSystem system;
 
   private final Config config;
@@ -134,6 +138,17 @@ public class DependencyParser  {
     this.language = config.language;
   }
 
+  /**
+   * The table of lazily pre-computed hidden layer activations used by
+   * this parser, which reports how often it was hit, or null if the
+   * activations were all pre-computed when the model was loaded.
+   *
+   * @see Config#lazyPreCompute
+   */
+  public PrecomputedActivations getPrecomputedActivations() {
+    return classifier == null ? null : classifier.getPrecomputedActivations();
+  }
+
   /**
    * Get an integer ID for the given word. This ID can be used to index
    * into the embeddings {@link Classifier#E}.
@@ -208,13 +223,24 @@ public class DependencyParser  {
     return feature;
   }
 
+  /**
+   * Maximum number of sentences whose configurations are scored
+   * together by {@link #predictAll(List)}.
+   */
+  private static final int PREDICT_BATCH_SIZE = 64;
+
   private static final int POS_OFFSET = 18;
   private static final int DEP_OFFSET = 36;
   private static final int STACK_OFFSET = 6;
   private static final int STACK_NUMBER = 6;
 
   private int[] getFeatureArray(Configuration c) {
-    int[] feature = new int[config.numTokens];  // positions 0-17 hold fWord, 18-35 hold fPos, 36-47 hold fLabel
+    return getFeatureArray(c, new int[config.numTokens]);
+  }
+
+  /** Fill in every position of {@code feature} for the given configuration and return it. */
+  private int[] getFeatureArray(Configuration c, int[] feature) {
+    // positions 0-17 hold fWord, 18-35 hold fPos, 36-47 hold fLabel
 
     for (int j = 2; j >= 0; --j) {
       int index = c.getStack(j);
@@ -393,6 +419,8 @@ public class DependencyParser  {
   }
 
   public void writeModelFile(String modelFile) {
+    if (classifier == null)
+      throw new IllegalStateException("A model loaded from a binary model file cannot be written as a text model file");
     try {
       double[][] W1 = classifier.getW1();
       double[] b1 = classifier.getb1();
@@ -463,6 +491,143 @@ public class DependencyParser  {
     }
   }
 
+  /**
+   * First bytes of a binary model file, which {@link #loadModelFile(String)}
+   * uses to tell it apart from a text model file
+   */
+  private static final byte[] BINARY_MODEL_MAGIC = "NNDEPF32".getBytes(StandardCharsets.US_ASCII);
+  private static final int BINARY_MODEL_VERSION = 1;
+
+  /**
+   * Write the loaded model in a binary format which
+   * {@link #loadModelFile(String)} memory-maps instead of parsing.
+   * The weights are stored as single precision floats (see
+   * {@link FloatClassifier}), along with the precomputed hidden layer
+   * contributions, so loading a binary model takes very little time and
+   * heap, and several JVMs loading the same file share its pages.
+   * <br>
+   * The file starts with the magic bytes, a version number and the
+   * length of the header which follows them. The header holds the
+   * language, the tlp, the dimensions, the words, POS tags and labels,
+   * and the precomputed feature IDs. After it come the weight blocks,
+   * little-endian, as written by {@link FloatClassifier}. Binary model
+   * files can't be gzipped or read from the classpath, as they are mapped.
+   *
+   * @param modelFile Path of the file to write
+   */
+  public void writeBinaryModelFile(String modelFile) {
+    FloatClassifier weights = floatClassifier != null ? floatClassifier
+        : FloatClassifier.fromClassifier(classifier, preComputed, config.numPreComputed);
+    try {
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      DataOutputStream header = new DataOutputStream(headerBytes);
+      header.writeUTF(language.toString());
+      header.writeUTF(config.tlp.getClass().getCanonicalName());
+      header.writeInt(knownWords.size());
+      header.writeInt(knownPos.size());
+      header.writeInt(knownLabels.size());
+      header.writeInt(weights.embeddingSize());
+      header.writeInt(weights.hiddenSize());
+      header.writeInt(weights.numTokens());
+      header.writeInt(weights.numLabels());
+      for (List<String> known : Arrays.asList(knownWords, knownPos, knownLabels))
+        for (String item : known)
+          header.writeUTF(item);
+      int[] pre = weights.preComputed();
+      header.writeInt(pre.length);
+      for (int feature : pre)
+        header.writeInt(feature);
+      // pad so that the weights start on an 8 byte boundary
+      while ((headerBytes.size() + BINARY_MODEL_MAGIC.length + 8) % 8 != 0)
+        header.writeByte(0);
+      header.flush();
+
+      try (FileOutputStream fos = new FileOutputStream(modelFile);
+           FileChannel channel = fos.getChannel()) {
+        DataOutputStream output = new DataOutputStream(fos);
+        output.write(BINARY_MODEL_MAGIC);
+        output.writeInt(BINARY_MODEL_VERSION);
+        output.writeInt(headerBytes.size());
+        headerBytes.writeTo(output);
+        output.flush();
+        weights.writeWeights(channel);
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** Whether the given path is a file starting with {@link #BINARY_MODEL_MAGIC}. */
+  private static boolean isBinaryModelFile(String modelFile) {
+    File file = new File(modelFile);
+    if (!file.isFile())
+      return false;
+    byte[] magic = new byte[BINARY_MODEL_MAGIC.length];
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      input.readFully(magic);
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(magic, BINARY_MODEL_MAGIC);
+  }
+
+  /**
+   * Read the header of a binary model file and map its weights.
+   *
+   * @see #writeBinaryModelFile(String)
+   */
+  private void loadBinaryModelFile(String modelFile) throws IOException {
+    try (FileInputStream fis = new FileInputStream(modelFile);
+         FileChannel channel = fis.getChannel()) {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(fis));
+      input.readFully(new byte[BINARY_MODEL_MAGIC.length]);
+      int version = input.readInt();
+      if (version != BINARY_MODEL_VERSION)
+        throw new IOException("Unknown binary model version " + version + " in " + modelFile);
+      int headerLength = input.readInt();
+      long weightsStart = BINARY_MODEL_MAGIC.length + 8 + headerLength;
+
+      config.language = Config.getLanguage(input.readUTF());
+      String tlpCanonicalName = input.readUTF();
+      try {
+        config.tlp = ReflectionLoading.loadByReflection(tlpCanonicalName);
+      } catch (Exception e) {
+        System.err.println("Error: Failed to load TreebankLanguagePack: " + tlpCanonicalName);
+      }
+      int nDict = input.readInt();
+      int nPOS = input.readInt();
+      int nLabel = input.readInt();
+      int eSize = input.readInt();
+      int hSize = input.readInt();
+      int nTokens = input.readInt();
+      int nOutputs = input.readInt();
+
+      knownWords = new ArrayList<>(nDict);
+      for (int i = 0; i < nDict; ++i)
+        knownWords.add(input.readUTF());
+      knownPos = new ArrayList<>(nPOS);
+      for (int i = 0; i < nPOS; ++i)
+        knownPos.add(input.readUTF());
+      knownLabels = new ArrayList<>(nLabel);
+      for (int i = 0; i < nLabel; ++i)
+        knownLabels.add(input.readUTF());
+      generateIDs();
+
+      int[] pre = new int[input.readInt()];
+      for (int i = 0; i < pre.length; ++i)
+        pre[i] = input.readInt();
+      preComputed = new ArrayList<>(pre.length);
+      for (int feature : pre)
+        preComputed.add(feature);
+
+      config.hiddenSize = hSize;
+      config.embeddingSize = eSize;
+      floatClassifier = FloatClassifier.map(channel, weightsStart, nDict + nPOS + nLabel, eSize, hSize, nTokens,
+          nOutputs, pre);
+      classifier = null;
+    }
+  }
+
   private static int writeEmbedding(double[] doubles, Writer output, int index, String word) throws IOException {
     output.write(word);
     for (double aDouble : doubles) {
@@ -522,6 +687,12 @@ public class DependencyParser  {
     try {
 
       log.info("Loading depparse model file: " + modelFile + " ... ");
+      if (isBinaryModelFile(modelFile)) {
+        loadBinaryModelFile(modelFile);
+        initialize(verbose);
+        t.done(log, "Initializing dependency parser");
+        return;
+      }
       String s;
       BufferedReader input = IOUtils.readerFromString(modelFile);
 
@@ -624,6 +795,11 @@ public class DependencyParser  {
       config.hiddenSize = hSize;
       config.embeddingSize = eSize;
       classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+      floatClassifier = null;
+      if (config.lazyPreCompute && config.numPreComputed > 0) {
+        classifier.usePrecomputedActivations(PrecomputedActivations.forModel(modelFile,
+            Math.min(preComputed.size(), config.numPreComputed)));
+      }
     } catch (IOException e) {
       throw new RuntimeIOException(e);
     }
@@ -737,7 +913,7 @@ public class DependencyParser  {
         // prediction, we just do this once in #initialize
         classifier.preCompute();
 
-        List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+        List<DependencyTree> predicted = predictInner(devSents);
 
         double uas = config.noPunc ? system.getUASnoPunc(devSents, predicted, devTrees) : system.getUAS(devSents, predicted, devTrees);
         log.info("UAS: " + uas);
@@ -762,7 +938,7 @@ public class DependencyParser  {
     if (devFile != null) {
       // Do final UAS evaluation and save if final model beats the
       // best intermediate one
-      List<DependencyTree> predicted = devSents.stream().map(this::predictInner).collect(toList());
+      List<DependencyTree> predicted = predictInner(devSents);
       double uas = config.noPunc ? system.getUASnoPunc(devSents, predicted, devTrees) : system.getUAS(devSents, predicted, devTrees);
 
       if (uas > bestUAS) {
@@ -935,6 +1111,7 @@ public class DependencyParser  {
     }
     Dataset trainSet = genTrainExamples(trainSents, trainTrees);
     classifier = new Classifier(config, trainSet, E, W1, b1, W2, preComputed);
+    floatClassifier = null;
   }
 
   /**
@@ -951,7 +1128,9 @@ public class DependencyParser  {
       if (Thread.interrupted()) {  // Allow interrupting
         throw new RuntimeInterruptedException();
       }
-      double[] scores = classifier.computeScores(getFeatureArray(c));
+      int[] feature = getFeatureArray(c);
+      double[] scores = (floatClassifier != null) ? floatClassifier.computeScores(feature)
+                                                  : classifier.computeScores(feature);
 
       double optScore = Double.NEGATIVE_INFINITY;
       String optTrans = null;
@@ -967,6 +1146,85 @@ public class DependencyParser  {
     return c.tree;
   }
 
+  /**
+   * Determine the dependency parses of several sentences together.
+   * Up to {@link #PREDICT_BATCH_SIZE} sentences are advanced in lock
+   * step: at each step the configurations of all unfinished sentences
+   * are scored in a single batched pass through the classifier, and a
+   * finished sentence makes room for the next waiting one. The parses
+   * are the same as those from {@link #predictInner(CoreMap)}.
+   */
+  private List<DependencyTree> predictInner(List<? extends CoreMap> sentences) {
+    int numTrans = system.numTransitions();
+    int numLabels = (floatClassifier != null) ? floatClassifier.numLabels() : classifier.numLabels();
+    int batchSize = Math.min(PREDICT_BATCH_SIZE, sentences.size());
+
+    DependencyTree[] results = new DependencyTree[sentences.size()];
+    Configuration[] active = new Configuration[batchSize];
+    int[] activeIndex = new int[batchSize];
+    int[][] features = new int[batchSize][config.numTokens];
+    double[] hidden = (floatClassifier != null) ? null : new double[batchSize * config.hiddenSize];
+    float[] floatHidden = (floatClassifier != null) ? new float[batchSize * config.hiddenSize] : null;
+    double[] scores = new double[batchSize * numLabels];
+
+    int next = 0;
+    int count = 0;
+    while (true) {
+      while (count < batchSize && next < sentences.size()) {
+        Configuration c = system.initialConfiguration(sentences.get(next));
+        if (system.isTerminal(c)) {
+          results[next] = c.tree;
+        } else {
+          active[count] = c;
+          activeIndex[count] = next;
+          ++count;
+        }
+        ++next;
+      }
+      if (count == 0) {
+        break;
+      }
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+
+      for (int b = 0; b < count; ++b) {
+        getFeatureArray(active[b], features[b]);
+      }
+      if (floatClassifier != null) {
+        floatClassifier.computeScores(features, count, floatHidden, scores);
+      } else {
+        classifier.computeScores(features, count, hidden, scores);
+      }
+
+      int kept = 0;
+      for (int b = 0; b < count; ++b) {
+        Configuration c = active[b];
+        double optScore = Double.NEGATIVE_INFINITY;
+        String optTrans = null;
+
+        for (int j = 0; j < numTrans; ++j) {
+          double score = scores[b * numLabels + j];
+          if (score > optScore && system.canApply(c, system.transitions.get(j))) {
+            optScore = score;
+            optTrans = system.transitions.get(j);
+          }
+        }
+        system.apply(c, optTrans);
+
+        if (system.isTerminal(c)) {
+          results[activeIndex[b]] = c.tree;
+        } else {
+          active[kept] = c;
+          activeIndex[kept] = activeIndex[b];
+          ++kept;
+        }
+      }
+      count = kept;
+    }
+    return Arrays.asList(results);
+  }
+
   /**
    * Determine the dependency parse of the given sentence using the loaded model.
    * You must first load a parser before calling this method.
@@ -979,12 +1237,37 @@ public class DependencyParser  {
       throw new IllegalStateException("Parser has not been  " +
           "loaded and initialized; first load a model.");
 
-    DependencyTree result = predictInner(sentence);
+    return toGrammaticalStructure(sentence, predictInner(sentence));
+  }
 
-    // The rest of this method is just busy-work to convert the
-    // package-local representation into a CoreNLP-standard
-    // GrammaticalStructure.
+  /**
+   * Determine the dependency parses of many sentences using the loaded
+   * model. This gives the same results as calling
+   * {@link #predict(edu.stanford.nlp.util.CoreMap)} on each sentence, but
+   * is considerably faster for a large number of sentences, as the
+   * classifier scores the sentences in batches.
+   *
+   * @throws java.lang.IllegalStateException If parser has not yet been loaded and initialized
+   *         (see {@link #initialize(boolean)}
+   */
+  public List<GrammaticalStructure> predictAll(List<? extends CoreMap> sentences) {
+    if (system == null)
+      throw new IllegalStateException("Parser has not been  " +
+          "loaded and initialized; first load a model.");
+
+    List<DependencyTree> results = predictInner(sentences);
+    List<GrammaticalStructure> structures = new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); ++i) {
+      structures.add(toGrammaticalStructure(sentences.get(i), results.get(i)));
+    }
+    return structures;
+  }
 
+  /**
+   * Convert the package-local representation of a parse into a
+   * CoreNLP-standard GrammaticalStructure.
+   */
+  private GrammaticalStructure toGrammaticalStructure(CoreMap sentence, DependencyTree result) {
     List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
     List<TypedDependency> dependencies = new ArrayList<>();
 
@@ -1119,7 +1402,7 @@ public class DependencyParser  {
     }
     System.err.printf("OOV Words: %d / %d = %.2f%%\n", numOOVWords, numWords, numOOVWords * 100.0 / numWords);
 
-    List<DependencyTree> predicted = testSents.stream().map(this::predictInner).collect(toList());
+    List<DependencyTree> predicted = predictInner(testSents);
     Map<String, Double> result = system.evaluate(testSents, predicted, testTrees);
 
     double uas = config.noPunc ? result.get("UASnoPunc") : result.get("UAS");
@@ -1190,8 +1473,9 @@ public class DependencyParser  {
 
     system = new ArcStandard(config.tlp, lDict, verbose);
 
-    // Pre-compute matrix multiplications
-    if (config.numPreComputed > 0) {
+    // Pre-compute matrix multiplications (binary models store them
+    // already, and with lazyPreCompute this does nothing)
+    if (config.numPreComputed > 0 && classifier != null) {
       classifier.preCompute();
     }
   }
@@ -1239,6 +1523,7 @@ public class DependencyParser  {
    *   <tr><th>Option</th><th>Required for training</th><th>Required for testing / parsing</th><th>Description</th></tr>
    *   <tr><td><tt>&#8209;devFile</tt></td><td>Optional</td><td>No</td><td>Path to a development-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a>. If provided, the </td></tr>
    *   <tr><td><tt>&#8209;embedFile</tt></td><td>Optional (highly recommended!)</td><td>No</td><td>A word embedding file, containing distributed representations of English words. Each line of the provided file should contain a single word followed by the elements of the corresponding word embedding (space-delimited). It is not absolutely necessary that all words in the treebank be covered by this embedding file, though the parser's performance will generally improve if you are able to provide better embeddings for more words.</td></tr>
+   *   <tr><td><tt>&#8209;binaryModel</tt></td><td>No</td><td>No</td><td>If provided, convert the model given by <tt>model</tt> to the binary format and write it to this path. A binary model file is memory-mapped when loaded, which is much faster and lets several processes share it; it may be given as <tt>model</tt> wherever a text model may.</td></tr>
    *   <tr><td><tt>&#8209;model</tt></td><td>Yes</td><td>Yes</td><td>Path to a model file. If the path ends in <tt>.gz</tt>, the model will be read as a Gzipped model file. During training, we write to this path; at test time we read a pre-trained model from this path.</td></tr>
    *   <tr><td><tt>&#8209;textFile</tt></td><td>No</td><td>Yes (or <tt>testFile</tt>)</td><td>Path to a plaintext file containing sentences to be parsed.</td></tr>
    *   <tr><td><tt>&#8209;testFile</tt></td><td>No</td><td>Yes (or <tt>textFile</tt>)</td><td>Path to a test-set treebank in <a href="http://ilk.uvt.nl/conll/#dataformat">CoNLL-X format</a> for final evaluation of the parser.</td></tr>
@@ -1270,6 +1555,7 @@ public class DependencyParser  {
    *   <tr><th>Option</th><th>Default</th><th>Description</th></tr>
    *   <tr><td><tt>&#8209;escaper</tt></td><td>N/A</td><td>Only applicable for testing with <tt>-textFile</tt>. If provided, use this word-escaper when parsing raw sentences. (Should be a fully-qualified class name like <tt>edu.stanford.nlp.trees.international.arabic.ATBEscaper</tt>.)</td></tr>
    *   <tr><td><tt>&#8209;numPreComputed</tt></td><td>100000</td><td>The parser pre-computes hidden-layer unit activations for particular inputs words at both training and testing time in order to speed up feedforward computation in the neural network. This parameter determines how many words for which we should compute hidden-layer activations.</td></tr>
+   *   <tr><td><tt>&#8209;lazyPreCompute</tt></td><td><tt>true</tt></td><td>If <tt>true</tt>, compute the pre-computed hidden-layer unit activations only when they are first used, sharing them between all parsers in the JVM which load the same model. This makes loading faster and uses less memory, and gives the same parses.</td></tr>
    *   <tr><td><tt>&#8209;sentenceDelimiter</tt></td><td>N/A</td><td>Only applicable for testing with <tt>-textFile</tt>.  If provided, assume that the given <tt>textFile</tt> has already been sentence-split, and that sentences are separated by this delimiter.</td></tr>
    *   <tr><td><tt>&#8209;tagger.model</tt></td><td>edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger</td><td>Only applicable for testing with <tt>-textFile</tt>. Path to a part-of-speech tagger to use to pre-tag the raw sentences before parsing.</td></tr>
    * </table>
@@ -1284,10 +1570,19 @@ public class DependencyParser  {
           props.getProperty("embedFile"), props.getProperty("preModel"));
 
     boolean loaded = false;
-    // Test with CoNLL-X data
-    if (props.containsKey("testFile")) {
+    // Convert a model to the binary format
+    if (props.containsKey("binaryModel")) {
       parser.loadModelFile(props.getProperty("model"));
       loaded = true;
+      parser.writeBinaryModelFile(props.getProperty("binaryModel"));
+    }
+
+    // Test with CoNLL-X data
+    if (props.containsKey("testFile")) {
+      if (!loaded) {
+        parser.loadModelFile(props.getProperty("model"));
+        loaded = true;
+      }
       parser.testCoNLL(props.getProperty("testFile"), props.getProperty("outFile"));
     }
 
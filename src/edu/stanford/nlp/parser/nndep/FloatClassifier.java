@@ -0,0 +1,277 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inference-only version of {@link Classifier} which keeps its
+ * weights in single precision, each matrix as one flat row-major block
+ * rather than an array of rows. This halves the memory of the weights
+ * and keeps the rows which are read together next to each other.
+ *
+ * The weight blocks are {@link FloatBuffer}s, so they can either live
+ * on the heap or be memory-mapped read-only from a binary model file
+ * (see {@link DependencyParser#writeBinaryModelFile(String)}), in which
+ * case every JVM on a machine shares one copy of them in the page cache.
+ * The table of precomputed hidden layer contributions is stored in the
+ * model file as well, so nothing needs to be computed at load time.
+ *
+ * Scores differ from those of the double precision {@link Classifier}
+ * only by float rounding.
+ */
+public class FloatClassifier {
+
+  // E: numEmbeddings x embeddingSize
+  // W1: hiddenSize x (embeddingSize x numTokens)
+  // b1: hiddenSize
+  // W2: numLabels x hiddenSize
+  // saved: numPreComputed x hiddenSize
+  private final FloatBuffer E, W1, b1, W2, saved;
+
+  private final int numEmbeddings, embeddingSize, hiddenSize, numTokens, numLabels;
+
+  /** The feature IDs whose hidden layer contributions are precomputed, in the order of the rows of {@link #saved} */
+  private final int[] preComputed;
+
+  /**
+   * Maps a feature ID to its row in {@link #saved}.
+   *
+   * @see Classifier#preMap
+   */
+  private final Map<Integer, Integer> preMap;
+
+  FloatClassifier(int numEmbeddings, int embeddingSize, int hiddenSize, int numTokens, int numLabels,
+                  FloatBuffer E, FloatBuffer W1, FloatBuffer b1, FloatBuffer W2,
+                  int[] preComputed, FloatBuffer saved) {
+    this.numEmbeddings = numEmbeddings;
+    this.embeddingSize = embeddingSize;
+    this.hiddenSize = hiddenSize;
+    this.numTokens = numTokens;
+    this.numLabels = numLabels;
+    this.E = E;
+    this.W1 = W1;
+    this.b1 = b1;
+    this.W2 = W2;
+    this.preComputed = preComputed;
+    this.saved = saved;
+
+    checkSize("E", E, (long) numEmbeddings * embeddingSize);
+    checkSize("W1", W1, (long) hiddenSize * embeddingSize * numTokens);
+    checkSize("b1", b1, hiddenSize);
+    checkSize("W2", W2, (long) numLabels * hiddenSize);
+    checkSize("saved", saved, (long) preComputed.length * hiddenSize);
+
+    preMap = new HashMap<>();
+    for (int i = 0; i < preComputed.length; ++i)
+      preMap.put(preComputed[i], i);
+  }
+
+  private static void checkSize(String name, FloatBuffer buffer, long expected) {
+    if (buffer.capacity() != expected)
+      throw new IllegalArgumentException("Weight block " + name + " has " + buffer.capacity() +
+          " entries, expected " + expected);
+  }
+
+  /**
+   * Convert a trained {@link Classifier}, precomputing the hidden layer
+   * contributions of (at most {@code numPreComputed} of) the given
+   * feature IDs in double precision before rounding them.
+   */
+  public static FloatClassifier fromClassifier(Classifier classifier, List<Integer> preComputed, int numPreComputed) {
+    double[][] E = classifier.getE();
+    double[][] W1 = classifier.getW1();
+    double[] b1 = classifier.getb1();
+    double[][] W2 = classifier.getW2();
+    int embeddingSize = E[0].length;
+    int hiddenSize = b1.length;
+    int numTokens = W1[0].length / embeddingSize;
+
+    int[] pre = new int[Math.max(0, Math.min(preComputed.size(), numPreComputed))];
+    for (int i = 0; i < pre.length; ++i)
+      pre[i] = preComputed.get(i);
+
+    FloatBuffer saved = FloatBuffer.allocate(pre.length * hiddenSize);
+    double[] row = new double[hiddenSize];
+    for (int x = 0; x < pre.length; ++x) {
+      int tok = pre[x] / numTokens;
+      int pos = pre[x] % numTokens;
+      Arrays.fill(row, 0.0);
+      for (int j = 0; j < hiddenSize; ++j)
+        for (int k = 0; k < embeddingSize; ++k)
+          row[j] += W1[j][pos * embeddingSize + k] * E[tok][k];
+      for (int j = 0; j < hiddenSize; ++j)
+        saved.put(x * hiddenSize + j, (float) row[j]);
+    }
+
+    return new FloatClassifier(E.length, embeddingSize, hiddenSize, numTokens, W2.length,
+        flatten(E), flatten(W1), flatten(new double[][] { b1 }), flatten(W2), pre, saved);
+  }
+
+  private static FloatBuffer flatten(double[][] matrix) {
+    int cols = matrix.length == 0 ? 0 : matrix[0].length;
+    FloatBuffer buffer = FloatBuffer.allocate(matrix.length * cols);
+    for (double[] row : matrix)
+      for (double value : row)
+        buffer.put((float) value);
+    buffer.clear();
+    return buffer;
+  }
+
+  /**
+   * Memory-map the weight blocks written by {@link #writeWeights},
+   * starting at {@code position} in the given file.
+   */
+  static FloatClassifier map(FileChannel channel, long position,
+                             int numEmbeddings, int embeddingSize, int hiddenSize, int numTokens, int numLabels,
+                             int[] preComputed) throws IOException {
+    long[] pos = { position };
+    FloatBuffer E = mapBlock(channel, pos, (long) numEmbeddings * embeddingSize);
+    FloatBuffer W1 = mapBlock(channel, pos, (long) hiddenSize * embeddingSize * numTokens);
+    FloatBuffer b1 = mapBlock(channel, pos, hiddenSize);
+    FloatBuffer W2 = mapBlock(channel, pos, (long) numLabels * hiddenSize);
+    FloatBuffer saved = mapBlock(channel, pos, (long) preComputed.length * hiddenSize);
+    return new FloatClassifier(numEmbeddings, embeddingSize, hiddenSize, numTokens, numLabels,
+        E, W1, b1, W2, preComputed, saved);
+  }
+
+  private static FloatBuffer mapBlock(FileChannel channel, long[] position, long numFloats) throws IOException {
+    long bytes = numFloats * Float.BYTES;
+    if (bytes > Integer.MAX_VALUE)
+      throw new IOException("Weight block of " + numFloats + " floats is too large to map");
+    ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position[0], bytes);
+    position[0] += bytes;
+    return block.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+  }
+
+  /**
+   * Write the weight blocks, little-endian, in the order E, W1, b1, W2,
+   * saved. The dimensions and the list of precomputed feature IDs are
+   * not written; the caller stores them in its own header.
+   */
+  void writeWeights(WritableByteChannel channel) throws IOException {
+    for (FloatBuffer block : new FloatBuffer[] { E, W1, b1, W2, saved }) {
+      ByteBuffer bytes = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+      for (int i = 0, size = block.capacity(); i < size; ++i) {
+        if (bytes.remaining() < Float.BYTES) {
+          drain(bytes, channel);
+        }
+        bytes.putFloat(block.get(i));
+      }
+      drain(bytes, channel);
+    }
+  }
+
+  private static void drain(ByteBuffer bytes, WritableByteChannel channel) throws IOException {
+    bytes.flip();
+    while (bytes.hasRemaining())
+      channel.write(bytes);
+    bytes.clear();
+  }
+
+  /**
+   * Feed a feature vector forward through the network. Returns the
+   * values of the output layer.
+   *
+   * @see Classifier#computeScores(int[])
+   */
+  double[] computeScores(int[] feature) {
+    float[] hidden = new float[hiddenSize];
+    double[] scores = new double[numLabels];
+    computeScores(new int[][] { feature }, 1, hidden, scores);
+    return scores;
+  }
+
+  /**
+   * Feed a batch of feature vectors forward through the network at
+   * once.
+   *
+   * @see Classifier#computeScores(int[][], int, double[], double[])
+   *
+   * @param hidden Scratch space for the hidden layer, of length at
+   *               least {@code count * hiddenSize}
+   * @param scores Filled with the output layer values in row-major
+   *               order: row {@code b}, of length {@link #numLabels()},
+   *               holds the scores for {@code features[b]}
+   */
+  void computeScores(int[][] features, int count, float[] hidden, double[] scores) {
+    Arrays.fill(hidden, 0, count * hiddenSize, 0.0f);
+
+    for (int b = 0; b < count; ++b) {
+      int[] feature = features[b];
+      int base = b * hiddenSize;
+      int offset = 0;
+      for (int j = 0; j < feature.length; ++j) {
+        int tok = feature[j];
+        Integer id = preMap.get(tok * numTokens + j);
+
+        if (id != null) {
+          int savedRow = id * hiddenSize;
+          for (int i = 0; i < hiddenSize; ++i)
+            hidden[base + i] += saved.get(savedRow + i);
+        } else {
+          int embeddingRow = tok * embeddingSize;
+          int rowLength = embeddingSize * numTokens;
+          for (int i = 0; i < hiddenSize; ++i) {
+            int weightRow = i * rowLength + offset;
+            float sum = 0.0f;
+            for (int k = 0; k < embeddingSize; ++k)
+              sum += W1.get(weightRow + k) * E.get(embeddingRow + k);
+            hidden[base + i] += sum;
+          }
+        }
+        offset += embeddingSize;
+      }
+    }
+
+    for (int h = 0, size = count * hiddenSize; h < size; ++h) {
+      float value = hidden[h] + b1.get(h % hiddenSize);
+      hidden[h] = value * value * value;  // cube nonlinearity
+    }
+
+    for (int i = 0; i < numLabels; ++i) {
+      int weightRow = i * hiddenSize;
+      for (int b = 0; b < count; ++b) {
+        int base = b * hiddenSize;
+        float score = 0.0f;
+        for (int j = 0; j < hiddenSize; ++j)
+          score += W2.get(weightRow + j) * hidden[base + j];
+        scores[b * numLabels + i] = score;
+      }
+    }
+  }
+
+  /** Number of output units, which is the width of each row of scores. */
+  int numLabels() {
+    return numLabels;
+  }
+
+  int numEmbeddings() {
+    return numEmbeddings;
+  }
+
+  int embeddingSize() {
+    return embeddingSize;
+  }
+
+  int hiddenSize() {
+    return hiddenSize;
+  }
+
+  int numTokens() {
+    return numTokens;
+  }
+
+  /** The feature IDs with precomputed hidden layer contributions, in the order they are stored. */
+  int[] preComputed() {
+    return preComputed;
+  }
+
+}
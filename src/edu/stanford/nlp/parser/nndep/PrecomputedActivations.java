@@ -0,0 +1,124 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * A lazily filled table of precomputed hidden layer contributions, the
+ * shared alternative to {@link Classifier}'s eagerly computed table.
+ * <br>
+ * Each row holds the hidden layer contribution of one input feature,
+ * that is, one (token ID, position) pair. The table only has room for
+ * the features the model lists as worth precomputing, so it never grows
+ * larger than the eager table would be, but a row is only computed the
+ * first time a sentence needs it. Loading a model therefore costs
+ * nothing up front, and features which never occur take no memory.
+ * <br>
+ * Parsers which load the same model share one table through
+ * {@link #forModel}; it is safe to use from any number of threads.
+ * A table is dropped once no parser refers to it any more.
+ */
+public class PrecomputedActivations {
+
+  /** Tables in use, keyed by model, its file's size and time, and number of precomputed features */
+  private static final Map<String, WeakReference<PrecomputedActivations>> SHARED = new HashMap<>();
+
+  private final AtomicReferenceArray<double[]> rows;
+  private final AtomicInteger filled = new AtomicInteger();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Build an unshared table.
+   *
+   * @param capacity Number of features which may be precomputed
+   */
+  public PrecomputedActivations(int capacity) {
+    rows = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Return the table shared by all parsers which loaded the given model
+   * with the same number of precomputed features, creating it if needed.
+   * If {@code model} names a file, its size and modification time are part
+   * of the key, so a model rewritten at the same path gets a new table
+   * rather than the rows computed from the old weights.
+   *
+   * @param model Identifies the model, usually the path it was loaded from
+   * @param capacity Number of features which may be precomputed
+   */
+  public static PrecomputedActivations forModel(String model, int capacity) {
+    String key = model + '#' + capacity;
+    File file = new File(model);
+    if (file.isFile()) {
+      key += "#" + file.length() + '#' + file.lastModified();
+    }
+    synchronized (SHARED) {
+      WeakReference<PrecomputedActivations> ref = SHARED.get(key);
+      PrecomputedActivations table = (ref == null) ? null : ref.get();
+      if (table == null) {
+        table = new PrecomputedActivations(capacity);
+        SHARED.put(key, new WeakReference<>(table));
+        SHARED.values().removeIf(r -> r.get() == null);
+      }
+      return table;
+    }
+  }
+
+  /**
+   * Return the row for the precomputed feature with the given index,
+   * computing it with {@code compute} if this is its first use.
+   * All parsers sharing the table must compute identical rows.
+   *
+   * @param id Index of the feature among the precomputed features
+   * @param compute Computes the row for the given index
+   */
+  double[] get(int id, IntFunction<double[]> compute) {
+    double[] row = rows.get(id);
+    if (row != null) {
+      hits.increment();
+      return row;
+    }
+    misses.increment();
+    row = compute.apply(id);
+    if (rows.compareAndSet(id, null, row)) {
+      filled.incrementAndGet();
+      return row;
+    }
+    // another thread got there first; use its copy so only one is kept
+    return rows.get(id);
+  }
+
+  /** The number of lookups which found their row already computed. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** The number of lookups which had to compute their row. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** The number of rows computed so far. */
+  public int size() {
+    return filled.get();
+  }
+
+  /** The number of rows the table has room for. */
+  public int capacity() {
+    return rows.length();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PrecomputedActivations[%d/%d rows, %d hits, %d misses]",
+        size(), capacity(), hits(), misses());
+  }
+
+}
@@ -1,6 +1,7 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -116,6 +117,22 @@ public abstract class BaseModel implements Serializable {
 
   public abstract Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints);
 
+  /**
+   * Finds the highest scoring transitions for each of several states,
+   * exactly as {@link #findHighestScoringTransitions(State, boolean, int, List)}
+   * would for each state on its own.  Models which can score a batch
+   * of states more cheaply than one at a time should override this.
+   *
+   * @param constraints The constraints for each state, in the same order as the states, or null if there are none
+   */
+  public List<Collection<ScoredObject<Integer>>> findHighestScoringTransitions(List<State> states, boolean requireLegal, int numTransitions, List<List<ParserConstraint>> constraints) {
+    List<Collection<ScoredObject<Integer>>> transitions = new ArrayList<>(states.size());
+    for (int i = 0; i < states.size(); ++i) {
+      transitions.add(findHighestScoringTransitions(states.get(i), requireLegal, numTransitions, constraints == null ? null : constraints.get(i)));
+    }
+    return transitions;
+  }
+
   /**
    * Train a new model.  This is the method to override for new models
    * such that the ShiftReduceParser will fill in the model.  Given a
@@ -8,75 +8,123 @@ import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.TreeShapedStack;
 
 public class BasicFeatureFactory extends FeatureFactory {
+  /*
+   * Each feature helper below comes in two versions: the one taking a
+   * List<String> adds the feature strings to the list, for feature
+   * factories written against it, and the one taking a FeatureSink
+   * hands the features to the sink part by part.
+   */
   public static void addUnaryStackFeatures(List<String> features, CoreLabel label, String conFeature, String wordTagFeature, String tagFeature, String wordConFeature, String tagConFeature) {
+    addUnaryStackFeatures(FeatureSink.forList(features), label, conFeature, wordTagFeature, tagFeature, wordConFeature, tagConFeature);
+  }
+
+  public static void addUnaryStackFeatures(FeatureSink features, CoreLabel label, String conFeature, String wordTagFeature, String tagFeature, String wordConFeature, String tagConFeature) {
     if (label == null) {
-      features.add(conFeature + NULL);
+      features.append(conFeature).append(NULL).end();
       return;
     }
     String constituent = getFeatureFromCoreLabel(label, FeatureComponent.VALUE);
     String tag = getFeatureFromCoreLabel(label, FeatureComponent.HEADTAG);
     String word = getFeatureFromCoreLabel(label, FeatureComponent.HEADWORD);
 
-    features.add(conFeature + constituent);
-    features.add(wordTagFeature + word + "-" + tag);
-    features.add(tagFeature + tag);
-    features.add(wordConFeature + word + "-" + constituent);
-    features.add(tagConFeature + tag + "-" + constituent);
+    features.append(conFeature).append(constituent).end();
+    features.append(wordTagFeature).append(word).append("-").append(tag).end();
+    features.append(tagFeature).append(tag).end();
+    features.append(wordConFeature).append(word).append("-").append(constituent).end();
+    features.append(tagConFeature).append(tag).append("-").append(constituent).end();
   }
 
   public static void addUnaryQueueFeatures(List<String> features, CoreLabel label, String wtFeature) {
+    addUnaryQueueFeatures(FeatureSink.forList(features), label, wtFeature);
+  }
+
+  public static void addUnaryQueueFeatures(FeatureSink features, CoreLabel label, String wtFeature) {
     if (label == null) {
-      features.add(wtFeature + NULL);
+      features.append(wtFeature).append(NULL).end();
       return;
     }
     String tag = label.get(TreeCoreAnnotations.HeadTagLabelAnnotation.class).value();
     String word = label.get(TreeCoreAnnotations.HeadWordLabelAnnotation.class).value();
 
     // TODO: check to see if this is slow because of the string concat
-    features.add(wtFeature + tag + "-" + word);
+    features.append(wtFeature).append(tag).append("-").append(word).end();
   }
 
   public static void addBinaryFeatures(List<String> features,
                                        String name1, CoreLabel label1, FeatureComponent feature11, FeatureComponent feature12,
                                        String name2, CoreLabel label2, FeatureComponent feature21, FeatureComponent feature22) {
+    addBinaryFeatures(FeatureSink.forList(features), name1, label1, feature11, feature12, name2, label2, feature21, feature22);
+  }
+
+  public static void addBinaryFeatures(FeatureSink features,
+                                       String name1, CoreLabel label1, FeatureComponent feature11, FeatureComponent feature12,
+                                       String name2, CoreLabel label2, FeatureComponent feature21, FeatureComponent feature22) {
+    // the feature names are appended piece by piece rather than
+    // concatenated, so a hashing FeatureSink never builds them
     if (label1 == null) {
       if (label2 == null) {
-        features.add(name1 + "n" + name2 + "n");
+        features.append(name1).append("n").append(name2).append("n").end();
       } else {
-        addUnaryFeature(features, name1 + "n" + name2 + feature21.shortName() + "-", label2, feature21);
-        addUnaryFeature(features, name1 + "n" + name2 + feature22.shortName() + "-", label2, feature22);
+        endUnaryFeature(features.append(name1).append("n").append(name2).append(feature21.shortName()).append("-"), label2, feature21);
+        endUnaryFeature(features.append(name1).append("n").append(name2).append(feature22.shortName()).append("-"), label2, feature22);
       }
     } else if (label2 == null) {
-      addUnaryFeature(features, name1 + feature11.shortName() + name2 + "n-", label1, feature11);
-      addUnaryFeature(features, name1 + feature12.shortName() + name2 + "n-", label1, feature12);
+      endUnaryFeature(features.append(name1).append(feature11.shortName()).append(name2).append("n-"), label1, feature11);
+      endUnaryFeature(features.append(name1).append(feature12.shortName()).append(name2).append("n-"), label1, feature12);
     } else {
-      addBinaryFeature(features, name1 + feature11.shortName() + name2 + feature21.shortName() + "-", label1, feature11, label2, feature21);
-      addBinaryFeature(features, name1 + feature11.shortName() + name2 + feature22.shortName() + "-", label1, feature11, label2, feature22);
-      addBinaryFeature(features, name1 + feature12.shortName() + name2 + feature21.shortName() + "-", label1, feature12, label2, feature21);
-      addBinaryFeature(features, name1 + feature12.shortName() + name2 + feature22.shortName() + "-", label1, feature12, label2, feature22);
+      endBinaryFeature(features.append(name1).append(feature11.shortName()).append(name2).append(feature21.shortName()).append("-"), label1, feature11, label2, feature21);
+      endBinaryFeature(features.append(name1).append(feature11.shortName()).append(name2).append(feature22.shortName()).append("-"), label1, feature11, label2, feature22);
+      endBinaryFeature(features.append(name1).append(feature12.shortName()).append(name2).append(feature21.shortName()).append("-"), label1, feature12, label2, feature21);
+      endBinaryFeature(features.append(name1).append(feature12.shortName()).append(name2).append(feature22.shortName()).append("-"), label1, feature12, label2, feature22);
     }
   }
 
   public static void addUnaryFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature) {
+    addUnaryFeature(FeatureSink.forList(features), featureType, label, feature);
+  }
+
+  public static void addUnaryFeature(FeatureSink features, String featureType, CoreLabel label, FeatureComponent feature) {
+    endUnaryFeature(features.append(featureType), label, feature);
+  }
+
+  /** Finishes a feature whose name has already been appended to {@code features} */
+  private static void endUnaryFeature(FeatureSink features, CoreLabel label, FeatureComponent feature) {
     String value = getFeatureFromCoreLabel(label, feature);
-    features.add(featureType + value);
+    features.append(value).end();
   }
 
   public static void addBinaryFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
+    addBinaryFeature(FeatureSink.forList(features), featureType, label1, feature1, label2, feature2);
+  }
+
+  public static void addBinaryFeature(FeatureSink features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
+    endBinaryFeature(features.append(featureType), label1, feature1, label2, feature2);
+  }
+
+  /** Finishes a feature whose name has already been appended to {@code features} */
+  private static void endBinaryFeature(FeatureSink features, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
-    features.add(featureType + value1 + "-" + value2);
+    features.append(value1).append("-").append(value2).end();
   }
 
   public static void addTrigramFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, CoreLabel label3, FeatureComponent feature3) {
+    addTrigramFeature(FeatureSink.forList(features), featureType, label1, feature1, label2, feature2, label3, feature3);
+  }
+
+  public static void addTrigramFeature(FeatureSink features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, CoreLabel label3, FeatureComponent feature3) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
     String value3 = getFeatureFromCoreLabel(label3, feature3);
 
-    features.add(featureType + value1 + "-" + value2 + "-" + value3);
+    features.append(featureType).append(value1).append("-").append(value2).append("-").append(value3).end();
   }
 
   public static void addPositionFeatures(List<String> features, State state) {
+    addPositionFeatures(FeatureSink.forList(features), state);
+  }
+
+  public static void addPositionFeatures(FeatureSink features, State state) {
     if (state.tokenPosition >= state.sentence.size()) {
       features.add("QUEUE_FINISHED");
     }
@@ -86,59 +134,85 @@ public class BasicFeatureFactory extends FeatureFactory {
   }
 
   public static void addSeparatorFeature(List<String> features, String featureType, State.HeadPosition separator) {
+    addSeparatorFeature(FeatureSink.forList(features), featureType, separator);
+  }
+
+  public static void addSeparatorFeature(FeatureSink features, String featureType, State.HeadPosition separator) {
     if (separator == null) {
       return;
     }
-    features.add(featureType + separator);
+    features.append(featureType).append(String.valueOf(separator)).end();
   }
 
   public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature, State.HeadPosition separator) {
+    addSeparatorFeature(FeatureSink.forList(features), featureType, label, feature, separator);
+  }
+
+  public static void addSeparatorFeature(FeatureSink features, String featureType, CoreLabel label, FeatureComponent feature, State.HeadPosition separator) {
     if (separator == null) {
       return;
     }
 
     String value = getFeatureFromCoreLabel(label, feature);
 
-    features.add(featureType + value + "-" + separator);
+    features.append(featureType).append(value).append("-").append(String.valueOf(separator)).end();
   }
 
   public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label, FeatureComponent feature, boolean between) {
+    addSeparatorFeature(FeatureSink.forList(features), featureType, label, feature, between);
+  }
+
+  public static void addSeparatorFeature(FeatureSink features, String featureType, CoreLabel label, FeatureComponent feature, boolean between) {
     String value = getFeatureFromCoreLabel(label, feature);
 
-    features.add(featureType + value + "-" + between);
+    features.append(featureType).append(value).append("-").append(String.valueOf(between)).end();
   }
 
   public static void addSeparatorFeature(List<String> features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, boolean between) {
+    addSeparatorFeature(FeatureSink.forList(features), featureType, label1, feature1, label2, feature2, between);
+  }
+
+  public static void addSeparatorFeature(FeatureSink features, String featureType, CoreLabel label1, FeatureComponent feature1, CoreLabel label2, FeatureComponent feature2, boolean between) {
     String value1 = getFeatureFromCoreLabel(label1, feature1);
     String value2 = getFeatureFromCoreLabel(label2, feature2);
 
-    features.add(featureType + value1 + "-" + value2 + "-" + between);
+    features.append(featureType).append(value1).append("-").append(value2).append("-").append(String.valueOf(between)).end();
   }
 
   public static void addSeparatorFeatures(List<String> features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorBetween, int countBetween) {
+    addSeparatorFeatures(FeatureSink.forList(features), name1, label1, name2, label2, separatorBetween, countBetween);
+  }
+
+  public static void addSeparatorFeatures(FeatureSink features, String name1, CoreLabel label1, String name2, CoreLabel label2, String separatorBetween, int countBetween) {
     if (label1 == null || label2 == null) {
       return;
     }
 
     // 0 separators is captured by the countBetween features
     if (separatorBetween != null) {
-      String separatorBetweenName = "Sepb" + name1 + name2 + "-" + separatorBetween + "-";
-      addUnaryFeature(features, name1 + "w" + separatorBetweenName, label1, FeatureComponent.HEADWORD);
-      addBinaryFeature(features, name1 + "wc" + separatorBetweenName, label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
-      addUnaryFeature(features, name2 + "w" + separatorBetweenName, label2, FeatureComponent.HEADWORD);
-      addBinaryFeature(features, name2 + "wc" + separatorBetweenName, label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
-      addBinaryFeature(features, name1 + "c" + name2 + "c" + separatorBetweenName, label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+      addSeparatorBetweenFeatures(features, name1, label1, name2, label2, separatorBetween);
     }
 
-    String countBetweenName = "Sepb" + name1 + name2 + "-" + countBetween + "-";
-    addUnaryFeature(features, name1 + "w" + countBetweenName, label1, FeatureComponent.HEADWORD);
-    addBinaryFeature(features, name1 + "wc" + countBetweenName, label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
-    addUnaryFeature(features, name2 + "w" + countBetweenName, label2, FeatureComponent.HEADWORD);
-    addBinaryFeature(features, name2 + "wc" + countBetweenName, label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
-    addBinaryFeature(features, name1 + "c" + name2 + "c" + countBetweenName, label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+    addSeparatorBetweenFeatures(features, name1, label1, name2, label2, Integer.toString(countBetween));
+  }
+
+  private static void addSeparatorBetweenFeatures(FeatureSink features, String name1, CoreLabel label1, String name2, CoreLabel label2, String between) {
+    endUnaryFeature(appendSeparatorBetweenName(features.append(name1).append("w"), name1, name2, between), label1, FeatureComponent.HEADWORD);
+    endBinaryFeature(appendSeparatorBetweenName(features.append(name1).append("wc"), name1, name2, between), label1, FeatureComponent.HEADWORD, label1, FeatureComponent.VALUE);
+    endUnaryFeature(appendSeparatorBetweenName(features.append(name2).append("w"), name1, name2, between), label2, FeatureComponent.HEADWORD);
+    endBinaryFeature(appendSeparatorBetweenName(features.append(name2).append("wc"), name1, name2, between), label2, FeatureComponent.HEADWORD, label2, FeatureComponent.VALUE);
+    endBinaryFeature(appendSeparatorBetweenName(features.append(name1).append("c").append(name2).append("c"), name1, name2, between), label1, FeatureComponent.VALUE, label2, FeatureComponent.VALUE);
+  }
+
+  private static FeatureSink appendSeparatorBetweenName(FeatureSink features, String name1, String name2, String between) {
+    return features.append("Sepb").append(name1).append(name2).append("-").append(between).append("-");
   }
 
   public static void addSeparatorFeatures(List<String> features, CoreLabel s0Label, CoreLabel s1Label, State.HeadPosition s0Separator, State.HeadPosition s1Separator) {
+    addSeparatorFeatures(FeatureSink.forList(features), s0Label, s1Label, s0Separator, s1Separator);
+  }
+
+  public static void addSeparatorFeatures(FeatureSink features, CoreLabel s0Label, CoreLabel s1Label, State.HeadPosition s0Separator, State.HeadPosition s1Separator) {
     boolean between = false;
     if ((s0Separator != null && (s0Separator == State.HeadPosition.BOTH || s0Separator == State.HeadPosition.LEFT)) ||
         (s1Separator != null && (s1Separator == State.HeadPosition.BOTH || s1Separator == State.HeadPosition.RIGHT))) {
@@ -183,6 +257,10 @@ public class BasicFeatureFactory extends FeatureFactory {
    * tree.  However, it seems somewhat slow and doesn't help accuracy.
    */
   public void addEdgeFeatures(List<String> features, State state, String nodeName, String neighborName, Tree node, Tree neighbor) {
+    addEdgeFeatures(FeatureSink.forList(features), state, nodeName, neighborName, node, neighbor);
+  }
+
+  public void addEdgeFeatures(FeatureSink features, State state, String nodeName, String neighborName, Tree node, Tree neighbor) {
     if (node == null) {
       return;
     }
@@ -192,7 +270,7 @@ public class BasicFeatureFactory extends FeatureFactory {
 
     // Trees of size one are already featurized
     if (right == left) {
-      features.add(nodeName + "SZ1");
+      features.append(nodeName).append("SZ1").end();
       return;
     }
 
@@ -204,23 +282,27 @@ public class BasicFeatureFactory extends FeatureFactory {
     }
 
     if (right - left == 1) {
-      features.add(nodeName + "SZ2");
+      features.append(nodeName).append("SZ2").end();
       return;
     }
 
     if (right - left == 2) {
-      features.add(nodeName + "SZ3");
+      features.append(nodeName).append("SZ3").end();
       addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(left + 1)), nodeName + "EM-");
       return;
     }
 
-    features.add(nodeName + "SZB");
+    features.append(nodeName).append("SZB").end();
     addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(left + 1)), nodeName + "El-");
     addUnaryQueueFeatures(features, getCoreLabel(state.sentence.get(right - 1)), nodeName + "Er-");
   }
 
   /** This option also does not seem to help */
   public void addEdgeFeatures2(List<String> features, State state, String nodeName, Tree node) {
+    addEdgeFeatures2(FeatureSink.forList(features), state, nodeName, node);
+  }
+
+  public void addEdgeFeatures2(FeatureSink features, State state, String nodeName, Tree node) {
     if (node == null) {
       return;
     }
@@ -247,6 +329,10 @@ public class BasicFeatureFactory extends FeatureFactory {
    * Also did not seem to help
    */
   public void addExtraTrigramFeatures(List<String> features, CoreLabel s0Label, CoreLabel s1Label, CoreLabel s2Label, CoreLabel q0Label, CoreLabel q1Label) {
+    addExtraTrigramFeatures(FeatureSink.forList(features), s0Label, s1Label, s2Label, q0Label, q1Label);
+  }
+
+  public void addExtraTrigramFeatures(FeatureSink features, CoreLabel s0Label, CoreLabel s1Label, CoreLabel s2Label, CoreLabel q0Label, CoreLabel q1Label) {
     addTrigramFeature(features, "S0wS1wS2c-", s0Label, FeatureComponent.HEADWORD, s1Label, FeatureComponent.HEADWORD, s2Label, FeatureComponent.VALUE);
     addTrigramFeature(features, "S0wS1cS2w-", s0Label, FeatureComponent.HEADWORD, s1Label, FeatureComponent.VALUE, s2Label, FeatureComponent.HEADWORD);
     addTrigramFeature(features, "S0cS1wS2w-", s0Label, FeatureComponent.VALUE, s1Label, FeatureComponent.HEADWORD, s2Label, FeatureComponent.HEADWORD);
@@ -266,6 +352,12 @@ public class BasicFeatureFactory extends FeatureFactory {
 
   @Override
   public List<String> featurize(State state, List<String> features) {
+    featurize(state, FeatureSink.forList(features));
+    return features;
+  }
+
+  @Override
+  public void featurize(State state, FeatureSink features) {
     final TreeShapedStack<Tree> stack = state.stack;
     final List<Tree> sentence = state.sentence;
     final int tokenPosition = state.tokenPosition;
@@ -376,8 +468,6 @@ public class BasicFeatureFactory extends FeatureFactory {
     Tree q0Node = state.getQueueNode(0);
     addSeparatorFeatures(features, "S0", s0Label, "S1", s1Label, state.getSeparatorBetween(s0Node, s1Node), state.getSeparatorCount(s0Node, s1Node));
     addSeparatorFeatures(features, "S0", s0Label, "Q0", q0Label, state.getSeparatorBetween(q0Node, s0Node), state.getSeparatorCount(q0Node, s0Node));
-
-    return features;
   }
 
   private static final long serialVersionUID = 1;
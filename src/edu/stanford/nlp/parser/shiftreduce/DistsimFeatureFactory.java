@@ -23,6 +23,10 @@ public class DistsimFeatureFactory extends FeatureFactory {
   }
 
   public void addDistsimFeatures(List<String> features, CoreLabel label, String featureName) {
+    addDistsimFeatures(FeatureSink.forList(features), label, featureName);
+  }
+
+  public void addDistsimFeatures(FeatureSink features, CoreLabel label, String featureName) {
     if (label == null) {
       return;
     }
@@ -32,12 +36,18 @@ public class DistsimFeatureFactory extends FeatureFactory {
 
     String cluster = distsim.getMapping(word);
 
-    features.add(featureName + "dis-" + cluster);
-    features.add(featureName + "disT-" + cluster + "-" + tag);
+    features.append(featureName).append("dis-").append(cluster).end();
+    features.append(featureName).append("disT-").append(cluster).append("-").append(tag).end();
   }
 
   @Override
   public List<String> featurize(State state, List<String> features) {
+    featurize(state, FeatureSink.forList(features));
+    return features;
+  }
+
+  @Override
+  public void featurize(State state, FeatureSink features) {
     CoreLabel s0Label = getStackLabel(state.stack, 0); // current top of stack
     CoreLabel s1Label = getStackLabel(state.stack, 1); // one previous
     CoreLabel q0Label = getQueueLabel(state.sentence, state.tokenPosition, 0); // current location in queue
@@ -45,8 +55,6 @@ public class DistsimFeatureFactory extends FeatureFactory {
     addDistsimFeatures(features, s0Label, "S0");
     addDistsimFeatures(features, s1Label, "S1");
     addDistsimFeatures(features, q0Label, "Q0");
-
-    return features;
   }
 
   private static final long serialVersionUID = -396152777907151063L;
@@ -16,6 +16,19 @@ public abstract class FeatureFactory implements Serializable {
 
   abstract public List<String> featurize(State state, List<String> features);
 
+  /**
+   * Featurize the state into a {@link FeatureSink}, such as
+   * {@link HashedFeatures}, which may not need the features as strings.
+   * The default implementation builds the strings; factories which
+   * can hand over their features one part at a time should override
+   * this so that parsing never builds them.
+   */
+  public void featurize(State state, FeatureSink features) {
+    for (String feature : featurize(state)) {
+      features.add(feature);
+    }
+  }
+
   enum Transition {
     LEFT, RIGHT, UNARY
   };
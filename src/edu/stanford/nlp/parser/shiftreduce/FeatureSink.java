@@ -0,0 +1,59 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.List;
+
+/**
+ * Receives the features of a state from a {@link FeatureFactory}.
+ * <br>
+ * A feature is given one part at a time: it is the concatenation of
+ * the parts passed to {@link #append} before the call to
+ * {@link #end}.  This lets a sink which only needs a hash of each
+ * feature, such as {@link HashedFeatures}, skip building the feature
+ * strings altogether, while {@link #forList} still produces exactly
+ * the strings the model was trained on.
+ */
+public abstract class FeatureSink {
+  /** Append the next part of the current feature.  A null part is treated as "null", just like string concatenation. */
+  public abstract FeatureSink append(String part);
+
+  /** Finish the current feature. */
+  public abstract void end();
+
+  /** Add a feature which is already a complete string. */
+  public void add(String feature) {
+    append(feature).end();
+  }
+
+  /**
+   * Returns a sink which adds each feature as a String to the given list.
+   */
+  public static FeatureSink forList(List<String> features) {
+    return new StringFeatureSink(features);
+  }
+
+  private static class StringFeatureSink extends FeatureSink {
+    private final List<String> features;
+    private final StringBuilder current = new StringBuilder();
+
+    StringFeatureSink(List<String> features) {
+      this.features = features;
+    }
+
+    @Override
+    public FeatureSink append(String part) {
+      current.append(part);
+      return this;
+    }
+
+    @Override
+    public void end() {
+      features.add(current.toString());
+      current.setLength(0);
+    }
+
+    @Override
+    public void add(String feature) {
+      features.add(feature);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Map;
+
+/**
+ * A read-only version of the feature weights of a {@link PerceptronModel}
+ * keyed by the 64-bit feature keys of {@link HashedFeatures} rather than
+ * by feature strings.
+ * <br>
+ * The keys live in an open-addressing table of primitive longs, and
+ * the packed (transition, score) entries of all the {@link Weight}
+ * rows are laid end to end in one long array, so scoring a state
+ * touches no objects besides the arrays themselves.  The rows keep
+ * the order of their entries, so scores are summed in the same order
+ * as with the original weights.
+ * <br>
+ * The table only knows the keys, not the strings.  Collisions between
+ * two model features are caught when the table is built, but a state
+ * feature the model has never seen which happens to share the 64-bit
+ * key of a model feature will be scored with that feature's weights.
+ * With random 64-bit keys the chance of that is about the number of
+ * model features divided by 2^64 per state feature, so scores match
+ * the string path in practice but not by construction.
+ */
+public class FeatureWeightTable {
+  private final long[] keys;
+  /** Start and end of the row for each slot in {@link #packed}; an empty slot has an end of 0 */
+  private final int[] rowStart;
+  private final int[] rowEnd;
+  private final long[] packed;
+  private final int mask;
+  private final int size;
+
+  private FeatureWeightTable(long[] keys, int[] rowStart, int[] rowEnd, long[] packed, int size) {
+    this.keys = keys;
+    this.rowStart = rowStart;
+    this.rowEnd = rowEnd;
+    this.packed = packed;
+    this.mask = keys.length - 1;
+    this.size = size;
+  }
+
+  /**
+   * Build the table for the given feature weights.  Features with no
+   * weights are left out.  Returns null if two different features
+   * would get the same key, in which case the caller should keep
+   * using the feature strings.
+   */
+  public static FeatureWeightTable build(Map<String, Weight> featureWeights) {
+    int capacity = 2;
+    while (capacity < featureWeights.size() * 2) {
+      capacity <<= 1;
+    }
+    long[] keys = new long[capacity];
+    int[] rowStart = new int[capacity];
+    int[] rowEnd = new int[capacity];
+
+    int total = 0;
+    for (Weight weight : featureWeights.values()) {
+      total += weight.size();
+    }
+    long[] packed = new long[total];
+
+    int mask = capacity - 1;
+    int next = 0;
+    int size = 0;
+    for (Map.Entry<String, Weight> entry : featureWeights.entrySet()) {
+      Weight weight = entry.getValue();
+      if (weight.size() == 0) {
+        continue;
+      }
+      long key = HashedFeatures.key(entry.getKey());
+      int slot = slot(key, mask);
+      while (rowEnd[slot] != 0) {
+        if (keys[slot] == key) {
+          return null;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      rowStart[slot] = next;
+      next = weight.copyPacked(packed, next);
+      rowEnd[slot] = next;
+      ++size;
+    }
+    return new FeatureWeightTable(keys, rowStart, rowEnd, packed, size);
+  }
+
+  private static int slot(long key, int mask) {
+    // the low bits of an FNV hash are not well mixed, so finish them with the murmur3 finalizer
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+  /**
+   * Add the weights of the feature with the given key to the
+   * transition scores.  Unknown features are ignored.
+   */
+  public void score(long key, float[] scores) {
+    score(key, scores, 0);
+  }
+
+  /**
+   * Add the weights of the feature with the given key to the
+   * transition scores which start at {@code offset} in {@code scores}.
+   */
+  public void score(long key, float[] scores, int offset) {
+    int slot = slot(key, mask);
+    int end;
+    while ((end = rowEnd[slot]) != 0) {
+      if (keys[slot] == key) {
+        for (int i = rowStart[slot]; i < end; ++i) {
+          final long pack = packed[i];
+          scores[offset + (int) (pack >>> 32)] += Float.intBitsToFloat((int) (pack & 0xFFFFFFFF));
+        }
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** The number of features in the table. */
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,79 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import java.util.Arrays;
+
+/**
+ * Collects the features of a state as 64-bit keys instead of strings.
+ * <br>
+ * The key of a feature is a 64-bit FNV-1a hash of its characters.
+ * Since the hash is computed one character at a time, appending the
+ * parts of a feature in turn gives the same key as hashing the whole
+ * feature string, so {@link FeatureWeightTable} can be built from the
+ * feature strings of a trained model and then be queried with keys
+ * computed without ever building those strings.
+ */
+public class HashedFeatures extends FeatureSink {
+  private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long PRIME = 0x100000001b3L;
+
+  private long[] keys;
+  private int size;
+  private long current = OFFSET_BASIS;
+
+  public HashedFeatures() {
+    this(200);
+  }
+
+  public HashedFeatures(int initialCapacity) {
+    keys = new long[Math.max(initialCapacity, 1)];
+  }
+
+  /** Continue the hash {@code hash} with the characters of {@code part}. */
+  static long hash(long hash, String part) {
+    if (part == null) {
+      part = "null";
+    }
+    for (int i = 0, length = part.length(); i < length; ++i) {
+      hash ^= part.charAt(i);
+      hash *= PRIME;
+    }
+    return hash;
+  }
+
+  /** The key of a complete feature string. */
+  public static long key(String feature) {
+    return hash(OFFSET_BASIS, feature);
+  }
+
+  @Override
+  public FeatureSink append(String part) {
+    current = hash(current, part);
+    return this;
+  }
+
+  @Override
+  public void end() {
+    if (size == keys.length) {
+      keys = Arrays.copyOf(keys, size * 2);
+    }
+    keys[size++] = current;
+    current = OFFSET_BASIS;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long get(int i) {
+    if (i >= size) {
+      throw new ArrayIndexOutOfBoundsException(i);
+    }
+    return keys[i];
+  }
+
+  /** Forget all features collected so far, keeping the allocated space. */
+  public void clear() {
+    size = 0;
+    current = OFFSET_BASIS;
+  }
+}
@@ -1,7 +1,11 @@
 package edu.stanford.nlp.parser.shiftreduce;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -43,6 +47,22 @@ public class PerceptronModel extends BaseModel  {
   Map<String, Weight> featureWeights;
   final FeatureFactory featureFactory;
 
+  /**
+   * The same weights as {@link #featureWeights}, keyed by hashed
+   * features.  Built once training is over or the model is loaded;
+   * while it is null, states are scored using the feature strings.
+   */
+  private transient volatile FeatureWeightTable featureIndex;
+
+  /** Buffers reused by each thread when scoring a batch of states */
+  private static class BatchBuffers {
+    final HashedFeatures features = new HashedFeatures(4096);
+    int[] featureEnds = new int[64];
+    float[] scores = new float[1024];
+  }
+
+  private static final ThreadLocal<BatchBuffers> batchBuffers = ThreadLocal.withInitial(BatchBuffers::new);
+
   public PerceptronModel(ShiftReduceOptions op, Index<Transition> transitionIndex,
                          Set<String> knownStates, Set<String> rootStates, Set<String> rootOnlyStates) {
     super(op, transitionIndex, knownStates, rootStates, rootOnlyStates);
@@ -106,6 +126,7 @@ public class PerceptronModel extends BaseModel  {
       }
     }
 
+    featureIndex = null;
     featureWeights = Generics.newHashMap();
     for (String feature : features) {
       featureWeights.put(feature, new Weight());
@@ -149,6 +170,25 @@ public class PerceptronModel extends BaseModel  {
   }
 
 
+  /**
+   * Convert the feature weights to a {@link FeatureWeightTable}, which
+   * is then used to score states without building feature strings.
+   * If two features of the model happen to hash to the same key, the
+   * model keeps scoring with the feature strings instead.
+   */
+  void buildFeatureIndex() {
+    FeatureWeightTable index = FeatureWeightTable.build(featureWeights);
+    if (index == null) {
+      log.info("Feature hash collision; scoring with feature strings");
+    }
+    featureIndex = index;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    buildFeatureIndex();
+  }
+
   /**
    * Output some random facts about the model
    */
@@ -205,8 +245,65 @@ public class PerceptronModel extends BaseModel  {
 
   @Override
   public Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
-    List<String> features = featureFactory.featurize(state);
-    return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
+    FeatureWeightTable index = featureIndex;
+    if (index == null) {
+      List<String> features = featureFactory.featurize(state);
+      return findHighestScoringTransitions(state, features, requireLegal, numTransitions, constraints);
+    }
+
+    HashedFeatures features = new HashedFeatures();
+    featureFactory.featurize(state, features);
+    float[] scores = new float[transitionIndex.size()];
+    for (int i = 0; i < features.size(); ++i) {
+      index.score(features.get(i), scores);
+    }
+    return findHighestScoringTransitions(state, scores, 0, requireLegal, numTransitions, constraints);
+  }
+
+  /**
+   * Scores all of the states in one pass: the hashed features of every
+   * state are collected into one reused buffer, then looked up in the
+   * weight table into one reused block of scores.
+   */
+  @Override
+  public List<Collection<ScoredObject<Integer>>> findHighestScoringTransitions(List<State> states, boolean requireLegal, int numTransitions, List<List<ParserConstraint>> constraints) {
+    FeatureWeightTable index = featureIndex;
+    if (index == null) {
+      return super.findHighestScoringTransitions(states, requireLegal, numTransitions, constraints);
+    }
+
+    final int numStates = states.size();
+    final int numScores = transitionIndex.size();
+    BatchBuffers buffers = batchBuffers.get();
+    if (buffers.featureEnds.length < numStates) {
+      buffers.featureEnds = new int[numStates * 2];
+    }
+    if (buffers.scores.length < numStates * numScores) {
+      buffers.scores = new float[numStates * numScores * 2];
+    }
+    HashedFeatures features = buffers.features;
+    int[] featureEnds = buffers.featureEnds;
+    float[] scores = buffers.scores;
+
+    features.clear();
+    for (int i = 0; i < numStates; ++i) {
+      featureFactory.featurize(states.get(i), features);
+      featureEnds[i] = features.size();
+    }
+
+    Arrays.fill(scores, 0, numStates * numScores, 0.0f);
+    for (int i = 0, feature = 0; i < numStates; ++i) {
+      int offset = i * numScores;
+      for (; feature < featureEnds[i]; ++feature) {
+        index.score(features.get(feature), scores, offset);
+      }
+    }
+
+    List<Collection<ScoredObject<Integer>>> transitions = new ArrayList<>(numStates);
+    for (int i = 0; i < numStates; ++i) {
+      transitions.add(findHighestScoringTransitions(states.get(i), scores, i * numScores, requireLegal, numTransitions, constraints == null ? null : constraints.get(i)));
+    }
+    return transitions;
   }
 
   private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, List<String> features, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
@@ -219,11 +316,15 @@ public class PerceptronModel extends BaseModel  {
       }
       weight.score(scores);
     }
+    return findHighestScoringTransitions(state, scores, 0, requireLegal, numTransitions, constraints);
+  }
 
+  /** Picks the best transitions given the scores for each transition, which start at {@code offset} */
+  private Collection<ScoredObject<Integer>> findHighestScoringTransitions(State state, float[] scores, int offset, boolean requireLegal, int numTransitions, List<ParserConstraint> constraints) {
     PriorityQueue<ScoredObject<Integer>> queue = new PriorityQueue<>(numTransitions + 1, ScoredComparator.ASCENDING_COMPARATOR);
-    for (int i = 0; i < scores.length; ++i) {
+    for (int i = 0; i < transitionIndex.size(); ++i) {
       if (!requireLegal || transitionIndex.get(i).isLegal(state, constraints)) {
-        queue.add(new ScoredObject<>(i, scores[i]));
+        queue.add(new ScoredObject<>(i, scores[offset + i]));
         if (queue.size() > numTransitions) {
           queue.poll();
         }
@@ -508,6 +609,9 @@ public class PerceptronModel extends BaseModel  {
       indices.add(i);
     }
 
+    // the weights are about to change, so score with the feature strings until training is done
+    featureIndex = null;
+
     Oracle oracle = null;
     if (op.trainOptions().trainingMethod == ShiftReduceTrainOptions.TrainingMethod.ORACLE) {
       oracle = new Oracle(binarizedTrees, op.compoundUnaries, rootStates);
@@ -644,6 +748,7 @@ public class PerceptronModel extends BaseModel  {
     }
 
     condenseFeatures();
+    buildFeatureIndex();
   }
 
 
@@ -42,6 +42,7 @@ import edu.stanford.nlp.ling.Label;
 import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.parser.common.ArgUtils;
+import edu.stanford.nlp.parser.common.ParserConstraint;
 import edu.stanford.nlp.parser.common.ParserGrammar;
 import edu.stanford.nlp.parser.common.ParserQuery;
 import edu.stanford.nlp.parser.common.ParserUtils;
@@ -168,6 +169,30 @@ public class ShiftReduceParser extends ParserGrammar implements Serializable  {
     return new ShiftReduceParserQuery(this);
   }
 
+  /**
+   * Parses many sentences at once.  The beams of the sentences are
+   * advanced together, so the model scores the states of many
+   * sentences in one batch; each sentence gets the same parse as it
+   * would with {@link #parserQuery()}.
+   *
+   * @param sentences Tagged sentences to parse
+   * @param constraints The constraints for each sentence, or null if there are none
+   * @return A finished query for each sentence, in order
+   */
+  public List<ShiftReduceParserQuery> parseAll(List<? extends List<? extends HasWord>> sentences, List<List<ParserConstraint>> constraints) {
+    List<ShiftReduceParserQuery> queries = Generics.newArrayList(sentences.size());
+    for (int i = 0; i < sentences.size(); ++i) {
+      ShiftReduceParserQuery query = new ShiftReduceParserQuery(this);
+      if (constraints != null) {
+        query.setConstraints(constraints.get(i));
+      }
+      query.setSentence(sentences.get(i));
+      queries.add(query);
+    }
+    ShiftReduceParserQuery.parseTogether(this, queries);
+    return queries;
+  }
+
   @Override
   public Tree parse(String sentence) {
     if (!getOp().testOptions.preTag) {
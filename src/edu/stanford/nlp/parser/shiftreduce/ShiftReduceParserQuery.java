@@ -50,9 +50,16 @@ public class ShiftReduceParserQuery implements ParserQuery  {
 
   @Override
   public boolean parse(List<? extends HasWord> sentence) {
+    setSentence(sentence);
+    return parseInternal();
+  }
+
+  /**
+   * Sets up the sentence without parsing it yet; see {@link #parseTogether}.
+   */
+  void setSentence(List<? extends HasWord> sentence) {
     this.originalSentence = sentence;
     initialState = ShiftReduceParser.initialStateFromTaggedSentence(sentence);
-    return parseInternal();
   }
 
   public boolean parse(Tree tree) {
@@ -70,68 +77,129 @@ public class ShiftReduceParserQuery implements ParserQuery  {
     Tsurgeon.parseOperation("[move punc >-1 top] [if exists single prune single]");
 
   private boolean parseInternal() {
+    parseTogether(parser, Collections.singletonList(this));
+    return success;
+  }
+
+  /** How many sentences {@link #parseTogether} advances at once */
+  public static final int PARSE_BATCH_SIZE = 64;
+
+  /**
+   * Parses the sentences of several queries together.  Each query
+   * must already have its initial state.
+   * <br>
+   * Up to {@link #PARSE_BATCH_SIZE} sentences are parsed at a time.
+   * At each step the states on the beams of all of those sentences
+   * are scored with one call to the model, which lets the model score
+   * them as a batch, and then every beam moves forward by one
+   * transition.  When a sentence is finished, the next sentence takes
+   * its place.  Each sentence gets exactly the parse it would have
+   * gotten on its own.
+   */
+  static void parseTogether(ShiftReduceParser parser, List<ShiftReduceParserQuery> queries) {
     final int maxBeamSize = Math.max(parser.op.testOptions().beamSize, 1);
 
+    List<ShiftReduceParserQuery> active = Generics.newArrayList(PARSE_BATCH_SIZE);
+    List<State> states = Generics.newArrayList();
+    List<List<ParserConstraint>> stateConstraints = Generics.newArrayList();
+    int next = 0;
+    while (next < queries.size() || !active.isEmpty()) {
+      while (active.size() < PARSE_BATCH_SIZE && next < queries.size()) {
+        ShiftReduceParserQuery query = queries.get(next++);
+        query.startBeam(maxBeamSize);
+        active.add(query);
+      }
+
+      if (Thread.interrupted()) { // Allow interrupting the parser
+        throw new RuntimeInterruptedException();
+      }
+
+      states.clear();
+      stateConstraints.clear();
+      for (ShiftReduceParserQuery query : active) {
+        for (State state : query.beam) {
+          states.add(state);
+          stateConstraints.add(query.constraints);
+        }
+      }
+      Iterator<Collection<ScoredObject<Integer>>> predictions =
+        parser.model.findHighestScoringTransitions(states, true, maxBeamSize, stateConstraints).iterator();
+
+      Iterator<ShiftReduceParserQuery> queryIterator = active.iterator();
+      while (queryIterator.hasNext()) {
+        ShiftReduceParserQuery query = queryIterator.next();
+        if (!query.advanceBeam(predictions, maxBeamSize)) {
+          query.finishBeam();
+          queryIterator.remove();
+        }
+      }
+    }
+  }
+
+  /** The beam of a parse in progress */
+  private PriorityQueue<State> beam;
+
+  private void startBeam(int maxBeamSize) {
     success = true;
     unparsable = false;
-    PriorityQueue<State> beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+    beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
     beam.add(initialState);
-    // TODO: don't construct as many PriorityQueues
-    while (beam.size() > 0) {
-      if (Thread.interrupted()) { // Allow interrupting the parser
-        throw new RuntimeInterruptedException();
+  }
+
+  /**
+   * Moves the beam forward by one transition, given the predicted
+   * transitions for each state on the beam, in the beam's iteration
+   * order.  Returns false once the parse is over.
+   */
+  private boolean advanceBeam(Iterator<Collection<ScoredObject<Integer>>> predictions, int maxBeamSize) {
+    // log.info("================================================");
+    // log.info("Current beam:");
+    // log.info(beam);
+    PriorityQueue<State> oldBeam = beam;
+    beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
+    State bestState = null;
+    for (State state : oldBeam) {
+      Collection<ScoredObject<Integer>> predictedTransitions = predictions.next();
+      // log.info("Examining state: " + state);
+      for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
+        Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
+        State newState = transition.apply(state, predictedTransition.score());
+        // log.info("  Transition: " + transition + " (" + predictedTransition.score() + ")");
+        if (bestState == null || bestState.score() < newState.score()) {
+          bestState = newState;
+        }
+        beam.add(newState);
+        if (beam.size() > maxBeamSize) {
+          beam.poll();
+        }
       }
-      // log.info("================================================");
-      // log.info("Current beam:");
-      // log.info(beam);
-      PriorityQueue<State> oldBeam = beam;
-      beam = new PriorityQueue<>(maxBeamSize + 1, ScoredComparator.ASCENDING_COMPARATOR);
-      State bestState = null;
+    }
+    if (beam.size() == 0) {
+      // Oops, time for some fallback plan
+      // This can happen with the set of constraints given by the original paper
+      // For example, one particular French model had a situation where it would reach
+      //   @Ssub @Ssub .
+      // without a left(Ssub) transition, so finishing the parse was impossible.
+      // This will probably result in a bad parse, but at least it
+      // will result in some sort of parse.
       for (State state : oldBeam) {
-        if (Thread.interrupted()) {  // Allow interrupting the parser
-          throw new RuntimeInterruptedException();
-        }
-        Collection<ScoredObject<Integer>> predictedTransitions = parser.model.findHighestScoringTransitions(state, true, maxBeamSize, constraints);
-        // log.info("Examining state: " + state);
-        for (ScoredObject<Integer> predictedTransition : predictedTransitions) {
-          Transition transition = parser.model.transitionIndex.get(predictedTransition.object());
-          State newState = transition.apply(state, predictedTransition.score());
-          // log.info("  Transition: " + transition + " (" + predictedTransition.score() + ")");
+        Transition transition = parser.model.findEmergencyTransition(state, constraints);
+        if (transition != null) {
+          State newState = transition.apply(state);
           if (bestState == null || bestState.score() < newState.score()) {
             bestState = newState;
           }
           beam.add(newState);
-          if (beam.size() > maxBeamSize) {
-            beam.poll();
-          }
-        }
-      }
-      if (beam.size() == 0) {
-        // Oops, time for some fallback plan
-        // This can happen with the set of constraints given by the original paper
-        // For example, one particular French model had a situation where it would reach
-        //   @Ssub @Ssub .
-        // without a left(Ssub) transition, so finishing the parse was impossible.
-        // This will probably result in a bad parse, but at least it
-        // will result in some sort of parse.
-        for (State state : oldBeam) {
-          Transition transition = parser.model.findEmergencyTransition(state, constraints);
-          if (transition != null) {
-            State newState = transition.apply(state);
-            if (bestState == null || bestState.score() < newState.score()) {
-              bestState = newState;
-            }
-            beam.add(newState);
-          }
         }
       }
-
-      // bestState == null only happens when we have failed to make progress, so quit
-      // If the bestState is finished, we are done
-      if (bestState == null || bestState.isFinished()) {
-        break;
-      }
     }
+
+    // bestState == null only happens when we have failed to make progress, so quit
+    // If the bestState is finished, we are done
+    return bestState != null && !bestState.isFinished();
+  }
+
+  private void finishBeam() {
     if (beam.size() == 0) {
       success = false;
       unparsable = true;
@@ -147,7 +215,7 @@ public class ShiftReduceParserQuery implements ParserQuery  {
       debinarized = debinarizer.transformTree(finalState.stack.peek());
       debinarized = Tsurgeon.processPattern(rearrangeFinalPunctuationTregex, rearrangeFinalPunctuationTsurgeon, debinarized);
     }
-    return success;
+    beam = null;
   }
 
   /**
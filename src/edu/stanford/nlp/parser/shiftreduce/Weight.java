@@ -72,6 +72,18 @@ public class Weight implements Serializable {
     }
   }
 
+  /**
+   * Copy the packed (index, score) entries into {@code dest} starting
+   * at {@code start}, returning the position after the last one.
+   */
+  int copyPacked(long[] dest, int start) {
+    if (packed == null) {
+      return start;
+    }
+    System.arraycopy(packed, 0, dest, start, packed.length);
+    return start + packed.length;
+  }
+
   public void addScaled(Weight other, float scale) {
     for (int i = 0; i < other.size(); ++i) {
       int index = other.unpackIndex(i);
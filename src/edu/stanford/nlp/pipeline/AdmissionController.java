@@ -0,0 +1,121 @@
+package edu.stanford.nlp.pipeline;
+
+
+/**
+ * Bounds the number of requests the {@link StanfordCoreNLPServer} takes on
+ * at once: as many as it can run, plus a bounded number waiting for a
+ * thread.  Requests beyond that are turned away immediately, so that the
+ * server can tell a client to come back later (with a 503) instead of
+ * queueing without limit and timing every request out.
+ *
+ * The controller also keeps a moving average of how long admitted
+ * requests take, from which it suggests how long a rejected client
+ * should wait before retrying.
+ */
+public class AdmissionController {
+
+  /** The weight of the newest request in the moving average of service times */
+  private static final double SERVICE_TIME_DECAY = 0.1;
+
+  private final int maxRunning;
+  private final int maxQueued;
+
+  /** The following are guarded by the controller */
+  private int inFlight;
+  private long admitted;
+  private long rejected;
+  private double meanServiceMillis;
+
+
+  /**
+   * Create an admission controller.
+   *
+   * @param maxRunning How many requests can run at once (usually the number of annotation threads)
+   * @param maxQueued How many more requests may wait for a thread; negative means no limit
+   */
+  public AdmissionController(int maxRunning, int maxQueued) {
+    if (maxRunning < 1) {
+      throw new IllegalArgumentException("Must be able to run at least one request, not " + maxRunning);
+    }
+    this.maxRunning = maxRunning;
+    this.maxQueued = maxQueued;
+  }
+
+
+  /**
+   * Admit a request if there is room for it.  Every admitted request must
+   * later be passed to {@link #release(long)}.
+   *
+   * @return True if the request was admitted, false if it should be turned away
+   */
+  public synchronized boolean tryAdmit() {
+    if (maxQueued >= 0 && inFlight >= maxRunning + maxQueued) {
+      rejected += 1;
+      return false;
+    }
+    inFlight += 1;
+    admitted += 1;
+    return true;
+  }
+
+
+  /**
+   * Count a request which was turned away without asking {@link #tryAdmit()},
+   * e.g., because the server had no thread to read it with.
+   */
+  public synchronized void reject() {
+    rejected += 1;
+  }
+
+
+  /**
+   * Mark an admitted request as finished.
+   *
+   * @param serviceMillis How long the request took, from admission to response
+   */
+  public synchronized void release(long serviceMillis) {
+    if (inFlight <= 0) {
+      throw new IllegalStateException("Released more requests than were admitted");
+    }
+    inFlight -= 1;
+    if (meanServiceMillis == 0.0) {
+      meanServiceMillis = serviceMillis;
+    } else {
+      meanServiceMillis += SERVICE_TIME_DECAY * (serviceMillis - meanServiceMillis);
+    }
+  }
+
+
+  /**
+   * How many seconds a rejected client should wait before trying again:
+   * roughly the time for the requests in flight to drain, and at least a second.
+   */
+  public synchronized int retryAfterSeconds() {
+    double drainMillis = meanServiceMillis * inFlight / maxRunning;
+    return (int) Math.max(1, Math.ceil(drainMillis / 1000.0));
+  }
+
+
+  /** The number of requests admitted and not yet released. */
+  public synchronized int inFlight() {
+    return inFlight;
+  }
+
+
+  /** The number of requests turned away since the controller was created. */
+  public synchronized long rejected() {
+    return rejected;
+  }
+
+
+  /** Write the limits and counts of the controller as a JSON object. */
+  public synchronized void writeStats(JSONOutputter.Writer writer) {
+    writer.set("maxRunning", maxRunning);
+    writer.set("maxQueued", maxQueued);
+    writer.set("inFlight", inFlight);
+    writer.set("admitted", admitted);
+    writer.set("rejected", rejected);
+    writer.set("meanServiceMillis", meanServiceMillis);
+  }
+
+}
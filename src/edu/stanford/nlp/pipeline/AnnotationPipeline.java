@@ -3,6 +3,7 @@ package edu.stanford.nlp.pipeline;
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.*;
 import edu.stanford.nlp.util.logging.Redwood;
@@ -117,7 +118,12 @@ public class AnnotationPipeline implements Annotator {
 
   /**
    * Annotate a collection of input annotations IN PARALLEL, making use of
-   * threads given in numThreads
+   * threads given in numThreads.
+   * Each annotator runs as a separate stage (see {@link StagedAnnotationScheduler}),
+   * so a slow annotator working on one document does not keep the cheaper
+   * annotators from moving on to the next ones.
+   * The callback is called on one annotation at a time, in input order.
+   *
    * @param annotations The input annotations to process
    * @param numThreads The number of threads to run on
    * @param callback A function to be called when an annotation finishes.
@@ -130,43 +136,109 @@ public class AnnotationPipeline implements Annotator {
         annotate(ann);
         callback.accept(ann);
       }
+      return;
+    }
+    StagedAnnotationScheduler scheduler = new StagedAnnotationScheduler(annotators, numThreads, null,
+        StagedAnnotationScheduler.DEFAULT_QUEUE_CAPACITY, TIME ? accumulatedTime : null);
+    scheduler.annotate(annotations, ann -> {
+      annotationFinished(ann);
+      callback.accept(ann);
+    });
+  }
+
+  /**
+   * Annotate several (usually small) documents as one batch.
+   * The annotators up to and including the sentence splitter run on each
+   * document in turn; the annotators after it run only once, on an
+   * annotation which holds the tokens and sentences of all the documents,
+   * so that they see one large document rather than many tiny ones.
+   * The sentences and tokens are shared, so each document gets the
+   * annotations set on its own sentences.
+   * <br>
+   * This is only correct if the annotators after sentence splitting look
+   * at nothing but the sentences and their tokens (e.g., a tagger or a
+   * parser).  Annotators which use the document text, its character
+   * offsets, or set document level annotations (e.g., mentions or coref)
+   * must not be batched this way.
+   *
+   * @param documents The input annotations, usually raw documents
+   */
+  public void annotateSentencesTogether(List<Annotation> documents) {
+    if (documents.isEmpty()) {
+      return;
+    }
+    Iterator<MutableLong> it = TIME ? accumulatedTime.iterator() : null;
+    Timing t = new Timing();
+    int annotatorIndex = 0;
+    // run the annotators on each document until all of them are split into sentences
+    while (annotatorIndex < annotators.size() && ! allHaveSentences(documents)) {
+      Annotator annotator = annotators.get(annotatorIndex++);
+      if (TIME) {
+        t.start();
+      }
+      for (Annotation document : documents) {
+        if (Thread.interrupted()) {  // Allow interrupting
+          throw new RuntimeInterruptedException();
+        }
+        annotator.annotate(document);
+      }
+      if (TIME) {
+        it.next().incValue(t.stop());
+      }
     }
-    // Java's equivalent to ".map{ lambda(annotation) => annotate(annotation) }
-    Iterable<Runnable> threads = () -> {
-      final Iterator<Annotation> iter = annotations.iterator();
-      return new Iterator<Runnable>() {
-        @Override
-        public boolean hasNext() {
-          return iter.hasNext();
+
+    // then run the rest once, on all the sentences together
+    if (annotatorIndex < annotators.size()) {
+      List<CoreLabel> tokens = new ArrayList<>();
+      List<CoreMap> sentences = new ArrayList<>();
+      for (Annotation document : documents) {
+        List<CoreLabel> documentTokens = document.get(CoreAnnotations.TokensAnnotation.class);
+        if (documentTokens != null) {
+          tokens.addAll(documentTokens);
+        }
+        sentences.addAll(document.get(CoreAnnotations.SentencesAnnotation.class));
+      }
+      Annotation batch = new Annotation("");
+      batch.set(CoreAnnotations.TokensAnnotation.class, tokens);
+      batch.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+      while (annotatorIndex < annotators.size()) {
+        if (Thread.interrupted()) {  // Allow interrupting
+          throw new RuntimeInterruptedException();
         }
-        @Override
-        public Runnable next() {
-          if ( ! iter.hasNext()) {
-            throw new NoSuchElementException();
-          }
-          final Annotation input = iter.next();
-          return () -> {
-            //(logging)
-            String beginningOfDocument = input.toString().substring(0,Math.min(50,input.toString().length()));
-            Redwood.startTrack("Annotating \"" + beginningOfDocument + "...\"");
-            //(annotate)
-            annotate(input);
-            //(callback)
-            callback.accept(input);
-            //(logging again)
-            Redwood.endTrack("Annotating \"" + beginningOfDocument + "...\"");
-          };
+        if (TIME) {
+          t.start();
         }
-        @Override
-        public void remove() {
-          iter.remove();
+        annotators.get(annotatorIndex++).annotate(batch);
+        if (TIME) {
+          it.next().incValue(t.stop());
         }
-      };
-    };
-    // Thread
-    Redwood.Util.threadAndRun(this.getClass().getSimpleName(), threads, numThreads );
+      }
+    }
+
+    for (Annotation document : documents) {
+      annotationFinished(document);
+    }
   }
 
+  private static boolean allHaveSentences(List<Annotation> documents) {
+    for (Annotation document : documents) {
+      if ( ! document.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Called once for each annotation which went through all the annotators
+   * on the multithreaded path, before the callback sees it.
+   * Subclasses which keep track of what they annotate in {@link #annotate(Annotation)}
+   * can do the same here.
+   *
+   * @param annotation An annotation which all annotators have processed
+   */
+  protected void annotationFinished(Annotation annotation) { }
+
   /** Return the total pipeline annotation time in milliseconds.
    *
    *  @return The total pipeline annotation time in milliseconds
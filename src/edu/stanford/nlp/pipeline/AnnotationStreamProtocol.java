@@ -0,0 +1,123 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+
+/**
+ * The wire format of the {@link StanfordCoreNLPServer}'s {@code /stream}
+ * endpoint, which annotates many documents over one HTTP exchange.
+ *
+ * <p>The request body is a sequence of length-delimited
+ * {@link CoreNLPProtos.Document} messages, exactly as written by repeated
+ * calls to {@link ProtobufAnnotationSerializer#write(Annotation, OutputStream)},
+ * and ends when the body does.
+ * The response body has one frame per request document, in the same order.
+ * A frame is a single type byte followed by a length-delimited payload:
+ * either {@link #FRAME_DOCUMENT} and the annotated document, or
+ * {@link #FRAME_ERROR} and a UTF-8 error message for a document which
+ * could not be annotated.  An error on one document does not end the stream.
+ */
+public class AnnotationStreamProtocol {
+
+  /** The frame holds an annotated document */
+  public static final int FRAME_DOCUMENT = 1;
+
+  /** The frame holds the error message for a document which failed */
+  public static final int FRAME_ERROR = 2;
+
+
+  /** One frame of a response: either a document or an error message. */
+  public static class Frame {
+    /** The annotated document, or null if this is an error */
+    public final Annotation document;
+    /** The error message, or null if this is a document */
+    public final String error;
+
+    Frame(Annotation document, String error) {
+      this.document = document;
+      this.error = error;
+    }
+
+    public boolean isError() {
+      return error != null;
+    }
+  }
+
+
+  private AnnotationStreamProtocol() { } // static methods
+
+
+  /**
+   * Read the next document of a request.
+   *
+   * @return The document, or null if the stream has ended
+   */
+  public static Annotation readDocument(ProtobufAnnotationSerializer serializer, InputStream is) throws IOException {
+    CoreNLPProtos.Document proto = CoreNLPProtos.Document.parseDelimitedFrom(is);
+    return proto == null ? null : serializer.fromProto(proto);
+  }
+
+
+  /** Write a document of a request. */
+  public static void writeDocument(ProtobufAnnotationSerializer serializer, Annotation document, OutputStream os) throws IOException {
+    serializer.toProto(document).writeDelimitedTo(os);
+  }
+
+
+  /** Write a response frame holding an annotated document. */
+  public static void writeDocumentFrame(ProtobufAnnotationSerializer serializer, Annotation document, OutputStream os) throws IOException {
+    CoreNLPProtos.Document proto = serializer.toProto(document);
+    os.write(FRAME_DOCUMENT);
+    proto.writeDelimitedTo(os);
+  }
+
+
+  /** Write a response frame holding the error for a document. */
+  public static void writeErrorFrame(String message, OutputStream os) throws IOException {
+    byte[] bytes = (message == null ? "" : message).getBytes(StandardCharsets.UTF_8);
+    os.write(FRAME_ERROR);
+    CodedOutputStream coded = CodedOutputStream.newInstance(os);
+    coded.writeUInt32NoTag(bytes.length);
+    coded.flush();
+    os.write(bytes);
+  }
+
+
+  /**
+   * Read the next frame of a response.
+   *
+   * @return The frame, or null if the stream has ended
+   * @throws IOException If the stream is malformed or ends in the middle of a frame
+   */
+  public static Frame readFrame(ProtobufAnnotationSerializer serializer, InputStream is) throws IOException {
+    int type = is.read();
+    switch (type) {
+      case -1:
+        return null;
+      case FRAME_DOCUMENT: {
+        CoreNLPProtos.Document proto = CoreNLPProtos.Document.parseDelimitedFrom(is);
+        if (proto == null) {
+          throw new EOFException("Stream ended in the middle of a document frame");
+        }
+        return new Frame(serializer.fromProto(proto), null);
+      }
+      case FRAME_ERROR: {
+        int first = is.read();
+        if (first < 0) {
+          throw new EOFException("Stream ended in the middle of an error frame");
+        }
+        int length = CodedInputStream.readRawVarint32(first, is);
+        byte[] bytes = new byte[length];
+        new DataInputStream(is).readFully(bytes);
+        return new Frame(null, new String(bytes, StandardCharsets.UTF_8));
+      }
+      default:
+        throw new IOException("Unknown frame type in annotation stream: " + type);
+    }
+  }
+
+}
@@ -0,0 +1,724 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import edu.stanford.nlp.international.Language;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * A columnar file format for large annotated corpora.
+ * Where a file written by {@link ProtobufAnnotationSerializer} has to be read a whole
+ * document at a time, and from the start, a columnar corpus keeps each kind of token
+ * annotation (the words, the lemmas, the part of speech tags, the named entity tags,
+ * the character offsets and the basic dependency arcs) in its own compressed column,
+ * with an index of where every document's columns are.
+ * A reader can therefore go straight to any document, by its position or its id,
+ * and decode only the columns it needs.
+ *
+ * <p>A corpus is written with a {@link Writer}, one {@link Annotation} at a time, and
+ * read with a {@link Reader}, which memory maps the file.
+ * The reader can hand back single columns as arrays, or rebuild a document
+ * (with as many columns as asked for) as a {@link CoreDocument}.
+ * Only the annotations listed in {@link Column} are stored; anything else in the
+ * documents (parse trees, coreference, ...) is not.
+ *
+ * <p>The file starts with {@link #MAGIC}, followed by one deflated block per
+ * document and column, the index, and finally the offset of the index and the magic
+ * again.  The index lists, for each document, its id, the language of its dependency
+ * relations, its number of sentences and tokens, and the offset, compressed length and
+ * uncompressed length of each of its columns (a compressed length of 0 meaning the
+ * document does not have the column).
+ *
+ * <p>To convert delimited protocol buffer files to a columnar corpus, run:
+ * {@code java edu.stanford.nlp.pipeline.ColumnarCorpus -input a.pb,b.pb -output corpus.columns}
+ */
+public class ColumnarCorpus {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(ColumnarCorpus.class);
+
+  /** The first and last bytes of every columnar corpus file */
+  public static final byte[] MAGIC = "CNLPCOL1".getBytes(StandardCharsets.US_ASCII);
+
+  /** The number of bytes at the end of the file: the offset of the index, and the magic */
+  private static final int FOOTER_LENGTH = 8 + 8;
+
+  /** GrammaticalRelation.valueOf is not thread-safe */
+  private static final Object relationLock = new Object();
+
+
+  /** The annotations which are stored, each in its own column. */
+  public enum Column {
+    /** The text of the document, as a single string */
+    TEXT(false),
+    /** The number of tokens in each sentence; every document has this column */
+    SENTENCE_LENGTHS(true),
+    WORD(false),
+    LEMMA(false),
+    POS(false),
+    NER(false),
+    /** The character offset at which each token begins */
+    BEGIN(true),
+    /** The character offset at which each token ends */
+    END(true),
+    /** The index (in its sentence, from 1) of the governor of each token in the basic dependencies; 0 for a root and -1 for none */
+    GOVERNOR(true),
+    /** The relation between each token and its governor in the basic dependencies */
+    RELATION(false);
+
+    /** Whether this column holds numbers (delta encoded), rather than strings */
+    public final boolean numeric;
+
+    Column(boolean numeric) {
+      this.numeric = numeric;
+    }
+  }
+
+  private static final Column[] COLUMNS = Column.values();
+
+
+  private ColumnarCorpus() { } // static classes
+
+
+  /** Where one column of one document is in the file. */
+  private static class Block {
+    final long offset;
+    final int compressedLength;
+    final int length;
+
+    Block(long offset, int compressedLength, int length) {
+      this.offset = offset;
+      this.compressedLength = compressedLength;
+      this.length = length;
+    }
+  }
+
+
+  /** The index entry of one document. */
+  private static class DocumentEntry {
+    final String docId;
+    final String language;
+    final int sentences;
+    final int tokens;
+    final Block[] blocks = new Block[COLUMNS.length];
+
+    DocumentEntry(String docId, String language, int sentences, int tokens) {
+      this.docId = docId;
+      this.language = language;
+      this.sentences = sentences;
+      this.tokens = tokens;
+    }
+  }
+
+
+  /**
+   * Writes annotated documents to a new columnar corpus.
+   * The corpus cannot be read until the writer is closed.
+   */
+  public static class Writer implements Closeable {
+
+    private final OutputStream out;
+    private final List<DocumentEntry> index = new ArrayList<>();
+    private final Deflater deflater = new Deflater();
+    private long position;
+    private boolean closed;
+
+    /** Create a corpus in the given file, replacing whatever is there. */
+    public Writer(File file) throws IOException {
+      this.out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+      write(MAGIC);
+    }
+
+    private void write(byte[] bytes) throws IOException {
+      write(bytes, bytes.length);
+    }
+
+    private void write(byte[] bytes, int length) throws IOException {
+      out.write(bytes, 0, length);
+      position += length;
+    }
+
+    /**
+     * Add a document to the corpus.
+     *
+     * @param document The document, which should at least be tokenized
+     * @return The index of the document in the corpus
+     */
+    public int add(Annotation document) throws IOException {
+      if (closed) {
+        throw new IllegalStateException("Columnar corpus is already closed");
+      }
+      List<List<CoreLabel>> sentences = new ArrayList<>();
+      List<SemanticGraph> graphs = new ArrayList<>();
+      List<CoreMap> sentenceMaps = document.get(CoreAnnotations.SentencesAnnotation.class);
+      if (sentenceMaps != null) {
+        for (CoreMap sentence : sentenceMaps) {
+          sentences.add(sentence.get(CoreAnnotations.TokensAnnotation.class));
+          graphs.add(sentence.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class));
+        }
+      } else if (document.get(CoreAnnotations.TokensAnnotation.class) != null) {
+        sentences.add(document.get(CoreAnnotations.TokensAnnotation.class));
+        graphs.add(null);
+      }
+      int tokenCount = 0;
+      for (List<CoreLabel> sentence : sentences) {
+        tokenCount += sentence.size();
+      }
+
+      // Collect the columns, by token
+      String text = document.get(CoreAnnotations.TextAnnotation.class);
+      int[] sentenceLengths = new int[sentences.size()];
+      String[][] strings = new String[COLUMNS.length][];
+      int[][] ints = new int[COLUMNS.length][];
+      for (Column column : COLUMNS) {
+        if (column.numeric) {
+          ints[column.ordinal()] = new int[tokenCount];
+        } else if (column != Column.TEXT) {
+          strings[column.ordinal()] = new String[tokenCount];
+        }
+      }
+      boolean[] present = new boolean[COLUMNS.length];
+      present[Column.TEXT.ordinal()] = text != null;
+      present[Column.SENTENCE_LENGTHS.ordinal()] = true;
+      Language language = null;
+      int t = 0;
+      for (int s = 0; s < sentences.size(); ++s) {
+        List<CoreLabel> tokens = sentences.get(s);
+        sentenceLengths[s] = tokens.size();
+        int start = t;
+        for (CoreLabel token : tokens) {
+          strings[Column.WORD.ordinal()][t] = token.word();
+          strings[Column.LEMMA.ordinal()][t] = token.lemma();
+          strings[Column.POS.ordinal()][t] = token.tag();
+          strings[Column.NER.ordinal()][t] = token.ner();
+          if (token.containsKey(CoreAnnotations.CharacterOffsetBeginAnnotation.class)) {
+            ints[Column.BEGIN.ordinal()][t] = token.beginPosition();
+            ints[Column.END.ordinal()][t] = token.endPosition();
+            present[Column.BEGIN.ordinal()] = true;
+            present[Column.END.ordinal()] = true;
+          }
+          ints[Column.GOVERNOR.ordinal()][t] = -1;
+          t += 1;
+        }
+        SemanticGraph graph = graphs.get(s);
+        if (graph != null) {
+          present[Column.GOVERNOR.ordinal()] = true;
+          present[Column.RELATION.ordinal()] = true;
+          for (IndexedWord root : graph.getRoots()) {
+            if (root.copyCount() == 0 && root.index() >= 1 && root.index() <= tokens.size()) {
+              ints[Column.GOVERNOR.ordinal()][start + root.index() - 1] = 0;
+              strings[Column.RELATION.ordinal()][start + root.index() - 1] = "root";
+            }
+          }
+          // Only the first arc into each token is kept: the basic dependencies are a tree
+          for (SemanticGraphEdge edge : graph.edgeIterable()) {
+            IndexedWord dependent = edge.getDependent();
+            if (dependent.copyCount() != 0 || dependent.index() < 1 || dependent.index() > tokens.size() ||
+                ints[Column.GOVERNOR.ordinal()][start + dependent.index() - 1] != -1) {
+              continue;
+            }
+            ints[Column.GOVERNOR.ordinal()][start + dependent.index() - 1] = edge.getGovernor().index();
+            strings[Column.RELATION.ordinal()][start + dependent.index() - 1] = edge.getRelation().toString();
+            if (language == null) {
+              language = edge.getRelation().getLanguage();
+            }
+          }
+        }
+      }
+      for (Column column : new Column[]{ Column.WORD, Column.LEMMA, Column.POS, Column.NER }) {
+        for (String value : strings[column.ordinal()]) {
+          if (value != null) {
+            present[column.ordinal()] = true;
+            break;
+          }
+        }
+      }
+
+      // Write the columns
+      String docId = document.get(CoreAnnotations.DocIDAnnotation.class);
+      DocumentEntry entry = new DocumentEntry(docId, language == null ? null : language.name(), sentences.size(), tokenCount);
+      for (Column column : COLUMNS) {
+        if ( ! present[column.ordinal()]) {
+          entry.blocks[column.ordinal()] = new Block(position, 0, 0);
+          continue;
+        }
+        byte[] raw;
+        if (column == Column.TEXT) {
+          raw = text.getBytes(StandardCharsets.UTF_8);
+        } else if (column == Column.SENTENCE_LENGTHS) {
+          raw = encode(sentenceLengths);
+        } else if (column.numeric) {
+          raw = encode(ints[column.ordinal()]);
+        } else {
+          raw = encode(strings[column.ordinal()]);
+        }
+        entry.blocks[column.ordinal()] = writeBlock(raw);
+      }
+      index.add(entry);
+      return index.size() - 1;
+    }
+
+    private Block writeBlock(byte[] raw) throws IOException {
+      deflater.reset();
+      deflater.setInput(raw);
+      deflater.finish();
+      byte[] buffer = new byte[Math.max(64, raw.length / 2)];
+      long offset = position;
+      int compressed = 0;
+      while ( ! deflater.finished()) {
+        int length = deflater.deflate(buffer);
+        write(buffer, length);
+        compressed += length;
+      }
+      return new Block(offset, compressed, raw.length);
+    }
+
+    /** Write the index, and close the file. */
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        long indexOffset = position;
+        CodedOutputStream coded = CodedOutputStream.newInstance(out);
+        coded.writeUInt32NoTag(index.size());
+        for (DocumentEntry entry : index) {
+          writeString(coded, entry.docId);
+          writeString(coded, entry.language);
+          coded.writeUInt32NoTag(entry.sentences);
+          coded.writeUInt32NoTag(entry.tokens);
+          for (Block block : entry.blocks) {
+            coded.writeUInt64NoTag(block.offset);
+            coded.writeUInt32NoTag(block.compressedLength);
+            coded.writeUInt32NoTag(block.length);
+          }
+        }
+        coded.flush();
+        new DataOutputStream(out).writeLong(indexOffset);
+        out.write(MAGIC);
+      } finally {
+        try {
+          out.close();
+        } finally {
+          deflater.end();
+        }
+      }
+    }
+  }
+
+
+  /** Write a string which may be null. */
+  private static void writeString(CodedOutputStream coded, String value) throws IOException {
+    if (value == null) {
+      coded.writeUInt32NoTag(0);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      coded.writeUInt32NoTag(bytes.length + 1);
+      coded.writeRawBytes(bytes);
+    }
+  }
+
+  /** Read a string written by {@link #writeString(CodedOutputStream, String)}. */
+  private static String readString(CodedInputStream coded) throws IOException {
+    int length = coded.readUInt32();
+    return length == 0 ? null : new String(coded.readRawBytes(length - 1), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] encode(String[] values) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(values.length * 8);
+    CodedOutputStream coded = CodedOutputStream.newInstance(bytes);
+    for (String value : values) {
+      writeString(coded, value);
+    }
+    coded.flush();
+    return bytes.toByteArray();
+  }
+
+  /** Numbers are stored as the difference from the one before, which keeps offsets small. */
+  private static byte[] encode(int[] values) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(values.length * 2);
+    CodedOutputStream coded = CodedOutputStream.newInstance(bytes);
+    int last = 0;
+    for (int value : values) {
+      coded.writeSInt32NoTag(value - last);
+      last = value;
+    }
+    coded.flush();
+    return bytes.toByteArray();
+  }
+
+  private static CodedInputStream codedInput(byte[] bytes) {
+    CodedInputStream coded = CodedInputStream.newInstance(bytes);
+    coded.setSizeLimit(Integer.MAX_VALUE);
+    return coded;
+  }
+
+
+  /**
+   * Reads a columnar corpus, by memory mapping it.
+   * A reader is safe to use from several threads at once.
+   */
+  public static class Reader implements Closeable {
+
+    /** Files are mapped in segments of this size, since a single mapping is limited to 2GB */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer[] segments;
+    private final DocumentEntry[] index;
+    /** Documents by id, for those which have one */
+    private final Map<String, Integer> byId = new HashMap<>();
+
+    /** Open a corpus written by a {@link Writer}. */
+    public Reader(File path) throws IOException {
+      this.file = new RandomAccessFile(path, "r");
+      try {
+        FileChannel channel = file.getChannel();
+        long size = channel.size();
+        if (size < MAGIC.length + FOOTER_LENGTH) {
+          throw new IOException("Too short to be a columnar corpus: " + path);
+        }
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; ++i) {
+          long start = i * SEGMENT_SIZE;
+          segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+        if ( ! Arrays.equals(MAGIC, bytes(0, MAGIC.length)) ||
+            ! Arrays.equals(MAGIC, bytes(size - MAGIC.length, MAGIC.length))) {
+          throw new IOException("Not a columnar corpus: " + path);
+        }
+        long indexOffset = ByteBuffer.wrap(bytes(size - FOOTER_LENGTH, 8)).getLong();
+        CodedInputStream coded = codedInput(bytes(indexOffset, (int) (size - FOOTER_LENGTH - indexOffset)));
+        index = new DocumentEntry[coded.readUInt32()];
+        for (int d = 0; d < index.length; ++d) {
+          DocumentEntry entry = new DocumentEntry(readString(coded), readString(coded), coded.readUInt32(), coded.readUInt32());
+          for (int c = 0; c < COLUMNS.length; ++c) {
+            entry.blocks[c] = new Block(coded.readUInt64(), coded.readUInt32(), coded.readUInt32());
+          }
+          index[d] = entry;
+          if (entry.docId != null) {
+            byId.putIfAbsent(entry.docId, d);
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        file.close();
+        throw e;
+      }
+    }
+
+    /** Copy bytes out of the mapped file, which may span two segments. */
+    private byte[] bytes(long offset, int length) {
+      byte[] bytes = new byte[length];
+      int copied = 0;
+      while (copied < length) {
+        long at = offset + copied;
+        ByteBuffer segment = segments[(int) (at / SEGMENT_SIZE)].duplicate();
+        ((Buffer) segment).position((int) (at % SEGMENT_SIZE));
+        int chunk = Math.min(length - copied, segment.remaining());
+        segment.get(bytes, copied, chunk);
+        copied += chunk;
+      }
+      return bytes;
+    }
+
+    private byte[] inflate(Block block) {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(bytes(block.offset, block.compressedLength));
+        byte[] raw = new byte[block.length];
+        int inflated = 0;
+        while (inflated < raw.length && ! inflater.finished()) {
+          inflated += inflater.inflate(raw, inflated, raw.length - inflated);
+        }
+        if (inflated != raw.length) {
+          throw new IllegalStateException("Corrupt column in columnar corpus at offset " + block.offset);
+        }
+        return raw;
+      } catch (DataFormatException e) {
+        throw new IllegalStateException("Corrupt column in columnar corpus at offset " + block.offset, e);
+      } finally {
+        inflater.end();
+      }
+    }
+
+    private DocumentEntry entry(int document) {
+      if (document < 0 || document >= index.length) {
+        throw new IndexOutOfBoundsException("No document " + document + " in a corpus of " + index.length);
+      }
+      return index[document];
+    }
+
+    /** The number of documents in the corpus. */
+    public int size() {
+      return index.length;
+    }
+
+    /** The id of a document, or null if it had none. */
+    public String docId(int document) {
+      return entry(document).docId;
+    }
+
+    /** The index of the (first) document with the given id, or -1 if there is none. */
+    public int indexOf(String docId) {
+      Integer document = byId.get(docId);
+      return document == null ? -1 : document;
+    }
+
+    public int sentenceCount(int document) {
+      return entry(document).sentences;
+    }
+
+    public int tokenCount(int document) {
+      return entry(document).tokens;
+    }
+
+    /** Whether the document has the given column; e.g., not if it was not lemmatized. */
+    public boolean has(int document, Column column) {
+      return entry(document).blocks[column.ordinal()].compressedLength > 0;
+    }
+
+    /** The text of the document, or null if it was not stored. */
+    public String text(int document) {
+      DocumentEntry entry = entry(document);
+      Block block = entry.blocks[Column.TEXT.ordinal()];
+      return block.compressedLength == 0 ? null : new String(inflate(block), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A column of strings, with one value per token of the document.
+     *
+     * @return The values, or null if the document does not have the column
+     */
+    public String[] strings(int document, Column column) {
+      if (column.numeric || column == Column.TEXT) {
+        throw new IllegalArgumentException("Not a column of strings: " + column);
+      }
+      DocumentEntry entry = entry(document);
+      Block block = entry.blocks[column.ordinal()];
+      if (block.compressedLength == 0) {
+        return null;
+      }
+      try {
+        CodedInputStream coded = codedInput(inflate(block));
+        String[] values = new String[entry.tokens];
+        for (int i = 0; i < values.length; ++i) {
+          values[i] = readString(coded);
+        }
+        return values;
+      } catch (IOException e) {
+        throw new IllegalStateException("Corrupt column in columnar corpus at offset " + block.offset, e);
+      }
+    }
+
+    /**
+     * A column of numbers, with one value per token of the document
+     * (or per sentence, for {@link Column#SENTENCE_LENGTHS}).
+     *
+     * @return The values, or null if the document does not have the column
+     */
+    public int[] ints(int document, Column column) {
+      if ( ! column.numeric) {
+        throw new IllegalArgumentException("Not a column of numbers: " + column);
+      }
+      DocumentEntry entry = entry(document);
+      Block block = entry.blocks[column.ordinal()];
+      if (block.compressedLength == 0) {
+        return column == Column.SENTENCE_LENGTHS ? new int[0] : null;
+      }
+      try {
+        CodedInputStream coded = codedInput(inflate(block));
+        int[] values = new int[column == Column.SENTENCE_LENGTHS ? entry.sentences : entry.tokens];
+        int last = 0;
+        for (int i = 0; i < values.length; ++i) {
+          last += coded.readSInt32();
+          values[i] = last;
+        }
+        return values;
+      } catch (IOException e) {
+        throw new IllegalStateException("Corrupt column in columnar corpus at offset " + block.offset, e);
+      }
+    }
+
+    /** A document with every column which was stored for it. */
+    public CoreDocument document(int document) {
+      return document(document, EnumSet.allOf(Column.class));
+    }
+
+    /**
+     * A document, with tokens and sentences, and only the given columns read.
+     * Leaving out the columns a caller does not need saves decoding them.
+     * The tokens are ordinary {@link CoreLabel}s filled in from the columns, not views of them,
+     * so a caller which only needs a column or two is better off with {@link #strings} or {@link #ints}.
+     */
+    public CoreDocument document(int document, Set<Column> columns) {
+      DocumentEntry entry = entry(document);
+      String text = columns.contains(Column.TEXT) ? text(document) : null;
+      String[] words = columns.contains(Column.WORD) ? strings(document, Column.WORD) : null;
+      String[] lemmas = columns.contains(Column.LEMMA) ? strings(document, Column.LEMMA) : null;
+      String[] tags = columns.contains(Column.POS) ? strings(document, Column.POS) : null;
+      String[] ners = columns.contains(Column.NER) ? strings(document, Column.NER) : null;
+      int[] begins = columns.contains(Column.BEGIN) ? ints(document, Column.BEGIN) : null;
+      int[] ends = columns.contains(Column.END) ? ints(document, Column.END) : null;
+      int[] governors = columns.contains(Column.GOVERNOR) ? ints(document, Column.GOVERNOR) : null;
+      String[] relations = governors != null && columns.contains(Column.RELATION) ? strings(document, Column.RELATION) : null;
+      int[] lengths = ints(document, Column.SENTENCE_LENGTHS);
+
+      List<CoreLabel> tokens = new ArrayList<>(entry.tokens);
+      for (int t = 0; t < entry.tokens; ++t) {
+        CoreLabel token = new CoreLabel();
+        if (words != null && words[t] != null) {
+          token.setWord(words[t]);
+          token.setValue(words[t]);
+          token.setOriginalText(words[t]);
+        }
+        if (lemmas != null && lemmas[t] != null) { token.setLemma(lemmas[t]); }
+        if (tags != null && tags[t] != null) { token.setTag(tags[t]); }
+        if (ners != null && ners[t] != null) { token.setNER(ners[t]); }
+        if (begins != null) { token.setBeginPosition(begins[t]); }
+        if (ends != null) { token.setEndPosition(ends[t]); }
+        if (entry.docId != null) { token.setDocID(entry.docId); }
+        tokens.add(token);
+      }
+
+      Annotation annotation = new Annotation(text != null ? text : "");
+      if (entry.docId != null) {
+        annotation.set(CoreAnnotations.DocIDAnnotation.class, entry.docId);
+      }
+      annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+      List<CoreMap> sentences = new ArrayList<>(lengths.length);
+      int start = 0;
+      for (int s = 0; s < lengths.length; ++s) {
+        int end = start + lengths[s];
+        List<CoreLabel> sentenceTokens = tokens.subList(start, end);
+        for (int i = 0; i < sentenceTokens.size(); ++i) {
+          sentenceTokens.get(i).setIndex(i + 1);
+          sentenceTokens.get(i).setSentIndex(s);
+        }
+        CoreMap sentence = new ArrayCoreMap();
+        sentence.set(CoreAnnotations.TokensAnnotation.class, sentenceTokens);
+        sentence.set(CoreAnnotations.TokenBeginAnnotation.class, start);
+        sentence.set(CoreAnnotations.TokenEndAnnotation.class, end);
+        sentence.set(CoreAnnotations.SentenceIndexAnnotation.class, s);
+        if (begins != null && ends != null && ! sentenceTokens.isEmpty()) {
+          int characterBegin = begins[start];
+          int characterEnd = ends[end - 1];
+          sentence.set(CoreAnnotations.CharacterOffsetBeginAnnotation.class, characterBegin);
+          sentence.set(CoreAnnotations.CharacterOffsetEndAnnotation.class, characterEnd);
+          if (text != null && characterEnd <= text.length()) {
+            sentence.set(CoreAnnotations.TextAnnotation.class, text.substring(characterBegin, characterEnd));
+          }
+        }
+        if (governors != null) {
+          sentence.set(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class,
+              graph(sentenceTokens, governors, relations, start, entry.language));
+        }
+        sentences.add(sentence);
+        start = end;
+      }
+      annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+      if (sentences.isEmpty()) {
+        // CoreDocument expects at least one sentence to wrap, so give it the annotations unwrapped
+        CoreDocument empty = new CoreDocument(annotation.get(CoreAnnotations.TextAnnotation.class));
+        if (entry.docId != null) {
+          empty.annotation().set(CoreAnnotations.DocIDAnnotation.class, entry.docId);
+        }
+        empty.annotation().set(CoreAnnotations.TokensAnnotation.class, tokens);
+        empty.annotation().set(CoreAnnotations.SentencesAnnotation.class, sentences);
+        return empty;
+      }
+      return new CoreDocument(annotation);
+    }
+
+    /** Rebuild the basic dependencies of a sentence from its governors. */
+    private static SemanticGraph graph(List<CoreLabel> tokens, int[] governors, String[] relations, int start, String languageName) {
+      Language language = languageName == null ? Language.UniversalEnglish : Language.valueOf(languageName);
+      SemanticGraph graph = new SemanticGraph();
+      IndexedWord[] words = new IndexedWord[tokens.size()];
+      for (int i = 0; i < words.length; ++i) {
+        if (governors[start + i] >= 0) {
+          words[i] = new IndexedWord(tokens.get(i));
+          graph.addVertex(words[i]);
+        }
+      }
+      for (int i = 0; i < words.length; ++i) {
+        int governor = governors[start + i];
+        if (governor == 0) {
+          graph.addRoot(words[i]);
+        } else if (governor > 0 && governor <= words.length && words[governor - 1] != null) {
+          String relation = relations == null || relations[start + i] == null ? "dep" : relations[start + i];
+          GrammaticalRelation reln;
+          synchronized (relationLock) {
+            reln = GrammaticalRelation.valueOf(language, relation);
+          }
+          graph.addEdge(words[governor - 1], words[i], reln, 1.0, false);
+        }
+      }
+      return graph;
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+  }
+
+
+  /**
+   * Convert files of delimited protocol buffers, as written by
+   * {@link ProtobufAnnotationSerializer#write(Annotation, OutputStream)}, to a columnar corpus.
+   * Usage: {@code -input first.pb,second.pb -output corpus.columns}
+   */
+  public static void main(String[] args) throws IOException {
+    Properties props = StringUtils.argsToProperties(args);
+    String input = props.getProperty("input");
+    String output = props.getProperty("output");
+    if (input == null || output == null) {
+      log.error("Usage: ColumnarCorpus -input first.pb,second.pb -output corpus.columns");
+      System.exit(1);
+    }
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+    int documents = 0;
+    try (Writer writer = new Writer(new File(output))) {
+      for (String path : input.split(",")) {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(path.trim()))) {
+          while (true) {
+            CoreNLPProtos.Document proto = CoreNLPProtos.Document.parseDelimitedFrom(is);
+            if (proto == null) {
+              break;
+            }
+            // the trees are never read, so there is no need to build them
+            writer.add(serializer.fromProtoLazy(proto));
+            documents += 1;
+          }
+        }
+      }
+    }
+    log.info("Wrote " + documents + " documents to " + output);
+  }
+
+}
@@ -48,19 +48,38 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
    */
   private final GrammaticalStructure.Extras extraDependencies;
 
+  /**
+   * Properties read by the annotator rather than the parser: annotators which
+   * differ only in these share the same loaded parser.
+   */
+  private static final Set<String> ANNOTATOR_PROPERTIES =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("model", "testThreads", "sentenceTimeout", "extradependencies")));
+
   public DependencyParseAnnotator() {
     this(new Properties());
   }
 
   public DependencyParseAnnotator(Properties properties) {
     String modelPath = PropertiesUtils.getString(properties, "model", DependencyParser.DEFAULT_MODEL);
-    parser = DependencyParser.loadFromModelFile(modelPath, properties);
+    parser = ModelRegistry.SINGLETON.acquire(this, Annotator.STANFORD_DEPENDENCIES, modelPath, parserOptions(properties),
+        () -> DependencyParser.loadFromModelFile(modelPath, properties));
 
     nThreads = PropertiesUtils.getInt(properties, "testThreads", DEFAULT_NTHREADS);
     maxTime = PropertiesUtils.getLong(properties, "sentenceTimeout", DEFAULT_MAXTIME);
     extraDependencies = MetaClass.cast(properties.getProperty("extradependencies", "NONE"), GrammaticalStructure.Extras.class);
   }
 
+  /** The properties which the loaded parser depends on, in a canonical order */
+  static String parserOptions(Properties properties) {
+    Map<String,String> options = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      if ( ! ANNOTATOR_PROPERTIES.contains(key)) {
+        options.put(key, properties.getProperty(key));
+      }
+    }
+    return options.toString();
+  }
+
   @Override
   protected int nThreads() {
     return nThreads;
@@ -71,10 +90,31 @@ public class DependencyParseAnnotator extends SentenceAnnotator  {
     return maxTime;
   }
 
+  /**
+   * When running single threaded with no time limit, all the sentences
+   * of the document are parsed together with
+   * {@link DependencyParser#predictAll(List)}, which scores them in batches.
+   * Otherwise the sentences are parsed one at a time as usual.
+   */
+  @Override
+  public void annotate(Annotation annotation) {
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences == null || nThreads != 1 || maxTime > 0) {
+      super.annotate(annotation);
+      return;
+    }
+    List<GrammaticalStructure> structures = parser.predictAll(sentences);
+    for (int i = 0; i < sentences.size(); ++i) {
+      setDependencies(sentences.get(i), structures.get(i));
+    }
+  }
+
   @Override
   protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    GrammaticalStructure gs = parser.predict(sentence);
+    setDependencies(sentence, parser.predict(sentence));
+  }
 
+  private void setDependencies(CoreMap sentence, GrammaticalStructure gs) {
     SemanticGraph deps = SemanticGraphFactory.makeFromTree(gs, Mode.COLLAPSED, extraDependencies, null),
                   uncollapsedDeps = SemanticGraphFactory.makeFromTree(gs, Mode.BASIC, extraDependencies, null),
                   ccDeps = SemanticGraphFactory.makeFromTree(gs, Mode.CCPROCESSED, extraDependencies, null),
@@ -0,0 +1,65 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.Arrays;
+
+
+/**
+ * The most recent latencies of some kind of request, from which the
+ * {@link StanfordCoreNLPClient} reads percentiles: to decide when to hedge
+ * a slow request, and to report the tail latency of a job.
+ * Old latencies fall out of the window as new ones are recorded, so the
+ * percentiles follow the servers as they speed up or slow down.
+ */
+public class LatencyWindow {
+
+  private final long[] window;
+  /** The number of latencies recorded so far, of which the last {@code window.length} are kept */
+  private long count;
+
+
+  /**
+   * Create a window.
+   *
+   * @param size The number of most recent latencies to keep
+   */
+  public LatencyWindow(int size) {
+    if (size < 1) {
+      throw new IllegalArgumentException("A latency window must hold at least one latency, not " + size);
+    }
+    this.window = new long[size];
+  }
+
+
+  /** Record the latency of a request. */
+  public synchronized void record(long millis) {
+    window[(int) (count % window.length)] = millis;
+    count += 1;
+  }
+
+
+  /** The number of latencies recorded since the window was created, including those no longer kept. */
+  public synchronized long count() {
+    return count;
+  }
+
+
+  /**
+   * The given percentile of the latencies in the window, by the nearest rank.
+   *
+   * @param p The percentile, between 0 and 100
+   * @return The latency, or -1 if none have been recorded
+   */
+  public long percentile(double p) {
+    long[] sorted;
+    synchronized (this) {
+      if (count == 0) {
+        return -1;
+      }
+      sorted = Arrays.copyOf(window, (int) Math.min(count, window.length));
+    }
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+  }
+
+}
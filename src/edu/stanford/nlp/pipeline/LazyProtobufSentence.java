@@ -0,0 +1,238 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.sentiment.SentimentCoreAnnotations;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.IdentityHashSet;
+import edu.stanford.nlp.util.logging.Redwood.RedwoodChannels;
+
+
+/**
+ * A sentence read by {@link ProtobufAnnotationSerializer#fromProtoLazy(CoreNLPProtos.Document)}.
+ * Everything but the parse trees and dependency graphs is read up front, as usual;
+ * the trees and graphs stay in the protocol buffer until their key is first read
+ * with {@link #get(Class)}.
+ * They are the bulk of the objects in a fully annotated document, and many readers
+ * of a stored document (e.g., ones which only want the tokens and their named entities)
+ * never look at them.
+ *
+ * The sentence otherwise behaves as an ordinary {@link CoreMap}: the deferred keys count
+ * towards {@link #containsKey(Class)} and {@link #size()}, and anything which looks at every
+ * key ({@link #keySet()}, {@link #equals(Object)}, printing, serialization) reads them all first.
+ */
+public class LazyProtobufSentence implements CoreMap {
+
+  private static final long serialVersionUID = 1L;
+
+  private final ProtobufAnnotationSerializer serializer;
+  /** The sentence, with everything read except for the deferred keys */
+  private final CoreMap sentence;
+  /** The serialized sentence, which the deferred keys are read from */
+  private final CoreNLPProtos.Sentence proto;
+  private final String docid;
+  /** The keys which have not been read from the protocol buffer yet; guarded by this sentence */
+  private final Set<Class<?>> deferred = new IdentityHashSet<>();
+  // Reading a deferred key writes to the sentence, so everything which reads the sentence
+  // holds the lock as well; otherwise a reader could see a half-updated map.
+
+
+  @SuppressWarnings("deprecation")
+  LazyProtobufSentence(ProtobufAnnotationSerializer serializer, CoreMap sentence, CoreNLPProtos.Sentence proto, String docid) {
+    this.serializer = serializer;
+    this.sentence = sentence;
+    this.proto = proto;
+    this.docid = docid;
+    if (proto.hasParseTree()) { deferred.add(TreeCoreAnnotations.TreeAnnotation.class); }
+    if (proto.hasBinarizedParseTree()) { deferred.add(TreeCoreAnnotations.BinarizedTreeAnnotation.class); }
+    if (proto.getKBestParseTreesCount() > 0) { deferred.add(TreeCoreAnnotations.KBestTreesAnnotation.class); }
+    if (proto.hasAnnotatedParseTree()) { deferred.add(SentimentCoreAnnotations.SentimentAnnotatedTree.class); }
+    if (proto.hasBasicDependencies()) { deferred.add(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class); }
+    if (proto.hasCollapsedDependencies()) { deferred.add(SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class); }
+    if (proto.hasCollapsedCCProcessedDependencies()) { deferred.add(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class); }
+    if (proto.hasAlternativeDependencies()) { deferred.add(SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class); }
+    if (proto.hasEnhancedDependencies()) { deferred.add(SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class); }
+    if (proto.hasEnhancedPlusPlusDependencies()) { deferred.add(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class); }
+  }
+
+
+  /**
+   * Whether the trees and graphs of this sentence can be left until they are read.
+   * They cannot if other annotations of the sentence point into them, or if there are none.
+   */
+  static boolean canDefer(CoreNLPProtos.Sentence proto) {
+    if (proto.getEntailedSentenceCount() > 0 || proto.getEntailedClauseCount() > 0 ||
+        proto.getOpenieTripleCount() > 0 || proto.getMentionsForCorefCount() > 0 ||
+        (proto.hasHasRelationAnnotations() && proto.getHasRelationAnnotations())) {
+      return false;
+    }
+    return proto.hasParseTree() || proto.hasBinarizedParseTree() || proto.getKBestParseTreesCount() > 0 ||
+        proto.hasAnnotatedParseTree() || proto.hasBasicDependencies() || proto.hasCollapsedDependencies() ||
+        proto.hasCollapsedCCProcessedDependencies() || proto.hasAlternativeDependencies() ||
+        proto.hasEnhancedDependencies() || proto.hasEnhancedPlusPlusDependencies();
+  }
+
+
+  /** The sentence without its trees, for the serializer to read everything else from. */
+  static CoreNLPProtos.Sentence withoutTrees(CoreNLPProtos.Sentence proto) {
+    return proto.toBuilder()
+        .clearParseTree()
+        .clearBinarizedParseTree()
+        .clearKBestParseTrees()
+        .clearAnnotatedParseTree()
+        .build();
+  }
+
+
+  /** Read a deferred key from the protocol buffer, if it has not been read yet. */
+  @SuppressWarnings("deprecation")
+  private synchronized void read(Class<?> key) {
+    if ( ! deferred.remove(key)) {
+      return;
+    }
+    if (key == TreeCoreAnnotations.TreeAnnotation.class) {
+      sentence.set(TreeCoreAnnotations.TreeAnnotation.class, serializer.fromProto(proto.getParseTree()));
+    } else if (key == TreeCoreAnnotations.BinarizedTreeAnnotation.class) {
+      sentence.set(TreeCoreAnnotations.BinarizedTreeAnnotation.class, serializer.fromProto(proto.getBinarizedParseTree()));
+    } else if (key == TreeCoreAnnotations.KBestTreesAnnotation.class) {
+      List<Tree> trees = proto.getKBestParseTreesList().stream().map(serializer::fromProto).collect(Collectors.toCollection(LinkedList::new));
+      sentence.set(TreeCoreAnnotations.KBestTreesAnnotation.class, trees);
+    } else if (key == SentimentCoreAnnotations.SentimentAnnotatedTree.class) {
+      sentence.set(SentimentCoreAnnotations.SentimentAnnotatedTree.class, serializer.fromProto(proto.getAnnotatedParseTree()));
+    } else {
+      List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+      if (key == SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class) {
+        sentence.set(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class, graph(proto.getBasicDependencies(), tokens));
+      } else if (key == SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class) {
+        sentence.set(SemanticGraphCoreAnnotations.CollapsedDependenciesAnnotation.class, graph(proto.getCollapsedDependencies(), tokens));
+      } else if (key == SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class) {
+        sentence.set(SemanticGraphCoreAnnotations.CollapsedCCProcessedDependenciesAnnotation.class, graph(proto.getCollapsedCCProcessedDependencies(), tokens));
+      } else if (key == SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class) {
+        sentence.set(SemanticGraphCoreAnnotations.AlternativeDependenciesAnnotation.class, graph(proto.getAlternativeDependencies(), tokens));
+      } else if (key == SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class) {
+        sentence.set(SemanticGraphCoreAnnotations.EnhancedDependenciesAnnotation.class, graph(proto.getEnhancedDependencies(), tokens));
+      } else if (key == SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class) {
+        sentence.set(SemanticGraphCoreAnnotations.EnhancedPlusPlusDependenciesAnnotation.class, graph(proto.getEnhancedPlusPlusDependencies(), tokens));
+      } else {
+        throw new IllegalStateException("Not a key which can be read lazily: " + key);
+      }
+    }
+  }
+
+  private SemanticGraph graph(CoreNLPProtos.DependencyGraph graph, List<CoreLabel> tokens) {
+    return ProtobufAnnotationSerializer.fromProto(graph, tokens, docid);
+  }
+
+
+  /** Read every key which has not been read yet. */
+  private synchronized void readAll() {
+    for (Class<?> key : new ArrayList<>(deferred)) {
+      read(key);
+    }
+  }
+
+
+  /** The number of keys which have not been read from the protocol buffer yet. */
+  public synchronized int deferredKeys() {
+    return deferred.size();
+  }
+
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized <VALUE> VALUE get(Class<? extends Key<VALUE>> key) {
+    read(key);
+    return sentence.get(key);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized <VALUE> VALUE set(Class<? extends Key<VALUE>> key, VALUE value) {
+    read(key);
+    return sentence.set(key, value);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized <VALUE> VALUE remove(Class<? extends Key<VALUE>> key) {
+    read(key);
+    return sentence.remove(key);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized <VALUE> boolean containsKey(Class<? extends Key<VALUE>> key) {
+    return deferred.contains(key) || sentence.containsKey(key);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized Set<Class<?>> keySet() {
+    readAll();
+    return sentence.keySet();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized int size() {
+    return sentence.size() + deferred.size();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized String toShorterString(String... what) {
+    readAll();
+    return sentence.toShorterString(what);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public synchronized void prettyLog(RedwoodChannels channels, String description) {
+    readAll();
+    sentence.prettyLog(channels, description);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    readAll();
+    if (obj instanceof LazyProtobufSentence) {
+      obj = ((LazyProtobufSentence) obj).materialize();
+    }
+    return sentence.equals(obj);
+  }
+
+  @Override
+  public synchronized int hashCode() {
+    readAll();
+    return sentence.hashCode();
+  }
+
+  @Override
+  public synchronized String toString() {
+    readAll();
+    return sentence.toString();
+  }
+
+
+  /** The sentence with every key read, as an ordinary CoreMap. */
+  private CoreMap materialize() {
+    readAll();
+    return sentence;
+  }
+
+  /** Serialize the sentence in full, so that it can be read back without the protocol buffer. */
+  private Object writeReplace() {
+    return materialize();
+  }
+
+}
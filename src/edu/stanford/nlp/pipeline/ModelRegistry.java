@@ -0,0 +1,342 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.*;
+import java.util.function.Supplier;
+
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * Shares the heavy models behind annotators (taggers, CRF classifiers,
+ * parser grammars, ...) between annotators which load the same model
+ * with the same options.
+ *
+ * The {@link AnnotatorPool} and {@link StanfordCoreNLP#GLOBAL_ANNOTATOR_CACHE}
+ * only reuse an annotator when all of its properties match, so two
+ * pipelines which differ in, say, {@code parse.maxlen} would otherwise
+ * each load their own copy of the same grammar.  Annotators instead ask
+ * the registry for their models, keyed by the kind of model, its
+ * location and whatever options change the loaded object, and get the
+ * copy which is already loaded if there is one.  Concurrent requests for
+ * the same model wait for a single load.
+ *
+ * Each model is reference counted by the objects which acquired it.
+ * Owners are only held weakly, so a model is released either explicitly
+ * by {@link #release(Object)} or when its owner is garbage collected.
+ * Models with no owners are kept around in case another pipeline wants
+ * them, but only up to a number of models and an estimated number of
+ * bytes, beyond which the least recently released models are dropped.
+ * The estimate is the size of the model file, which is only a rough
+ * guide to the memory the model takes.
+ *
+ * @see StanfordCoreNLP#clearAnnotatorPool()
+ */
+public class ModelRegistry  {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(ModelRegistry.class);
+
+  /** By default, keep this many models which no annotator uses. */
+  public static final int DEFAULT_MAX_UNUSED_MODELS = 8;
+
+  /** The registry used by the CoreNLP annotators. */
+  public static final ModelRegistry SINGLETON = new ModelRegistry(DEFAULT_MAX_UNUSED_MODELS, Runtime.getRuntime().maxMemory() / 4);
+
+
+  /**
+   * What identifies a model: the kind of model, where it is loaded
+   * from, and the options which change the loaded object.
+   */
+  private static final class ModelKey {
+    final String kind;
+    final String location;
+    final String options;
+
+    ModelKey(String kind, String location, String options) {
+      this.kind = kind;
+      this.location = location;
+      this.options = options;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      ModelKey that = (ModelKey) o;
+      return Objects.equals(kind, that.kind) &&
+          Objects.equals(location, that.location) &&
+          Objects.equals(options, that.options);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(kind, location, options);
+    }
+
+    @Override
+    public String toString() {
+      return kind + " model " + location + (options.isEmpty() ? "" : " [" + options + ']');
+    }
+  }
+
+
+  /** A model, loaded or not, and its reference count. */
+  private static final class Entry {
+    final ModelKey key;
+    /** Guarded by the entry itself, so that only one thread loads the model */
+    private Object model;
+    /** The following are guarded by the registry */
+    int references;
+    long estimatedBytes;
+
+    Entry(ModelKey key) {
+      this.key = key;
+    }
+
+    synchronized Object get(Supplier<?> loader) {
+      if (model == null) {
+        Object loaded = loader.get();
+        if (loaded == null) {
+          throw new IllegalStateException("Loading the " + key + " returned null");
+        }
+        model = loaded;
+      }
+      return model;
+    }
+
+    synchronized boolean isLoaded() {
+      return model != null;
+    }
+  }
+
+
+  /** Weakly holds an owner, along with the models it acquired. */
+  private static final class Owner extends WeakReference<Object> {
+    final List<Entry> entries = new ArrayList<>();
+
+    Owner(Object owner, ReferenceQueue<Object> queue) {
+      super(owner, queue);
+    }
+  }
+
+
+  private final Map<ModelKey, Entry> models = new HashMap<>();
+
+  /** Models without references, least recently released first */
+  private final LinkedHashMap<ModelKey, Entry> unused = new LinkedHashMap<>();
+  private long unusedBytes;
+
+  private final List<Owner> owners = new ArrayList<>();
+  private final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<>();
+
+  private int maxUnusedModels;
+  private long maxUnusedBytes;
+
+
+  /**
+   * Create a registry.
+   *
+   * @param maxUnusedModels How many models without owners to keep
+   * @param maxUnusedBytes How many estimated bytes of models without owners to keep
+   */
+  public ModelRegistry(int maxUnusedModels, long maxUnusedBytes) {
+    this.maxUnusedModels = maxUnusedModels;
+    this.maxUnusedBytes = maxUnusedBytes;
+  }
+
+
+  /**
+   * Get a model, loading it if no one has yet.
+   *
+   * @param owner The object which will use the model, usually an annotator.
+   *              The model is released when this object is garbage collected,
+   *              or when {@link #release(Object)} is called with it.
+   * @param kind The kind of model, such as the annotator name
+   * @param location Where the model is loaded from
+   * @param options Anything besides the location which changes the loaded
+   *                model, such as flags set on it after loading.  Two requests
+   *                share a model only if their options are equal.
+   * @param loader Loads the model if it isn't loaded already
+   * @return The shared model
+   */
+  public <T> T acquire(Object owner, String kind, String location, String options, Supplier<T> loader) {
+    ModelKey key = new ModelKey(kind, location, options == null ? "" : options);
+    Entry entry;
+    synchronized (this) {
+      expungeCollectedOwners();
+      entry = models.computeIfAbsent(key, Entry::new);
+      if (unused.remove(key) != null) {
+        unusedBytes -= entry.estimatedBytes;
+      }
+      entry.references++;
+      ownerFor(owner).entries.add(entry);
+    }
+
+    T model;
+    try {
+      @SuppressWarnings("unchecked")
+      T loaded = (T) entry.get(loader);
+      model = loaded;
+    } catch (RuntimeException | Error e) {
+      synchronized (this) {
+        for (Owner ref : owners) {
+          if (ref.get() == owner) {
+            ref.entries.remove(entry);
+            break;
+          }
+        }
+        release(entry);
+      }
+      throw e;
+    }
+
+    long bytes = estimateBytes(location);
+    synchronized (this) {
+      // once a model is unused its size is counted in unusedBytes, so only change it while it is in use
+      if (entry.references > 0) {
+        entry.estimatedBytes = bytes;
+      }
+    }
+    return model;
+  }
+
+
+  /**
+   * Drop all the references which this owner holds.  Models which no one
+   * else uses may then be evicted.
+   */
+  public synchronized void release(Object owner) {
+    for (Iterator<Owner> it = owners.iterator(); it.hasNext(); ) {
+      Owner ref = it.next();
+      if (ref.get() == owner) {
+        it.remove();
+        for (Entry entry : ref.entries) {
+          release(entry);
+        }
+        break;
+      }
+    }
+    expungeCollectedOwners();
+  }
+
+
+  /**
+   * Drop every model which no one uses.
+   *
+   * @return The number of models dropped
+   */
+  public synchronized int clearUnused() {
+    expungeCollectedOwners();
+    int count = unused.size();
+    for (ModelKey key : unused.keySet()) {
+      models.remove(key);
+    }
+    unused.clear();
+    unusedBytes = 0;
+    return count;
+  }
+
+
+  /**
+   * Change how many models without owners are kept, evicting models
+   * if there are now too many.
+   */
+  public synchronized void setLimits(int maxUnusedModels, long maxUnusedBytes) {
+    this.maxUnusedModels = maxUnusedModels;
+    this.maxUnusedBytes = maxUnusedBytes;
+    evict();
+  }
+
+
+  /** The number of models in the registry, used or not. */
+  public synchronized int size() {
+    expungeCollectedOwners();
+    return models.size();
+  }
+
+
+  /** The number of models in the registry which no one uses. */
+  public synchronized int unusedSize() {
+    expungeCollectedOwners();
+    return unused.size();
+  }
+
+
+  private Owner ownerFor(Object owner) {
+    for (Owner ref : owners) {
+      if (ref.get() == owner) {
+        return ref;
+      }
+    }
+    Owner ref = new Owner(owner, collectedOwners);
+    owners.add(ref);
+    return ref;
+  }
+
+
+  private void release(Entry entry) {
+    entry.references--;
+    if (entry.references > 0) {
+      return;
+    }
+    if (entry.isLoaded()) {
+      unused.put(entry.key, entry);
+      unusedBytes += entry.estimatedBytes;
+      evict();
+    } else {
+      models.remove(entry.key);
+    }
+  }
+
+
+  /** Release the models of owners which have been garbage collected. */
+  private void expungeCollectedOwners() {
+    for (Owner ref; (ref = (Owner) collectedOwners.poll()) != null; ) {
+      if (owners.remove(ref)) {
+        for (Entry entry : ref.entries) {
+          release(entry);
+        }
+      }
+    }
+  }
+
+
+  private void evict() {
+    Iterator<Entry> it = unused.values().iterator();
+    while (it.hasNext() && (unused.size() > maxUnusedModels || unusedBytes > maxUnusedBytes)) {
+      Entry entry = it.next();
+      it.remove();
+      unusedBytes -= entry.estimatedBytes;
+      models.remove(entry.key);
+      log.info("Evicting unused " + entry.key);
+    }
+  }
+
+
+  /** The size of the model file on the file system or classpath, or 0 if it can't be found. */
+  private static long estimateBytes(String location) {
+    if (location == null) {
+      return 0;
+    }
+    try {
+      File file = new File(location);
+      if (file.isFile()) {
+        return file.length();
+      }
+      URL url = ModelRegistry.class.getClassLoader().getResource(location);
+      if (url != null) {
+        URLConnection connection = url.openConnection();
+        return Math.max(0, connection.getContentLengthLong());
+      }
+    } catch (Exception e) {
+      // only an estimate
+    }
+    return 0;
+  }
+
+}
@@ -70,7 +70,8 @@ public class POSTaggerAnnotator implements Annotator  {
       posLoc = DefaultPaths.DEFAULT_POS_MODEL;
     }
     boolean verbose = PropertiesUtils.getBool(props, annotatorName + ".verbose", false);
-    this.pos = loadModel(posLoc, verbose);
+    String model = posLoc;
+    this.pos = ModelRegistry.SINGLETON.acquire(this, annotatorName, model, "", () -> loadModel(model, verbose));
     this.maxSentenceLength = PropertiesUtils.getInt(props, annotatorName + ".maxlen", Integer.MAX_VALUE);
     this.nThreads = PropertiesUtils.getInt(props, annotatorName + ".nthreads", PropertiesUtils.getInt(props, "nthreads", 1));
     this.reuseTags = PropertiesUtils.getBool(props, annotatorName + ".reuseTags", false);
@@ -17,6 +17,8 @@ import edu.stanford.nlp.parser.common.ParserQuery;
 import edu.stanford.nlp.parser.common.ParserUtils;
 import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.parser.lexparser.TreeBinarizer;
+import edu.stanford.nlp.parser.shiftreduce.ShiftReduceParser;
+import edu.stanford.nlp.parser.shiftreduce.ShiftReduceParserQuery;
 import edu.stanford.nlp.semgraph.SemanticGraph;
 import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
 import edu.stanford.nlp.trees.*;
@@ -118,7 +120,8 @@ public class ParserAnnotator extends SentenceAnnotator  {
     this.VERBOSE = PropertiesUtils.getBool(props, annotatorName + ".debug", false);
 
     String[] flags = convertFlagsToArray(props.getProperty(annotatorName + ".flags"));
-    this.parser = loadModel(model, VERBOSE, flags);
+    this.parser = ModelRegistry.SINGLETON.acquire(this, annotatorName, model, String.join(" ", flags),
+        () -> loadModel(model, VERBOSE, flags));
     this.maxSentenceLength = PropertiesUtils.getInt(props, annotatorName + ".maxlen", -1);
 
     String treeMapClass = props.getProperty(annotatorName + ".treemap");
@@ -233,12 +236,76 @@ public class ParserAnnotator extends SentenceAnnotator  {
     return maxParseTime;
   }
 
+  /**
+   * When a shift-reduce parser runs single threaded with no time limit,
+   * all the sentences of the document are parsed together with
+   * {@link ShiftReduceParser#parseAll}, which scores the beams of many
+   * sentences in one batch.  Otherwise the sentences are parsed one at
+   * a time as usual.
+   * If the thread is interrupted, the sentences of the batch being parsed
+   * get the same default tree as a sentence which fails to parse, and
+   * the following batches are parsed as usual.
+   */
   @Override
-  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
-    // If "noSquash" is set, don't re-annotate sentences which already have a tree annotation
-    if (noSquash &&
+  public void annotate(Annotation annotation) {
+    List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+    if (sentences == null || !(parser instanceof ShiftReduceParser) || nThreads != 1 || maxParseTime > 0) {
+      super.annotate(annotation);
+      return;
+    }
+
+    List<CoreMap> toParse = Generics.newArrayList();
+    List<List<CoreLabel>> words = Generics.newArrayList();
+    List<List<ParserConstraint>> constraints = Generics.newArrayList();
+    for (CoreMap sentence : sentences) {
+      if (skipSentence(sentence)) {
+        continue;
+      }
+      List<CoreLabel> sentenceWords = sentence.get(CoreAnnotations.TokensAnnotation.class);
+      if (maxSentenceLength <= 0 || sentenceWords.size() <= maxSentenceLength) {
+        toParse.add(sentence);
+        words.add(sentenceWords);
+        constraints.add(sentence.get(ParserAnnotations.ConstraintAnnotation.class));
+      } else {
+        doOneFailedSentence(annotation, sentence);
+      }
+    }
+
+    for (int start = 0; start < toParse.size(); start += ShiftReduceParserQuery.PARSE_BATCH_SIZE) {
+      int end = Math.min(start + ShiftReduceParserQuery.PARSE_BATCH_SIZE, toParse.size());
+      List<ShiftReduceParserQuery> queries;
+      try {
+        queries = ((ShiftReduceParser) parser).parseAll(words.subList(start, end), constraints.subList(start, end));
+      } catch (RuntimeInterruptedException e) {
+        if (VERBOSE) {
+          log.info("Interrupted while parsing sentences " + start + " to " + end);
+        }
+        for (int i = start; i < end; ++i) {
+          doOneFailedSentence(annotation, toParse.get(i));
+        }
+        continue;
+      }
+      for (int i = start; i < end; ++i) {
+        List<Tree> trees = getTrees(queries.get(i - start), words.get(i));
+        if (trees.size() < 1) {
+          doOneFailedSentence(annotation, toParse.get(i));
+        } else {
+          finishSentence(toParse.get(i), trees);
+        }
+      }
+    }
+  }
+
+  /** If "noSquash" is set, don't re-annotate sentences which already have a tree annotation */
+  private boolean skipSentence(CoreMap sentence) {
+    return noSquash &&
         sentence.get(TreeCoreAnnotations.TreeAnnotation.class) != null &&
-        !"X".equalsIgnoreCase(sentence.get(TreeCoreAnnotations.TreeAnnotation.class).label().value())) {
+        !"X".equalsIgnoreCase(sentence.get(TreeCoreAnnotations.TreeAnnotation.class).label().value());
+  }
+
+  @Override
+  protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+    if (skipSentence(sentence)) {
       return;
     }
 
@@ -321,6 +388,10 @@ public class ParserAnnotator extends SentenceAnnotator  {
     ParserQuery pq = parser.parserQuery();
     pq.setConstraints(constraints);
     pq.parse(words);
+    return getTrees(pq, words);
+  }
+
+  private List<Tree> getTrees(ParserQuery pq, List<CoreLabel> words) {
     List<Tree> trees = Generics.newLinkedList();
     try {
       // Use bestParse if kBest is set to 1.
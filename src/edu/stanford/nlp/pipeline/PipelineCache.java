@@ -0,0 +1,232 @@
+package edu.stanford.nlp.pipeline;
+
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * A bounded cache of the pipelines built by the {@link StanfordCoreNLPServer},
+ * keyed by a normalized signature of the properties they were built with.
+ *
+ * Clients which alternate between a few sets of annotators each find their
+ * own pipeline here, rather than replacing a single cached pipeline on every
+ * request.  Pipelines are dropped when they are the least recently used
+ * beyond the size of the cache, or have not been used for a while.  They are
+ * also only softly referenced, as the single cached pipeline used to be, so
+ * that the garbage collector can reclaim them if memory gets tight.
+ *
+ * Building a pipeline takes a long time, so concurrent requests for the same
+ * signature wait for one build rather than each starting their own.
+ * Requests for different signatures build in parallel.
+ *
+ * @param <P> The type of pipeline (this is only not {@link StanfordCoreNLP} in tests)
+ */
+public class PipelineCache<P> {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(PipelineCache.class);
+
+  /** Properties which change from request to request without changing the pipeline. */
+  private static final Set<String> IGNORED_PROPERTIES = Collections.singleton("date");
+
+
+  /** A snapshot of the statistics of one cached pipeline. */
+  public static class Stats {
+    /** The signature of the pipeline */
+    public final String key;
+    /** The number of requests which found the pipeline already built (or being built) */
+    public final long hits;
+    /** The number of requests which had to build the pipeline */
+    public final long misses;
+    /** The total time spent building the pipeline, in milliseconds */
+    public final long buildMillis;
+    /** How long since the pipeline was last requested, in milliseconds */
+    public final long idleMillis;
+
+    Stats(String key, long hits, long misses, long buildMillis, long idleMillis) {
+      this.key = key;
+      this.hits = hits;
+      this.misses = misses;
+      this.buildMillis = buildMillis;
+      this.idleMillis = idleMillis;
+    }
+  }
+
+
+  /** A pipeline, or the promise of one, along with its statistics. */
+  private class Entry {
+    final String key;
+    /** Guarded by the entry, which is held while building */
+    private SoftReference<P> pipeline = new SoftReference<>(null);
+    /** Only changed with the entry held, but read without it, so that statistics don't wait for a build */
+    private volatile long hits;
+    private volatile long misses;
+    private volatile long buildMillis;
+    /** Set under the cache's lock, but read without it for statistics */
+    volatile long lastUsed;
+
+    Entry(String key) {
+      this.key = key;
+    }
+
+    synchronized P get(Properties props) {
+      P impl = pipeline.get();
+      if (impl != null) {
+        hits += 1;
+        return impl;
+      }
+      misses += 1;
+      long start = System.currentTimeMillis();
+      impl = builder.apply(props);
+      buildMillis += System.currentTimeMillis() - start;
+      pipeline = new SoftReference<>(impl);
+      return impl;
+    }
+
+    Stats stats(long now) {
+      return new Stats(key, hits, misses, buildMillis, now - lastUsed);
+    }
+  }
+
+
+  private final Function<Properties, P> builder;
+  private final int maxSize;
+  private final long maxIdleMillis;
+
+  /** The cached pipelines, least recently used first */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long evictions;
+
+
+  /**
+   * Create a cache.
+   *
+   * @param builder Builds a pipeline for the given properties
+   * @param maxSize The most pipelines to keep
+   * @param maxIdleMillis Drop pipelines which haven't been used for this long; non-positive means never
+   */
+  public PipelineCache(Function<Properties, P> builder, int maxSize, long maxIdleMillis) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("A pipeline cache must hold at least one pipeline, not " + maxSize);
+    }
+    this.builder = builder;
+    this.maxSize = maxSize;
+    this.maxIdleMillis = maxIdleMillis;
+  }
+
+
+  /**
+   * The signature of the given properties: all of them but the ones which
+   * don't affect the pipeline, sorted, so that the same properties always
+   * give the same signature.
+   */
+  public static String signature(Properties props) {
+    StringBuilder sb = new StringBuilder();
+    new TreeSet<>(props.stringPropertyNames()).stream()
+        .filter(key -> ! IGNORED_PROPERTIES.contains(key.toLowerCase()))
+        .forEach(key -> sb.append(key).append(':').append(props.getProperty(key)).append(';'));
+    return sb.toString();
+  }
+
+
+  /**
+   * Get the pipeline for these properties, building it if it isn't cached.
+   * If another thread is building the same pipeline, wait for it instead.
+   */
+  public P get(Properties props) {
+    String key = signature(props);
+    Entry entry;
+    synchronized (this) {
+      long now = System.currentTimeMillis();
+      evictIdle(now);
+      entry = entries.get(key);
+      if (entry == null) {
+        entry = new Entry(key);
+        entries.put(key, entry);
+        evictOverflow();
+      }
+      entry.lastUsed = now;
+    }
+    return entry.get(props);
+  }
+
+
+  /** The number of pipelines in the cache, built or being built. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+
+  /** The number of pipelines dropped from the cache since it was created. */
+  public synchronized long evictions() {
+    return evictions;
+  }
+
+
+  /** The statistics of the cached pipelines, least recently used first. */
+  public List<Stats> stats() {
+    List<Entry> snapshot;
+    synchronized (this) {
+      snapshot = new ArrayList<>(entries.values());
+    }
+    long now = System.currentTimeMillis();
+    List<Stats> stats = new ArrayList<>(snapshot.size());
+    for (Entry entry : snapshot) {
+      stats.add(entry.stats(now));
+    }
+    return stats;
+  }
+
+
+  /** Write the size and statistics of the cache as a JSON object. */
+  public void writeStats(JSONOutputter.Writer writer) {
+    writer.set("size", size());
+    writer.set("maxSize", maxSize);
+    writer.set("maxIdleMillis", maxIdleMillis);
+    writer.set("evictions", evictions());
+    List<Consumer<JSONOutputter.Writer>> pipelines = new ArrayList<>();
+    for (Stats stats : stats()) {
+      pipelines.add(pipelineWriter -> {
+        pipelineWriter.set("key", stats.key);
+        pipelineWriter.set("hits", stats.hits);
+        pipelineWriter.set("misses", stats.misses);
+        pipelineWriter.set("buildMillis", stats.buildMillis);
+        pipelineWriter.set("idleMillis", stats.idleMillis);
+      });
+    }
+    writer.set("pipelines", pipelines);
+  }
+
+
+  private void evictIdle(long now) {
+    if (maxIdleMillis <= 0) {
+      return;
+    }
+    for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      if (now - entry.lastUsed > maxIdleMillis) {
+        it.remove();
+        evictions += 1;
+        log.info("Dropping pipeline unused for " + (now - entry.lastUsed) + "ms: " + entry.key);
+      } else {
+        // least recently used first, so the rest are more recent
+        break;
+      }
+    }
+  }
+
+
+  private void evictOverflow() {
+    for (Iterator<Entry> it = entries.values().iterator(); entries.size() > maxSize && it.hasNext(); ) {
+      Entry entry = it.next();
+      it.remove();
+      evictions += 1;
+      log.info("Dropping least recently used pipeline: " + entry.key);
+    }
+  }
+
+}
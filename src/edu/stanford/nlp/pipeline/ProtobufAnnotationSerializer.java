@@ -191,6 +191,17 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     return Pair.makePair(fromProto(doc), is);
   }
 
+  /**
+   * Like {@link #read(InputStream)}, but leave the trees and dependency graphs of the document
+   * to be read when they are first needed.
+   *
+   * @see #fromProtoLazy(CoreNLPProtos.Document)
+   */
+  public Pair<Annotation, InputStream> readLazy(InputStream is) throws IOException {
+    CoreNLPProtos.Document doc = CoreNLPProtos.Document.parseDelimitedFrom(is);
+    return Pair.makePair(fromProtoLazy(doc), is);
+  }
+
   /**
    * Read a single protocol buffer, which constitutes the entire stream.
    * This is in contrast to the default, where mutliple buffers may come out of the stream,
@@ -1487,6 +1498,26 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
    */
   @SuppressWarnings("deprecation")
   public Annotation fromProto(CoreNLPProtos.Document proto) {
+    return fromProto(proto, false);
+  }
+
+  /**
+   * Like {@link #fromProto(CoreNLPProtos.Document)}, but leave the parse trees and
+   * dependency graphs of each sentence in the protocol buffer until they are first read.
+   * Tokens, sentences, entity mentions, coref chains and the like are read right away.
+   * This is much cheaper for a caller which only needs some of the annotations of a stored document.
+   * Sentences whose trees or graphs are needed by other annotations (OpenIE, relations, coref mentions)
+   * are read in full, as by {@link #fromProto(CoreNLPProtos.Document)}.
+   *
+   * @param proto The serialized document.
+   * @return An Annotation whose sentences are {@link LazyProtobufSentence}s where possible.
+   */
+  public Annotation fromProtoLazy(CoreNLPProtos.Document proto) {
+    return fromProto(proto, true);
+  }
+
+  @SuppressWarnings("deprecation")
+  private Annotation fromProto(CoreNLPProtos.Document proto, boolean lazy) {
     if (Thread.interrupted()) {
       throw new RuntimeInterruptedException();
     }
@@ -1552,7 +1583,13 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
     List<CoreMap> sentences = new ArrayList<>(proto.getSentenceCount());
     for (int sentIndex = 0; sentIndex < proto.getSentenceCount(); ++sentIndex) {
       CoreNLPProtos.Sentence sentence = proto.getSentence(sentIndex);
-      CoreMap map = fromProtoNoTokens(sentence);
+      CoreMap map;
+      if (lazy && LazyProtobufSentence.canDefer(sentence)) {
+        map = new LazyProtobufSentence(this, fromProtoNoTokens(LazyProtobufSentence.withoutTrees(sentence)),
+            sentence, proto.hasDocID() ? proto.getDocID() : null);
+      } else {
+        map = fromProtoNoTokens(sentence);
+      }
       if (!tokens.isEmpty() && sentence.hasTokenOffsetBegin() && sentence.hasTokenOffsetEnd() &&
           map.get(TokensAnnotation.class) == null) {
         // Set tokens for sentence
@@ -1654,24 +1691,26 @@ public class ProtobufAnnotationSerializer extends AnnotationSerializer {
       CoreNLPProtos.Sentence sentence = proto.getSentenceList().get(sentenceIndex);
       CoreMap map = sentences.get(sentenceIndex);
       List<CoreLabel> sentenceTokens = map.get(TokensAnnotation.class);
-      // Set dependency graphs
-      if (sentence.hasBasicDependencies()) {
-        map.set(BasicDependenciesAnnotation.class, fromProto(sentence.getBasicDependencies(), sentenceTokens, docid));
-      }
-      if (sentence.hasCollapsedDependencies()) {
-        map.set(CollapsedDependenciesAnnotation.class, fromProto(sentence.getCollapsedDependencies(), sentenceTokens, docid));
-      }
-      if (sentence.hasCollapsedCCProcessedDependencies()) {
-        map.set(CollapsedCCProcessedDependenciesAnnotation.class, fromProto(sentence.getCollapsedCCProcessedDependencies(), sentenceTokens, docid));
-      }
-      if (sentence.hasAlternativeDependencies()) {
-        map.set(AlternativeDependenciesAnnotation.class, fromProto(sentence.getAlternativeDependencies(), sentenceTokens, docid));
-      }
-      if (sentence.hasEnhancedDependencies()) {
-        map.set(EnhancedDependenciesAnnotation.class, fromProto(sentence.getEnhancedDependencies(), sentenceTokens, docid));
-      }
-      if (sentence.hasEnhancedPlusPlusDependencies()) {
-        map.set(EnhancedPlusPlusDependenciesAnnotation.class, fromProto(sentence.getEnhancedPlusPlusDependencies(), sentenceTokens, docid));
+      // Set dependency graphs, unless they are read lazily
+      if ( ! (map instanceof LazyProtobufSentence)) {
+        if (sentence.hasBasicDependencies()) {
+          map.set(BasicDependenciesAnnotation.class, fromProto(sentence.getBasicDependencies(), sentenceTokens, docid));
+        }
+        if (sentence.hasCollapsedDependencies()) {
+          map.set(CollapsedDependenciesAnnotation.class, fromProto(sentence.getCollapsedDependencies(), sentenceTokens, docid));
+        }
+        if (sentence.hasCollapsedCCProcessedDependencies()) {
+          map.set(CollapsedCCProcessedDependenciesAnnotation.class, fromProto(sentence.getCollapsedCCProcessedDependencies(), sentenceTokens, docid));
+        }
+        if (sentence.hasAlternativeDependencies()) {
+          map.set(AlternativeDependenciesAnnotation.class, fromProto(sentence.getAlternativeDependencies(), sentenceTokens, docid));
+        }
+        if (sentence.hasEnhancedDependencies()) {
+          map.set(EnhancedDependenciesAnnotation.class, fromProto(sentence.getEnhancedDependencies(), sentenceTokens, docid));
+        }
+        if (sentence.hasEnhancedPlusPlusDependencies()) {
+          map.set(EnhancedPlusPlusDependenciesAnnotation.class, fromProto(sentence.getEnhancedPlusPlusDependencies(), sentenceTokens, docid));
+        }
       }
       // Set entailed sentences
       if (sentence.getEntailedSentenceCount() > 0) {
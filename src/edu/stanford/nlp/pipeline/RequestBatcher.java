@@ -0,0 +1,269 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.logging.Redwood;
+
+
+/**
+ * Collects small annotation requests which go to the same pipeline into
+ * batches, and annotates each batch with one call to
+ * {@link AnnotationPipeline#annotateSentencesTogether(List)}.
+ * This is used by the {@link StanfordCoreNLPServer} when it gets many
+ * tiny requests: each would otherwise pay the per-document overhead of
+ * every annotator on its own, and never use the paths of the annotators
+ * which handle many sentences at once.
+ *
+ * A batch is opened by the first request for a pipeline, and is run once
+ * it has been open for the batching window, or as soon as its documents
+ * have (roughly) the maximum number of sentences.  Requests whose timeout
+ * is too short to wait out the window are run on their own right away.
+ * A request which times out before its batch runs is dropped from the
+ * batch; once a batch is running, it runs to the end for the requests
+ * which are still waiting on it.
+ *
+ * The caller is responsible for only batching requests whose annotators
+ * are safe to run on several documents' sentences together; see
+ * {@link AnnotationPipeline#annotateSentencesTogether(List)}.
+ */
+public class RequestBatcher {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(RequestBatcher.class);
+
+
+  /** A document waiting to be annotated, and the future to complete with it. */
+  private static class Request {
+    final Annotation document;
+    final CompletableFuture<Annotation> future = new CompletableFuture<>();
+
+    Request(Annotation document) {
+      this.document = document;
+    }
+  }
+
+
+  /** The requests for one pipeline which will be annotated together. */
+  private static class Batch {
+    final String key;
+    final AnnotationPipeline pipeline;
+    final List<Request> requests = new ArrayList<>();
+    int estimatedSentences;
+
+    Batch(String key, AnnotationPipeline pipeline) {
+      this.key = key;
+      this.pipeline = pipeline;
+    }
+  }
+
+
+  private final ExecutorService executor;
+  private final long windowMillis;
+  private final int maxSentences;
+
+  /** Closes batches once their window is over */
+  private final ScheduledExecutorService timer;
+
+  /** The batches which are still taking requests, by pipeline signature */
+  private final Map<String, Batch> open = new HashMap<>();
+
+  /** How many batches had each number of documents (dropped requests not included) */
+  private final TreeMap<Integer, Long> batchSizes = new TreeMap<>();
+  private long documents;
+  private long dropped;
+
+
+  /**
+   * Create a batcher.
+   *
+   * @param executor The executor to annotate batches on
+   * @param windowMillis How long a batch takes requests before it is run
+   * @param maxSentences Run a batch early once its documents have about this many sentences
+   */
+  public RequestBatcher(ExecutorService executor, long windowMillis, int maxSentences) {
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("The batching window must be positive, not " + windowMillis);
+    }
+    this.executor = executor;
+    this.windowMillis = windowMillis;
+    this.maxSentences = maxSentences;
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "corenlp-request-batcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+
+  /**
+   * Annotate a document, together with whichever other documents for the
+   * same pipeline arrive within the batching window.
+   * Cancelling the returned future before the batch runs drops the
+   * document from its batch.
+   *
+   * @param key The signature of the pipeline; only documents with the same key are batched
+   * @param pipeline The pipeline to annotate with
+   * @param document The document to annotate
+   * @param timeoutMillis How long the caller will wait for the document
+   * @return The annotated document, once its batch has run
+   */
+  public Future<Annotation> submit(String key, AnnotationPipeline pipeline, Annotation document, long timeoutMillis) {
+    Request request = new Request(document);
+    if (timeoutMillis < 2 * windowMillis) {
+      Batch alone = new Batch(key, pipeline);
+      alone.requests.add(request);
+      run(alone);
+      return request.future;
+    }
+
+    Batch full = null;
+    synchronized (this) {
+      Batch batch = open.get(key);
+      if (batch == null) {
+        batch = new Batch(key, pipeline);
+        open.put(key, batch);
+        Batch scheduled = batch;
+        timer.schedule(() -> close(scheduled), windowMillis, TimeUnit.MILLISECONDS);
+      }
+      batch.requests.add(request);
+      batch.estimatedSentences += estimateSentences(document.get(CoreAnnotations.TextAnnotation.class));
+      if (batch.estimatedSentences >= maxSentences) {
+        open.remove(key);
+        full = batch;
+      }
+    }
+    if (full != null) {
+      run(full);
+    }
+    return request.future;
+  }
+
+
+  /** Stop taking requests for this batch, and run it, unless it already filled up. */
+  private void close(Batch batch) {
+    synchronized (this) {
+      if (open.get(batch.key) != batch) {
+        return;
+      }
+      open.remove(batch.key);
+    }
+    run(batch);
+  }
+
+
+  private void run(Batch batch) {
+    try {
+      executor.submit(() -> annotate(batch));
+    } catch (RejectedExecutionException e) {
+      for (Request request : batch.requests) {
+        request.future.completeExceptionally(e);
+      }
+    }
+  }
+
+
+  private void annotate(Batch batch) {
+    List<Request> live = new ArrayList<>(batch.requests.size());
+    for (Request request : batch.requests) {
+      if ( ! request.future.isDone()) {
+        live.add(request);
+      }
+    }
+    synchronized (this) {
+      dropped += batch.requests.size() - live.size();
+      if ( ! live.isEmpty()) {
+        batchSizes.merge(live.size(), 1L, Long::sum);
+        documents += live.size();
+      }
+    }
+    if (live.isEmpty()) {
+      return;
+    }
+
+    try {
+      if (live.size() == 1) {
+        batch.pipeline.annotate(live.get(0).document);
+      } else {
+        List<Annotation> docs = new ArrayList<>(live.size());
+        for (Request request : live) {
+          docs.add(request.document);
+        }
+        batch.pipeline.annotateSentencesTogether(docs);
+      }
+    } catch (RuntimeException | Error e) {
+      log.warn("Failed to annotate a batch of " + live.size() + " documents: " + e);
+      for (Request request : live) {
+        request.future.completeExceptionally(e);
+      }
+      return;
+    }
+    for (Request request : live) {
+      request.future.complete(request.document);
+    }
+  }
+
+
+  /**
+   * A rough count of the sentences in some text: the number of sentence
+   * final punctuation marks followed by whitespace or the end of the text,
+   * and at least one.
+   */
+  static int estimateSentences(String text) {
+    if (text == null) {
+      return 1;
+    }
+    int count = 0;
+    for (int i = 0, length = text.length(); i < length; ++i) {
+      char c = text.charAt(i);
+      if ((c == '.' || c == '!' || c == '?') &&
+          (i + 1 == length || Character.isWhitespace(text.charAt(i + 1)))) {
+        count += 1;
+      }
+    }
+    return Math.max(1, count);
+  }
+
+
+  /** The number of batches which were run with each number of documents. */
+  public synchronized SortedMap<Integer, Long> batchSizes() {
+    return new TreeMap<>(batchSizes);
+  }
+
+
+  /** The number of requests which timed out or were cancelled before their batch ran. */
+  public synchronized long dropped() {
+    return dropped;
+  }
+
+
+  /** Write the settings of the batcher and the distribution of batch sizes as a JSON object. */
+  public void writeStats(JSONOutputter.Writer writer) {
+    SortedMap<Integer, Long> sizes;
+    long documents;
+    long dropped;
+    synchronized (this) {
+      sizes = new TreeMap<>(batchSizes);
+      documents = this.documents;
+      dropped = this.dropped;
+    }
+    long batches = 0;
+    for (long count : sizes.values()) {
+      batches += count;
+    }
+    writer.set("windowMillis", windowMillis);
+    writer.set("maxSentences", maxSentences);
+    writer.set("batches", batches);
+    writer.set("documents", documents);
+    writer.set("dropped", dropped);
+    writer.set("meanBatchSize", batches == 0 ? 0.0 : ((double) documents) / batches);
+    writer.set("batchSizes", (Consumer<JSONOutputter.Writer>) sizeWriter -> {
+      for (Map.Entry<Integer, Long> entry : sizes.entrySet()) {
+        sizeWriter.set(Integer.toString(entry.getKey()), entry.getValue());
+      }
+    });
+  }
+
+}
@@ -1,13 +1,13 @@
 package edu.stanford.nlp.pipeline;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
 import edu.stanford.nlp.util.RuntimeInterruptedException;
-import edu.stanford.nlp.util.concurrent.InterruptibleMulticoreWrapper;
-import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
 
 /**
  * A parent class for annotators which might want to analyze one
@@ -18,88 +18,108 @@ import edu.stanford.nlp.util.concurrent.ThreadsafeProcessor;
  * @author John Bauer
  */
 public abstract class SentenceAnnotator implements Annotator {
-  protected class AnnotatorProcessor implements ThreadsafeProcessor<CoreMap, CoreMap> {
 
-    final Annotation annotation;
+  /**
+   * Interrupts sentences which run past {@link #maxTime()} on the calling
+   * thread.  It only ever waits for deadlines, so one thread serves every
+   * annotator.
+   */
+  private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+  private static ScheduledThreadPoolExecutor newTimer() {
+    ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread thread = new Thread(r, "SentenceAnnotator-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  /**
+   * This annotator's work-stealing pool, created the first time a document
+   * is annotated with more than one thread.  Sentences from all the
+   * documents this annotator is working on at the same time go into the
+   * same pool, so a stream of short documents still keeps all the threads
+   * busy, and no pool is built per document.  Idle workers exit on their own.
+   */
+  private volatile ForkJoinPool pool;
 
-    AnnotatorProcessor(Annotation annotation) {
-      this.annotation = annotation;
+  private ForkJoinPool pool(int nThreads) {
+    ForkJoinPool pool = this.pool;
+    if (pool == null || pool.getParallelism() != nThreads) {
+      synchronized (this) {
+        pool = this.pool;
+        if (pool == null || pool.getParallelism() != nThreads) {
+          pool = new ForkJoinPool(nThreads);
+          this.pool = pool;
+        }
+      }
     }
+    return pool;
+  }
 
-    @Override
-    public CoreMap process(CoreMap sentence) {
-      doOneSentence(annotation, sentence);
-      return sentence;
+  /** One sentence of one document, which remembers when it started running. */
+  private class SentenceTask extends FutureTask<CoreMap> {
+    /** When the task started running, in milliseconds, or 0 if it hasn't started yet */
+    volatile long startTime = 0;
+
+    SentenceTask(Annotation annotation, CoreMap sentence) {
+      super(() -> {
+        doOneSentence(annotation, sentence);
+        return sentence;
+      });
     }
 
     @Override
-    public ThreadsafeProcessor<CoreMap, CoreMap> newInstance() {
-      return this;
+    public void run() {
+      if (startTime == 0 && !isDone()) {
+        startTime = System.currentTimeMillis();
+      }
+      super.run();
+      if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+        // cancel(true) may have interrupted the worker; don't let that hit its next sentence
+        Thread.interrupted();
+      }
     }
   }
 
-  private InterruptibleMulticoreWrapper<CoreMap, CoreMap> buildWrapper(Annotation annotation) {
-    InterruptibleMulticoreWrapper<CoreMap, CoreMap> wrapper = new InterruptibleMulticoreWrapper<>(nThreads(), new AnnotatorProcessor(annotation), true, maxTime());
-    return wrapper;
-  }
-
   @Override
   public void annotate(Annotation annotation) {
     if (annotation.containsKey(CoreAnnotations.SentencesAnnotation.class)) {
-      if (nThreads() != 1 || maxTime() > 0) {
-        InterruptibleMulticoreWrapper<CoreMap, CoreMap> wrapper = buildWrapper(annotation);
-        for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
-          boolean success = false;
-          // We iterate twice for each sentence so that if we fail for
-          // a sentence once, we start a new queue and try again.
-          // If the sentence fails a second time we give up.
-          for (int attempt = 0; attempt < 2; ++attempt) {
-            try {
-              wrapper.put(sentence);
-              success = true;
-              break;
-            } catch (RejectedExecutionException e) {
-              // If we time out, for now, we just throw away all jobs which were running at the time.
-              // Note that in order for this to be useful, the underlying job needs to handle Thread.interrupted()
-              List<CoreMap> failedSentences = wrapper.joinWithTimeout();
-              if (failedSentences != null) {
-                for (CoreMap failed : failedSentences) {
-                  doOneFailedSentence(annotation, failed);
-                }
-              }
-              // We don't wait for termination here, and perhaps this
-              // is a mistake.  If the processor used does not respect
-              // interruption, we could easily create many threads
-              // which are all doing useless work.  However, there is
-              // no clean way to interrupt the thread and then
-              // guarantee it finishes without running the risk of
-              // waiting forever for the thread to finish, which is
-              // exactly what we don't want with the timeout.
-              wrapper = buildWrapper(annotation);
+      if (nThreads() != 1) {
+        List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+        ForkJoinPool pool = pool(nThreads());
+        List<SentenceTask> tasks = new ArrayList<>(sentences.size());
+        for (CoreMap sentence : sentences) {
+          SentenceTask task = new SentenceTask(annotation, sentence);
+          tasks.add(task);
+          pool.execute(task);
+        }
+        try {
+          for (int i = 0; i < tasks.size(); ++i) {
+            if (!awaitSentence(tasks.get(i))) {
+              doOneFailedSentence(annotation, sentences.get(i));
             }
           }
-          if (!success) {
-            doOneFailedSentence(annotation, sentence);
-          }
-          while (wrapper.peek()) {
-            wrapper.poll();
-          }
-        }
-        List<CoreMap> failedSentences = wrapper.joinWithTimeout();
-        while (wrapper.peek()) {
-          wrapper.poll();
-        }
-        if (failedSentences != null) {
-          for (CoreMap failed : failedSentences) {
-            doOneFailedSentence(annotation, failed);
+        } catch (RuntimeException | Error e) {
+          // interrupted, or a sentence failed: don't leave the rest of the document running
+          for (SentenceTask task : tasks) {
+            task.cancel(true);
           }
+          throw e;
         }
       } else {
+        long maxTime = maxTime();
         for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
           if (Thread.interrupted()) {
             throw new RuntimeInterruptedException();
           }
-          doOneSentence(annotation, sentence);
+          if (maxTime <= 0) {
+            doOneSentence(annotation, sentence);
+          } else if (!doOneSentenceWithTimeout(annotation, sentence, maxTime)) {
+            doOneFailedSentence(annotation, sentence);
+          }
         }
       }
     } else {
@@ -107,6 +127,85 @@ public abstract class SentenceAnnotator implements Annotator {
     }
   }
 
+  /**
+   * Runs one sentence on the calling thread, interrupting it if it takes
+   * longer than {@code maxTime} milliseconds.
+   *
+   * @return true if the sentence was processed, false if it timed out
+   */
+  private boolean doOneSentenceWithTimeout(Annotation annotation, CoreMap sentence, long maxTime) {
+    Thread thread = Thread.currentThread();
+    // 0 while running, 1 once finished, 2 once timed out
+    AtomicInteger state = new AtomicInteger();
+    ScheduledFuture<?> timeout = TIMER.schedule(() -> {
+      if (state.compareAndSet(0, 2)) {
+        thread.interrupt();
+      }
+    }, maxTime, TimeUnit.MILLISECONDS);
+    try {
+      doOneSentence(annotation, sentence);
+    } catch (RuntimeException e) {
+      // after a timeout, whatever the interrupt made the sentence throw just means it failed
+      if (state.get() != 2) {
+        throw e;
+      }
+    } finally {
+      timeout.cancel(false);
+    }
+    if (state.compareAndSet(0, 1)) {
+      return true;
+    }
+    // the interrupt was ours, not the caller's
+    Thread.interrupted();
+    return false;
+  }
+
+  /**
+   * Waits for one sentence to finish.
+   * Without a time limit, the calling thread runs the sentence itself if
+   * no pool thread has picked it up yet, rather than sitting idle.
+   * With a time limit, a sentence which has been running for longer than
+   * {@link #maxTime()} is interrupted.
+   *
+   * @return true if the sentence was processed, false if it timed out
+   */
+  private boolean awaitSentence(SentenceTask task) {
+    long maxTime = maxTime();
+    try {
+      if (maxTime <= 0) {
+        task.run();
+        task.get();
+        return true;
+      }
+      while (true) {
+        long startTime = task.startTime;
+        long wait = (startTime == 0) ? maxTime : startTime + maxTime - System.currentTimeMillis();
+        // cancel() fails if the sentence finished in the meantime, in which case get() returns at once.
+        // Note that in order for this to be useful, the underlying job needs to handle Thread.interrupted()
+        if (wait <= 0 && task.cancel(true)) {
+          return false;
+        }
+        try {
+          task.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+          return true;
+        } catch (TimeoutException e) {
+          // check how long the sentence has actually been running and wait again
+        }
+      }
+    } catch (CancellationException e) {
+      return false;
+    } catch (InterruptedException e) {
+      throw new RuntimeInterruptedException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
   protected abstract int nThreads();
 
   /**
@@ -0,0 +1,276 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.util.MutableLong;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+import edu.stanford.nlp.util.StringUtils;
+import edu.stanford.nlp.util.Timing;
+import edu.stanford.nlp.util.logging.Redwood;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a list of {@link Annotator}s over a stream of documents as a staged pipeline.
+ * Each annotator is a stage with its own bounded input queue and its own set of
+ * worker threads; a document moves to the next stage as soon as the current one is
+ * done with it.  This keeps every core busy on corpora of mixed document length:
+ * while one thread is stuck parsing a long document, the remaining threads keep
+ * tokenizing and tagging the documents behind it.
+ *
+ * <p>The number of annotator calls running at any one time is capped at
+ * {@code numThreads}, no matter how many workers each stage has, and the number of
+ * documents between the input iterator and the callback is capped as well, so a
+ * slow stage pushes back on the stages in front of it instead of letting
+ * documents pile up in memory.
+ *
+ * <p>Results are handed to the callback in input order, one at a time.
+ * As with {@link AnnotationPipeline#annotate(Iterable, int, Consumer)}, the
+ * annotators must be safe to call from several threads at once.
+ */
+public class StagedAnnotationScheduler {
+
+  /** A logger for this class */
+  private static final Redwood.RedwoodChannels log = Redwood.channels(StagedAnnotationScheduler.class);
+
+  /** Default number of documents which can wait in front of each stage */
+  public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+  private final List<Annotator> annotators;
+  private final int numThreads;
+  private final int[] workersPerStage;
+  private final int queueCapacity;
+  /** Per-annotator time, as kept by AnnotationPipeline.  May be null. */
+  private final List<MutableLong> accumulatedTime;
+
+  /** Stages get {@code numThreads} workers each and the default queue capacity. */
+  public StagedAnnotationScheduler(List<Annotator> annotators, int numThreads) {
+    this(annotators, numThreads, null, DEFAULT_QUEUE_CAPACITY, null);
+  }
+
+  /**
+   * Build a scheduler.
+   *
+   * @param annotators The stages, in the order documents pass through them
+   * @param numThreads The maximum number of annotator calls running at once
+   * @param workersPerStage The number of worker threads for each stage.  If null,
+   *                        every stage gets {@code numThreads} workers.
+   * @param queueCapacity How many documents may wait in front of each stage
+   * @param accumulatedTime If not null, one counter per annotator to which the
+   *                        time spent in that annotator is added
+   */
+  public StagedAnnotationScheduler(List<Annotator> annotators, int numThreads, int[] workersPerStage,
+                                   int queueCapacity, List<MutableLong> accumulatedTime) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Need at least one thread, got " + numThreads);
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("Queue capacity must be positive, got " + queueCapacity);
+    }
+    if (workersPerStage != null && workersPerStage.length != annotators.size()) {
+      throw new IllegalArgumentException("Got " + workersPerStage.length + " worker counts for " +
+          annotators.size() + " annotators");
+    }
+    if (accumulatedTime != null && accumulatedTime.size() != annotators.size()) {
+      throw new IllegalArgumentException("Got " + accumulatedTime.size() + " timers for " +
+          annotators.size() + " annotators");
+    }
+    this.annotators = new ArrayList<>(annotators);
+    this.numThreads = numThreads;
+    this.queueCapacity = queueCapacity;
+    this.accumulatedTime = accumulatedTime;
+    this.workersPerStage = new int[annotators.size()];
+    for (int i = 0; i < this.workersPerStage.length; i++) {
+      int workers = (workersPerStage == null) ? numThreads : workersPerStage[i];
+      if (workers < 1) {
+        throw new IllegalArgumentException("Stage " + i + " needs at least one worker, got " + workers);
+      }
+      this.workersPerStage[i] = workers;
+    }
+  }
+
+
+  /** A document on its way through the stages. */
+  private static class Job {
+    final int id;
+    final Annotation annotation;
+
+    Job(int id, Annotation annotation) {
+      this.id = id;
+      this.annotation = annotation;
+    }
+  }
+
+  /** Marks the end of the input for one worker. */
+  private static final Job POISON = new Job(-1, null);
+
+
+  /** The state of one call to {@link #annotate(Iterable, Consumer)}. */
+  private class Run {
+    final List<BlockingQueue<Job>> queues = new ArrayList<>();
+    final AtomicInteger[] liveWorkers = new AtomicInteger[annotators.size()];
+    final List<Thread> threads = new ArrayList<>();
+    /** Caps the number of annotator calls running at once. */
+    final Semaphore cores = new Semaphore(numThreads);
+    /** Caps the number of documents between the input iterator and the callback. */
+    final Semaphore inFlight = new Semaphore(numThreads + (annotators.size() + 1) * queueCapacity);
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final Consumer<Annotation> callback;
+
+    /** Finished documents waiting for an earlier document before going to the callback. */
+    final Map<Integer, Annotation> finished = new HashMap<>();
+    int nextToDeliver = 0;
+
+    Run(Consumer<Annotation> callback) {
+      this.callback = callback;
+      for (int stage = 0; stage < annotators.size(); stage++) {
+        queues.add(new ArrayBlockingQueue<>(Math.max(queueCapacity, workersPerStage[stage])));
+        liveWorkers[stage] = new AtomicInteger(workersPerStage[stage]);
+        String name = StringUtils.getShortClassName(annotators.get(stage));
+        for (int i = 0; i < workersPerStage[stage]; i++) {
+          final int s = stage;
+          Thread thread = new Thread(() -> work(s), "StagedAnnotationScheduler-" + name + '-' + i);
+          thread.setDaemon(true);
+          threads.add(thread);
+        }
+      }
+    }
+
+    void work(int stage) {
+      Annotator annotator = annotators.get(stage);
+      BlockingQueue<Job> in = queues.get(stage);
+      Timing timer = new Timing();
+      try {
+        while (true) {
+          Job job = in.take();
+          if (job == POISON) {
+            break;
+          }
+          if (failure.get() == null) {
+            cores.acquire();
+            try {
+              timer.start();
+              annotator.annotate(job.annotation);
+              if (accumulatedTime != null) {
+                long elapsed = timer.stop();
+                MutableLong m = accumulatedTime.get(stage);
+                synchronized (m) {
+                  m.incValue(elapsed);
+                }
+              }
+            } catch (Throwable t) {
+              fail(t);
+            } finally {
+              cores.release();
+            }
+          }
+          if (stage + 1 < annotators.size()) {
+            queues.get(stage + 1).put(job);
+          } else {
+            deliver(job);
+          }
+        }
+        // The last worker out tells the next stage there is nothing more coming
+        if (liveWorkers[stage].decrementAndGet() == 0) {
+          if (stage + 1 < annotators.size()) {
+            for (int i = 0; i < workersPerStage[stage + 1]; i++) {
+              queues.get(stage + 1).put(POISON);
+            }
+          } else {
+            done.countDown();
+          }
+        }
+      } catch (InterruptedException e) {
+        fail(new RuntimeInterruptedException(e));
+        done.countDown();
+      }
+    }
+
+    void deliver(Job job) {
+      synchronized (finished) {
+        finished.put(job.id, job.annotation);
+        while (finished.containsKey(nextToDeliver)) {
+          Annotation annotation = finished.remove(nextToDeliver);
+          nextToDeliver++;
+          if (failure.get() == null) {
+            try {
+              callback.accept(annotation);
+            } catch (Throwable t) {
+              fail(t);
+            }
+          }
+          inFlight.release();
+        }
+      }
+    }
+
+    void fail(Throwable t) {
+      if (failure.compareAndSet(null, t)) {
+        log.warn("Pipeline stage failed; no further documents will be annotated: " + t);
+      }
+    }
+
+    void feed(Iterable<Annotation> annotations) throws InterruptedException {
+      int id = 0;
+      BlockingQueue<Job> first = queues.get(0);
+      for (Annotation annotation : annotations) {
+        if (failure.get() != null) {
+          break;
+        }
+        inFlight.acquire();
+        first.put(new Job(id, annotation));
+        id++;
+      }
+      for (int i = 0; i < workersPerStage[0]; i++) {
+        first.put(POISON);
+      }
+    }
+  }
+
+
+  /**
+   * Annotate all of the given documents, calling {@code callback} on each
+   * of them in input order once every stage has seen it.
+   * Returns when the last document has been passed to the callback.
+   * If an annotator or the callback throws, no further documents are
+   * annotated or delivered, and the first such exception is rethrown here.
+   *
+   * @param annotations The input annotations to process
+   * @param callback A function to be called when an annotation finishes
+   */
+  public void annotate(Iterable<Annotation> annotations, Consumer<Annotation> callback) {
+    if (annotators.isEmpty()) {
+      annotations.forEach(callback);
+      return;
+    }
+    Run run = new Run(callback);
+    run.threads.forEach(Thread::start);
+    try {
+      run.feed(annotations);
+      run.done.await();
+    } catch (InterruptedException e) {
+      run.threads.forEach(Thread::interrupt);
+      throw new RuntimeInterruptedException(e);
+    } catch (RuntimeException | Error e) {
+      // the input iterator failed: stop the workers rather than leave them waiting
+      run.threads.forEach(Thread::interrupt);
+      throw e;
+    }
+
+    Throwable failure = run.failure.get();
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new RuntimeException(failure);
+    }
+  }
+
+}
@@ -536,6 +536,7 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   public static synchronized void clearAnnotatorPool() {
     logger.warn("Clearing CoreNLP annotation pool; this should be unnecessary in production");
     GLOBAL_ANNOTATOR_CACHE.clear();
+    ModelRegistry.SINGLETON.clearUnused();
   }
 
 
@@ -667,6 +668,12 @@ public class StanfordCoreNLP extends AnnotationPipeline  {
   @Override
   public void annotate(Annotation annotation) {
     super.annotate(annotation);
+    annotationFinished(annotation);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void annotationFinished(Annotation annotation) {
     List<CoreLabel> words = annotation.get(CoreAnnotations.TokensAnnotation.class);
     if (words != null) {
       numWords += words.size();
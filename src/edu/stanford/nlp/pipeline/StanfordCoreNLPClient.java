@@ -3,6 +3,7 @@ package edu.stanford.nlp.pipeline;
 import edu.stanford.nlp.io.FileSequentialCollection;
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.logging.Redwood;
 import edu.stanford.nlp.util.logging.StanfordRedwoodConfiguration;
@@ -10,12 +11,18 @@ import edu.stanford.nlp.util.logging.StanfordRedwoodConfiguration;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -79,9 +86,72 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
     }
   }
 
+  /**
+   * The load of one backend endpoint, as the scheduler sees it.
+   * All the {@link Backend}s which are .equals() share one of these.
+   */
+  private static class BackendLoad {
+    /** How much the newest response time counts in the moving average */
+    private static final double DECAY = 0.2;
+
+    /** The moving average of response times, in milliseconds, or 0 before the first response */
+    double averageMillis;
+    /** The number of requests running on this endpoint */
+    int inFlight;
+
+    void record(long millis) {
+      averageMillis = averageMillis == 0.0 ? millis : averageMillis + DECAY * (millis - averageMillis);
+    }
+
+    /** The expected wait for one more request: slower and busier endpoints cost more. */
+    double cost() {
+      return (averageMillis + 1.0) * (inFlight + 1);
+    }
+  }
+
+
+  /** A job waiting for a backend. */
+  private static class Job {
+    final BiConsumer<Backend, Consumer<Backend>> annotate;
+    /** Run only on an endpoint other than this one, or not at all.  May be null. */
+    final Backend avoid;
+    /** If this says so by the time a backend is free, the job is dropped. */
+    final BooleanSupplier cancelled;
+
+    Job(BiConsumer<Backend, Consumer<Backend>> annotate, Backend avoid, BooleanSupplier cancelled) {
+      this.annotate = annotate;
+      this.avoid = avoid;
+      this.cancelled = cancelled;
+    }
+  }
+
+
+  /**
+   * Pick between two random candidates, taking the cheaper one.
+   * This "power of two choices" keeps away from slow backends without
+   * sending everything to the one which happens to be fastest.
+   */
+  static <T> T chooseOfTwo(List<T> candidates, ToDoubleFunction<T> cost, Random random) {
+    if (candidates.size() == 1) {
+      return candidates.get(0);
+    }
+    int first = random.nextInt(candidates.size());
+    int second = random.nextInt(candidates.size() - 1);
+    if (second >= first) {
+      second += 1;
+    }
+    T a = candidates.get(first);
+    T b = candidates.get(second);
+    return cost.applyAsDouble(b) < cost.applyAsDouble(a) ? b : a;
+  }
+
+
   /**
    * A special type of {@link Thread}, which is responsible for scheduling jobs
    * on the backend.
+   * Among the free backends, a job goes to the cheaper of two random picks,
+   * where the cost of a backend grows with its moving average response time
+   * and the number of requests already running on its endpoint.
    */
   private static class BackendScheduler extends Thread {
     /**
@@ -98,7 +168,7 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
      * released control of the backend, and it can be used for other things.
      * Remember to lock access to this object with {@link BackendScheduler#stateLock}.
      */
-    private final Queue<BiConsumer<Backend, Consumer<Backend>>> queue;
+    private final Queue<Job> queue;
     /**
      * The lock on access to {@link BackendScheduler#queue}.
      */
@@ -126,6 +196,20 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
      */
     private final Condition newlyFree = stateLock.newCondition();
 
+    /**
+     * The load on each endpoint, keyed by its URL (backends themselves can't be hashed).
+     * Remember to lock access to this object with {@link BackendScheduler#stateLock}.
+     */
+    private final Map<String, BackendLoad> loads = new HashMap<>();
+
+    /**
+     * How long the server takes to answer a single document, for deciding when to hedge.
+     * Streaming requests and local annotation after a failure are not counted.
+     */
+    public final LatencyWindow serviceLatency = new LatencyWindow(1024);
+
+    private final Random random = new Random();
+
     /**
      * While this is true, continue running the scheduler.
      */
@@ -142,6 +226,9 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
       this.backends = backends;
       this.freeAnnotators = new LinkedList<>(backends);
       this.queue = new LinkedList<>();
+      for (Backend backend : backends) {
+        loads.computeIfAbsent(backend.toString(), url -> new BackendLoad());
+      }
     }
 
     /** {@inheritDoc} */
@@ -150,7 +237,7 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
       try {
         while (doRun) {
           // Wait for a request
-          BiConsumer<Backend, Consumer<Backend>> request;
+          Job request;
           Backend annotator;
           stateLock.lock();
           try {
@@ -160,26 +247,43 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
                 return;
               }
             }
+            // Find a free annotator, before taking the request off the queue,
+            // so that shutdown() does not see an empty queue and all the annotators free meanwhile
+            while (freeAnnotators.isEmpty()) {
+              newlyFree.await();
+            }
+
             // Get the actual request
             request = queue.poll();
             // We have a request
-
-            // Find a free annotator
-            while (freeAnnotators.isEmpty()) {
-              newlyFree.await();
+            if (request.cancelled.getAsBoolean()) {
+              // (e.g., a hedged request whose original already came back)
+              if (queue.isEmpty() && freeAnnotators.size() == backends.size()) {
+                shouldShutdown.signalAll();
+              }
+              continue;
             }
-            annotator = freeAnnotators.poll();
+            annotator = chooseBackend(request.avoid);
+            if (annotator == null) {
+              // (a hedged request, but only the endpoint of the original is free)
+              if (queue.isEmpty() && freeAnnotators.size() == backends.size()) {
+                shouldShutdown.signalAll();
+              }
+              continue;
+            }
+            loads.get(annotator.toString()).inFlight += 1;
           } finally {
             stateLock.unlock();
           }
           // We have an annotator
 
           // Run the annotation
-          request.accept(annotator, freedAnnotator -> {
+          request.annotate.accept(annotator, freedAnnotator -> {
             // ASYNC: we've freed this annotator
             // add it back to the queue and register it as available
             stateLock.lock();
             try {
+              loads.get(freedAnnotator.toString()).inFlight -= 1;
               freeAnnotators.add(freedAnnotator);
 
               // If the queue is empty, and all the annotators have returned, we're done
@@ -208,14 +312,75 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
      *                 to register the backend as free for further work.
      */
     public void schedule(BiConsumer<Backend, Consumer<Backend>> annotate) {
+      schedule(annotate, null, () -> false);
+    }
+
+    /**
+     * Schedule a new job on the backend, preferably on a different endpoint from the given one.
+     *
+     * @param annotate As in {@link #schedule(BiConsumer)}
+     * @param avoid Don't run on this endpoint; if no other endpoint is free, the job is dropped.  May be null.
+     * @param cancelled Checked once a backend is free; if true, the job is dropped without running.
+     */
+    public void schedule(BiConsumer<Backend, Consumer<Backend>> annotate, Backend avoid, BooleanSupplier cancelled) {
       stateLock.lock();
       try {
-        queue.add(annotate);
+        queue.add(new Job(annotate, avoid, cancelled));
         enqueued.signal();
       } finally {
         stateLock.unlock();
       }
     }
+
+    /**
+     * Record how long a backend took to answer a single document.
+     * This feeds both the hedging delay and the load of the backend's endpoint.
+     */
+    public void recordServiceTime(Backend backend, long millis) {
+      serviceLatency.record(millis);
+      stateLock.lock();
+      try {
+        loads.get(backend.toString()).record(millis);
+      } finally {
+        stateLock.unlock();
+      }
+    }
+
+    /** Whether any backend is on another endpoint than this one. */
+    public boolean hasOtherEndpoint(Backend backend) {
+      for (Backend other : backends) {
+        if ( ! other.equals(backend)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Take a free backend for a job.  Only call with the lock held and a backend free.
+     *
+     * @return The backend, or null if the job must avoid an endpoint and only that endpoint is free
+     */
+    private Backend chooseBackend(Backend avoid) {
+      List<Backend> candidates = new ArrayList<>(freeAnnotators.size());
+      for (Backend backend : freeAnnotators) {
+        if ( ! backend.equals(avoid)) {
+          candidates.add(backend);
+        }
+      }
+      if (candidates.isEmpty()) {
+        return null;
+      }
+      Backend chosen = chooseOfTwo(candidates, backend -> loads.get(backend.toString()).cost(), random);
+      // remove this very object, rather than an equal one, so each slot stays distinct
+      for (Iterator<Backend> it = freeAnnotators.iterator(); it.hasNext(); ) {
+        if (it.next() == chosen) {
+          it.remove();
+          break;
+        }
+      }
+      return chosen;
+    }
   } // end static class BackEndScheduler
 
   /** The path on the server to connect to. */
@@ -240,6 +405,24 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
    */
   private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(true);
 
+  /** Don't hedge until this many requests have finished, so that we know what a slow one is */
+  private static final int MIN_REQUESTS_BEFORE_HEDGING = 20;
+
+  /** If true, send a duplicate of slow requests to a second backend */
+  private volatile boolean hedgeRequests = false;
+
+  /** Starts hedged requests once their original has been running for long enough */
+  private final ScheduledExecutorService hedgeTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "corenlp-client-hedge");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /** The time from submitting each document to its callback */
+  private final LatencyWindow documentLatency = new LatencyWindow(4096);
+  private final AtomicLong hedgesSent = new AtomicLong();
+  private final AtomicLong hedgesWon = new AtomicLong();
+
   /**
    * The main constructor. Create a client from a properties file and a list of backends.
    * Note that this creates at least one Daemon thread.
@@ -290,6 +473,38 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
   }
 
 
+  /**
+   * Run on the backends of a comma separated list of [protocol://]host[:port],
+   * as given to the -backends option of {@link #main(String[])}.
+   */
+  static StanfordCoreNLPClient withBackends(Properties properties, String backends) {
+    return new StanfordCoreNLPClient(properties, parseBackends(backends));
+  }
+
+
+  /** Parse a comma separated list of [protocol://]host[:port] into backends. */
+  private static List<Backend> parseBackends(String specs) {
+    List<Backend> backends = new ArrayList<>();
+    for (String spec : specs.split(",")) {
+      Matcher matcher = URL_PATTERN.matcher(spec.trim());
+      if (matcher.matches()) {
+        String protocol = matcher.group(1);
+        if (protocol == null) {
+          protocol = "http";
+        }
+        String host = matcher.group(2);
+        int port = 80;
+        String portStr = matcher.group(3);
+        if (portStr != null) {
+          port = Integer.parseInt(portStr);
+        }
+        backends.add(new Backend(protocol, host, port));
+      }
+    }
+    return backends;
+  }
+
+
   /**
    * Run the client, pulling credentials from the environment.
    * Throws an IllegalStateException if the required environment variables aren't set.
@@ -423,60 +638,150 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
   /**
    * The canonical entry point of the client annotator.
    * Create an HTTP request, send this annotation to the server, and await a response.
+   * If hedging is on (see {@link #setHedgeRequests(boolean)}) and the server takes
+   * longer than most requests do, the same request is also sent to another backend,
+   * and whichever answers first fills in the annotation.
    *
    * @param annotation The annotation to annotate.
    * @param callback Called when the server has returned an annotated document.
    *                 The input to this callback is the same as the passed Annotation object.
    */
   public void annotate(final Annotation annotation, final Consumer<Annotation> callback) {
+    final long submitted = System.currentTimeMillis();
+    final AtomicBoolean finished = new AtomicBoolean(false);
     scheduler.schedule((Backend backend, Consumer<Backend> isFinishedCallback) -> new Thread(() -> {
       try {
-        // 1. Create the input
-        // 1.1 Create a protocol buffer
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        serializer.write(annotation, os);
-        os.close();
-        byte[] message = os.toByteArray();
-        // 1.2 Create the query params
-
-        String queryParams = String.format(
-            "properties=%s",
-            URLEncoder.encode(StanfordCoreNLPClient.this.propsAsJSON, "utf-8"));
-
-        // 2. Create a connection
-        URL serverURL = new URL(backend.protocol, backend.host,
-            backend.port,
-            StanfordCoreNLPClient.this.path + '?' + queryParams);
-
-        // 3. Do the annotation
-        //    This method has two contracts:
-        //    1. It should call the two relevant callbacks
-        //    2. It must not throw an exception
-        doAnnotation(annotation, backend, serverURL, message, 0);
-      } catch (Throwable t) {
-        log.err("Could not annotate via server! Trying to annotate locally...", t);
-        StanfordCoreNLP corenlp = new StanfordCoreNLP(properties);
-        corenlp.annotate(annotation);
+        Annotation response;
+        try {
+          // serialized once, before anything can write the response into the annotation
+          byte[] message = serializeRequest(annotation);
+          maybeHedge(annotation, message, backend, finished, callback, submitted);
+          long start = System.currentTimeMillis();
+          response = requestAnnotation(message, backend);
+          scheduler.recordServiceTime(backend, System.currentTimeMillis() - start);
+        } catch (Throwable t) {
+          if (finished.compareAndSet(false, true)) {
+            log.err("Could not annotate via server! Trying to annotate locally...", t);
+            StanfordCoreNLP corenlp = new StanfordCoreNLP(properties);
+            corenlp.annotate(annotation);
+            documentLatency.record(System.currentTimeMillis() - submitted);
+            callback.accept(annotation);
+          }
+          return;
+        }
+        finish(annotation, response, finished, callback, submitted, false);
       } finally {
-        callback.accept(annotation);
         isFinishedCallback.accept(backend);
       }
     }).start());
   }
 
 
+  /**
+   * If hedging is on, and there is enough history to know what a slow request is,
+   * send a duplicate of this request to another endpoint once this one
+   * has taken longer than 95% of recent requests.
+   * There is no hedge if no other endpoint is free by then, since a second
+   * request to the same server would only add to its load.
+   * The duplicate sends the same serialized request as the original, since
+   * by the time it starts the original may be filling in the annotation.
+   */
+  private void maybeHedge(Annotation annotation, byte[] message, Backend primary, AtomicBoolean finished,
+                          Consumer<Annotation> callback, long submitted) {
+    if ( ! hedgeRequests || scheduler.serviceLatency.count() < MIN_REQUESTS_BEFORE_HEDGING
+        || ! scheduler.hasOtherEndpoint(primary)) {
+      return;
+    }
+    long delay = scheduler.serviceLatency.percentile(95);
+    hedgeTimer.schedule(() -> {
+      if (finished.get()) {
+        return;
+      }
+      scheduler.schedule((Backend backend, Consumer<Backend> isFinishedCallback) -> new Thread(() -> {
+        try {
+          hedgesSent.incrementAndGet();
+          long start = System.currentTimeMillis();
+          Annotation response = requestAnnotation(message, backend);
+          scheduler.recordServiceTime(backend, System.currentTimeMillis() - start);
+          if (finish(annotation, response, finished, callback, submitted, true)) {
+            hedgesWon.incrementAndGet();
+          }
+        } catch (Throwable t) {
+          // the original request is still running, and will fall back on local annotation if it fails
+          log.warn("Hedged request failed: " + t);
+        } finally {
+          isFinishedCallback.accept(backend);
+        }
+      }).start(), primary, finished::get);
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Copy the server's response into the annotation and call the callback,
+   * unless another copy of the request already did.
+   *
+   * @return True if this response was the first one
+   */
+  @SuppressWarnings("unchecked")
+  private boolean finish(Annotation annotation, Annotation response, AtomicBoolean finished,
+                         Consumer<Annotation> callback, long submitted, boolean hedged) {
+    if ( ! finished.compareAndSet(false, true)) {
+      return false;
+    }
+    for (Class key : response.keySet()) {
+      annotation.set(key, response.get(key));
+    }
+    documentLatency.record(System.currentTimeMillis() - submitted);
+    callback.accept(annotation);
+    return true;
+  }
+
+
+  /**
+   * Serialize an annotation into the body of a request.
+   */
+  private byte[] serializeRequest(Annotation annotation) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    serializer.write(annotation, os);
+    os.close();
+    return os.toByteArray();
+  }
+
+
+  /**
+   * Send a serialized annotation to a backend, and return the server's annotated copy of it.
+   *
+   * @param message The annotation, as serialized by {@link #serializeRequest(Annotation)}
+   */
+  private Annotation requestAnnotation(byte[] message, Backend backend) throws IOException {
+    // 1. Create the query params
+
+    String queryParams = String.format(
+        "properties=%s",
+        URLEncoder.encode(StanfordCoreNLPClient.this.propsAsJSON, "utf-8"));
+
+    // 2. Create a connection
+    URL serverURL = new URL(backend.protocol, backend.host,
+        backend.port,
+        StanfordCoreNLPClient.this.path + '?' + queryParams);
+
+    // 3. Do the annotation
+    return doAnnotation(backend, serverURL, message, 0);
+  }
+
+
   /**
    * Actually try to perform the annotation on the server side.
    * This is factored out so that we can retry up to 3 times.
    *
-   * @param annotation The annotation we need to fill.
    * @param backend The backend we are querying against.
    * @param serverURL The URL of the server we are hitting.
    * @param message The message we are sending the server (don't need to recompute each retry).
    * @param tries The number of times we've tried already.
+   * @return The annotated document, as returned by the server.
    */
-  @SuppressWarnings("unchecked")
-  private void doAnnotation(Annotation annotation, Backend backend, URL serverURL, byte[] message, int tries) {
+  private Annotation doAnnotation(Backend backend, URL serverURL, byte[] message, int tries) {
 
     try {
       // 1. Set up the connection
@@ -510,23 +815,164 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
       connection.getOutputStream().flush();
       // 2.2 Await a response
       // -- It might be possible to send more than one message, but we are not going to do that.
-      Annotation response = serializer.read(connection.getInputStream()).first;
-      // 2.3. Copy response over to original annotation
-      for (Class key : response.keySet()) {
-        annotation.set(key, response.get(key));
-      }
+      return serializer.read(connection.getInputStream()).first;
 
     } catch (Throwable t) {
       // 3. We encountered an error -- retry
       if (tries < 3) {
         log.warn(t);
-        doAnnotation(annotation, backend, serverURL, message, tries + 1);
+        return doAnnotation(backend, serverURL, message, tries + 1);
       } else {
         throw new RuntimeException(t);
       }
     }
   }
 
+
+  /**
+   * Annotate many documents, sending several of them to a backend in each
+   * request rather than one request per document.  The documents of a
+   * request are streamed to the server's {@code /stream} endpoint, which
+   * annotates them as they arrive and streams them back in order
+   * (see {@link AnnotationStreamProtocol}).
+   * A document which the server fails to annotate is passed to the callback
+   * with a {@link edu.stanford.nlp.ling.CoreAnnotations.ExceptionAnnotation}
+   * holding the server's error message.
+   *
+   * @param annotations The input annotations to process
+   * @param documentsPerRequest How many documents to send in each request
+   * @param callback A function to be called when an annotation finishes.
+   *                 Documents of the same request finish in order.
+   */
+  public void annotateStreaming(final Iterable<Annotation> annotations, int documentsPerRequest,
+                                final Consumer<Annotation> callback) {
+    if (documentsPerRequest < 1) {
+      throw new IllegalArgumentException("Must send at least one document per request, not " + documentsPerRequest);
+    }
+    List<Annotation> chunk = new ArrayList<>(documentsPerRequest);
+    for (Annotation annotation : annotations) {
+      chunk.add(annotation);
+      if (chunk.size() == documentsPerRequest) {
+        annotateStreaming(chunk, callback);
+        chunk = new ArrayList<>(documentsPerRequest);
+      }
+    }
+    if ( ! chunk.isEmpty()) {
+      annotateStreaming(chunk, callback);
+    }
+  }
+
+
+  /** Schedule one streaming request for these documents. */
+  private void annotateStreaming(final List<Annotation> documents, final Consumer<Annotation> callback) {
+    scheduler.schedule((Backend backend, Consumer<Backend> isFinishedCallback) -> new Thread(() -> {
+      int done = 0;
+      try {
+        String queryParams = String.format(
+            "properties=%s",
+            URLEncoder.encode(StanfordCoreNLPClient.this.propsAsJSON, "utf-8"));
+        URL serverURL = new URL(backend.protocol, backend.host,
+            backend.port,
+            StanfordCoreNLPClient.this.path + "/stream?" + queryParams);
+        // Retry up to 3 times, only resending the documents which have not come back yet
+        for (int tries = 0; done < documents.size(); ++tries) {
+          try {
+            done += doStreamingAnnotation(documents.subList(done, documents.size()), serverURL, callback);
+          } catch (Throwable t) {
+            if (tries >= 3) {
+              throw t;
+            }
+            log.warn(t);
+          }
+        }
+      } catch (Throwable t) {
+        log.err("Could not annotate via server! Trying to annotate locally...", t);
+        StanfordCoreNLP corenlp = new StanfordCoreNLP(properties);
+        for (Annotation annotation : documents.subList(done, documents.size())) {
+          corenlp.annotate(annotation);
+          callback.accept(annotation);
+        }
+      } finally {
+        isFinishedCallback.accept(backend);
+      }
+    }).start());
+  }
+
+
+  /**
+   * Stream some documents to the server, and read back their annotations in order.
+   *
+   * @return The number of documents which came back (and were passed to the callback)
+   *         before the stream ended, if it ended early
+   * @throws IOException If the request could not be made
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private int doStreamingAnnotation(List<Annotation> documents, URL serverURL, Consumer<Annotation> callback) throws IOException {
+    // 1. Set up the connection
+    HttpURLConnection connection = (HttpURLConnection) serverURL.openConnection();
+    if (apiKey != null && apiSecret != null) {
+      String userpass = apiKey + ":" + apiSecret;
+      String basicAuth = "Basic " + new String(Base64.getEncoder().encode(userpass.getBytes()));
+      connection.setRequestProperty("Authorization", basicAuth);
+    }
+    connection.setDoOutput(true);
+    connection.setChunkedStreamingMode(64 * 1024);
+    connection.setRequestMethod("POST");
+    connection.setRequestProperty("Content-Type", "application/x-protobuf");
+    connection.setRequestProperty("User-Agent", StanfordCoreNLPClient.class.getName());
+
+    // 2. Send the documents
+    try (OutputStream os = new BufferedOutputStream(connection.getOutputStream())) {
+      for (Annotation annotation : documents) {
+        AnnotationStreamProtocol.writeDocument(serializer, annotation, os);
+      }
+    }
+
+    // 3. Read back one frame per document
+    int done = 0;
+    try (InputStream is = new BufferedInputStream(connection.getInputStream())) {
+      for (AnnotationStreamProtocol.Frame frame;
+           done < documents.size() && (frame = AnnotationStreamProtocol.readFrame(serializer, is)) != null; ++done) {
+        Annotation annotation = documents.get(done);
+        if (frame.isError()) {
+          annotation.set(CoreAnnotations.ExceptionAnnotation.class, new RuntimeException(frame.error));
+        } else {
+          for (Class key : frame.document.keySet()) {
+            annotation.set(key, frame.document.get(key));
+          }
+        }
+        callback.accept(annotation);
+      }
+    }
+    if (done < documents.size() && done == 0) {
+      throw new EOFException("Server returned none of the " + documents.size() + " documents");
+    }
+    return done;
+  }
+
+
+  /**
+   * Turn hedged requests on or off.  When on, a request which has been
+   * running longer than 95% of recent requests is also sent to another
+   * backend, and the first response wins.  This cuts the tail latency
+   * caused by a slow or paused server, at the cost of some duplicate work.
+   */
+  public void setHedgeRequests(boolean hedgeRequests) {
+    this.hedgeRequests = hedgeRequests;
+  }
+
+
+  /**
+   * A summary of the latency of recent documents (submission to callback),
+   * and of how many requests were hedged and how many of those the hedge won.
+   */
+  public String latencyStatistics() {
+    return String.format("%d documents; latency p50=%dms p95=%dms p99=%dms; %d hedged requests, %d won by the hedge",
+        documentLatency.count(), documentLatency.percentile(50), documentLatency.percentile(95),
+        documentLatency.percentile(99), hedgesSent.get(), hedgesWon.get());
+  }
+
+
   public boolean checkStatus(URL serverURL) {
     try {
       // 1. Set up the connection
@@ -670,6 +1116,10 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
     } finally {
       scheduler.stateLock.unlock();
     }
+    hedgeTimer.shutdownNow();
+    if (documentLatency.count() > 0) {
+      log.info(latencyStatistics());
+    }
   }
 
 
@@ -683,7 +1133,8 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
    *
    * Example usage:<br>
    * java -mx6g edu.stanford.nlp.pipeline.StanfordCoreNLP -props properties -backends site1:port1,site2:port2 <br>
-   *    or just -host https://foo.bar.com [-port 9000]
+   *    or just -host https://foo.bar.com [-port 9000] <br>
+   * Add -hedge to send slow requests to a second backend as well.
    *
    * @param args List of required properties
    * @throws java.io.IOException If IO problem
@@ -709,7 +1160,6 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
     }
 
     // Create the backends
-    List<Backend> backends = new ArrayList<>();
     String defaultBack = "http://localhost:9000";
     String backStr = props.getProperty("backends");
     if (backStr == null) {
@@ -724,26 +1174,12 @@ public class StanfordCoreNLPClient extends AnnotationPipeline  {
       }
     }
 
-    for (String spec : props.getProperty("backends", defaultBack).split(",")) {
-      Matcher matcher = URL_PATTERN.matcher(spec.trim());
-      if (matcher.matches()) {
-        String protocol = matcher.group(1);
-        if (protocol == null) {
-          protocol = "http";
-        }
-        String host = matcher.group(2);
-        int port = 80;
-        String portStr = matcher.group(3);
-        if (portStr != null) {
-          port = Integer.parseInt(portStr);
-        }
-        backends.add(new Backend(protocol, host, port));
-      }
-    }
+    List<Backend> backends = parseBackends(props.getProperty("backends", defaultBack));
     log.info("Using backends: " + backends);
 
     // Run the pipeline
     StanfordCoreNLPClient client = new StanfordCoreNLPClient(props, backends);
+    client.setHedgeRequests(Boolean.parseBoolean(props.getProperty("hedge", "false")));
     client.run();
     try {
       client.shutdown();  // In case anything is pending on the server
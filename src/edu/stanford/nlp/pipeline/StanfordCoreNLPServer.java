@@ -22,7 +22,6 @@ import edu.stanford.nlp.util.logging.Redwood;
 
 import javax.net.ssl.*;
 import java.io.*;
-import java.lang.ref.SoftReference;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -83,6 +82,34 @@ public class StanfordCoreNLPServer implements Runnable {
   protected static String serverPropertiesPath = null;
   @ArgumentParser.Option(name="maxCharLength", gloss="Max length string that will be processed (non-positive means no limit)")
   protected static int maxCharLength = 100000;
+  @ArgumentParser.Option(name="maxPipelines", gloss="The number of pipelines with different properties to keep cached")
+  protected static int maxPipelines = 4;
+  @ArgumentParser.Option(name="pipelineIdleTimeout", gloss="Drop a cached pipeline after it has not been used for this many milliseconds (non-positive means never)")
+  protected static long pipelineIdleTimeout = -1;
+  @ArgumentParser.Option(name="batchWindow", gloss="Annotate small requests for the same pipeline which arrive within this many milliseconds together (non-positive means never)")
+  protected static int batchWindow = 0;
+  @ArgumentParser.Option(name="batchMaxSentences", gloss="Run a batch of requests early once it has about this many sentences")
+  protected static int batchMaxSentences = 64;
+  @ArgumentParser.Option(name="maxQueuedRequests", gloss="How many requests may wait for an annotation thread before new ones are turned away with a 503 (negative means no limit)")
+  protected static int maxQueuedRequests = 64;
+
+  /** The buffer size for responses written in chunks */
+  private static final int RESPONSE_CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * How many exchange threads there are beyond the requests the {@link #admission} controller can take on,
+   * for page loads, status checks, and turning requests away.
+   */
+  private static final int EXTRA_EXCHANGE_THREADS = 16;
+
+  /** The number of threads which answer the exchanges for which the {@link #serverExecutor} has no thread */
+  private static final int OVERFLOW_THREADS = 2;
+
+  /** The number of exchanges which can wait for an overflow thread; beyond these the connection is closed */
+  private static final int MAX_OVERFLOW_EXCHANGES = 256;
+
+  /** True on a thread which is answering an exchange the {@link #serverExecutor} had no room for */
+  private static final ThreadLocal<Boolean> overflowing = ThreadLocal.withInitial(() -> false);
 
 
   protected final String shutdownKey;
@@ -91,20 +118,41 @@ public class StanfordCoreNLPServer implements Runnable {
 
   /**
    * The thread pool for the HTTP server.
+   * This is a thread per exchange, so that slow clients and large uploads
+   * only hold up their own exchange; the annotation work itself is bounded
+   * by the {@link #admission} controller and the {@link #corenlpExecutor}.
+   * There are a few more threads than the controller admits requests; the
+   * exchanges beyond those are answered with a 503 by the {@link #overflowExecutor}.
    */
   private final ExecutorService serverExecutor;
 
   /**
-   * To prevent grossly wasteful over-creation of pipeline objects, cache the last
-   *  one we created.
+   * A couple of threads which answer the exchanges the {@link #serverExecutor}
+   * has no room for, turning annotation requests away with a 503.
    */
-  private SoftReference<Pair<String, StanfordCoreNLP>> lastPipeline = new SoftReference<>(null);
+  private final ExecutorService overflowExecutor;
+
+  /**
+   * Decides which requests to take on, and which to turn away with a 503.
+   */
+  private final AdmissionController admission;
+
+  /**
+   * To prevent grossly wasteful over-creation of pipeline objects, cache the
+   * last few we created.
+   */
+  private final PipelineCache<StanfordCoreNLP> pipelineCache = new PipelineCache<>(this::buildStanfordCoreNLP, maxPipelines, pipelineIdleTimeout);
 
   /**
    * An executor to time out CoreNLP execution with.
    */
   private final ExecutorService corenlpExecutor;
 
+  /**
+   * Batches small annotation requests, if -batchWindow is set.
+   */
+  private final RequestBatcher requestBatcher;
+
 
   /**
    * Create a new Stanford CoreNLP Server.
@@ -188,8 +236,12 @@ public class StanfordCoreNLPServer implements Runnable {
       PropertiesUtils.overWriteProperties(this.defaultProps, serverProperties);
     }
 
-    this.serverExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
+    this.overflowExecutor = new ThreadPoolExecutor(OVERFLOW_THREADS, OVERFLOW_THREADS, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_OVERFLOW_EXCHANGES));
+    this.serverExecutor = exchangeExecutor(ArgumentParser.threads, maxQueuedRequests, overflowExecutor);
+    this.admission = new AdmissionController(ArgumentParser.threads, maxQueuedRequests);
     this.corenlpExecutor = Executors.newFixedThreadPool(ArgumentParser.threads);
+    this.requestBatcher = batchWindow > 0 ? new RequestBatcher(corenlpExecutor, batchWindow, batchMaxSentences) : null;
 
     // Generate and write a shutdown key, get optional server_id from passed in properties
     // this way if multiple servers running can shut them all down with different ids
@@ -316,37 +368,57 @@ public class StanfordCoreNLPServer implements Runnable {
    * @return A pipeline parameterized by these properties.
    */
   private StanfordCoreNLP mkStanfordCoreNLP(Properties props) {
-    StanfordCoreNLP impl;
-
-    StringBuilder sb = new StringBuilder();
-    props.stringPropertyNames().stream().filter(key -> !key.equalsIgnoreCase("date")).forEach(key -> {
-      String pvalue = props.getProperty(key);
-      sb.append(key).append(':').append(pvalue).append(';');
-    });
-    String cacheKey = sb.toString();
-
-    synchronized (this) {
-      Pair<String, StanfordCoreNLP> lastPipeline = this.lastPipeline.get();
-      if (lastPipeline != null && Objects.equals(lastPipeline.first, cacheKey)) {
-        return lastPipeline.second;
-      } else {
-        // Do some housekeeping on the global cache
-        for (Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entry : new HashSet<>(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.entrySet())) {
-          if (!entry.getValue().isCache()) {
-            error("Entry in global cache is not garbage collectable!");
-            StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.remove(entry.getKey());
-          }
-          if (entry.getValue().isCache() && entry.getValue().isGarbageCollected()) {
-            StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.remove(entry.getKey());
-          }
-        }
-        // Create a CoreNLP
-        impl = new StanfordCoreNLP(props);
-        this.lastPipeline = new SoftReference<>(Pair.makePair(cacheKey, impl));
+    return pipelineCache.get(props);
+  }
+
+  /**
+   * The annotators which only look at the sentences of a document once it
+   * is split, and so can be run on the sentences of several requests at once.
+   */
+  private static final Set<String> BATCHABLE_ANNOTATORS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+      Annotator.STANFORD_TOKENIZE, Annotator.STANFORD_CLEAN_XML, Annotator.STANFORD_SSPLIT,
+      Annotator.STANFORD_POS, Annotator.STANFORD_LEMMA, Annotator.STANFORD_PARSE,
+      Annotator.STANFORD_DEPENDENCIES, Annotator.STANFORD_SENTIMENT)));
+
+  /**
+   * Whether a request with these properties may be annotated in a batch with other requests.
+   * This is only the case for plain text input, and for annotators which do not
+   * set anything on the document as a whole (so, for instance, not for ner or coref).
+   *
+   * @param props The properties of the request.
+   * @return True if the request can go to the {@link RequestBatcher}.
+   */
+  private boolean canBatch(Properties props) {
+    if (requestBatcher == null || ! "text".equalsIgnoreCase(props.getProperty("inputFormat", "text"))) {
+      return false;
+    }
+    for (String annotator : props.getProperty("annotators", "").split("[, \t]+")) {
+      if ( ! annotator.isEmpty() && ! BATCHABLE_ANNOTATORS.contains(annotator)) {
+        return false;
       }
     }
+    return true;
+  }
 
-    return impl;
+  /**
+   * Create a StanfordCoreNLP object for the pipeline cache.
+   *
+   * @param props The properties to create the object with.
+   * @return A new pipeline parameterized by these properties.
+   */
+  private StanfordCoreNLP buildStanfordCoreNLP(Properties props) {
+    // Do some housekeeping on the global cache
+    for (Map.Entry<StanfordCoreNLP.AnnotatorSignature, Lazy<Annotator>> entry : new HashSet<>(StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.entrySet())) {
+      if (!entry.getValue().isCache()) {
+        error("Entry in global cache is not garbage collectable!");
+        StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.remove(entry.getKey());
+      }
+      if (entry.getValue().isCache() && entry.getValue().isGarbageCollected()) {
+        StanfordCoreNLP.GLOBAL_ANNOTATOR_CACHE.remove(entry.getKey());
+      }
+    }
+    // Create a CoreNLP
+    return new StanfordCoreNLP(props);
   }
 
   /**
@@ -462,6 +534,27 @@ public class StanfordCoreNLPServer implements Runnable {
   }
 
 
+  /**
+   * A helper function to respond to a request with an error stating that the server is too busy
+   * to take it on, and when to try again.
+   *
+   * @param response The description of the error to send to the user.
+   * @param retryAfterSeconds How many seconds the client should wait before retrying.
+   * @param httpExchange The exchange to send the error over.
+   *
+   * @throws IOException Thrown if the HttpExchange cannot communicate the error.
+   */
+  private static void respondUnavailable(String response, int retryAfterSeconds, HttpExchange httpExchange) throws IOException {
+    httpExchange.getRequestBody().close();
+    httpExchange.getResponseHeaders().add("Content-type", "text/plain");
+    httpExchange.getResponseHeaders().add("Retry-After", Integer.toString(retryAfterSeconds));
+    byte[] content = response.getBytes("utf-8");
+    httpExchange.sendResponseHeaders(HTTP_UNAVAILABLE, content.length);
+    httpExchange.getResponseBody().write(content);
+    httpExchange.close();
+  }
+
+
   /**
    * A helper function to respond to a request with an error stating that the user is not authorized
    * to make this request.
@@ -583,6 +676,101 @@ public class StanfordCoreNLPServer implements Runnable {
   } // end static class LiveHandler
 
 
+  /**
+   * A handler which reports on the pipelines which the server has cached:
+   * how often each was requested and found or built, and how long building it took.
+   */
+  protected class PipelinesHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      httpExchange.getResponseHeaders().set("Content-type", "application/json");
+      byte[] response = JSONOutputter.JSONWriter.objectToJSON(pipelineCache::writeStats).getBytes("utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  } // end class PipelinesHandler
+
+
+  /**
+   * A handler which reports on the batching of small requests:
+   * how many batches were annotated, and how many documents each had.
+   */
+  protected class BatchesHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      httpExchange.getResponseHeaders().set("Content-type", "application/json");
+      byte[] response = JSONOutputter.JSONWriter.objectToJSON(writer -> {
+        writer.set("enabled", requestBatcher != null);
+        if (requestBatcher != null) {
+          requestBatcher.writeStats(writer);
+        }
+      }).getBytes("utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  } // end class BatchesHandler
+
+
+  /**
+   * A handler which reports how many requests are in flight, and how many were admitted or turned away.
+   */
+  protected class AdmissionStatsHandler implements HttpHandler {
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      httpExchange.getResponseHeaders().set("Content-type", "application/json");
+      byte[] response = JSONOutputter.JSONWriter.objectToJSON(admission::writeStats).getBytes("utf-8");
+      httpExchange.sendResponseHeaders(HTTP_OK, response.length);
+      httpExchange.getResponseBody().write(response);
+      httpExchange.close();
+    }
+  } // end class AdmissionStatsHandler
+
+
+  /**
+   * Wraps a handler which does annotation work, only passing on the requests
+   * which the {@link AdmissionController} admits.  The rest get a 503 with a
+   * Retry-After header right away, before their body is read.
+   * Plain page loads (a GET or HEAD without a query) are passed on, unless
+   * the server has run out of threads for exchanges.
+   */
+  protected class AdmittedHandler implements HttpHandler {
+    private final HttpHandler delegate;
+
+    public AdmittedHandler(HttpHandler delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      if (overflowing.get()) {
+        admission.reject();
+        setHttpExchangeResponseHeaders(httpExchange);
+        respondUnavailable("The server is overloaded; please try again later.", admission.retryAfterSeconds(), httpExchange);
+        return;
+      }
+      String method = httpExchange.getRequestMethod();
+      if (("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method)) &&
+          httpExchange.getRequestURI().getRawQuery() == null) {
+        delegate.handle(httpExchange);
+        return;
+      }
+      if ( ! admission.tryAdmit()) {
+        setHttpExchangeResponseHeaders(httpExchange);
+        respondUnavailable("The server is overloaded; please try again later.", admission.retryAfterSeconds(), httpExchange);
+        return;
+      }
+      long start = System.currentTimeMillis();
+      try {
+        delegate.handle(httpExchange);
+      } finally {
+        admission.release(System.currentTimeMillis() - start);
+      }
+    }
+  } // end class AdmittedHandler
+
+
   /**
    * Sending the appropriate shutdown key will gracefully shutdown the server.
    * This key is, by default, saved into the local file /tmp/corenlp.shutdown on the
@@ -745,17 +933,14 @@ public class StanfordCoreNLPServer implements Runnable {
       }
 
       Future<Annotation> completedAnnotationFuture = null;
+      boolean responseStarted = false;
       try {
         // Annotate
         StanfordCoreNLP pipeline = mkStanfordCoreNLP(props);
-        completedAnnotationFuture = corenlpExecutor.submit(() -> {
-          pipeline.annotate(ann);
-          return ann;
-        });
-        Annotation completedAnnotation;
+        int timeoutMilliseconds;
         try {
-          int timeoutMilliseconds = Integer.parseInt(props.getProperty("timeout",
-                                                     Integer.toString(StanfordCoreNLPServer.this.timeoutMilliseconds)));
+          timeoutMilliseconds = Integer.parseInt(props.getProperty("timeout",
+                                                 Integer.toString(StanfordCoreNLPServer.this.timeoutMilliseconds)));
           // Check for too long a timeout from an unauthorized source
           /*
           if (timeoutMilliseconds > 15000) {
@@ -769,27 +954,32 @@ public class StanfordCoreNLPServer implements Runnable {
             }
           }
           */
-          completedAnnotation = completedAnnotationFuture.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
         } catch (NumberFormatException e) {
-          completedAnnotation = completedAnnotationFuture.get(StanfordCoreNLPServer.this.timeoutMilliseconds, TimeUnit.MILLISECONDS);
+          timeoutMilliseconds = StanfordCoreNLPServer.this.timeoutMilliseconds;
         }
+        if (canBatch(props)) {
+          completedAnnotationFuture = requestBatcher.submit(PipelineCache.signature(props), pipeline, ann, timeoutMilliseconds);
+        } else {
+          completedAnnotationFuture = corenlpExecutor.submit(() -> {
+            pipeline.annotate(ann);
+            return ann;
+          });
+        }
+        Annotation completedAnnotation = completedAnnotationFuture.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
         completedAnnotationFuture = null;  // No longer any need for the future
 
-        // Get output
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        // Write the output as it is produced, in chunks, rather than buffering it all first
         AnnotationOutputter.Options options = AnnotationOutputter.getOptions(pipeline);
-        StanfordCoreNLP.createOutputter(props, options).accept(completedAnnotation, os);
-        os.close();
-        byte[] response = os.toByteArray();
-
         String contentType = getContentType(props, of);
         if (contentType.equals("application/json") || contentType.startsWith("text/")) {
           contentType += ";charset=" + options.encoding;
         }
         httpExchange.getResponseHeaders().add("Content-type", contentType);
-        httpExchange.getResponseHeaders().add("Content-length", Integer.toString(response.length));
-        httpExchange.sendResponseHeaders(HTTP_OK, response.length);
-        httpExchange.getResponseBody().write(response);
+        httpExchange.sendResponseHeaders(HTTP_OK, 0);
+        responseStarted = true;
+        try (OutputStream os = new BufferedOutputStream(httpExchange.getResponseBody(), RESPONSE_CHUNK_SIZE)) {
+          StanfordCoreNLP.createOutputter(props, options).accept(completedAnnotation, os);
+        }
         httpExchange.close();
         if (completedAnnotation != null && ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
           callback.accept(new FinishedRequest(props, completedAnnotation));
@@ -807,8 +997,12 @@ public class StanfordCoreNLPServer implements Runnable {
       } catch (Exception e) {
         // Print the stack trace for debugging
         e.printStackTrace();
-        // Return error message.
-        respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        // Return error message, unless we were already part way through the response
+        if (responseStarted) {
+          httpExchange.close();
+        } else {
+          respondError(e.getClass().getName() + ": " + e.getMessage(), httpExchange);
+        }
         // Cancel the future if it's alive
         //noinspection ConstantConditions
         if (completedAnnotationFuture != null) {  // just in case...
@@ -819,6 +1013,111 @@ public class StanfordCoreNLPServer implements Runnable {
   } // end class CoreNLPHandler
 
 
+  /**
+   * A handler which annotates a stream of documents over one exchange,
+   * in the format of {@link AnnotationStreamProtocol}.
+   * Documents are annotated as they are read, up to one per annotation
+   * thread at a time, and their results are written back in order as soon
+   * as they are ready.  A document which fails or times out gets an error
+   * frame, and the stream carries on with the next one.
+   */
+  protected class StreamHandler implements HttpHandler {
+    /**
+     * An authenticator to determine if we can perform this API request.
+     */
+    private final Predicate<Properties> authenticator;
+
+    /**
+     * A callback to call when an annotation job has finished.
+     */
+    private final Consumer<FinishedRequest> callback;
+
+    private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer();
+
+    public StreamHandler(Predicate<Properties> authenticator, Consumer<FinishedRequest> callback) {
+      this.authenticator = authenticator;
+      this.callback = callback;
+    }
+
+    @Override
+    public void handle(HttpExchange httpExchange) throws IOException {
+      setHttpExchangeResponseHeaders(httpExchange);
+      Properties props;
+      StanfordCoreNLP pipeline;
+      try {
+        props = getProperties(httpExchange);
+        if (authenticator != null && !authenticator.test(props)) {
+          respondUnauthorized(httpExchange);
+          return;
+        }
+        pipeline = mkStanfordCoreNLP(props);
+      } catch (Exception e) {
+        e.printStackTrace();
+        respondError("Could not handle incoming annotation stream", httpExchange);
+        return;
+      }
+      int timeoutMilliseconds;
+      try {
+        timeoutMilliseconds = Integer.parseInt(props.getProperty("timeout",
+                                               Integer.toString(StanfordCoreNLPServer.this.timeoutMilliseconds)));
+      } catch (NumberFormatException e) {
+        timeoutMilliseconds = StanfordCoreNLPServer.this.timeoutMilliseconds;
+      }
+
+      httpExchange.getResponseHeaders().add("Content-type", "application/x-protobuf");
+      httpExchange.sendResponseHeaders(HTTP_OK, 0);
+      Deque<Future<Annotation>> inFlight = new ArrayDeque<>();
+      try (InputStream is = new BufferedInputStream(httpExchange.getRequestBody());
+           OutputStream os = new BufferedOutputStream(httpExchange.getResponseBody(), RESPONSE_CHUNK_SIZE)) {
+        for (Annotation doc; (doc = AnnotationStreamProtocol.readDocument(serializer, is)) != null; ) {
+          Annotation input = doc;
+          inFlight.add(corenlpExecutor.submit(() -> {
+            pipeline.annotate(input);
+            return input;
+          }));
+          if (inFlight.size() >= ArgumentParser.threads) {
+            writeNext(inFlight, timeoutMilliseconds, props, os);
+          }
+        }
+        while ( ! inFlight.isEmpty()) {
+          writeNext(inFlight, timeoutMilliseconds, props, os);
+        }
+      } catch (IOException e) {
+        // Most likely the client went away, or sent a malformed document; the response has already started
+        warn("Annotation stream ended early: " + e);
+        for (Future<Annotation> future : inFlight) {
+          future.cancel(true);
+        }
+      } finally {
+        httpExchange.close();
+      }
+    }
+
+    /** Wait for the oldest document in flight, and write its frame. */
+    private void writeNext(Deque<Future<Annotation>> inFlight, int timeoutMilliseconds,
+                           Properties props, OutputStream os) throws IOException {
+      Future<Annotation> future = inFlight.poll();
+      try {
+        Annotation completed = future.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
+        AnnotationStreamProtocol.writeDocumentFrame(serializer, completed, os);
+        if ( ! StringUtils.isNullOrEmpty(props.getProperty("annotators"))) {
+          callback.accept(new FinishedRequest(props, completed));
+        }
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        AnnotationStreamProtocol.writeErrorFrame("CoreNLP request timed out. Your document may be too long.", os);
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        throw new RuntimeInterruptedException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause() == null ? e : e.getCause();
+        AnnotationStreamProtocol.writeErrorFrame(cause.getClass().getName() + ": " + cause.getMessage(), os);
+      }
+      os.flush();
+    }
+  } // end class StreamHandler
+
+
 
   /**
    * A handler for matching TokensRegex patterns against text.
@@ -925,7 +1224,7 @@ public class StanfordCoreNLPServer implements Runnable {
 
       // Send response
       try {
-        int tokensRegexTimeOut = (lastPipeline.get() == null) ? 75 : 5;
+        int tokensRegexTimeOut = (pipelineCache.size() == 0) ? 75 : 5;
         Pair<String, Annotation> response = future.get(tokensRegexTimeOut, TimeUnit.SECONDS);
         byte[] content = response.first.getBytes();
         Annotation completedAnnotation = response.second;
@@ -1049,7 +1348,7 @@ public class StanfordCoreNLPServer implements Runnable {
 
       // Send response
       try {
-        int semgrexTimeOut = (lastPipeline.get() == null) ? 75 : 5;
+        int semgrexTimeOut = (pipelineCache.size() == 0) ? 75 : 5;
         Pair<String, Annotation> pair = response.get(semgrexTimeOut, TimeUnit.SECONDS);
         Annotation completedAnnotation = pair.second;
         byte[] content = pair.first.getBytes();
@@ -1151,7 +1450,7 @@ public class StanfordCoreNLPServer implements Runnable {
 
       // Send response
       try {
-        int tregexTimeOut = (lastPipeline.get() == null) ? 75 : 5 ;
+        int tregexTimeOut = (pipelineCache.size() == 0) ? 75 : 5;
         Pair<String, Annotation> pair = response.get(tregexTimeOut, TimeUnit.SECONDS);
         Annotation completedAnnotation = pair.second;
         byte[] content = pair.first.getBytes();
@@ -1228,9 +1527,12 @@ public class StanfordCoreNLPServer implements Runnable {
         } else {
           server = HttpServer.create(new InetSocketAddress(statusPort), 0); // 0 is the default 'backlog'
         }
-        // Add the two status endpoints
+        // Add the status endpoints
         withAuth(server.createContext("/live", new LiveHandler()), Optional.empty());
         withAuth(server.createContext("/ready", new ReadyHandler(live)), Optional.empty());
+        withAuth(server.createContext("/pipelines", new PipelinesHandler()), Optional.empty());
+        withAuth(server.createContext("/batches", new BatchesHandler()), Optional.empty());
+        withAuth(server.createContext("/admission", new AdmissionStatsHandler()), Optional.empty());
         // Start the server
         server.start();
         // Server started
@@ -1251,6 +1553,32 @@ public class StanfordCoreNLPServer implements Runnable {
 
 
 
+  /**
+   * Create the thread pool for the HTTP server's exchanges.
+   * It has a thread for each request the admission controller can take on, and a few more;
+   * with no limit on queued requests, it has no limit either.
+   * An exchange for which there is no thread is passed to the overflow executor,
+   * where annotation requests are answered with a 503.
+   *
+   * @param maxRunning The number of annotation threads
+   * @param maxQueued How many requests may wait for an annotation thread; negative means no limit
+   * @param overflow Where to answer the exchanges for which there is no thread
+   */
+  static ThreadPoolExecutor exchangeExecutor(int maxRunning, int maxQueued, ExecutorService overflow) {
+    int maxThreads = maxQueued < 0 ? Integer.MAX_VALUE : maxRunning + maxQueued + EXTRA_EXCHANGE_THREADS;
+    return new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+        Executors.defaultThreadFactory(),
+        (exchange, executor) -> overflow.execute(() -> {
+          overflowing.set(true);
+          try {
+            exchange.run();
+          } finally {
+            overflowing.remove();
+          }
+        }));
+  }
+
+
   /** @see StanfordCoreNLPServer#run(Optional, Predicate, Consumer, StanfordCoreNLPServer.FileHandler, boolean, AtomicBoolean) */
   @Override
   public void run() {
@@ -1298,10 +1626,11 @@ public class StanfordCoreNLPServer implements Runnable {
       } else {
         server = HttpServer.create(new InetSocketAddress(serverPort), 0); // 0 is the default 'backlog'
       }
-      withAuth(server.createContext("/", new CoreNLPHandler(defaultProps, authenticator, callback, homepage)), basicAuth);
-      withAuth(server.createContext("/tokensregex", new TokensRegexHandler(authenticator, callback)), basicAuth);
-      withAuth(server.createContext("/semgrex", new SemgrexHandler(authenticator, callback)), basicAuth);
-      withAuth(server.createContext("/tregex", new TregexHandler(authenticator, callback)), basicAuth);
+      withAuth(server.createContext("/", new AdmittedHandler(new CoreNLPHandler(defaultProps, authenticator, callback, homepage))), basicAuth);
+      withAuth(server.createContext("/stream", new AdmittedHandler(new StreamHandler(authenticator, callback))), basicAuth);
+      withAuth(server.createContext("/tokensregex", new AdmittedHandler(new TokensRegexHandler(authenticator, callback))), basicAuth);
+      withAuth(server.createContext("/semgrex", new AdmittedHandler(new SemgrexHandler(authenticator, callback))), basicAuth);
+      withAuth(server.createContext("/tregex", new AdmittedHandler(new TregexHandler(authenticator, callback))), basicAuth);
       withAuth(server.createContext("/corenlp-brat.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.js", "application/javascript")), basicAuth);
       withAuth(server.createContext("/corenlp-brat.cs", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.css", "text/css")), basicAuth);
       withAuth(server.createContext("/corenlp-parseviewer.js", new FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-parseviewer.js", "application/javascript")), basicAuth);
@@ -1310,7 +1639,9 @@ public class StanfordCoreNLPServer implements Runnable {
       if (this.serverPort == this.statusPort) {
         withAuth(server.createContext("/live", new LiveHandler()), Optional.empty());
         withAuth(server.createContext("/ready", new ReadyHandler(live)), Optional.empty());
-
+        withAuth(server.createContext("/pipelines", new PipelinesHandler()), Optional.empty());
+        withAuth(server.createContext("/batches", new BatchesHandler()), Optional.empty());
+        withAuth(server.createContext("/admission", new AdmissionStatsHandler()), Optional.empty());
       }
       server.setExecutor(serverExecutor);
       server.start();
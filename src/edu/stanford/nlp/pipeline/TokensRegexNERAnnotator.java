@@ -6,6 +6,8 @@ import edu.stanford.nlp.ling.CoreAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.tokensregex.*;
+import edu.stanford.nlp.ling.tokensregex.matcher.AhoCorasickMatcher;
+import edu.stanford.nlp.ling.tokensregex.matcher.Match;
 import edu.stanford.nlp.ling.tokensregex.matcher.TrieMap;
 import edu.stanford.nlp.sequences.SeqClassifierFlags;
 import edu.stanford.nlp.util.*;
@@ -69,6 +71,12 @@ import java.util.regex.Pattern;
  * any optimization that is included in the TokensRegex library.
  * </p>
  * <p>
+ * Entries which are plain sequences of literal strings (no TokensRegex expression and no regular expression
+ * characters), as most entries of large gazetteers are, are not compiled into TokensRegex patterns.
+ * They are all found together in one pass over each sentence by an {@link AhoCorasickMatcher}, and their matches
+ * are then resolved against the TokensRegex matches by the same priority rules.
+ * </p>
+ * <p>
  * Main differences from {@link RegexNERAnnotator}:
  * <ul>
  *   <li>Supports annotation of fields other than the {@code NamedEntityTagAnnotation} field</li>
@@ -144,8 +152,10 @@ public class TokensRegexNERAnnotator implements Annotator  {
   private final List<Boolean> ignoreCaseList;
   private final Set<String> commonWords;
   private final List<Entry> entries;
-  private final Map<SequencePattern<CoreMap>,Entry> patternToEntry;
-  private final MultiPatternMatcher<CoreMap>  multiPatternMatcher;
+  private final Map<SequencePattern<CoreMap>,Integer> patternToEntryIndex;
+  private final CoreMapNodePatternTrigger patternTrigger; // trigger for the patterns of the entries which are not literal
+  private final Set<SequencePattern<CoreMap>> alwaysTriggered; // patterns the trigger returns for every token
+  private final AhoCorasickMatcher<String,LiteralEntry> literalMatcher; // matcher for the literal entries
   private final List<Class> annotationFields; // list of fields to annotate (default to just NamedEntityTag)
 
   private final Set<String> myLabels;  // set of labels to always overwrite
@@ -291,9 +301,18 @@ public class TokensRegexNERAnnotator implements Annotator  {
     entryToMappingFileNumber = new HashMap<>();
     processPerFileOptions(name, mappings, ignoreCaseList, validPosPatternList, ignoreCase, validPosPattern);
     entries = Collections.unmodifiableList(readEntries(name, noDefaultOverwriteLabels, ignoreCaseList, entryToMappingFileNumber, verbose, headerFields, annotationFieldnames, mappings));
-    IdentityHashMap<SequencePattern<CoreMap>, Entry> patternToEntry = new IdentityHashMap<>();
-    multiPatternMatcher = createPatternMatcher(patternToEntry);
-    this.patternToEntry = Collections.unmodifiableMap(patternToEntry);
+    IdentityHashMap<SequencePattern<CoreMap>, Integer> patternToEntryIndex = new IdentityHashMap<>();
+    List<TokenSequencePattern> patterns = new ArrayList<>();
+    literalMatcher = createPatternMatchers(patterns, patternToEntryIndex);
+    this.patternToEntryIndex = Collections.unmodifiableMap(patternToEntryIndex);
+    if (patterns.isEmpty()) {
+      patternTrigger = null;
+      alwaysTriggered = Collections.emptySet();
+    } else {
+      patternTrigger = new CoreMapNodePatternTrigger(patterns);
+      // a node with no annotations only triggers the patterns without a string to trigger on
+      alwaysTriggered = Generics.newHashSet(patternTrigger.apply(new ArrayCoreMap()));
+    }
     Set<String> myLabels = Generics.newHashSet();
     // Can always override background or none.
     Collections.addAll(myLabels, backgroundSymbols);
@@ -330,22 +349,41 @@ public class TokensRegexNERAnnotator implements Annotator  {
       logger.info("done.");
   }
 
-  private MultiPatternMatcher<CoreMap> createPatternMatcher(Map<SequencePattern<CoreMap>, Entry> patternToEntry) {
-    // Convert to tokensregex pattern
-
-    List<TokenSequencePattern> patterns = new ArrayList<>(entries.size());
-    for (Entry entry:entries) {
+  /**
+   * Compiles the entries which are not literal into TokensRegex patterns,
+   * and puts the literal ones in the returned matcher.
+   *
+   * @param patterns Filled with the TokensRegex patterns, in the order of the entries
+   * @param patternToEntryIndex Filled with the index of the entry of each pattern
+   * @return A matcher for the literal entries, keyed by the case folded text of each token
+   */
+  private AhoCorasickMatcher<String,LiteralEntry> createPatternMatchers(List<TokenSequencePattern> patterns,
+                                                                        Map<SequencePattern<CoreMap>, Integer> patternToEntryIndex) {
+    AhoCorasickMatcher<String,LiteralEntry> literalMatcher = new AhoCorasickMatcher<>();
+    for (int entryIndex = 0; entryIndex < entries.size(); entryIndex++) {
+      Entry entry = entries.get(entryIndex);
       TokenSequencePattern pattern;
 
       Boolean ignoreCaseEntry = ignoreCaseList.get(entryToMappingFileNumber.get(entry));
       int patternFlags = ignoreCaseEntry? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE:0;
       int stringMatchFlags = ignoreCaseEntry? (NodePattern.CASE_INSENSITIVE | NodePattern.UNICODE_CASE):0;
+
+      Pattern posPattern = PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType) ? validPosPatternList.get(entryToMappingFileNumber.get(entry)) : null;
+      if (isLiteral(entry, patternFlags)) {
+        LiteralEntry literal = new LiteralEntry(entry, entryIndex, ignoreCaseEntry, posPattern);
+        List<String> key = new ArrayList<>(entry.regex.length);
+        for (String p : entry.regex) {
+          key.add(foldCase(p));
+        }
+        literalMatcher.put(key, literal);
+        continue;
+      }
+
       Env env = TokenSequencePattern.getNewEnv();
       env.setDefaultStringPatternFlags(patternFlags);
       env.setDefaultStringMatchFlags(stringMatchFlags);
 
-      NodePattern<String> posTagPattern = (validPosPatternList.get(entryToMappingFileNumber.get(entry)) != null && PosMatchType.MATCH_ALL_TOKENS.equals(posMatchType))?
-              new CoreMapNodePattern.StringAnnotationRegexPattern(validPosPatternList.get(entryToMappingFileNumber.get(entry))):null;
+      NodePattern<String> posTagPattern = (posPattern != null)? new CoreMapNodePattern.StringAnnotationRegexPattern(posPattern):null;
       if (entry.tokensRegex != null) {
         // TODO: posTagPatterns...
         pattern = TokenSequencePattern.compile(env, entry.tokensRegex);
@@ -367,26 +405,63 @@ public class TokensRegexNERAnnotator implements Annotator  {
       pattern.setPriority(entry.priority);
       pattern.setWeight(entry.weight);
       patterns.add(pattern);
-      patternToEntry.put(pattern, entry);
+      patternToEntryIndex.put(pattern, entryIndex);
     }
-    return TokenSequencePattern.getMultiPatternMatcher(patterns);
+    literalMatcher.compile();
+    if (verbose) {
+      logger.info("TokensRegexNERAnnotator: " + literalMatcher.size() + " literal entries, " + patterns.size() + " TokensRegex patterns");
+    }
+    return literalMatcher;
+  }
+
+  /**
+   * Whether an entry is a sequence of strings which its TokensRegex pattern would only
+   * match exactly (or ignoring case), so that it can be matched by the literal matcher.
+   */
+  private static boolean isLiteral(Entry entry, int patternFlags) {
+    if (entry.tokensRegex != null || entry.annotateGroup != 0) {
+      return false;
+    }
+    for (String p : entry.regex) {
+      // an empty match is never returned by TokensRegex
+      if (p.isEmpty() || ! ComplexNodePattern.isLiteralStringPattern(p, patternFlags)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Maps strings which are {@link String#equalsIgnoreCase} to the same string,
+   * so one trie can hold both the case sensitive and the case insensitive entries.
+   */
+  private static String foldCase(String str) {
+    if (str == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); ) {
+      int c = str.codePointAt(i);
+      sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c)));
+      i += Character.charCount(c);
+    }
+    return sb.toString();
   }
 
   private void annotateMatched(List<CoreLabel> tokens) {
-    List<SequenceMatchResult<CoreMap>> matched = multiPatternMatcher.findNonOverlapping(tokens);
-    for (SequenceMatchResult<CoreMap> m:matched) {
-      Entry entry = patternToEntry.get(m.pattern());
+    List<EntryMatch> matched = findNonOverlapping(tokens);
+    for (EntryMatch m:matched) {
+      Entry entry = m.entry;
 
       // Check if we will overwrite the existing annotation with this annotation
-      int g = entry.annotateGroup;
-      int start = m.start(g);
-      int end = m.end(g);
+      int start = m.start();
+      int end = m.end();
 
-      String str = m.group(g);
+      String str = m.text(tokens);
       if (commonWords.contains(str)) {
         if (verbose) {
           logger.info("Not annotating (common word) '" + str + "': " +
-              StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+              StringUtils.joinFields(m.nodes(tokens), CoreAnnotations.NamedEntityTagAnnotation.class)
               + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
         continue;
@@ -406,14 +481,212 @@ public class TokensRegexNERAnnotator implements Annotator  {
         }
       } else {
         if (verbose) {
-          logger.info("Not annotating  '" + m.group(g) + "': " +
-                  StringUtils.joinFields(m.groupNodes(g), CoreAnnotations.NamedEntityTagAnnotation.class)
+          logger.info("Not annotating  '" + str + "': " +
+                  StringUtils.joinFields(m.nodes(tokens), CoreAnnotations.NamedEntityTagAnnotation.class)
                   + " with " + entry.getTypeDescription() + ", sentence is '" + StringUtils.joinWords(tokens, " ") + "'");
         }
       }
     }
   }
 
+  /**
+   * Finds the matches of all the entries, and selects the non overlapping ones
+   * as {@link MultiPatternMatcher#findNonOverlapping} does: by priority, then weight, then length,
+   * then the order in which the pattern trigger first finds the entries.
+   *
+   * @return The selected matches, ordered by offset
+   */
+  private List<EntryMatch> findNonOverlapping(List<CoreLabel> tokens) {
+    List<EntryMatch> all = new ArrayList<>();
+    if (patternTrigger != null) {
+      addPatternMatches(tokens, all);
+    }
+    if (literalMatcher.size() > 0) {
+      addLiteralMatches(tokens, all);
+    }
+    if (all.isEmpty()) {
+      return all;
+    }
+    all.sort(ENTRY_MATCH_COMPARATOR);
+    List<EntryMatch> res = IntervalTree.getNonOverlapping(all, EntryMatch::interval);
+    res.sort(EntryMatch.OFFSET_COMPARATOR);
+    return res;
+  }
+
+  /** Adds the matches of the TokensRegex patterns, trying the patterns in the order the trigger finds them. */
+  private void addPatternMatches(List<CoreLabel> tokens, List<EntryMatch> all) {
+    // the token each pattern is first triggered at, its group of patterns there, and its order of triggering
+    Map<SequencePattern<CoreMap>, int[]> triggered = new LinkedHashMap<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      for (SequencePattern<CoreMap> p : patternTrigger.apply(tokens.get(i))) {
+        if ( ! triggered.containsKey(p)) {
+          int group = alwaysTriggered.contains(p) ? EntryMatch.ALWAYS_TRIGGERED
+              : (patternTrigger.isTriggeredIgnoringCase(p) ? EntryMatch.LOWERCASE_TRIGGERED : EntryMatch.STRING_TRIGGERED);
+          triggered.put(p, new int[] { i, group, triggered.size() });
+        }
+      }
+    }
+    for (Map.Entry<SequencePattern<CoreMap>, int[]> trigger : triggered.entrySet()) {
+      if (Thread.interrupted()) {  // Allow interrupting
+        throw new RuntimeInterruptedException();
+      }
+      SequencePattern<CoreMap> p = trigger.getKey();
+      Entry entry = entries.get(patternToEntryIndex.get(p));
+      SequenceMatcher<CoreMap> m = p.getMatcher(tokens);
+      while (m.find()) {
+        SequenceMatchResult<CoreMap> result = m.toBasicSequenceMatchResult();
+        int[] order = trigger.getValue();
+        all.add(new EntryMatch(entry, result, result.start(), result.end(), order[0], order[1], order[2]));
+      }
+    }
+  }
+
+  /**
+   * Adds the matches of the literal entries.  As with the TokensRegex patterns, each entry
+   * only matches where it does not overlap its own match to the left.
+   */
+  private void addLiteralMatches(List<CoreLabel> tokens, List<EntryMatch> all) {
+    List<String> keys = new ArrayList<>(tokens.size());
+    for (CoreLabel token : tokens) {
+      keys.add(foldCase(token.get(CoreAnnotations.TextAnnotation.class)));
+    }
+    List<Match<String,LiteralEntry>> matches = literalMatcher.findAllMatches(keys);
+    if (matches.isEmpty()) {
+      return;
+    }
+    Map<LiteralEntry,Integer> lastEnd = new IdentityHashMap<>();
+    Map<String,Integer> firstToken = null;
+    Map<String,Integer> firstLowercaseToken = null;
+    for (Match<String,LiteralEntry> match : matches) {
+      LiteralEntry literal = match.getValue();
+      int start = match.getBegin();
+      int end = match.getEnd();
+      Integer previousEnd = lastEnd.get(literal);
+      if ((previousEnd != null && start < previousEnd) || ! literal.matches(tokens, start)) {
+        continue;
+      }
+      // the token at which the pattern trigger would first have found this entry
+      if (firstToken == null) {
+        firstToken = Generics.newHashMap();
+        firstLowercaseToken = Generics.newHashMap();
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+          String text = tokens.get(i).get(CoreAnnotations.TextAnnotation.class);
+          if (text != null) {
+            firstToken.put(text, i);
+            firstLowercaseToken.put(text.toLowerCase(), i);
+          }
+        }
+      }
+      Integer triggerToken = literal.ignoreCase ? firstLowercaseToken.get(literal.trigger) : firstToken.get(literal.trigger);
+      if (triggerToken == null) {
+        // The trigger lowercases with String.toLowerCase, which does not always agree with equalsIgnoreCase
+        // (for instance "İstanbul" is not lowercased to "istanbul"): it would never have tried this entry
+        continue;
+      }
+      lastEnd.put(literal, end);
+      int group = literal.ignoreCase ? EntryMatch.LOWERCASE_TRIGGERED : EntryMatch.STRING_TRIGGERED;
+      all.add(new EntryMatch(literal.entry, null, start, end, triggerToken, group, literal.order));
+    }
+  }
+
+  /** A match of an entry, either by its TokensRegex pattern or by the literal matcher. */
+  private static class EntryMatch {
+    // Groups of patterns, in the order the pattern trigger returns them for one token
+    static final int ALWAYS_TRIGGERED = 0;
+    static final int STRING_TRIGGERED = 1;
+    static final int LOWERCASE_TRIGGERED = 2;
+
+    final Entry entry;
+    final SequenceMatchResult<CoreMap> result; // null for literal entries
+    final int matchStart;
+    final int matchEnd;
+    // The token at which the entry is first triggered, the group of patterns it is triggered in, and its order there:
+    // TokensRegex patterns are ordered as the trigger returns them, and come before literal entries, which are
+    // ordered by their entries.
+    final int triggerToken;
+    final int triggerGroup;
+    final int order;
+
+    EntryMatch(Entry entry, SequenceMatchResult<CoreMap> result, int matchStart, int matchEnd,
+               int triggerToken, int triggerGroup, int order) {
+      this.entry = entry;
+      this.result = result;
+      this.matchStart = matchStart;
+      this.matchEnd = matchEnd;
+      this.triggerToken = triggerToken;
+      this.triggerGroup = triggerGroup;
+      this.order = order;
+    }
+
+    /** Start of the group to annotate */
+    int start() {
+      return (result != null) ? result.start(entry.annotateGroup) : matchStart;
+    }
+
+    /** End of the group to annotate */
+    int end() {
+      return (result != null) ? result.end(entry.annotateGroup) : matchEnd;
+    }
+
+    List<? extends CoreMap> nodes(List<CoreLabel> tokens) {
+      return (result != null) ? result.groupNodes(entry.annotateGroup) : tokens.subList(matchStart, matchEnd);
+    }
+
+    String text(List<CoreLabel> tokens) {
+      return (result != null) ? result.group(entry.annotateGroup)
+          : ChunkAnnotationUtils.getTokenText(tokens.subList(matchStart, matchEnd), CoreAnnotations.TextAnnotation.class);
+    }
+
+    Interval<Integer> interval() {
+      return Interval.toInterval(matchStart, matchEnd, Interval.INTERVAL_OPEN_END);
+    }
+
+    static final Comparator<EntryMatch> OFFSET_COMPARATOR = (m1, m2) -> {
+      if (m1.matchStart != m2.matchStart) {
+        return (m1.matchStart < m2.matchStart) ? -1 : 1;
+      }
+      return Integer.compare(m1.matchEnd, m2.matchEnd);
+    };
+  }
+
+  private static int compareDescending(double d1, double d2) {
+    if (d1 == d2) {
+      return 0;
+    } else {
+      return (d1 > d2) ? -1 : 1;
+    }
+  }
+
+  /** The order of {@link SequenceMatchResult#DEFAULT_COMPARATOR}: priority, weight, length, trigger order, then offset */
+  private static final Comparator<EntryMatch> ENTRY_MATCH_COMPARATOR = (m1, m2) -> {
+    int cmp = compareDescending(m1.entry.priority, m2.entry.priority);
+    if (cmp == 0) {
+      cmp = compareDescending(m1.entry.weight, m2.entry.weight);
+    }
+    if (cmp == 0) {
+      cmp = Integer.compare(m2.matchEnd - m2.matchStart, m1.matchEnd - m1.matchStart);
+    }
+    if (cmp == 0) {
+      cmp = Integer.compare(m1.triggerToken, m2.triggerToken);
+    }
+    if (cmp == 0) {
+      cmp = Integer.compare(m1.triggerGroup, m2.triggerGroup);
+    }
+    if (cmp == 0) {
+      cmp = Boolean.compare(m1.result == null, m2.result == null);
+    }
+    if (cmp == 0) {
+      cmp = Integer.compare(m1.order, m2.order);
+    }
+    if (cmp == 0) {
+      cmp = EntryMatch.OFFSET_COMPARATOR.compare(m1, m2);
+    }
+    return cmp;
+  };
+
   // TODO: roll check into tokens regex pattern?
   // That allows for better matching because unmatched sequences will be eliminated at match time
   private boolean checkPosTags(List<CoreLabel> tokens, int start, int end) {
@@ -564,6 +837,52 @@ public class TokensRegexNERAnnotator implements Annotator  {
     }
   }
 
+  /** An entry which is a sequence of literal strings, matched by the literal matcher. */
+  private static class LiteralEntry {
+    final Entry entry;
+    final int order; // the index of the entry
+    final boolean ignoreCase;
+    final Pattern posPattern; // the pattern every token's POS tag must match, if any
+    final String trigger; // the token text CoreMapNodePatternTrigger would trigger the entry's pattern on
+
+    LiteralEntry(Entry entry, int order, boolean ignoreCase, Pattern posPattern) {
+      this.entry = entry;
+      this.order = order;
+      this.ignoreCase = ignoreCase;
+      this.posPattern = posPattern;
+      // as CoreMapNodePatternTrigger does, trigger on the first of the longest strings
+      int best = 0;
+      int bestLength = -1;
+      for (int i = 0; i < entry.regex.length; i++) {
+        String p = entry.regex[i];
+        int length = ("-LRB-".equals(p) || "-RRB-".equals(p)) ? 1 : p.length();
+        if (length > bestLength) {
+          best = i;
+          bestLength = length;
+        }
+      }
+      this.trigger = ignoreCase ? entry.regex[best].toLowerCase() : entry.regex[best];
+    }
+
+    /** Whether the tokens from start on match the entry, as its TokensRegex pattern would */
+    boolean matches(List<CoreLabel> tokens, int start) {
+      for (int i = 0; i < entry.regex.length; i++) {
+        CoreLabel token = tokens.get(start + i);
+        String text = token.get(CoreAnnotations.TextAnnotation.class);
+        if (ignoreCase ? ! entry.regex[i].equalsIgnoreCase(text) : ! entry.regex[i].equals(text)) {
+          return false;
+        }
+        if (posPattern != null) {
+          String pos = token.get(CoreAnnotations.PartOfSpeechAnnotation.class);
+          if (pos == null || ! posPattern.matcher(pos).matches()) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+  }
+
   /**
    *  Creates a combined list of Entries using the provided mapping files.
    *
@@ -444,6 +444,8 @@ public class SeqClassifierFlags implements Serializable  {
   public transient String loadAuxClassifier = null;
   public transient String serializeTo = null;
   public transient String serializeToText = null;
+  /** Also write the classifier in the memory-mapped compact format to this path; see CRFClassifier.serializeCompactClassifier */
+  public transient String serializeToCompact = null;
   public transient int interimOutputFreq = 0;
   public transient String initialWeights = null;
   public transient List<String> gazettes = new ArrayList<>();
@@ -1584,6 +1586,8 @@ public class SeqClassifierFlags implements Serializable  {
         serializeTo = val;
       } else if (key.equalsIgnoreCase("serializeToText")) {
         serializeToText = val;
+      } else if (key.equalsIgnoreCase("serializeToCompact")) {
+        serializeToCompact = val;
       } else if (key.equalsIgnoreCase("serializeDatasetsDir")) {
         serializeDatasetsDir = val;
       } else if (key.equalsIgnoreCase("loadDatasetsDir")) {
@@ -364,6 +364,8 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
   // For each extractor index, we have a map from possible extracted
   // features to an array which maps from tag number to feature weight index in the lambdas array.
   List<Map<String, int[]>> fAssociations = Generics.newArrayList();
+  // fAssociations and the lambdas, compiled for tagging; built when first needed
+  private volatile TaggerFeatureTable featureTable; // = null;
   //PairsHolder pairs = new PairsHolder();
   Extractors extractors;
   Extractors extractorsRare;
@@ -464,6 +466,21 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     return prob;
   }
 
+  /* Package access - shouldn't be part of public API. */
+  TaggerFeatureTable getFeatureTable() {
+    TaggerFeatureTable table = featureTable;
+    if (table == null) {
+      synchronized (this) {
+        table = featureTable;
+        if (table == null) {
+          table = new TaggerFeatureTable(fAssociations, prob.lambda);
+          featureTable = table;
+        }
+      }
+    }
+    return table;
+  }
+
   // TODO: make these constructors instead of init methods?
   void init(TaggerConfig config) {
     if (initted) return;  // TODO: why not reinit?
@@ -682,6 +699,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         fAssociation.remove(rule);
       }
     }
+    featureTable = null;
   }
 
   /**
@@ -725,6 +743,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
     }
 
     prob = new LambdaSolveTagger(condensedLambda);
+    featureTable = null;
   }
 
   protected void saveModel(String filename) {
@@ -915,6 +934,7 @@ public class MaxentTagger extends Tagger implements ListProcessor<List<? extends
         }
       }
       prob = new LambdaSolveTagger(rf);
+      featureTable = null;
       if (VERBOSE) {
         log.info("prob read ");
       }
@@ -0,0 +1,112 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.List;
+import java.util.Map;
+
+import edu.stanford.nlp.util.Generics;
+
+
+/**
+ * The feature weights of a {@link MaxentTagger}, laid out for tagging.
+ * {@link MaxentTagger#fAssociations} maps each extractor value to an array
+ * over all tags of indices into the lambda array, most of which are -1.
+ * Here each extractor value gets an id, and the weights of its features
+ * are stored contiguously, by id, in flat arrays of tags and weights, with
+ * features of weight 0 left out.
+ * Scoring an extractor value is then one hash lookup followed by a walk over
+ * only the tags the value has features for.
+ *
+ * @see TestSentence
+ */
+class TaggerFeatureTable {
+
+  /** The features of one extractor. */
+  private static class Table {
+    /** The id of each value the extractor has features for */
+    final Map<String, Integer> ids;
+    /** The features of value {@code id} are at {@code [rowStart[id], rowStart[id+1])} in tags and weights */
+    final int[] rowStart;
+    final int[] tags;
+    final double[] weights;
+
+    Table(Map<String, int[]> associations, double[] lambda) {
+      ids = Generics.newHashMap(associations.size());
+      int features = 0;
+      for (int[] row : associations.values()) {
+        for (int fNum : row) {
+          if (fNum > -1 && lambda[fNum] != 0.0) {
+            features += 1;
+          }
+        }
+      }
+      rowStart = new int[associations.size() + 1];
+      tags = new int[features];
+      weights = new double[features];
+      int id = 0;
+      int feature = 0;
+      for (Map.Entry<String, int[]> entry : associations.entrySet()) {
+        ids.put(entry.getKey(), id);
+        rowStart[id] = feature;
+        int[] row = entry.getValue();
+        for (int tag = 0; tag < row.length; ++tag) {
+          int fNum = row[tag];
+          if (fNum > -1 && lambda[fNum] != 0.0) {
+            tags[feature] = tag;
+            weights[feature] = lambda[fNum];
+            feature += 1;
+          }
+        }
+        id += 1;
+      }
+      rowStart[id] = feature;
+    }
+  }
+
+  private final Table[] tables;
+
+
+  /**
+   * Compile the features of a tagger.
+   *
+   * @param fAssociations For each extractor, the index into lambda of the feature for each value and tag
+   * @param lambda The feature weights
+   */
+  TaggerFeatureTable(List<Map<String, int[]>> fAssociations, double[] lambda) {
+    tables = new Table[fAssociations.size()];
+    for (int i = 0; i < tables.length; ++i) {
+      tables[i] = new Table(fAssociations.get(i), lambda);
+    }
+  }
+
+
+  /**
+   * Add the weights of the features for an extractor value to the scores of the tags.
+   *
+   * @param extractor The index of the extractor, as in fAssociations
+   * @param value The value the extractor returned
+   * @param scores The scores to add to
+   * @param positions If not null, the position in scores of each tag, or -1 to skip the tag;
+   *                  if null, scores is indexed by tag
+   */
+  void addScores(int extractor, String value, double[] scores, int[] positions) {
+    Table table = tables[extractor];
+    Integer id = table.ids.get(value);
+    if (id == null) {
+      return;
+    }
+    int end = table.rowStart[id + 1];
+    if (positions == null) {
+      for (int k = table.rowStart[id]; k < end; ++k) {
+        scores[table.tags[k]] += table.weights[k];
+      }
+    } else {
+      for (int k = table.rowStart[id]; k < end; ++k) {
+        int position = positions[table.tags[k]];
+        if (position >= 0) {
+          scores[position] += table.weights[k];
+        }
+      }
+    }
+  }
+
+}
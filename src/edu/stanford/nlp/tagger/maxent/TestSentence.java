@@ -85,6 +85,8 @@ public class TestSentence implements SequenceModel  {
   private volatile History history;
   private volatile Map<String,double[]> localScores = Generics.newHashMap();
   private volatile double[][] localContextScores;
+  // The position of each tag in the tags being scored, or -1; reused by getApproximateHistories
+  private int[] tagPositions; // = null;
 
   protected final MaxentTagger maxentTagger;
 
@@ -465,84 +467,49 @@ public class TestSentence implements SequenceModel  {
 
   private double[] getExactHistories(History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
     double[] scores = new double[maxentTagger.ySize];
-    int szCommon = maxentTagger.extractors.size();
+    addFeatureScores(h, extractors, extractorsRare, scores, null);
+    return scores;
+  }
 
-    for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int i = 0; i < maxentTagger.ySize; i++) {
-          int fNum = fAssociations[i];
-          if (fNum > -1) {
-            scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
+  /** Returns an unnormalized score (in log space) for each tag. */
+  private double[] getApproximateHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
+    double[] scores = new double[tags.length];
+    // map each tag to its position in tags, so that the features of other tags are skipped
+    if (tagPositions == null) {
+      tagPositions = new int[maxentTagger.ySize];
+      Arrays.fill(tagPositions, -1);
+    }
+    int[] tagIndices = new int[tags.length];
+    for (int j = 0; j < tags.length; j++) {
+      tagIndices[j] = maxentTagger.tags.getIndex(tags[j]);
+      if (tagIndices[j] >= 0) {
+        tagPositions[tagIndices[j]] = j;
       }
     }
-    if (extractorsRare != null) {
-      for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(kf+szCommon).get(val);
-        if (fAssociations != null) {
-          for (int i = 0; i < maxentTagger.ySize; i++) {
-            int fNum = fAssociations[i];
-            if (fNum > -1) {
-              scores[i] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
+    addFeatureScores(h, extractors, extractorsRare, scores, tagPositions);
+    for (int tagIndex : tagIndices) {
+      if (tagIndex >= 0) {
+        tagPositions[tagIndex] = -1;
       }
     }
     return scores;
   }
 
-  // todo [cdm 2016]: Could this be sped up a bit by caching lambda array, extracting method for shared code?
-  // todo [cdm 2016]: Also it's allocating java.util.ArrayList$Itr for for loop - why can't it just random access array?
-  /** Returns an unnormalized score (in log space) for each tag. */
-  private double[] getApproximateHistories(String[] tags, History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare) {
-
-    double[] scores = new double[tags.length];
+  /** Add the weights of the features which fire at h to scores, which is indexed as described by {@link TaggerFeatureTable#addScores}. */
+  private void addFeatureScores(History h, List<Pair<Integer,Extractor>> extractors, List<Pair<Integer,Extractor>> extractorsRare,
+                                double[] scores, int[] positions) {
+    TaggerFeatureTable features = maxentTagger.getFeatureTable();
     int szCommon = maxentTagger.extractors.size();
-
-    for (Pair<Integer,Extractor> e : extractors) {
-      int kf = e.first();
-      Extractor ex = e.second();
-      String val = ex.extract(h);
-      int[] fAssociations = maxentTagger.fAssociations.get(kf).get(val);
-      if (fAssociations != null) {
-        for (int j = 0; j < tags.length; j++) {
-          String tag = tags[j];
-          int tagIndex = maxentTagger.tags.getIndex(tag);
-          int fNum = fAssociations[tagIndex];
-          if (fNum > -1) {
-            scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-          }
-        }
-      }
+    for (int i = 0, size = extractors.size(); i < size; i++) {
+      Pair<Integer,Extractor> e = extractors.get(i);
+      features.addScores(e.first(), e.second().extract(h), scores, positions);
     }
     if (extractorsRare != null) {
-      for (Pair<Integer,Extractor> e : extractorsRare) {
-        int kf = e.first();
-        Extractor ex = e.second();
-        String val = ex.extract(h);
-        int[] fAssociations = maxentTagger.fAssociations.get(szCommon+kf).get(val);
-        if (fAssociations != null) {
-          for (int j = 0; j < tags.length; j++) {
-            String tag = tags[j];
-            int tagIndex = maxentTagger.tags.getIndex(tag);
-            int fNum = fAssociations[tagIndex];
-            if (fNum > -1) {
-              scores[j] += maxentTagger.getLambdaSolve().lambda[fNum];
-            }
-          }
-        }
+      for (int i = 0, size = extractorsRare.size(); i < size; i++) {
+        Pair<Integer,Extractor> e = extractorsRare.get(i);
+        features.addScores(szCommon + e.first(), e.second().extract(h), scores, positions);
       }
     }
-    return scores;
   }
 
 
@@ -34,6 +34,10 @@ public class Options {
   // would want a per document default as well
   String grammarFilename = null;
   Env.Binder[] binders = null;
+  // Skip sentences without any of the tokens the rules need
+  boolean prefilter = true;
+  // Number of sentences without time expressions remembered, so the rules are not applied again to the same sentence
+  int cacheSize = 1000;
 
   static final String DEFAULT_GRAMMAR_FILES = "edu/stanford/nlp/models/sutime/defs.sutime.txt,edu/stanford/nlp/models/sutime/english.sutime.txt,edu/stanford/nlp/models/sutime/english.holidays.sutime.txt";
   static final String[] DEFAULT_BINDERS = { "edu.stanford.nlp.time.JollyDayHolidays" };
@@ -63,6 +67,8 @@ public class Options {
     grammarFilename = props.getProperty(name + ".rules", DEFAULT_GRAMMAR_FILES);
 
     searchForDocDate = PropertiesUtils.getBool(props, name + ".searchForDocDate", searchForDocDate);
+    prefilter = PropertiesUtils.getBool(props, name + ".prefilter", prefilter);
+    cacheSize = PropertiesUtils.getInt(props, name + ".cacheSize", cacheSize);
 
     String binderProperty = props.getProperty(name + ".binders");
     int nBinders;
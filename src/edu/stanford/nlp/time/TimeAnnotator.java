@@ -28,6 +28,11 @@ import java.util.Set;
  * then temporal expressions are resolved with respect to the document date.  You set it on an
  * Annotation as follows:
  * <blockquote>{@code annotation.set(CoreAnnotations.DocDateAnnotation.class, "2013-07-14");}</blockquote>
+ *
+ * Sentences without any of the tokens that the rules look for are skipped ({@code sutime.prefilter}, true by default),
+ * and so are sentences that had no temporal expressions when seen before ({@code sutime.cacheSize} is how many of
+ * them are remembered, 0 to turn it off).  This does not change the output: {@link #getStatistics()} tells how
+ * many sentences were skipped.
  * <p>
  * <br>
  * <b>Input annotations</b>
@@ -249,6 +254,21 @@ public class TimeAnnotator implements Annotator  {
     return timexExtractor.extractTimeExpressionCoreMaps(annotationCopy, docDate, timeIndex);
   }
 
+  /**
+   * How many sentences were annotated, and how many of them were skipped by the prefilter or the cache.
+   */
+  public String getStatistics() {
+    long sentences = timexExtractor.getSentenceCount();
+    long prefiltered = timexExtractor.getPrefilteredCount();
+    long cacheHits = timexExtractor.getCacheHits();
+    return String.format("%d sentences, %d (%.1f%%) prefiltered, %d (%.1f%%) cache hits",
+        sentences, prefiltered, percent(prefiltered, sentences), cacheHits, percent(cacheHits, sentences));
+  }
+
+  private static double percent(long n, long total) {
+    return (total > 0) ? 100.0 * n / total : 0.0;
+  }
+
   @Override
   public Set<Class<? extends CoreAnnotation>> requires() {
     return Collections.singleton(CoreAnnotations.TokensAnnotation.class);
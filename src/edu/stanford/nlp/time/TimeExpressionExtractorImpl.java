@@ -55,6 +55,23 @@ public class TimeExpressionExtractorImpl implements TimeExpressionExtractor {
     }
     timexPatterns = new GenericTimeExpressionPatterns(options);
     this.expressionExtractor = timexPatterns.createExtractor();
+    this.expressionExtractor.setPrefilter(options.prefilter);
+    this.expressionExtractor.setNoMatchCacheSize(options.cacheSize);
+  }
+
+  /** Number of sentences time expressions were extracted from */
+  public long getSentenceCount() {
+    return expressionExtractor.getExtractCount();
+  }
+
+  /** Number of sentences skipped because they had none of the tokens the rules need */
+  public long getPrefilteredCount() {
+    return expressionExtractor.getPrefilteredCount();
+  }
+
+  /** Number of sentences skipped because the same sentence had no time expressions before */
+  public long getCacheHits() {
+    return expressionExtractor.getNoMatchCacheHits();
   }
 
   @Override
@@ -1,4 +1,5 @@
 package edu.stanford.nlp.util; 
+import edu.stanford.nlp.util.concurrent.ConcurrentInterner;
 import edu.stanford.nlp.util.logging.Redwood;
 
 import java.lang.ref.WeakReference;
@@ -22,6 +23,8 @@ import java.util.Set;
  * Note that in general it is just as good or better to use the
  * static Interner.globalIntern() method rather than making an
  * instance of Interner and using the instance-level intern().
+ * The global interner is a {@link ConcurrentInterner}, so threads calling
+ * globalIntern() do not wait on each other.
  * <p/>
  * Author: Dan Klein
  * Date: 9/28/03
@@ -33,7 +36,7 @@ public class Interner<T>  {
   /** A logger for this class */
   private static Redwood.RedwoodChannels log = Redwood.channels(Interner.class);
 
-  protected static Interner<Object> interner = Generics.newInterner();
+  protected static volatile Interner<Object> interner = new ConcurrentInterner<>();
 
   /**
    * For getting the instance that global methods use.
@@ -0,0 +1,188 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.stanford.nlp.util.Interner;
+
+/**
+ * <p>
+ * An {@link Interner} which many threads can use at once without locking.
+ * </p>
+ *
+ * <p>
+ * Interned objects are kept in a {@link ConcurrentHashMap} as weak references,
+ * so, as with {@link Interner}, an object which is only held by the interner
+ * can still be garbage collected.  Lookups take no lock at all, and adding a new
+ * object only locks the one bin of the map it goes in, so threads interning
+ * different objects do not wait for each other, unlike with the synchronized
+ * {@link Interner#intern} or the single mutex of {@link SynchronizedInterner}.
+ * Entries whose objects have been collected are removed as later calls find them.
+ * </p>
+ *
+ * <p>
+ * This is the interner that {@link Interner#globalIntern} uses by default.
+ * It also counts how many objects it was asked to intern which it already had
+ * ({@link #hits()}) and how many it had not seen before ({@link #misses()}).
+ * </p>
+ *
+ * @param <T> The type of the objects to intern
+ * @see edu.stanford.nlp.util.Interner
+ */
+public class ConcurrentInterner<T> extends Interner<T> {
+
+  /**
+   * A weak reference to an interned object, which is also its key in the map.
+   * Two entries are equal if their objects are equal and neither has been collected;
+   * an entry whose object has been collected is only equal to itself.
+   */
+  private static class Entry<T> extends WeakReference<T> {
+    private final int hash;
+
+    Entry(T o, ReferenceQueue<? super T> queue) {
+      super(o, queue);
+      hash = o.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if ( ! (other instanceof Entry)) {
+        return false;
+      }
+      Entry<?> entry = (Entry<?>) other;
+      if (hash != entry.hash) {
+        return false;
+      }
+      T o = get();
+      return o != null && o.equals(entry.get());
+    }
+  }
+
+  /**
+   * A key for looking up an object without making an {@link Entry} for it.
+   * The map calls {@code equals} on the key it is given, so this only needs to
+   * compare itself with entries.
+   */
+  private static class Lookup {
+    private final Object o;
+    private final int hash;
+
+    Lookup(Object o) {
+      this.o = o;
+      hash = o.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if ( ! (other instanceof Entry)) {
+        return false;
+      }
+      Entry<?> entry = (Entry<?>) other;
+      return hash == entry.hash && o.equals(entry.get());
+    }
+  }
+
+  private final ConcurrentHashMap<Object, Entry<T>> entries;
+  private final ReferenceQueue<T> collected = new ReferenceQueue<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public ConcurrentInterner() {
+    this(16);
+  }
+
+  /**
+   * @param initialCapacity How many objects to make room for at first
+   */
+  public ConcurrentInterner(int initialCapacity) {
+    entries = new ConcurrentHashMap<>(initialCapacity);
+    // the superclass map is never used
+    map = null;
+  }
+
+  /**
+   * Returns a unique object o' that .equals the argument o.  If o
+   * itself is returned, this is the first request for an object
+   * .equals to o.
+   */
+  @Override
+  public T intern(T o) {
+    if (o == null) {
+      return null;
+    }
+    expungeCollected();
+    Lookup lookup = new Lookup(o);
+    while (true) {
+      Entry<T> entry = entries.get(lookup);
+      if (entry == null) {
+        Entry<T> added = new Entry<>(o, collected);
+        entry = entries.putIfAbsent(added, added);
+        if (entry == null) {
+          misses.increment();
+          return o;
+        }
+      }
+      T interned = entry.get();
+      if (interned != null) {
+        hits.increment();
+        return interned;
+      }
+      // collected since we found it: drop it and try again
+      entries.remove(entry, entry);
+    }
+  }
+
+  /** Removes the entries whose objects have been garbage collected. */
+  private void expungeCollected() {
+    Object ref;
+    while ((ref = collected.poll()) != null) {
+      entries.remove(ref, ref);
+    }
+  }
+
+  @Override
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * The number of objects in the interner.  This can include a few objects
+   * which have been garbage collected but not yet removed.
+   */
+  @Override
+  public int size() {
+    expungeCollected();
+    return entries.size();
+  }
+
+  /** The number of calls to {@link #intern} which returned an object interned earlier. */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /** The number of calls to {@link #intern} which interned a new object. */
+  public long misses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ConcurrentInterner[size=" + size() + ", hits=" + hits() + ", misses=" + misses() + ']';
+  }
+
+}
@@ -66,9 +66,7 @@ public class SynchronizedInterner<T> {
    */
   @SuppressWarnings("unchecked")
   public static <T> T globalIntern(T o) {
-    synchronized(globalMutex) {
-      return (T) getGlobal().intern(o);
-    }
+    return (T) getGlobal().intern(o);
   }
 
 
@@ -97,8 +95,12 @@ public class SynchronizedInterner<T> {
    * Returns a unique object o' that .equals the argument o.  If o
    * itself is returned, this is the first request for an object
    * .equals to o.
+   * A {@link ConcurrentInterner} is threadsafe by itself, so it is called without taking the mutex.
    */
   public T intern(T o) {
+    if (delegate instanceof ConcurrentInterner) {
+      return delegate.intern(o);
+    }
     synchronized(mutex) {
       return delegate.intern(o);
     }
@@ -0,0 +1,62 @@
+package edu.stanford.nlp.coref.neural;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.ejml.simple.SimpleMatrix;
+
+/**
+ * Checks that the batched scores of {@link NeuralCorefModel} match scoring one pair at a time.
+ */
+public class NeuralCorefModelTest extends TestCase {
+
+  private static final int EMBEDDING = 5;
+  private static final int HIDDEN = 4;
+  private static final int PAIR_FEATURES = 3;
+  private static final int ANAPHORICITY_FEATURES = 2;
+
+  private final Random random = new Random(42);
+
+  private SimpleMatrix random(int rows, int cols) {
+    return SimpleMatrix.random(rows, cols, -1, 1, random);
+  }
+
+  private NeuralCorefModel model() {
+    List<SimpleMatrix> anaphoricityModel = Arrays.asList(
+        random(3, EMBEDDING + ANAPHORICITY_FEATURES), random(3, 1), random(1, 3), random(1, 1));
+    List<SimpleMatrix> pairwiseModel = Arrays.asList(
+        random(3, HIDDEN), random(3, 1), random(1, 3), random(1, 1));
+    return new NeuralCorefModel(random(HIDDEN, EMBEDDING), random(HIDDEN, EMBEDDING),
+        random(HIDDEN, PAIR_FEATURES), random(HIDDEN, 1), anaphoricityModel, pairwiseModel, null);
+  }
+
+  public void testBatchedScoresMatch() {
+    NeuralCorefModel model = model();
+    int mentions = 4;
+    SimpleMatrix embeddings = random(EMBEDDING, mentions);
+    SimpleMatrix anaphoricityFeatures = random(ANAPHORICITY_FEATURES, mentions);
+
+    double[] anaphoricity = model.getAnaphoricityScores(embeddings, anaphoricityFeatures);
+    for (int i = 0; i < mentions; i++) {
+      assertEquals(model.getAnaphoricityScore(embeddings.extractVector(false, i), anaphoricityFeatures.extractVector(false, i)),
+          anaphoricity[i], 1e-10);
+    }
+
+    SimpleMatrix antecedentEmbeddings = model.getAntecedentEmbeddings(embeddings);
+    SimpleMatrix anaphorEmbeddings = model.getAnaphorEmbeddings(embeddings);
+    int[] antecedents = { 0, 0, 1, 2, 1 };
+    int[] anaphors = { 1, 2, 2, 3, 3 };
+    SimpleMatrix pairFeatures = random(PAIR_FEATURES, antecedents.length);
+    double[] scores = model.getPairwiseScores(antecedentEmbeddings, anaphorEmbeddings, antecedents, anaphors, pairFeatures);
+    for (int i = 0; i < antecedents.length; i++) {
+      double expected = model.getPairwiseScore(
+          model.getAntecedentEmbedding(embeddings.extractVector(false, antecedents[i])),
+          model.getAnaphorEmbedding(embeddings.extractVector(false, anaphors[i])),
+          pairFeatures.extractVector(false, i));
+      assertEquals(expected, scores[i], 1e-10);
+    }
+  }
+
+}
@@ -1,12 +1,17 @@
 package edu.stanford.nlp.ie;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 
+import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ling.CoreAnnotations;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.CoreUtilities;
+import edu.stanford.nlp.pipeline.ModelRegistry;
 import junit.framework.TestCase;
 
 /** @author Christopher Manning */
@@ -129,4 +134,36 @@ public class ClassifierCombinerTest extends TestCase {
     assertEquals(result, input1);
   }
 
+  /** Combiners whose properties only differ in annotator options share their classifiers. */
+  public void testSharedClassifiers() throws Exception {
+    Properties trainProps = new Properties();
+    trainProps.setProperty("useWord", "true");
+    trainProps.setProperty("maxIterations", "5");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(trainProps);
+    List<List<CoreLabel>> docs = new ArrayList<>();
+    docs.add(CoreUtilities.toCoreLabelList(words, tags, ans1));
+    crf.train(docs);
+    File file = File.createTempFile("classifiercombiner", ".crf");
+    file.deleteOnExit();
+    crf.serializeClassifier(file.getPath());
+
+    Properties props = new Properties();
+    props.setProperty(NERClassifierCombiner.APPLY_NUMERIC_CLASSIFIERS_PROPERTY, "true");
+    Properties annotatorProps = new Properties();
+    annotatorProps.setProperty(NERClassifierCombiner.APPLY_NUMERIC_CLASSIFIERS_PROPERTY, "false");
+    annotatorProps.setProperty("sutime.markTimeRanges", "true");
+    Properties flagProps = new Properties();
+    flagProps.setProperty("maxAdditionalKnownLCWords", "0");
+
+    int models = ModelRegistry.SINGLETON.size();
+    ClassifierCombiner<CoreLabel> first = new ClassifierCombiner<>(props, ClassifierCombiner.CombinationMode.NORMAL, file.getPath());
+    assertEquals(models + 1, ModelRegistry.SINGLETON.size());
+    ClassifierCombiner<CoreLabel> second = new ClassifierCombiner<>(annotatorProps, ClassifierCombiner.CombinationMode.NORMAL, file.getPath());
+    assertEquals(models + 1, ModelRegistry.SINGLETON.size());
+    ClassifierCombiner<CoreLabel> third = new ClassifierCombiner<>(flagProps, ClassifierCombiner.CombinationMode.NORMAL, file.getPath());
+    assertEquals(models + 2, ModelRegistry.SINGLETON.size());
+    assertEquals(first.labels(), second.labels());
+    assertEquals(first.labels(), third.labels());
+  }
+
 }
@@ -0,0 +1,196 @@
+package edu.stanford.nlp.ie.crf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.sequences.ExactBestSequenceFinder;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Checks that inference on the reusable workspace gives exactly the
+ * same results as inference on freshly allocated tables, and that a
+ * classifier loaded from a compact model file tags like the original.
+ */
+public class CRFClassifierTest extends TestCase {
+
+  private static List<CoreLabel> sentence(String text) {
+    List<CoreLabel> sentence = new ArrayList<>();
+    for (String token : text.split(" ")) {
+      String[] pieces = token.split("/");
+      CoreLabel word = new CoreLabel();
+      word.setWord(pieces[0]);
+      word.setValue(pieces[0]);
+      word.set(CoreAnnotations.TextAnnotation.class, pieces[0]);
+      word.set(CoreAnnotations.AnswerAnnotation.class, pieces.length > 1 ? pieces[1] : "O");
+      word.set(CoreAnnotations.GoldAnswerAnnotation.class, pieces.length > 1 ? pieces[1] : "O");
+      sentence.add(word);
+    }
+    return sentence;
+  }
+
+  private static CRFClassifier<CoreLabel> train() {
+    Properties props = new Properties();
+    props.setProperty("useWord", "true");
+    props.setProperty("usePrev", "true");
+    props.setProperty("useNext", "true");
+    props.setProperty("useClassFeature", "true");
+    props.setProperty("useSequences", "true");
+    props.setProperty("usePrevSequences", "true");
+    props.setProperty("maxLeft", "2");
+    props.setProperty("maxIterations", "20");
+    props.setProperty("suppressTestDebug", "true");
+    CRFClassifier<CoreLabel> crf = new CRFClassifier<>(props);
+    List<List<CoreLabel>> docs = new ArrayList<>();
+    docs.add(sentence("John/PER Smith/PER lives/O in/O Paris/LOC ./O"));
+    docs.add(sentence("Mary/PER visited/O London/LOC and/O Paris/LOC ./O"));
+    docs.add(sentence("The/O company/O Acme/ORG hired/O John/PER ./O"));
+    docs.add(sentence("Acme/ORG opened/O in/O London/LOC"));
+    crf.train(docs);
+    return crf;
+  }
+
+  public void testWorkspaceMatchesFreshTables() {
+    CRFClassifier<CoreLabel> crf = train();
+    String[] texts = {
+      "John visited Acme in London .",
+      "Smith lives in Paris",
+      "unknown words here",
+      "Mary",
+    };
+    for (int repeat = 0; repeat < 2; ++repeat) {
+      for (String text : texts) {
+        List<CoreLabel> document = sentence(text);
+
+        CRFCliqueTree<String> expected = crf.getCliqueTree(document);
+        CRFInferenceWorkspace workspace = CRFInferenceWorkspace.get();
+        workspace.reset();
+        CRFCliqueTree<String> actual = CRFCliqueTree.getCalibratedCliqueTree(crf.documentToDataAndLabels(document).first(),
+            crf.labelIndices, crf.classIndex.size(), crf.classIndex, crf.flags.backgroundSymbol,
+            crf.getCliquePotentialFunctionForTest(), null, workspace);
+        for (int i = 0; i < document.size(); ++i) {
+          for (int label = 0; label < crf.classIndex.size(); ++label) {
+            assertEquals(expected.logProb(i, label), actual.logProb(i, label), 0.0);
+          }
+        }
+
+        List<String> answers = new ArrayList<>();
+        for (CoreLabel word : crf.classifyMaxEnt(sentence(text))) {
+          answers.add(word.get(CoreAnnotations.AnswerAnnotation.class));
+        }
+        List<CoreLabel> reference = sentence(text);
+        int[] best = new ExactBestSequenceFinder().bestSequence(crf.getSequenceModel(reference));
+        List<String> expectedAnswers = new ArrayList<>();
+        for (int i = 0; i < reference.size(); ++i) {
+          expectedAnswers.add(crf.classIndex.get(best[i + crf.windowSize - 1]));
+        }
+        assertEquals(expectedAnswers, answers);
+      }
+    }
+  }
+
+  private static List<String> answers(CRFClassifier<CoreLabel> crf, String text) {
+    List<String> answers = new ArrayList<>();
+    for (CoreLabel word : crf.classify(sentence(text))) {
+      answers.add(word.get(CoreAnnotations.AnswerAnnotation.class));
+    }
+    return answers;
+  }
+
+  public void testCompactFeatureIndex() {
+    Index<String> features = new HashIndex<>(Arrays.asList("WORD-John|C", "", "PREV-Zürich|C", "WORD-John|CpC", "\u00e9t\u00e9"));
+    CompactFeatureIndex compact = CompactFeatureIndex.fromIndex(features);
+    assertEquals(features.size(), compact.size());
+    for (int i = 0; i < features.size(); ++i) {
+      assertEquals(features.get(i), compact.get(i));
+      assertEquals(i, compact.indexOf(features.get(i)));
+    }
+    assertEquals(-1, compact.indexOf("WORD-John"));
+    assertEquals(-1, compact.indexOf("WORD-John|Cp"));
+    assertEquals(-1, compact.indexOf("PREV-Zurich|C"));
+    assertEquals(-1, compact.indexOf(null));
+    assertEquals(features.objectsList(), compact.objectsList());
+  }
+
+  public void testCompactFeatureIndexSaveToFilename() throws Exception {
+    Index<String> features = new HashIndex<>(Arrays.asList("WORD-John|C", "PREV-Zürich|C", "été"));
+    File file = File.createTempFile("features", ".txt");
+    file.deleteOnExit();
+    CompactFeatureIndex.fromIndex(features).saveToFilename(file.getPath());
+    assertEquals(features.objectsList(), HashIndex.loadFromFilename(file.getPath()).objectsList());
+  }
+
+  public void testCompactModelFile() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    File file = File.createTempFile("crf", ".compact");
+    file.deleteOnExit();
+    crf.serializeCompactClassifier(file.getPath());
+    CRFClassifier<CoreLabel> compact = CRFClassifier.getClassifier(file.getPath(), null);
+    assertTrue(compact.featureIndex instanceof CompactFeatureIndex);
+    assertEquals(crf.featureIndex.objectsList(), compact.featureIndex.objectsList());
+
+    String[] texts = {
+      "John visited Acme in London .",
+      "Smith lives in Paris",
+      "unknown words here",
+    };
+    for (String text : texts) {
+      assertEquals(answers(crf, text), answers(compact, text));
+      CRFCliqueTree<String> expected = crf.getCliqueTree(sentence(text));
+      CRFCliqueTree<String> actual = compact.getCliqueTree(sentence(text));
+      for (int i = 0; i < expected.length(); ++i) {
+        for (int label = 0; label < crf.classIndex.size(); ++label) {
+          assertEquals(expected.logProb(i, label), actual.logProb(i, label), 1e-4);
+        }
+      }
+    }
+
+    try {
+      compact.serializeCompactClassifier(file.getPath());
+      fail("Should not be able to serialize a compact classifier");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testCompactModelWeights() throws Exception {
+    CRFClassifier<CoreLabel> crf = train();
+    File file = File.createTempFile("crf", ".compact");
+    file.deleteOnExit();
+    crf.serializeCompactClassifier(file.getPath());
+    CRFClassifier<CoreLabel> compact = CRFClassifier.getClassifier(file.getPath(), null);
+
+    assertEquals(crf.getNumWeights(), compact.getNumWeights());
+    Map<String, Counter<String>> expected = crf.topWeights();
+    Map<String, Counter<String>> actual = compact.topWeights();
+    assertEquals(expected.keySet(), actual.keySet());
+    for (String label : expected.keySet()) {
+      for (String feature : expected.get(label).keySet()) {
+        assertEquals(expected.get(label).getCount(feature), actual.get(label).getCount(feature), 1e-4);
+      }
+    }
+
+    try {
+      compact.scaleWeights(2.0);
+      fail("Should not be able to rescale a compact classifier");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      compact.dropFeaturesBelowThreshold(0.1);
+      fail("Should not be able to prune a compact classifier");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,137 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Interval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Compiles a phrase table and checks that the loaded table finds the same phrases.
+ */
+public class CompiledPhraseTableTest extends TestCase {
+
+  private static final List<String> phrases = Arrays.asList(
+          "Peres",
+          "Arafat",
+          "Col.",
+          "Col. Jibril Rajoub",
+          "Jibril Rajoub",
+          "Palestinian Authority",
+          "West Bank",
+          "the West Bank town");
+
+  private static final String text = "now under the control of Yasser Arafat's Palestinian Authority. " +
+          "They were guests of Col. Jibril Rajoub, head of the Palestinian security service " +
+          "in the West Bank town of Jericho.  PERES, west bank";
+
+  private static Set<String> toStrings(List<PhraseTable.PhraseMatch> matches) {
+    Set<String> strings = new TreeSet<>();
+    for (PhraseTable.PhraseMatch match : matches) {
+      strings.add(match.toString());
+    }
+    return strings;
+  }
+
+  private static CompiledPhraseTable compile(PhraseTable table) throws IOException {
+    File file = File.createTempFile("phrases", ".table");
+    file.deleteOnExit();
+    CompiledPhraseTable.compile(table, file);
+    return CompiledPhraseTable.load(file);
+  }
+
+  public void testSameMatches() throws Exception {
+    PhraseTable table = new PhraseTable();
+    table.caseInsensitive = true;
+    table.addPhrase("Peres", "PERSON");
+    table.addPhrases(phrases);
+    CompiledPhraseTable compiled = compile(table);
+    assertEquals(phrases.size(), compiled.size());
+    assertTrue(compiled.caseInsensitive);
+
+    List<PhraseTable.PhraseMatch> matches = compiled.findAllMatches(text);
+    assertEquals(toStrings(table.findAllMatches(text)), toStrings(matches));
+    assertEquals(5, matches.size());
+    assertEquals(toStrings(table.findNonOverlappingPhrases(table.findAllMatches(text))),
+            toStrings(compiled.findNonOverlappingPhrases(matches)));
+
+    PhraseTable.WordList tokens = new PhraseTable.StringList(Arrays.asList(
+            "of", "Col.", "Jibril", "Rajoub", ",", "the", "West", "Bank", "town"));
+    assertEquals(toStrings(table.findAllMatches(tokens)), toStrings(compiled.findAllMatches(tokens)));
+    assertEquals(toStrings(table.findMatches(tokens, 1, tokens.size(), true)),
+            toStrings(compiled.findMatches(tokens, 1, tokens.size(), true)));
+    assertEquals("[Col. Jibril Rajoub at (1,4), Col. at (1,2)]",
+            toStrings(compiled.findMatches(tokens, 1, tokens.size(), true)).toString());
+
+    PhraseTable.Phrase peres = compiled.lookupNormalized("PERES");
+    assertEquals("Peres", peres.getText());
+    assertEquals("PERSON", peres.getTag());
+    assertNull(compiled.lookupNormalized("Yasser Arafat"));
+    assertNull(compiled.lookupNormalized("Col. Jibril"));
+    assertEquals("Col. Jibril Rajoub", compiled.lookupNormalized("col. jibril rajoub").getText());
+  }
+
+  public void testEmpty() throws Exception {
+    CompiledPhraseTable compiled = compile(new PhraseTable());
+    assertTrue(compiled.isEmpty());
+    assertTrue(compiled.findAllMatches(text).isEmpty());
+    assertNull(compiled.lookup("Peres"));
+  }
+
+  public void testNotATable() throws Exception {
+    File file = File.createTempFile("phrases", ".table");
+    file.deleteOnExit();
+    java.nio.file.Files.write(file.toPath(), "not a phrase table at all".getBytes("UTF-8"));
+    try {
+      CompiledPhraseTable.load(file);
+      fail("Should not load a file which is not a compiled phrase table");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testStringSequencePattern() throws Exception {
+    Set<List<String>> targets = new HashSet<>();
+    targets.add(Arrays.asList("West", "Bank"));
+    targets.add(Arrays.asList("the", "West", "Bank", "town"));
+    targets.add(Arrays.asList("Jericho"));
+    PhraseTable table = new PhraseTable(false, false, false);
+    for (List<String> target : targets) {
+      table.addPhrase(target);
+    }
+    MultiCoreMapNodePattern.StringSequenceAnnotationPattern expected =
+            new MultiCoreMapNodePattern.StringSequenceAnnotationPattern(CoreAnnotations.TextAnnotation.class, targets);
+    MultiCoreMapNodePattern.StringSequenceAnnotationPattern compiled =
+            new MultiCoreMapNodePattern.StringSequenceAnnotationPattern(CoreAnnotations.TextAnnotation.class, compile(table));
+
+    List<CoreMap> tokens = new ArrayList<>();
+    for (String word : "in the West Bank town of Jericho".split(" ")) {
+      CoreLabel token = new CoreLabel();
+      token.set(CoreAnnotations.TextAnnotation.class, word);
+      tokens.add(token);
+    }
+    int found = 0;
+    for (int start = 0; start < tokens.size(); start++) {
+      Collection<Interval<Integer>> matches = compiled.match(tokens, start);
+      assertEquals(new HashSet<>(expected.match(tokens, start)), new HashSet<>(matches));
+      found += matches.size();
+    }
+    assertEquals(3, found);
+  }
+
+  public void testTooLargeToMap() throws Exception {
+    CompiledPhraseTable.checkMappable(Integer.MAX_VALUE, "phrases.table");
+    try {
+      CompiledPhraseTable.checkMappable(Integer.MAX_VALUE + 1L, "phrases.table");
+      fail("Should not be able to map a table over 2 GB");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("2 GB"));
+    }
+  }
+
+}
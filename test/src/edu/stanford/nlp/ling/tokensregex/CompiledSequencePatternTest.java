@@ -0,0 +1,99 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.SentenceUtils;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Checks that patterns matched in {@link SequencePattern.MatchMode#COMPILED} mode
+ * find the same matches as by backtracking.
+ */
+public class CompiledSequencePatternTest extends TestCase {
+
+  private static final List<CoreLabel> tokens = SentenceUtils.toCoreLabelList(
+      "the", "big", "red", "dog", "and", "the", "cat", "ran", "to", "the", "big", "house", ".");
+
+  private static TokenSequencePattern compiled(String pattern) {
+    TokenSequencePattern p = TokenSequencePattern.compile(pattern);
+    p.setMatchMode(SequencePattern.MatchMode.COMPILED);
+    return p;
+  }
+
+  private static String findAll(TokenSequencePattern pattern, List<CoreLabel> tokens) {
+    StringBuilder sb = new StringBuilder();
+    TokenSequenceMatcher m = pattern.getMatcher(tokens);
+    while (m.find()) {
+      sb.append('[');
+      for (int g = 0; g <= m.groupCount(); g++) {
+        sb.append(m.start(g)).append(',').append(m.end(g)).append(';');
+      }
+      sb.append(m.groupValue()).append(']');
+    }
+    return sb.toString();
+  }
+
+  public void testSameMatchesAsBacktracking() {
+    String[] patterns = {
+        "the",
+        "the /big|red/* []",
+        "(?$adj /big|red/)+ (dog|cat|house)",
+        "the ([]{1,3}) (dog|house)",
+        "(the|a)? (?: big | red )* (/dog|cat/) (and the cat)?",
+        "^ the []* dog",
+        "[]* the big house $",
+        "[]{2,4} ran",
+        "(?$x [{word:/b.*/}]) []? ( [] | [] [] ) [{tag:NN}]?",
+    };
+    for (String p : patterns) {
+      TokenSequencePattern c = compiled(p);
+      assertEquals(p, SequencePattern.MatchMode.COMPILED, c.getMatchModeUsed());
+      assertEquals(p, findAll(TokenSequencePattern.compile(p), tokens), findAll(c, tokens));
+    }
+  }
+
+  public void testGroups() {
+    TokenSequenceMatcher m = compiled("(?$adjs /big|red/+) (dog|cat)").getMatcher(tokens);
+    assertTrue(m.find());
+    assertEquals(1, m.start());
+    assertEquals(4, m.end());
+    assertEquals("big red", m.group("$adjs"));
+    assertEquals("dog", m.group(2));
+    assertFalse(m.find());
+  }
+
+  public void testMatches() {
+    List<CoreLabel> sentence = tokens.subList(0, 4);
+    assertTrue(compiled("the (/big|red/*) dog").getMatcher(sentence).matches());
+    assertFalse(compiled("the /big|red/").getMatcher(sentence).matches());
+    TokenSequenceMatcher m = compiled("[]* (/red|dog/)").getMatcher(sentence);
+    assertTrue(m.matches());
+    assertEquals(3, m.start(1));
+  }
+
+  public void testFallback() {
+    TokenSequencePattern p = compiled("the []*? dog");
+    assertEquals(SequencePattern.MatchMode.COMPILED, p.getMatchMode());
+    assertEquals(SequencePattern.MatchMode.BACKTRACKING, p.getMatchModeUsed());
+    assertNotNull(p.getFallbackReason());
+    assertEquals(findAll(TokenSequencePattern.compile("the []*? dog"), tokens), findAll(p, tokens));
+
+    TokenSequencePattern b = TokenSequencePattern.compile("the big");
+    assertEquals(SequencePattern.MatchMode.BACKTRACKING, b.getMatchModeUsed());
+    assertNull(b.getFallbackReason());
+  }
+
+  public void testManyBranches() {
+    // branches which all fail at the end: a branch per way of splitting the run of a's
+    String[] words = new String[40];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = "a";
+    }
+    List<CoreLabel> as = SentenceUtils.toCoreLabelList(words);
+    TokenSequencePattern p = compiled("(a | a a | a a a)+ b");
+    assertFalse(p.getMatcher(as).find());
+    assertTrue(compiled("(a | a a | a a a)+").getMatcher(as).matches());
+  }
+
+}
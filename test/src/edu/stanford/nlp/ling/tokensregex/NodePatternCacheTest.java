@@ -0,0 +1,127 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that a {@link NodePatternCache} shares node patterns between sequence patterns
+ * without changing what they match.
+ */
+public class NodePatternCacheTest extends TestCase {
+
+  private static final List<CoreLabel> tokens = SentenceUtils.toCoreLabelList(
+      "on", "the", "big", "day", "the", "big", "dog", "ran");
+
+  /** Matches a word, counting how many times it is tested */
+  private static class CountingNodePattern extends NodePattern<CoreMap> {
+    private final String word;
+    int tests;
+
+    private CountingNodePattern(String word) {
+      this.word = word;
+    }
+
+    @Override
+    public boolean match(CoreMap node) {
+      tests++;
+      return word.equals(node.get(CoreAnnotations.TextAnnotation.class));
+    }
+  }
+
+  private static TokenSequencePattern sequence(NodePattern... nodes) {
+    SequencePattern.PatternExpr[] exprs = new SequencePattern.PatternExpr[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      exprs[i] = new SequencePattern.NodePatternExpr(nodes[i]);
+    }
+    return TokenSequencePattern.compile(new SequencePattern.SequencePatternExpr(exprs));
+  }
+
+  private static int count(TokenSequencePattern pattern) {
+    int n = 0;
+    TokenSequenceMatcher m = pattern.getMatcher(tokens);
+    while (m.find()) {
+      n++;
+    }
+    return n;
+  }
+
+  public void testSharedIds() {
+    NodePatternCache cache = new NodePatternCache();
+    cache.addPattern(TokenSequencePattern.compile("[{word:/b.*/}] [{tag:NN} & !{word:dog}]"));
+    cache.addPattern(TokenSequencePattern.compile("the [{word:/b.*/}]"));
+    cache.addPattern(TokenSequencePattern.compile("[{tag:NN} & !{word:dog}] ran"));
+    assertEquals(6, cache.patterns());
+    assertEquals(4, cache.size());
+  }
+
+  public void testMemoizedMatches() {
+    CountingNodePattern the = new CountingNodePattern("the");
+    CountingNodePattern big = new CountingNodePattern("big");
+    TokenSequencePattern theBig = sequence(the, big);
+    TokenSequencePattern theBigDog = sequence(the, big, new CountingNodePattern("dog"));
+    TokenSequencePattern bigDay = sequence(big, new CountingNodePattern("day"));
+
+    NodePatternCache cache = new NodePatternCache();
+    for (TokenSequencePattern p : Arrays.asList(theBig, theBigDog, bigDay)) {
+      cache.addPattern(p);
+    }
+    NodePatternCache.Scope scope = cache.use();
+    try {
+      assertEquals(2, count(theBig));
+      assertEquals(1, count(theBigDog));
+      assertEquals(1, count(bigDay));
+    } finally {
+      scope.close();
+    }
+    // each token is tested at most once against each node pattern
+    assertTrue(the.tests <= tokens.size());
+    assertTrue(big.tests <= tokens.size());
+
+    // without the cache, the same matches (with more tests)
+    the.tests = 0;
+    assertEquals(2, count(theBig));
+    assertEquals(1, count(theBigDog));
+    assertTrue(the.tests > tokens.size());
+  }
+
+  public void testRuleTimings() throws Exception {
+    Env env = TokenSequencePattern.getNewEnv();
+    CoreMapExpressionExtractor<MatchedExpression> extractor = CoreMapExpressionExtractor.createExtractorFromString(env,
+        "{ ruleType: \"tokens\", name: \"bigThing\", pattern: ( big /day|dog/ ), result: \"BIG\" }\n" +
+        "{ ruleType: \"tokens\", pattern: ( /the/ big ), result: \"THE\" }\n");
+    extractor.setRuleTimings(true);
+    String text = "on the big day the big dog ran";
+    int offset = 0;
+    for (CoreLabel token : tokens) {
+      token.setBeginPosition(offset);
+      offset += token.word().length();
+      token.setEndPosition(offset++);
+    }
+    CoreMap sentence = new Annotation(text);
+    sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    List<MatchedExpression> matched = extractor.extractExpressions(sentence);
+    assertEquals(2, matched.size());
+
+    List<CoreMapExpressionExtractor.RuleTiming> timings = extractor.getRuleTimings();
+    assertEquals(2, timings.size());
+    long extracted = 0;
+    for (CoreMapExpressionExtractor.RuleTiming timing : timings) {
+      assertEquals(1, timing.getCalls());
+      extracted += timing.getExtracted();
+    }
+    assertEquals(4, extracted);
+    assertTrue(timings.get(0).getNanos() >= timings.get(1).getNanos());
+    assertTrue(timings.get(0).getRule().equals("bigThing") || timings.get(1).getRule().equals("bigThing"));
+
+    extractor.setRuleTimings(false);
+    assertTrue(extractor.getRuleTimings().isEmpty());
+  }
+
+}
@@ -0,0 +1,104 @@
+package edu.stanford.nlp.ling.tokensregex;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.SentenceUtils;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Checks that a {@link SequencePatternPrefilter} rules out the sequences its patterns cannot match, and only those.
+ */
+public class SequencePatternPrefilterTest extends TestCase {
+
+  private static List<CoreLabel> tokens(String text) {
+    List<CoreLabel> tokens = SentenceUtils.toCoreLabelList(text.split(" "));
+    int offset = 0;
+    for (CoreLabel token : tokens) {
+      token.setBeginPosition(offset);
+      offset += token.word().length();
+      token.setEndPosition(offset++);
+    }
+    return tokens;
+  }
+
+  private static SequencePatternPrefilter prefilter(String... patterns) {
+    SequencePatternPrefilter prefilter = new SequencePatternPrefilter();
+    for (String pattern : patterns) {
+      prefilter.addPattern(TokenSequencePattern.compile(pattern));
+    }
+    return prefilter;
+  }
+
+  /** Whether the prefilter lets the sequence through, checking it does for the sequences the patterns match */
+  private static boolean mayMatch(SequencePatternPrefilter prefilter, String text, String... patterns) {
+    List<CoreLabel> tokens = tokens(text);
+    boolean mayMatch = prefilter.mayMatch(tokens);
+    for (String pattern : patterns) {
+      if (TokenSequencePattern.compile(pattern).getMatcher(tokens).find()) {
+        assertTrue(pattern + " matches " + text, mayMatch);
+      }
+    }
+    return mayMatch;
+  }
+
+  public void testRequiredWords() {
+    String pattern = "the /big|red/ dog";
+    SequencePatternPrefilter prefilter = prefilter(pattern);
+    assertTrue(mayMatch(prefilter, "the big dog ran", pattern));
+    // each word is there, though not in order
+    assertTrue(mayMatch(prefilter, "the red cat bit the dog", pattern));
+    assertFalse(mayMatch(prefilter, "the dog bit the cat", pattern));
+    assertFalse(mayMatch(prefilter, "the big cat ran", pattern));
+    assertFalse(mayMatch(prefilter, "a dog ran", pattern));
+  }
+
+  public void testAlternatives() {
+    String[] patterns = { "[{word:/[0-9]+/}] ( days | weeks ) ago", "( last | next ) /week|month/" };
+    SequencePatternPrefilter prefilter = prefilter(patterns);
+    assertTrue(mayMatch(prefilter, "2 weeks ago", patterns));
+    assertTrue(mayMatch(prefilter, "next month", patterns));
+    assertTrue(mayMatch(prefilter, "last year , the week before", patterns));
+    assertFalse(mayMatch(prefilter, "weeks ago", patterns));
+    assertFalse(mayMatch(prefilter, "last year", patterns));
+  }
+
+  public void testCaseAndConjunction() {
+    String[] patterns = { "[{word:/monday/}] | [{lemma:Monday}]", "( [{word:/(?i)noon/}] ) & ( []* )" };
+    SequencePatternPrefilter prefilter = prefilter(patterns);
+    assertTrue(mayMatch(prefilter, "at NOON", patterns));
+    assertFalse(mayMatch(prefilter, "at MONDAY", patterns));
+    assertFalse(mayMatch(prefilter, "at night", patterns));
+  }
+
+  public void testAlwaysMayMatch() {
+    SequencePatternPrefilter prefilter = new SequencePatternPrefilter();
+    assertFalse(prefilter.mayMatch(tokens("the dog")));
+    assertFalse(prefilter.addPattern(TokenSequencePattern.compile("[]+")));
+    assertTrue(prefilter.isAlwaysMayMatch());
+    assertTrue(prefilter.mayMatch(tokens("the dog")));
+  }
+
+  public void testExtractorSkipsSentences() throws Exception {
+    Env env = TokenSequencePattern.getNewEnv();
+    CoreMapExpressionExtractor<MatchedExpression> extractor = CoreMapExpressionExtractor.createExtractorFromString(env,
+        "{ ruleType: \"tokens\", pattern: ( /last|next/ /week|month/ ), result: \"RELATIVE\" }\n" +
+        "{ ruleType: \"text\", pattern: /\\d\\d:\\d\\d/, result: \"TIME\" }\n");
+    extractor.setPrefilter(true);
+    extractor.setNoMatchCacheSize(10);
+    String[] texts = { "we met last week", "the dog ran", "we met at 10:30", "the dog ran", "we met last week" };
+    int[] expected = { 1, 0, 1, 0, 1 };
+    for (int i = 0; i < texts.length; i++) {
+      CoreMap sentence = new Annotation(texts[i]);
+      sentence.set(CoreAnnotations.TokensAnnotation.class, tokens(texts[i]));
+      assertEquals(texts[i], expected[i], extractor.extractExpressions(sentence).size());
+    }
+    assertEquals(5, extractor.getExtractCount());
+    assertEquals(1, extractor.getPrefilteredCount());
+    assertEquals(1, extractor.getNoMatchCacheHits());
+  }
+
+}
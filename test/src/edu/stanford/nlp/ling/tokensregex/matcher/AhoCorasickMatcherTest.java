@@ -0,0 +1,83 @@
+package edu.stanford.nlp.ling.tokensregex.matcher;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Test case for AhoCorasickMatcher
+ */
+public class AhoCorasickMatcherTest extends TestCase {
+
+  private static String toString(List<Match<String,String>> matches) {
+    StringBuilder sb = new StringBuilder();
+    for (Match<String,String> m : matches) {
+      sb.append(m.getValue()).append('[').append(m.getBegin()).append(',').append(m.getEnd()).append(") ");
+    }
+    return sb.toString().trim();
+  }
+
+  public void testFindAllMatches() {
+    AhoCorasickMatcher<String,String> matcher = new AhoCorasickMatcher<>();
+    matcher.put(Arrays.asList("a", "white", "cat"), "white cat");
+    matcher.put(Arrays.asList("white", "cat"), "cat");
+    matcher.put(Arrays.asList("cat"), "just cat");
+    matcher.put(Arrays.asList("cat"), "another cat");
+    matcher.put(Arrays.asList("white", "hat"), "hat");
+    matcher.put(Arrays.asList("a", "a"), "aa");
+    assertEquals(6, matcher.size());
+
+    List<String> sequence = Arrays.asList("a", "white", "cat", "and", "a", "white", "hat", "a", "a", "a");
+    assertEquals("white cat[0,3) cat[1,3) just cat[2,3) another cat[2,3) hat[5,7) aa[7,9) aa[8,10)",
+        toString(matcher.findAllMatches(sequence)));
+    Match<String,String> first = matcher.findAllMatches(sequence).get(0);
+    assertEquals(Arrays.asList("a", "white", "cat"), first.getMatched());
+
+    assertTrue(matcher.findAllMatches(Arrays.asList("white", "dog")).isEmpty());
+    assertTrue(matcher.findAllMatches(Collections.<String>emptyList()).isEmpty());
+  }
+
+  public void testFailureLinks() {
+    // after failing to match "a b c d", "b c" and "c" are still found
+    AhoCorasickMatcher<String,String> matcher = new AhoCorasickMatcher<>();
+    matcher.put(Arrays.asList("a", "b", "c", "d"), "abcd");
+    matcher.put(Arrays.asList("b", "c", "e"), "bce");
+    matcher.put(Arrays.asList("c"), "c");
+    assertEquals("c[2,3) bce[1,4)", toString(matcher.findAllMatches(Arrays.asList("a", "b", "c", "e"))));
+
+    // keys added after a search are found by the next search
+    matcher.put(Arrays.asList("c", "e"), "ce");
+    assertEquals("c[2,3) bce[1,4) ce[2,4)", toString(matcher.findAllMatches(Arrays.asList("a", "b", "c", "e"))));
+  }
+
+  public void testManyKeys() {
+    AhoCorasickMatcher<Integer,String> matcher = new AhoCorasickMatcher<>();
+    TrieMap<Integer,String> trie = new TrieMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      List<Integer> key = new ArrayList<>();
+      int length = 1 + random.nextInt(4);
+      for (int j = 0; j < length; j++) {
+        key.add(random.nextInt(20));
+      }
+      if ( ! trie.containsKey(key)) {
+        trie.put(key, key.toString());
+        matcher.put(key, key.toString());
+      }
+    }
+    List<Integer> sequence = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      sequence.add(random.nextInt(25));
+    }
+    Set<String> expected = new HashSet<>();
+    for (Match<Integer,String> m : new TrieMapMatcher<>(trie).findAllMatches(sequence)) {
+      expected.add(m.getValue() + m.getBegin());
+    }
+    Set<String> found = new HashSet<>();
+    for (Match<Integer,String> m : matcher.findAllMatches(sequence)) {
+      found.add(m.getValue() + m.getBegin());
+    }
+    assertEquals(expected, found);
+  }
+
+}
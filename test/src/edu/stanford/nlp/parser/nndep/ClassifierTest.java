@@ -0,0 +1,119 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that batched scoring gives exactly the same scores as scoring
+ * one configuration at a time, with and without precomputed features.
+ */
+public class ClassifierTest extends TestCase {
+
+  private static final int NUM_EMBEDDINGS = 30;
+  private static final int NUM_LABELS = 7;
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (int i = 0; i < rows; i++)
+      for (int j = 0; j < cols; j++)
+        matrix[i][j] = random.nextGaussian() * 0.1;
+    return matrix;
+  }
+
+  private static Classifier buildClassifier(Random random, List<Integer> preComputed) {
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", "11");
+    props.setProperty("embeddingSize", "5");
+    Config config = new Config(props);
+    double[][] E = randomMatrix(random, NUM_EMBEDDINGS, config.embeddingSize);
+    double[][] W1 = randomMatrix(random, config.hiddenSize, config.embeddingSize * Config.numTokens);
+    double[] b1 = randomMatrix(random, 1, config.hiddenSize)[0];
+    double[][] W2 = randomMatrix(random, NUM_LABELS, config.hiddenSize);
+    Classifier classifier = new Classifier(config, E, W1, b1, W2, preComputed);
+    classifier.preCompute();
+    return classifier;
+  }
+
+  private static void checkBatch(Classifier classifier, Random random) {
+    int count = 9;
+    int[][] features = new int[count + 2][Config.numTokens];
+    for (int[] feature : features)
+      for (int j = 0; j < feature.length; j++)
+        feature[j] = random.nextInt(NUM_EMBEDDINGS);
+
+    double[] hidden = new double[count * 11];
+    double[] scores = new double[count * classifier.numLabels()];
+    classifier.computeScores(features, count, hidden, scores);
+    for (int b = 0; b < count; b++) {
+      double[] expected = classifier.computeScores(features[b]);
+      for (int i = 0; i < NUM_LABELS; i++)
+        assertEquals(expected[i], scores[b * NUM_LABELS + i], 0.0);
+    }
+  }
+
+  public void testSharedLazyPreCompute() {
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < NUM_EMBEDDINGS * Config.numTokens; i += 2)
+      preComputed.add(i);
+    Classifier eager = buildClassifier(new Random(99), preComputed);
+    Classifier lazy1 = buildClassifier(new Random(99), preComputed);
+    Classifier lazy2 = buildClassifier(new Random(99), preComputed);
+    PrecomputedActivations table = PrecomputedActivations.forModel("test", preComputed.size());
+    assertSame(table, PrecomputedActivations.forModel("test", preComputed.size()));
+    lazy1.usePrecomputedActivations(table);
+    lazy2.usePrecomputedActivations(table);
+    assertEquals(0, table.size());
+
+    Random random = new Random(7);
+    for (int n = 0; n < 10; n++) {
+      int[] feature = new int[Config.numTokens];
+      for (int j = 0; j < feature.length; j++)
+        feature[j] = random.nextInt(NUM_EMBEDDINGS);
+      double[] expected = eager.computeScores(feature);
+      double[] scores1 = lazy1.computeScores(feature);
+      double[] scores2 = lazy2.computeScores(feature);
+      for (int i = 0; i < NUM_LABELS; i++) {
+        assertEquals(expected[i], scores1[i], 0.0);
+        assertEquals(expected[i], scores2[i], 0.0);
+      }
+    }
+    assertTrue(table.size() > 0);
+    assertTrue(table.size() <= table.capacity());
+    assertEquals(table.size(), table.misses());
+    assertTrue(table.hits() > 0);
+  }
+
+  public void testRewrittenModelGetsNewTable() throws Exception {
+    File model = File.createTempFile("nndep", ".txt");
+    model.deleteOnExit();
+    Files.write(model.toPath(), "old model".getBytes(StandardCharsets.UTF_8));
+    PrecomputedActivations table = PrecomputedActivations.forModel(model.getPath(), 10);
+    assertSame(table, PrecomputedActivations.forModel(model.getPath(), 10));
+
+    Files.write(model.toPath(), "retrained model".getBytes(StandardCharsets.UTF_8));
+    PrecomputedActivations retrained = PrecomputedActivations.forModel(model.getPath(), 10);
+    assertNotSame(table, retrained);
+    assertSame(retrained, PrecomputedActivations.forModel(model.getPath(), 10));
+  }
+
+  public void testBatchMatchesSingle() {
+    Random random = new Random(1234);
+    checkBatch(buildClassifier(random, new ArrayList<>()), random);
+  }
+
+  public void testBatchMatchesSinglePreComputed() {
+    Random random = new Random(4321);
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < NUM_EMBEDDINGS * Config.numTokens; i += 3)
+      preComputed.add(i);
+    checkBatch(buildClassifier(random, preComputed), random);
+  }
+
+}
@@ -0,0 +1,74 @@
+package edu.stanford.nlp.parser.nndep;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the float version of the classifier scores like the
+ * double version, and survives being written out and mapped back in.
+ */
+public class FloatClassifierTest extends TestCase {
+
+  private static final int NUM_EMBEDDINGS = 30;
+  private static final int NUM_LABELS = 7;
+
+  private static double[][] randomMatrix(Random random, int rows, int cols) {
+    double[][] matrix = new double[rows][cols];
+    for (int i = 0; i < rows; i++)
+      for (int j = 0; j < cols; j++)
+        matrix[i][j] = random.nextGaussian() * 0.1;
+    return matrix;
+  }
+
+  public void testRoundTrip() throws Exception {
+    Random random = new Random(2017);
+    Properties props = new Properties();
+    props.setProperty("hiddenSize", "11");
+    props.setProperty("embeddingSize", "5");
+    Config config = new Config(props);
+    List<Integer> preComputed = new ArrayList<>();
+    for (int i = 0; i < NUM_EMBEDDINGS * Config.numTokens; i += 5)
+      preComputed.add(i);
+    Classifier classifier = new Classifier(config,
+        randomMatrix(random, NUM_EMBEDDINGS, config.embeddingSize),
+        randomMatrix(random, config.hiddenSize, config.embeddingSize * Config.numTokens),
+        randomMatrix(random, 1, config.hiddenSize)[0],
+        randomMatrix(random, NUM_LABELS, config.hiddenSize), preComputed);
+    classifier.preCompute();
+    FloatClassifier floatClassifier = FloatClassifier.fromClassifier(classifier, preComputed, config.numPreComputed);
+
+    File file = File.createTempFile("nndep", ".bin");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(new byte[] { 1, 2, 3 });
+      floatClassifier.writeWeights(fos.getChannel());
+    }
+    FloatClassifier mapped;
+    try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+      mapped = FloatClassifier.map(channel, 3, NUM_EMBEDDINGS, config.embeddingSize, config.hiddenSize,
+          Config.numTokens, NUM_LABELS, floatClassifier.preComputed());
+    }
+
+    for (int n = 0; n < 20; n++) {
+      int[] feature = new int[Config.numTokens];
+      for (int j = 0; j < feature.length; j++)
+        feature[j] = random.nextInt(NUM_EMBEDDINGS);
+      double[] expected = classifier.computeScores(feature);
+      double[] fromFloat = floatClassifier.computeScores(feature);
+      double[] fromMapped = mapped.computeScores(feature);
+      for (int i = 0; i < NUM_LABELS; i++) {
+        assertEquals(expected[i], fromFloat[i], 1e-5);
+        assertEquals(fromFloat[i], fromMapped[i], 0.0);
+      }
+    }
+  }
+
+}
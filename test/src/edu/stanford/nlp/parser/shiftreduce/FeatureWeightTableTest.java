@@ -0,0 +1,108 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.parser.lexparser.BinaryHeadFinder;
+import edu.stanford.nlp.parser.lexparser.Options;
+import edu.stanford.nlp.trees.HeadFinder;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Trees;
+import edu.stanford.nlp.util.Generics;
+
+/**
+ * Checks that hashing the features part by part gives the keys of the
+ * feature strings, and that the hashed weights score states exactly
+ * like the string weights.
+ */
+public class FeatureWeightTableTest extends TestCase {
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+  };
+
+  static Tree convertTree(String treeText) {
+    Options op = new Options();
+    HeadFinder binaryHeadFinder = new BinaryHeadFinder(op.tlpParams.headFinder());
+    Tree tree = Tree.valueOf(treeText);
+    Trees.convertToCoreLabels(tree);
+    tree.percolateHeadAnnotations(binaryHeadFinder);
+    return tree;
+  }
+
+  public void testHashedScoresMatch() {
+    FeatureFactory factory = new BasicFeatureFactory();
+    Map<String, Weight> featureWeights = Generics.newHashMap();
+    Random random = new Random(1234);
+    int numTransitions = 10;
+
+    List<State> states = Generics.newArrayList();
+    for (String treeText : treeStrings) {
+      Tree tree = convertTree(treeText);
+      List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, Collections.singleton("ROOT"), Collections.singleton("ROOT"));
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+      for (Transition transition : transitions) {
+        states.add(state);
+        // give most, but not all, of the features some weights
+        for (String feature : factory.featurize(state)) {
+          if (random.nextInt(4) != 0) {
+            Weight weight = featureWeights.computeIfAbsent(feature, k -> new Weight());
+            weight.updateWeight(random.nextInt(numTransitions), random.nextFloat() - 0.5f);
+          }
+        }
+        state = transition.apply(state);
+      }
+    }
+
+    FeatureWeightTable table = FeatureWeightTable.build(featureWeights);
+    assertNotNull(table);
+    assertEquals(featureWeights.size(), table.size());
+
+    for (State state : states) {
+      List<String> strings = factory.featurize(state);
+      HashedFeatures hashed = new HashedFeatures(4);
+      factory.featurize(state, hashed);
+      assertEquals(strings.size(), hashed.size());
+
+      float[] expected = new float[numTransitions];
+      float[] scores = new float[numTransitions];
+      for (int i = 0; i < strings.size(); ++i) {
+        assertEquals(HashedFeatures.key(strings.get(i)), hashed.get(i));
+        Weight weight = featureWeights.get(strings.get(i));
+        if (weight != null) {
+          weight.score(expected);
+        }
+        table.score(hashed.get(i), scores);
+      }
+      for (int i = 0; i < numTransitions; ++i) {
+        assertEquals(expected[i], scores[i], 0.0f);
+      }
+    }
+  }
+
+  /** Feature factories written against the List helpers still get the same features */
+  public void testListHelpers() {
+    Tree tree = convertTree(treeStrings[0]);
+    State state = ShiftReduceParser.initialStateFromGoldTagTree(tree);
+    state = new ShiftTransition().apply(state);
+    CoreLabel s0 = FeatureFactory.getStackLabel(state.stack, 0);
+    CoreLabel q0 = FeatureFactory.getQueueLabel(state, 0);
+
+    List<String> fromList = Generics.newArrayList();
+    BasicFeatureFactory.addUnaryStackFeatures(fromList, s0, "S0C-", "S0WT-", "S0T-", "S0WC-", "S0TC-");
+    BasicFeatureFactory.addBinaryFeature(fromList, "S0TQ0T-", s0, FeatureFactory.FeatureComponent.HEADTAG, q0, FeatureFactory.FeatureComponent.HEADTAG);
+
+    List<String> fromSink = Generics.newArrayList();
+    FeatureSink sink = FeatureSink.forList(fromSink);
+    BasicFeatureFactory.addUnaryStackFeatures(sink, s0, "S0C-", "S0WT-", "S0T-", "S0WC-", "S0TC-");
+    BasicFeatureFactory.addBinaryFeature(sink, "S0TQ0T-", s0, FeatureFactory.FeatureComponent.HEADTAG, q0, FeatureFactory.FeatureComponent.HEADTAG);
+
+    assertEquals(6, fromList.size());
+    assertEquals(fromSink, fromList);
+  }
+}
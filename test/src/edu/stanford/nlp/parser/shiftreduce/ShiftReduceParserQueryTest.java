@@ -0,0 +1,160 @@
+package edu.stanford.nlp.parser.shiftreduce;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.TaggedWord;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.ParserAnnotator;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import edu.stanford.nlp.util.Generics;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+
+/**
+ * Checks that parsing many sentences in lock step gives the same
+ * parses as parsing them one at a time, and that the parse annotator
+ * gives default trees to a batch which is interrupted.
+ */
+public class ShiftReduceParserQueryTest extends TestCase {
+  String[] treeStrings = {
+    "(ROOT (S (INTJ (RB No)) (@S (, ,) (@S (NP (PRP it)) (@S (VP (@VP (VBD was) (RB n't)) (NP (NNP Black) (NNP Monday))) (. .))))) (.$$. .$.))",
+    "(ROOT (S (NP (PRP it)) (@S (VP (VBD failed) (NP (PRP$ their) (@NP (JJ first) (NN test)))) (. .))) (.$$. .$.))",
+    "(ROOT (FRAG (NP (DT A) (@NP (ADJP (JJ short) (@ADJP (, ,) (JJ simple))) (NN test)))))",
+  };
+
+  private static void addStates(Tree tree, Set<String> states) {
+    if (tree.isPreTerminal() || tree.isLeaf()) {
+      return;
+    }
+    states.add(tree.value());
+    for (Tree child : tree.children()) {
+      addStates(child, states);
+    }
+  }
+
+  /** A parser with random weights over the transitions of the trees */
+  private ShiftReduceParser randomParser() {
+    ShiftReduceOptions op = new ShiftReduceOptions();
+    op.testOptions().beamSize = 4;
+    FeatureFactory factory = new BasicFeatureFactory();
+    Random random = new Random(42);
+
+    List<Tree> trees = Generics.newArrayList();
+    Index<Transition> transitionIndex = new HashIndex<>();
+    Set<String> knownStates = Generics.newHashSet();
+    Set<String> rootStates = Collections.singleton("ROOT");
+    List<List<Transition>> transitionLists = Generics.newArrayList();
+    for (String treeText : treeStrings) {
+      Tree tree = FeatureWeightTableTest.convertTree(treeText);
+      trees.add(tree);
+      addStates(tree, knownStates);
+      List<Transition> transitions = CreateTransitionSequence.createTransitionSequence(tree, true, rootStates, rootStates);
+      transitionIndex.addAll(transitions);
+      transitionLists.add(transitions);
+    }
+
+    PerceptronModel model = new PerceptronModel(op, transitionIndex, knownStates, rootStates, rootStates);
+    for (int i = 0; i < trees.size(); ++i) {
+      State state = ShiftReduceParser.initialStateFromGoldTagTree(trees.get(i));
+      for (Transition transition : transitionLists.get(i)) {
+        for (String feature : factory.featurize(state)) {
+          Weight weight = model.featureWeights.computeIfAbsent(feature, k -> new Weight());
+          weight.updateWeight(transitionIndex.indexOf(transition), random.nextFloat());
+          weight.updateWeight(random.nextInt(transitionIndex.size()), random.nextFloat() - 0.5f);
+        }
+        state = transition.apply(state);
+      }
+    }
+    model.buildFeatureIndex();
+    return new ShiftReduceParser(op, model);
+  }
+
+  private List<Tree> trees() {
+    List<Tree> trees = Generics.newArrayList();
+    for (String treeText : treeStrings) {
+      trees.add(FeatureWeightTableTest.convertTree(treeText));
+    }
+    return trees;
+  }
+
+  public void testParseAllMatchesSingle() {
+    ShiftReduceParser parser = randomParser();
+    List<Tree> trees = trees();
+
+    List<List<TaggedWord>> sentences = Generics.newArrayList();
+    for (int repeat = 0; repeat < 30; ++repeat) {
+      for (Tree tree : trees) {
+        sentences.add(tree.taggedYield());
+      }
+    }
+    List<ShiftReduceParserQuery> batch = parser.parseAll(sentences, null);
+    assertEquals(sentences.size(), batch.size());
+    int succeeded = 0;
+    for (int i = 0; i < sentences.size(); ++i) {
+      ShiftReduceParserQuery single = new ShiftReduceParserQuery(parser);
+      assertEquals(single.parse(sentences.get(i)), batch.get(i).parseSucceeded());
+      assertEquals(single.getBestParse(), batch.get(i).getBestParse());
+      assertEquals(single.getBestScore(), batch.get(i).getBestScore(), 0.0);
+      if (single.parseSucceeded()) {
+        ++succeeded;
+      }
+    }
+    assertTrue(succeeded > 0);
+  }
+
+  private Annotation document(int sentenceCount) {
+    List<Tree> trees = trees();
+    List<CoreMap> sentences = Generics.newArrayList();
+    for (int i = 0; i < sentenceCount; ++i) {
+      List<CoreLabel> tokens = Generics.newArrayList();
+      for (TaggedWord word : trees.get(i % trees.size()).taggedYield()) {
+        CoreLabel token = new CoreLabel();
+        token.setWord(word.word());
+        token.setValue(word.word());
+        token.setTag(word.tag());
+        token.setIndex(tokens.size() + 1);
+        tokens.add(token);
+      }
+      CoreMap sentence = new ArrayCoreMap();
+      sentence.set(CoreAnnotations.TokensAnnotation.class, tokens);
+      sentences.add(sentence);
+    }
+    Annotation annotation = new Annotation("");
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return annotation;
+  }
+
+  private static Tree tree(Annotation annotation, int sentence) {
+    return annotation.get(CoreAnnotations.SentencesAnnotation.class).get(sentence).get(TreeCoreAnnotations.TreeAnnotation.class);
+  }
+
+  public void testAnnotatorInterruptedBatch() {
+    ParserAnnotator annotator = new ParserAnnotator(randomParser(), false, -1);
+    int sentenceCount = ShiftReduceParserQuery.PARSE_BATCH_SIZE + 6;
+    Annotation expected = document(sentenceCount);
+    annotator.annotate(expected);
+
+    Annotation interrupted = document(sentenceCount);
+    Thread.currentThread().interrupt();
+    annotator.annotate(interrupted);
+    assertFalse(Thread.interrupted());
+    for (int i = 0; i < sentenceCount; ++i) {
+      if (i < ShiftReduceParserQuery.PARSE_BATCH_SIZE) {
+        assertEquals("X", tree(interrupted, i).value());
+      } else {
+        assertEquals(tree(expected, i), tree(interrupted, i));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,101 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Makes sure that the admission controller takes on as many requests as
+ * can run or wait, turns away the rest, and suggests a sensible retry time,
+ * and that the server has threads for more exchanges than it admits.
+ */
+public class AdmissionControllerTest extends TestCase {
+
+  public void testBoundedAdmission() {
+    AdmissionController admission = new AdmissionController(2, 1);
+    assertTrue(admission.tryAdmit());
+    assertTrue(admission.tryAdmit());
+    assertTrue(admission.tryAdmit());
+    assertFalse(admission.tryAdmit());
+    assertEquals(3, admission.inFlight());
+    assertEquals(1, admission.rejected());
+
+    admission.release(10);
+    assertTrue(admission.tryAdmit());
+    assertFalse(admission.tryAdmit());
+    assertEquals(2, admission.rejected());
+  }
+
+  public void testUnbounded() {
+    AdmissionController admission = new AdmissionController(1, -1);
+    for (int i = 0; i < 1000; ++i) {
+      assertTrue(admission.tryAdmit());
+    }
+    assertEquals(0, admission.rejected());
+  }
+
+  public void testRetryAfter() {
+    AdmissionController admission = new AdmissionController(2, 2);
+    // nothing known yet: a second
+    assertEquals(1, admission.retryAfterSeconds());
+    for (int i = 0; i < 4; ++i) {
+      assertTrue(admission.tryAdmit());
+    }
+    admission.release(3000);
+    assertTrue(admission.tryAdmit());
+    // four requests of about three seconds each, on two threads
+    assertEquals(6, admission.retryAfterSeconds());
+  }
+
+  public void testReleaseWithoutAdmit() {
+    AdmissionController admission = new AdmissionController(1, 0);
+    try {
+      admission.release(1);
+      fail("Should not be able to release more than was admitted");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testExchangeExecutorOverflow() throws InterruptedException {
+    ExecutorService overflow = Executors.newSingleThreadExecutor();
+    ThreadPoolExecutor exchanges = StanfordCoreNLPServer.exchangeExecutor(2, 3, overflow);
+    int maxThreads = exchanges.getMaximumPoolSize();
+    assertTrue(maxThreads > 2 + 3);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(maxThreads);
+    try {
+      for (int i = 0; i < maxThreads; ++i) {
+        exchanges.execute(() -> {
+          started.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            // let the thread go
+          }
+        });
+      }
+      assertTrue(started.await(10, TimeUnit.SECONDS));
+      // no thread left: the exchange is answered on the overflow executor
+      CountDownLatch answered = new CountDownLatch(1);
+      exchanges.execute(answered::countDown);
+      assertTrue(answered.await(10, TimeUnit.SECONDS));
+      assertEquals(maxThreads, exchanges.getPoolSize());
+    } finally {
+      release.countDown();
+      exchanges.shutdown();
+      overflow.shutdown();
+    }
+  }
+
+  public void testUnboundedExchangeExecutor() {
+    ThreadPoolExecutor exchanges = StanfordCoreNLPServer.exchangeExecutor(2, -1, null);
+    assertEquals(Integer.MAX_VALUE, exchanges.getMaximumPoolSize());
+    exchanges.shutdown();
+  }
+
+}
@@ -0,0 +1,73 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+
+/**
+ * Round trips requests and responses through the streaming protocol.
+ */
+public class AnnotationStreamProtocolTest extends TestCase {
+
+  private final ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+
+  private static Annotation annotated(String text) {
+    Annotation doc = new Annotation(text);
+    new TokenizerAnnotator(false, "en").annotate(doc);
+    new WordsToSentencesAnnotator(false).annotate(doc);
+    return doc;
+  }
+
+  public void testRequest() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    for (String text : Arrays.asList("First document.", "Second one.", "")) {
+      AnnotationStreamProtocol.writeDocument(serializer, new Annotation(text), os);
+    }
+    ByteArrayInputStream is = new ByteArrayInputStream(os.toByteArray());
+    assertEquals("First document.", AnnotationStreamProtocol.readDocument(serializer, is).get(CoreAnnotations.TextAnnotation.class));
+    assertEquals("Second one.", AnnotationStreamProtocol.readDocument(serializer, is).get(CoreAnnotations.TextAnnotation.class));
+    assertEquals("", AnnotationStreamProtocol.readDocument(serializer, is).get(CoreAnnotations.TextAnnotation.class));
+    assertNull(AnnotationStreamProtocol.readDocument(serializer, is));
+  }
+
+  public void testResponse() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    AnnotationStreamProtocol.writeDocumentFrame(serializer, annotated("The cat sat. It purred."), os);
+    AnnotationStreamProtocol.writeErrorFrame("java.lang.RuntimeException: café timed out", os);
+    AnnotationStreamProtocol.writeDocumentFrame(serializer, annotated("Dogs bark."), os);
+
+    ByteArrayInputStream is = new ByteArrayInputStream(os.toByteArray());
+    AnnotationStreamProtocol.Frame first = AnnotationStreamProtocol.readFrame(serializer, is);
+    assertFalse(first.isError());
+    assertEquals(2, first.document.get(CoreAnnotations.SentencesAnnotation.class).size());
+    assertEquals(7, first.document.get(CoreAnnotations.TokensAnnotation.class).size());
+
+    AnnotationStreamProtocol.Frame error = AnnotationStreamProtocol.readFrame(serializer, is);
+    assertTrue(error.isError());
+    assertNull(error.document);
+    assertEquals("java.lang.RuntimeException: café timed out", error.error);
+
+    AnnotationStreamProtocol.Frame last = AnnotationStreamProtocol.readFrame(serializer, is);
+    assertEquals("Dogs bark.", last.document.get(CoreAnnotations.TextAnnotation.class));
+    assertNull(AnnotationStreamProtocol.readFrame(serializer, is));
+  }
+
+  public void testTruncatedFrame() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    AnnotationStreamProtocol.writeErrorFrame("a long enough error message", os);
+    byte[] bytes = Arrays.copyOf(os.toByteArray(), 5);
+    try {
+      AnnotationStreamProtocol.readFrame(serializer, new ByteArrayInputStream(bytes));
+      fail("Should not read a truncated frame");
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+
+}
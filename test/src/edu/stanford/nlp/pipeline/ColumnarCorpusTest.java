@@ -0,0 +1,119 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+/**
+ * Writes a small columnar corpus and reads it back, by column and by document.
+ */
+public class ColumnarCorpusTest extends TestCase {
+
+  private static Annotation document(String docId, String text) {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    Annotation doc = new Annotation(text);
+    doc.set(CoreAnnotations.DocIDAnnotation.class, docId);
+    pipeline.annotate(doc);
+    for (CoreLabel token : doc.get(CoreAnnotations.TokensAnnotation.class)) {
+      token.setTag(token.word().equals(".") ? "." : "NN");
+    }
+    return doc;
+  }
+
+  public void testRoundTrip() throws Exception {
+    File file = File.createTempFile("corpus", ".columns");
+    file.deleteOnExit();
+    Annotation first = document("first", "The cat sat. Dogs bark.");
+    CoreMap sentence = first.get(CoreAnnotations.SentencesAnnotation.class).get(0);
+    List<CoreLabel> tokens = sentence.get(CoreAnnotations.TokensAnnotation.class);
+    SemanticGraph graph = new SemanticGraph();
+    IndexedWord cat = new IndexedWord(tokens.get(1));
+    IndexedWord sat = new IndexedWord(tokens.get(2));
+    graph.addRoot(sat);
+    graph.addEdge(sat, cat, GrammaticalRelation.valueOf("nsubj"), 1.0, false);
+    sentence.set(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class, graph);
+
+    try (ColumnarCorpus.Writer writer = new ColumnarCorpus.Writer(file)) {
+      assertEquals(0, writer.add(first));
+      assertEquals(1, writer.add(document("second", "Hello there.")));
+    }
+
+    try (ColumnarCorpus.Reader reader = new ColumnarCorpus.Reader(file)) {
+      assertEquals(2, reader.size());
+      assertEquals(1, reader.indexOf("second"));
+      assertEquals(-1, reader.indexOf("third"));
+      assertEquals(2, reader.sentenceCount(0));
+      assertEquals(7, reader.tokenCount(0));
+
+      // single columns
+      assertEquals("The cat sat. Dogs bark.", reader.text(0));
+      assertEquals("Dogs", reader.strings(0, ColumnarCorpus.Column.WORD)[4]);
+      assertEquals("NN", reader.strings(0, ColumnarCorpus.Column.POS)[4]);
+      assertFalse(reader.has(0, ColumnarCorpus.Column.LEMMA));
+      assertNull(reader.strings(0, ColumnarCorpus.Column.LEMMA));
+      assertEquals(13, reader.ints(0, ColumnarCorpus.Column.BEGIN)[4]);
+      assertEquals(-1, reader.ints(0, ColumnarCorpus.Column.GOVERNOR)[0]);
+      assertEquals(3, reader.ints(0, ColumnarCorpus.Column.GOVERNOR)[1]);
+      assertEquals(0, reader.ints(0, ColumnarCorpus.Column.GOVERNOR)[2]);
+      assertFalse(reader.has(1, ColumnarCorpus.Column.GOVERNOR));
+
+      // whole documents
+      CoreDocument doc = reader.document(0);
+      assertEquals("first", doc.docID());
+      assertEquals(2, doc.sentences().size());
+      CoreSentence dogs = doc.sentences().get(1);
+      assertEquals("Dogs bark.", dogs.text());
+      assertEquals("bark", dogs.tokens().get(1).word());
+      assertEquals(2, dogs.tokens().get(1).index());
+      SemanticGraph read = doc.sentences().get(0).coreMap().get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
+      assertEquals("sat", read.getFirstRoot().word());
+      assertEquals("nsubj", read.getEdge(read.getFirstRoot(), read.getNodeByIndex(2)).getRelation().toString());
+
+      // only the words
+      CoreDocument words = reader.document(1, EnumSet.of(ColumnarCorpus.Column.WORD));
+      CoreLabel hello = words.sentences().get(0).tokens().get(0);
+      assertEquals("Hello", hello.word());
+      assertNull(hello.tag());
+      assertNull(words.sentences().get(0).coreMap().get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class));
+    }
+  }
+
+  public void testEmptyDocument() throws Exception {
+    File file = File.createTempFile("corpus", ".columns");
+    file.deleteOnExit();
+    try (ColumnarCorpus.Writer writer = new ColumnarCorpus.Writer(file)) {
+      writer.add(document("empty", ""));
+    }
+    try (ColumnarCorpus.Reader reader = new ColumnarCorpus.Reader(file)) {
+      assertEquals(0, reader.sentenceCount(0));
+      CoreDocument doc = reader.document(0);
+      assertEquals("empty", doc.docID());
+      assertEquals("", doc.text());
+      assertTrue(doc.annotation().get(CoreAnnotations.SentencesAnnotation.class).isEmpty());
+    }
+  }
+
+  public void testNotACorpus() throws Exception {
+    File file = File.createTempFile("corpus", ".columns");
+    file.deleteOnExit();
+    java.nio.file.Files.write(file.toPath(), "not a corpus at all, really".getBytes("UTF-8"));
+    try {
+      new ColumnarCorpus.Reader(file);
+      fail("Should not open a file which is not a corpus");
+    } catch (java.io.IOException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,65 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.parser.nndep.DependencyParser;
+
+/**
+ * Checks that dependency parse annotators which only differ in their
+ * own settings share the parser they load.
+ */
+public class DependencyParseAnnotatorTest extends TestCase {
+
+  private static String trainModel() throws Exception {
+    File train = File.createTempFile("depparse", ".conll");
+    train.deleteOnExit();
+    try (PrintWriter pw = new PrintWriter(train)) {
+      pw.println("1\tJohn\t_\tNNP\tNNP\t_\t2\tnsubj\t_\t_");
+      pw.println("2\tran\t_\tVBD\tVBD\t_\t0\troot\t_\t_");
+      pw.println("3\t.\t_\t.\t.\t_\t2\tpunct\t_\t_");
+      pw.println();
+      pw.println("1\tMary\t_\tNNP\tNNP\t_\t2\tnsubj\t_\t_");
+      pw.println("2\tsaw\t_\tVBD\tVBD\t_\t0\troot\t_\t_");
+      pw.println("3\tJohn\t_\tNNP\tNNP\t_\t2\tdobj\t_\t_");
+      pw.println();
+    }
+    File model = File.createTempFile("depparse", ".txt");
+    model.deleteOnExit();
+    Properties props = new Properties();
+    props.setProperty("maxIter", "1");
+    props.setProperty("hiddenSize", "4");
+    props.setProperty("embeddingSize", "4");
+    props.setProperty("numPreComputed", "10");
+    new DependencyParser(props).train(train.getPath(), model.getPath());
+    return model.getPath();
+  }
+
+  public void testSharedParser() throws Exception {
+    String model = trainModel();
+    Properties props = new Properties();
+    props.setProperty("model", model);
+    Properties annotatorProps = new Properties();
+    annotatorProps.setProperty("model", model);
+    annotatorProps.setProperty("testThreads", "4");
+    annotatorProps.setProperty("sentenceTimeout", "1000");
+    annotatorProps.setProperty("extradependencies", "MAXIMAL");
+    Properties parserProps = new Properties();
+    parserProps.setProperty("model", model);
+    parserProps.setProperty("numPreComputed", "5");
+
+    int models = ModelRegistry.SINGLETON.size();
+    DependencyParseAnnotator first = new DependencyParseAnnotator(props);
+    assertEquals(models + 1, ModelRegistry.SINGLETON.size());
+    DependencyParseAnnotator second = new DependencyParseAnnotator(annotatorProps);
+    assertEquals(models + 1, ModelRegistry.SINGLETON.size());
+    DependencyParseAnnotator third = new DependencyParseAnnotator(parserProps);
+    assertEquals(models + 2, ModelRegistry.SINGLETON.size());
+    assertEquals(first.requirementsSatisfied(), second.requirementsSatisfied());
+    assertEquals(first.requirementsSatisfied(), third.requirementsSatisfied());
+  }
+
+}
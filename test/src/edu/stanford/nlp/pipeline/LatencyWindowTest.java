@@ -0,0 +1,58 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the percentiles of the latency window, and that the client's
+ * power of two choices stays away from an expensive backend.
+ */
+public class LatencyWindowTest extends TestCase {
+
+  public void testPercentiles() {
+    LatencyWindow window = new LatencyWindow(100);
+    assertEquals(-1, window.percentile(50));
+    for (int i = 1; i <= 100; ++i) {
+      window.record(i);
+    }
+    assertEquals(100, window.count());
+    assertEquals(50, window.percentile(50));
+    assertEquals(95, window.percentile(95));
+    assertEquals(99, window.percentile(99));
+    assertEquals(100, window.percentile(100));
+    assertEquals(1, window.percentile(0));
+  }
+
+  public void testOldLatenciesFallOut() {
+    LatencyWindow window = new LatencyWindow(10);
+    for (int i = 0; i < 10; ++i) {
+      window.record(1000);
+    }
+    for (int i = 0; i < 10; ++i) {
+      window.record(5);
+    }
+    assertEquals(20, window.count());
+    assertEquals(5, window.percentile(99));
+  }
+
+  public void testChooseOfTwo() {
+    List<String> backends = Arrays.asList("fast1", "fast2", "slow");
+    Map<String, Double> cost = new HashMap<>();
+    cost.put("fast1", 10.0);
+    cost.put("fast2", 12.0);
+    cost.put("slow", 1000.0);
+    Random random = new Random(42);
+    Map<String, Integer> counts = new HashMap<>();
+    for (int i = 0; i < 3000; ++i) {
+      counts.merge(StanfordCoreNLPClient.chooseOfTwo(backends, cost::get, random), 1, Integer::sum);
+    }
+    // two different backends are drawn each time, so the slow one always loses
+    assertNull(counts.get("slow"));
+    // both fast backends share the work
+    assertTrue(counts.get("fast1") > counts.get("fast2"));
+    assertTrue(counts.get("fast2") > 500);
+    assertEquals("slow", StanfordCoreNLPClient.chooseOfTwo(Collections.singletonList("slow"), cost::get, random));
+  }
+
+}
@@ -0,0 +1,91 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.IndexedWord;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.trees.GrammaticalRelation;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+/**
+ * Checks that a document read lazily has the same annotations as one read eagerly,
+ * and that its trees and graphs are only read when they are asked for.
+ */
+public class LazyProtobufSentenceTest extends TestCase {
+
+  private static Annotation annotatedDocument() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    Annotation doc = new Annotation("The cat sat. Dogs bark.");
+    pipeline.annotate(doc);
+    doc.set(CoreAnnotations.DocIDAnnotation.class, "lazy");
+    CoreMap first = doc.get(CoreAnnotations.SentencesAnnotation.class).get(0);
+    first.set(TreeCoreAnnotations.TreeAnnotation.class, Tree.valueOf("(ROOT (S (NP (DT The) (NN cat)) (VP (VBD sat)) (. .)))"));
+    List<CoreLabel> tokens = first.get(CoreAnnotations.TokensAnnotation.class);
+    for (CoreLabel token : tokens) {
+      token.setDocID("lazy");
+    }
+    SemanticGraph graph = new SemanticGraph();
+    IndexedWord the = new IndexedWord(tokens.get(0));
+    IndexedWord cat = new IndexedWord(tokens.get(1));
+    IndexedWord sat = new IndexedWord(tokens.get(2));
+    graph.addRoot(sat);
+    graph.addEdge(sat, cat, GrammaticalRelation.valueOf("nsubj"), 1.0, false);
+    graph.addEdge(cat, the, GrammaticalRelation.valueOf("det"), 1.0, false);
+    first.set(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class, graph);
+    return doc;
+  }
+
+  public void testLazyMatchesEager() throws Exception {
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    serializer.write(annotatedDocument(), bytes);
+
+    Annotation eager = serializer.read(new ByteArrayInputStream(bytes.toByteArray())).first;
+    Annotation lazy = serializer.readLazy(new ByteArrayInputStream(bytes.toByteArray())).first;
+
+    List<CoreMap> sentences = lazy.get(CoreAnnotations.SentencesAnnotation.class);
+    assertTrue(sentences.get(0) instanceof LazyProtobufSentence);
+    assertFalse(sentences.get(1) instanceof LazyProtobufSentence);
+    LazyProtobufSentence first = (LazyProtobufSentence) sentences.get(0);
+    CoreMap eagerFirst = eager.get(CoreAnnotations.SentencesAnnotation.class).get(0);
+
+    // the tokens are there without reading the tree or the graph
+    assertEquals(2, first.deferredKeys());
+    assertEquals(eagerFirst.get(CoreAnnotations.TokensAnnotation.class), first.get(CoreAnnotations.TokensAnnotation.class));
+    assertTrue(first.containsKey(TreeCoreAnnotations.TreeAnnotation.class));
+    assertEquals(eagerFirst.size(), first.size());
+    assertEquals(2, first.deferredKeys());
+
+    assertEquals(eagerFirst.get(TreeCoreAnnotations.TreeAnnotation.class), first.get(TreeCoreAnnotations.TreeAnnotation.class));
+    assertEquals(1, first.deferredKeys());
+    SemanticGraph graph = first.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
+    assertEquals(eagerFirst.get(SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class).toString(), graph.toString());
+    assertEquals(0, first.deferredKeys());
+    // the graph points at the same tokens as the sentence
+    assertSame(first.get(CoreAnnotations.TokensAnnotation.class).get(2), graph.getFirstRoot().backingLabel());
+  }
+
+  public void testEqualsAndReserialize() throws Exception {
+    ProtobufAnnotationSerializer serializer = new ProtobufAnnotationSerializer(false);
+    CoreNLPProtos.Document proto = serializer.toProto(annotatedDocument());
+    Annotation eager = serializer.fromProto(proto);
+    Annotation lazy = serializer.fromProtoLazy(proto);
+    CoreMap eagerFirst = eager.get(CoreAnnotations.SentencesAnnotation.class).get(0);
+    CoreMap lazyFirst = lazy.get(CoreAnnotations.SentencesAnnotation.class).get(0);
+    assertEquals(eagerFirst.keySet(), lazyFirst.keySet());
+    assertEquals(0, ((LazyProtobufSentence) lazyFirst).deferredKeys());
+    // writing the lazy document back out gives the same protocol buffer
+    assertEquals(proto, serializer.toProto(lazy));
+  }
+
+}
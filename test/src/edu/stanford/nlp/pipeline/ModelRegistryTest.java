@@ -0,0 +1,121 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Makes sure that the registry shares models between owners, loads each
+ * one once, and only evicts models which no one uses.
+ */
+public class ModelRegistryTest extends TestCase {
+
+  public void testShareByKey() {
+    ModelRegistry registry = new ModelRegistry(10, Long.MAX_VALUE);
+    AtomicInteger loads = new AtomicInteger();
+    Object first = new Object();
+    Object second = new Object();
+
+    Object a = registry.acquire(first, "pos", "model.tagger", "", () -> "tagger" + loads.incrementAndGet());
+    Object b = registry.acquire(second, "pos", "model.tagger", "", () -> "tagger" + loads.incrementAndGet());
+    assertSame(a, b);
+    assertEquals(1, loads.get());
+
+    Object c = registry.acquire(second, "pos", "model.tagger", "-flag", () -> "tagger" + loads.incrementAndGet());
+    Object d = registry.acquire(second, "parse", "model.tagger", "", () -> "parser" + loads.incrementAndGet());
+    assertNotSame(a, c);
+    assertNotSame(a, d);
+    assertEquals(3, loads.get());
+    assertEquals(3, registry.size());
+    assertEquals(0, registry.unusedSize());
+  }
+
+  public void testReleaseAndEvict() {
+    ModelRegistry registry = new ModelRegistry(1, Long.MAX_VALUE);
+    Object first = new Object();
+    Object second = new Object();
+    registry.acquire(first, "pos", "one", "", () -> "one");
+    registry.acquire(second, "pos", "one", "", () -> "one");
+    registry.acquire(second, "pos", "two", "", () -> "two");
+
+    // "one" is still used by the first owner
+    registry.release(second);
+    assertEquals(2, registry.size());
+    assertEquals(1, registry.unusedSize());
+
+    // now both are unused, and only one may be kept: the most recently released
+    registry.release(first);
+    assertEquals(1, registry.size());
+    assertEquals(1, registry.unusedSize());
+
+    // a kept model is reused rather than loaded again
+    AtomicInteger loads = new AtomicInteger();
+    Object third = new Object();
+    registry.acquire(third, "pos", "one", "", () -> "one" + loads.incrementAndGet());
+    assertEquals(0, loads.get());
+    assertEquals(0, registry.unusedSize());
+    registry.acquire(third, "pos", "two", "", () -> "two" + loads.incrementAndGet());
+    assertEquals(1, loads.get());
+
+    registry.release(third);
+    assertEquals(1, registry.unusedSize());
+    assertEquals(1, registry.clearUnused());
+    assertEquals(0, registry.size());
+  }
+
+  public void testFailedLoad() {
+    ModelRegistry registry = new ModelRegistry(10, Long.MAX_VALUE);
+    Object owner = new Object();
+    try {
+      registry.acquire(owner, "pos", "missing", "", () -> { throw new IllegalArgumentException("no such model"); });
+      fail("Should have thrown");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals(0, registry.size());
+    assertEquals("loaded", registry.acquire(owner, "pos", "missing", "", () -> "loaded"));
+  }
+
+  public void testSingleLoad() throws InterruptedException {
+    ModelRegistry registry = new ModelRegistry(10, Long.MAX_VALUE);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Object> results = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        Object model = registry.acquire(Thread.currentThread(), "ner", "crf", "", () -> {
+          try {
+            Thread.sleep(50);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+          return new Object[] { loads.incrementAndGet() };
+        });
+        synchronized (results) {
+          results.add(model);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(8, results.size());
+    for (Object result : results) {
+      assertSame(results.get(0), result);
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.util.PropertiesUtils;
+
+/**
+ * Makes sure that the server's pipeline cache keeps several pipelines,
+ * evicts the least recently used one, and builds each pipeline once
+ * however many requests want it at the same time.
+ */
+public class PipelineCacheTest extends TestCase {
+
+  public void testSignature() {
+    Properties first = PropertiesUtils.asProperties("annotators", "tokenize,ssplit", "outputFormat", "json", "date", "2017-01-01");
+    Properties second = PropertiesUtils.asProperties("outputFormat", "json", "annotators", "tokenize,ssplit", "date", "2018-02-02");
+    Properties third = PropertiesUtils.asProperties("outputFormat", "json", "annotators", "tokenize,ssplit,pos");
+    assertEquals(PipelineCache.signature(first), PipelineCache.signature(second));
+    assertFalse(PipelineCache.signature(first).equals(PipelineCache.signature(third)));
+  }
+
+  public void testAlternatingPipelines() {
+    AtomicInteger builds = new AtomicInteger();
+    PipelineCache<String> cache = new PipelineCache<>(props -> props.getProperty("annotators") + builds.incrementAndGet(), 2, -1);
+    Properties tokenize = PropertiesUtils.asProperties("annotators", "tokenize");
+    Properties pos = PropertiesUtils.asProperties("annotators", "pos");
+    Properties ner = PropertiesUtils.asProperties("annotators", "ner");
+
+    for (int i = 0; i < 5; ++i) {
+      assertEquals("tokenize1", cache.get(tokenize));
+      assertEquals("pos2", cache.get(pos));
+    }
+    assertEquals(2, builds.get());
+    assertEquals(2, cache.size());
+
+    // tokenize is the least recently used, so it goes
+    assertEquals("ner3", cache.get(ner));
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.evictions());
+    assertEquals("pos2", cache.get(pos));
+    assertEquals("tokenize4", cache.get(tokenize));
+
+    List<PipelineCache.Stats> stats = cache.stats();
+    assertEquals(2, stats.size());
+    assertEquals(PipelineCache.signature(pos), stats.get(0).key);
+    assertEquals(5, stats.get(0).hits);
+    assertEquals(1, stats.get(0).misses);
+    assertEquals(0, stats.get(1).hits);
+    assertEquals(1, stats.get(1).misses);
+  }
+
+  public void testIdleEviction() throws InterruptedException {
+    AtomicInteger builds = new AtomicInteger();
+    PipelineCache<Integer> cache = new PipelineCache<>(props -> builds.incrementAndGet(), 4, 20);
+    Properties props = PropertiesUtils.asProperties("annotators", "tokenize");
+    assertEquals(1, (int) cache.get(props));
+    assertEquals(1, (int) cache.get(props));
+    Thread.sleep(50);
+    assertEquals(2, (int) cache.get(props));
+    assertEquals(1, cache.evictions());
+  }
+
+  public void testSingleBuild() throws InterruptedException {
+    AtomicInteger builds = new AtomicInteger();
+    PipelineCache<Object> cache = new PipelineCache<>(props -> {
+      builds.incrementAndGet();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      return new Object();
+    }, 2, -1);
+    Properties props = PropertiesUtils.asProperties("annotators", "tokenize");
+    CountDownLatch start = new CountDownLatch(1);
+    List<Object> results = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        Object pipeline = cache.get(props);
+        synchronized (results) {
+          results.add(pipeline);
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1, builds.get());
+    assertEquals(8, results.size());
+    for (Object result : results) {
+      assertSame(results.get(0), result);
+    }
+    assertEquals(7, cache.stats().get(0).hits);
+  }
+
+}
@@ -0,0 +1,150 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+/**
+ * Checks that requests which arrive together are annotated as one batch,
+ * and that each request gets back exactly its own sentences.
+ */
+public class RequestBatcherTest extends TestCase {
+
+  /** Tags every token with the number of the call it was tagged in, and counts the sentences it saw. */
+  private static class CountingAnnotator implements Annotator {
+    int calls;
+    final List<Integer> sentencesPerCall = new ArrayList<>();
+
+    @Override
+    public synchronized void annotate(Annotation annotation) {
+      calls += 1;
+      List<CoreMap> sentences = annotation.get(CoreAnnotations.SentencesAnnotation.class);
+      sentencesPerCall.add(sentences.size());
+      for (CoreMap sentence : sentences) {
+        for (CoreLabel token : sentence.get(CoreAnnotations.TokensAnnotation.class)) {
+          token.setTag("call" + calls);
+        }
+      }
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.singleton(CoreAnnotations.PartOfSpeechAnnotation.class);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static AnnotationPipeline pipeline(CountingAnnotator counter) {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new TokenizerAnnotator(false, "en"));
+    pipeline.addAnnotator(new WordsToSentencesAnnotator(false));
+    pipeline.addAnnotator(counter);
+    return pipeline;
+  }
+
+  public void testAnnotateSentencesTogether() {
+    CountingAnnotator counter = new CountingAnnotator();
+    AnnotationPipeline pipeline = pipeline(counter);
+    Annotation first = new Annotation("The cat sat. It purred");
+    Annotation second = new Annotation("Dogs bark.");
+    pipeline.annotateSentencesTogether(Arrays.asList(first, second));
+
+    assertEquals(1, counter.calls);
+    assertEquals(Collections.singletonList(3), counter.sentencesPerCall);
+    // each document keeps its own sentences, offsets and indices
+    List<CoreMap> sentences = first.get(CoreAnnotations.SentencesAnnotation.class);
+    assertEquals(2, sentences.size());
+    assertEquals("It purred", sentences.get(1).get(CoreAnnotations.TextAnnotation.class));
+    assertEquals(13, (int) sentences.get(1).get(CoreAnnotations.CharacterOffsetBeginAnnotation.class));
+    assertEquals(1, (int) sentences.get(1).get(CoreAnnotations.SentenceIndexAnnotation.class));
+    assertEquals(1, second.get(CoreAnnotations.SentencesAnnotation.class).size());
+    assertEquals(0, (int) second.get(CoreAnnotations.SentencesAnnotation.class).get(0).get(CoreAnnotations.SentenceIndexAnnotation.class));
+    for (Annotation doc : Arrays.asList(first, second)) {
+      for (CoreLabel token : doc.get(CoreAnnotations.TokensAnnotation.class)) {
+        assertEquals("call1", token.tag());
+      }
+    }
+  }
+
+  public void testEstimateSentences() {
+    assertEquals(1, RequestBatcher.estimateSentences(""));
+    assertEquals(1, RequestBatcher.estimateSentences("No punctuation"));
+    assertEquals(1, RequestBatcher.estimateSentences("Pi is 3.14 or so."));
+    assertEquals(3, RequestBatcher.estimateSentences("One. Two! Three?"));
+  }
+
+  public void testBatchWithinWindow() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CountingAnnotator counter = new CountingAnnotator();
+      AnnotationPipeline pipeline = pipeline(counter);
+      RequestBatcher batcher = new RequestBatcher(executor, 200, 100);
+      List<Future<Annotation>> futures = new ArrayList<>();
+      for (int i = 0; i < 5; ++i) {
+        futures.add(batcher.submit("key", pipeline, new Annotation("Sentence number " + i + '.'), 10000));
+      }
+      for (int i = 0; i < 5; ++i) {
+        Annotation doc = futures.get(i).get(5, TimeUnit.SECONDS);
+        List<CoreLabel> tokens = doc.get(CoreAnnotations.TokensAnnotation.class);
+        assertEquals(Integer.toString(i), tokens.get(2).word());
+        assertEquals("call1", tokens.get(2).tag());
+      }
+      assertEquals(1, counter.calls);
+      assertEquals(Collections.singletonMap(5, 1L), batcher.batchSizes());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testFullBatchAndShortTimeout() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CountingAnnotator counter = new CountingAnnotator();
+      AnnotationPipeline pipeline = pipeline(counter);
+      // a long window, so that only a full batch runs before the test times out
+      RequestBatcher batcher = new RequestBatcher(executor, 60000, 4);
+      Future<Annotation> first = batcher.submit("key", pipeline, new Annotation("One. Two."), 1000000);
+      Future<Annotation> second = batcher.submit("key", pipeline, new Annotation("Three. Four."), 1000000);
+      // too short a timeout to wait for the window, so it goes on its own
+      Future<Annotation> alone = batcher.submit("key", pipeline, new Annotation("Five."), 100);
+      first.get(5, TimeUnit.SECONDS);
+      second.get(5, TimeUnit.SECONDS);
+      alone.get(5, TimeUnit.SECONDS);
+      assertEquals(2, counter.calls);
+      SortedMap<Integer, Long> expected = new TreeMap<>();
+      expected.put(1, 1L);
+      expected.put(2, 1L);
+      assertEquals(expected, batcher.batchSizes());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testCancelledRequestIsDropped() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      CountingAnnotator counter = new CountingAnnotator();
+      AnnotationPipeline pipeline = pipeline(counter);
+      RequestBatcher batcher = new RequestBatcher(executor, 100, 100);
+      Future<Annotation> kept = batcher.submit("key", pipeline, new Annotation("Kept."), 10000);
+      Future<Annotation> cancelled = batcher.submit("key", pipeline, new Annotation("Cancelled."), 10000);
+      cancelled.cancel(true);
+      Annotation doc = kept.get(5, TimeUnit.SECONDS);
+      assertEquals("call1", doc.get(CoreAnnotations.TokensAnnotation.class).get(0).tag());
+      assertEquals(Collections.singletonList(1), counter.sentencesPerCall);
+      assertEquals(1, batcher.dropped());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+}
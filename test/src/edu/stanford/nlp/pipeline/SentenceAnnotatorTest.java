@@ -0,0 +1,138 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.util.ArrayCoreMap;
+import edu.stanford.nlp.util.CoreMap;
+import junit.framework.TestCase;
+
+/**
+ * Tests the threaded path of SentenceAnnotator, including the time limit.
+ */
+public class SentenceAnnotatorTest extends TestCase {
+
+  /**
+   * Marks each sentence; sentences with the text "slow" sleep until interrupted,
+   * and sentences with the text "bad" throw.
+   */
+  private static class MarkingAnnotator extends SentenceAnnotator {
+    private final int nThreads;
+    private final long maxTime;
+    /** Counted down when a slow sentence is interrupted */
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    /** The threads which ran sentences */
+    final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    MarkingAnnotator(int nThreads, long maxTime) {
+      this.nThreads = nThreads;
+      this.maxTime = maxTime;
+    }
+
+    @Override
+    protected int nThreads() {
+      return nThreads;
+    }
+
+    @Override
+    protected long maxTime() {
+      return maxTime;
+    }
+
+    @Override
+    protected void doOneSentence(Annotation annotation, CoreMap sentence) {
+      threads.add(Thread.currentThread());
+      if ("slow".equals(sentence.get(CoreAnnotations.TextAnnotation.class))) {
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+          return;
+        }
+      }
+      if ("bad".equals(sentence.get(CoreAnnotations.TextAnnotation.class))) {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // fail anyway
+        }
+        throw new IllegalStateException("bad sentence");
+      }
+      sentence.set(CoreAnnotations.NamedEntityTagAnnotation.class, "done");
+    }
+
+    @Override
+    protected void doOneFailedSentence(Annotation annotation, CoreMap sentence) {
+      sentence.set(CoreAnnotations.NamedEntityTagAnnotation.class, "failed");
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static Annotation document(String ... texts) {
+    Annotation annotation = new Annotation(String.join(" ", texts));
+    List<CoreMap> sentences = new ArrayList<>();
+    for (String text : texts) {
+      CoreMap sentence = new ArrayCoreMap();
+      sentence.set(CoreAnnotations.TextAnnotation.class, text);
+      sentences.add(sentence);
+    }
+    annotation.set(CoreAnnotations.SentencesAnnotation.class, sentences);
+    return annotation;
+  }
+
+  private static List<String> marks(Annotation annotation) {
+    List<String> marks = new ArrayList<>();
+    for (CoreMap sentence : annotation.get(CoreAnnotations.SentencesAnnotation.class)) {
+      marks.add(sentence.get(CoreAnnotations.NamedEntityTagAnnotation.class));
+    }
+    return marks;
+  }
+
+  public void testThreaded() {
+    Annotation annotation = document("a", "b", "c", "d", "e");
+    new MarkingAnnotator(3, 0).annotate(annotation);
+    assertEquals(Arrays.asList("done", "done", "done", "done", "done"), marks(annotation));
+  }
+
+  public void testTimeout() {
+    Annotation annotation = document("a", "slow", "c");
+    new MarkingAnnotator(2, 200).annotate(annotation);
+    assertEquals(Arrays.asList("done", "failed", "done"), marks(annotation));
+  }
+
+  public void testSingleThreadTimeout() {
+    Annotation annotation = document("a", "slow", "c");
+    MarkingAnnotator annotator = new MarkingAnnotator(1, 200);
+    annotator.annotate(annotation);
+    assertEquals(Arrays.asList("done", "failed", "done"), marks(annotation));
+    // the sentences ran on the calling thread, and the timeout's interrupt didn't leak out
+    assertEquals(Collections.singleton(Thread.currentThread()), annotator.threads);
+    assertFalse(Thread.interrupted());
+  }
+
+  public void testFailureCancelsOtherSentences() throws InterruptedException {
+    Annotation annotation = document("bad", "slow");
+    MarkingAnnotator annotator = new MarkingAnnotator(2, 0);
+    try {
+      annotator.annotate(annotation);
+      fail("Expected the bad sentence to fail the document");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertTrue("the slow sentence should be interrupted", annotator.interrupted.await(10, TimeUnit.SECONDS));
+  }
+
+}
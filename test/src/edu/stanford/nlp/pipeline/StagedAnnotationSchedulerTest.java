@@ -0,0 +1,95 @@
+package edu.stanford.nlp.pipeline;
+
+import java.util.*;
+
+import edu.stanford.nlp.ling.CoreAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import junit.framework.TestCase;
+
+/**
+ * Checks that the staged scheduler runs every stage on every document
+ * and hands the documents back in input order.
+ */
+public class StagedAnnotationSchedulerTest extends TestCase {
+
+  /** Appends its name to the document text, sleeping longer on some documents than others. */
+  private static class AppendAnnotator implements Annotator {
+    private final String name;
+
+    AppendAnnotator(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void annotate(Annotation annotation) {
+      String text = annotation.get(CoreAnnotations.TextAnnotation.class);
+      try {
+        Thread.sleep(text.length() % 3);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      annotation.set(CoreAnnotations.TextAnnotation.class, text + name);
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requirementsSatisfied() {
+      return Collections.emptySet();
+    }
+
+    @Override
+    public Set<Class<? extends CoreAnnotation>> requires() {
+      return Collections.emptySet();
+    }
+  }
+
+  private static List<Annotation> documents(int n) {
+    List<Annotation> docs = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      docs.add(new Annotation(Integer.toString(i)));
+    }
+    return docs;
+  }
+
+  public void testOrderAndStages() {
+    List<Annotator> annotators = Arrays.asList(new AppendAnnotator("a"), new AppendAnnotator("b"), new AppendAnnotator("c"));
+    StagedAnnotationScheduler scheduler = new StagedAnnotationScheduler(annotators, 4, new int[]{1, 3, 2}, 2, null);
+    List<String> results = new ArrayList<>();
+    scheduler.annotate(documents(100), ann -> results.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+    assertEquals(100, results.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i + "abc", results.get(i));
+    }
+  }
+
+  public void testPipelineUsesStages() {
+    AnnotationPipeline pipeline = new AnnotationPipeline();
+    pipeline.addAnnotator(new AppendAnnotator("x"));
+    pipeline.addAnnotator(new AppendAnnotator("y"));
+    List<String> results = new ArrayList<>();
+    pipeline.annotate(documents(20), 3, ann -> results.add(ann.get(CoreAnnotations.TextAnnotation.class)));
+    assertEquals(20, results.size());
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i + "xy", results.get(i));
+    }
+  }
+
+  public void testFailurePropagates() {
+    Annotator failing = new AppendAnnotator("z") {
+      @Override
+      public void annotate(Annotation annotation) {
+        if ("7".equals(annotation.get(CoreAnnotations.TextAnnotation.class))) {
+          throw new IllegalStateException("bad document");
+        }
+        super.annotate(annotation);
+      }
+    };
+    StagedAnnotationScheduler scheduler = new StagedAnnotationScheduler(Arrays.asList(failing, new AppendAnnotator("a")), 2);
+    try {
+      scheduler.annotate(documents(50), ann -> {});
+      fail("Expected the annotator's exception to be rethrown");
+    } catch (IllegalStateException e) {
+      assertEquals("bad document", e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+package edu.stanford.nlp.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.util.PropertiesUtils;
+import edu.stanford.nlp.util.RuntimeInterruptedException;
+
+/**
+ * Runs the client against a server in the same JVM, using only the tokenizer
+ * and the sentence splitter so that no models are needed.
+ */
+public class StanfordCoreNLPClientTest extends TestCase {
+
+  private StanfordCoreNLPServer server;
+  private int port;
+  /** How many documents the server has annotated */
+  private final AtomicInteger served = new AtomicInteger();
+
+  @Override
+  protected void setUp() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    server = new StanfordCoreNLPServer(port, 60000, false);
+    server.run(Optional.empty(), props -> true, request -> served.incrementAndGet(),
+        new StanfordCoreNLPServer.FileHandler("edu/stanford/nlp/pipeline/demo/corenlp-brat.html"), false, new AtomicBoolean());
+  }
+
+  @Override
+  protected void tearDown() {
+    server.server.stop(0);
+    for (HttpServer endpoint : endpoints) {
+      endpoint.stop(0);
+    }
+  }
+
+  /** Endpoints started by {@link #endpoint()} */
+  private final List<HttpServer> endpoints = new ArrayList<>();
+
+  /** If set, the next request for a document with SLOW in it takes this long */
+  private final AtomicInteger slowNext = new AtomicInteger();
+
+  private static byte[] readFully(InputStream is) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int n; (n = is.read(buffer)) > 0; ) {
+      bytes.write(buffer, 0, n);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Start another endpoint with the annotation handler of the server,
+   * which can be made slow for one request.
+   *
+   * @return The endpoint's URL
+   */
+  private String endpoint() throws IOException {
+    HttpHandler handler = server.new CoreNLPHandler(properties(), props -> true, request -> {}, null);
+    HttpServer endpoint = HttpServer.create(new InetSocketAddress(0), 0);
+    endpoint.createContext("/", exchange -> {
+      byte[] body = readFully(exchange.getRequestBody());
+      exchange.setStreams(new ByteArrayInputStream(body), null);
+      int delay = slowNext.get();
+      if (new String(body, StandardCharsets.ISO_8859_1).contains("SLOW") && delay > 0 && slowNext.compareAndSet(delay, 0)) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          throw new RuntimeInterruptedException(e);
+        }
+      }
+      handler.handle(exchange);
+    });
+    endpoint.setExecutor(Executors.newCachedThreadPool());
+    endpoint.start();
+    endpoints.add(endpoint);
+    return "http://localhost:" + endpoint.getAddress().getPort();
+  }
+
+  private static Properties properties() {
+    return PropertiesUtils.asProperties("annotators", "tokenize,ssplit");
+  }
+
+  private static List<String> words(Annotation annotation) {
+    List<String> words = new ArrayList<>();
+    for (CoreLabel token : annotation.get(CoreAnnotations.TokensAnnotation.class)) {
+      words.add(token.word());
+    }
+    return words;
+  }
+
+  /** Annotate one document, and wait for it to come back */
+  private static long annotate(StanfordCoreNLPClient client, Annotation annotation) throws InterruptedException {
+    long start = System.currentTimeMillis();
+    CountDownLatch done = new CountDownLatch(1);
+    client.annotate(annotation, ann -> done.countDown());
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+    assertNull(annotation.get(CoreAnnotations.ExceptionAnnotation.class));
+    return System.currentTimeMillis() - start;
+  }
+
+  /** The number of hedged requests, and of hedged requests won by the hedge */
+  private static long[] hedges(StanfordCoreNLPClient client) {
+    Matcher m = Pattern.compile("(\\d+) hedged requests, (\\d+) won").matcher(client.latencyStatistics());
+    assertTrue(client.latencyStatistics(), m.find());
+    return new long[] { Long.parseLong(m.group(1)), Long.parseLong(m.group(2)) };
+  }
+
+  private static void warmUp(StanfordCoreNLPClient client) throws InterruptedException {
+    for (int i = 0; i < 25; ++i) {
+      annotate(client, new Annotation("Warm up number " + i + '.'));
+    }
+    // let any hedge of the warm up finish
+    Thread.sleep(200);
+  }
+
+  public void testSlowRequestIsHedged() throws IOException, InterruptedException {
+    StanfordCoreNLPClient client = StanfordCoreNLPClient.withBackends(properties(), endpoint() + ',' + endpoint());
+    client.setHedgeRequests(true);
+    warmUp(client);
+    long[] before = hedges(client);
+
+    slowNext.set(5000);
+    Annotation annotation = new Annotation("This one is SLOW on its first try.");
+    long elapsed = annotate(client, annotation);
+    assertTrue("took " + elapsed + "ms", elapsed < 4000);
+    assertEquals(Arrays.asList("This", "one", "is", "SLOW", "on", "its", "first", "try", "."), words(annotation));
+    long[] after = hedges(client);
+    assertEquals(before[1] + 1, after[1]);
+    client.shutdown();
+  }
+
+  public void testNoHedgeOnTheSameEndpoint() throws IOException, InterruptedException {
+    String endpoint = endpoint();
+    StanfordCoreNLPClient client = StanfordCoreNLPClient.withBackends(properties(), endpoint + ',' + endpoint);
+    client.setHedgeRequests(true);
+    warmUp(client);
+
+    slowNext.set(1000);
+    Annotation annotation = new Annotation("This one is SLOW too.");
+    long elapsed = annotate(client, annotation);
+    assertTrue("took " + elapsed + "ms", elapsed >= 1000);
+    assertEquals(0, hedges(client)[0]);
+    client.shutdown();
+  }
+
+  public void testChooseOfTwo() {
+    List<String> candidates = Arrays.asList("a", "b", "c");
+    Random random = new Random(42);
+    int[] chosen = new int[candidates.size()];
+    for (int i = 0; i < 300; ++i) {
+      // the cost is the position in the list, so c is never the cheaper of two
+      chosen[candidates.indexOf(StanfordCoreNLPClient.chooseOfTwo(candidates, candidates::indexOf, random))] += 1;
+      assertEquals("a", StanfordCoreNLPClient.chooseOfTwo(Arrays.asList("b", "a"), candidates::indexOf, random));
+    }
+    assertEquals(0, chosen[2]);
+    assertTrue(chosen[0] > chosen[1]);
+    assertTrue(chosen[1] > 0);
+    assertEquals("c", StanfordCoreNLPClient.chooseOfTwo(Collections.singletonList("c"), candidates::indexOf, random));
+  }
+
+  public void testStreamingRoundTrip() throws InterruptedException {
+    String[] texts = {
+      "The first document.  It has two sentences.",
+      "The second one has a single sentence.",
+      "Short.",
+      "A fourth document, and the last.",
+      "Okay, one more for an odd count.",
+    };
+    List<Annotation> documents = new ArrayList<>();
+    for (String text : texts) {
+      documents.add(new Annotation(text));
+    }
+    List<Annotation> finished = Collections.synchronizedList(new ArrayList<>());
+    StanfordCoreNLPClient client = new StanfordCoreNLPClient(properties(), "http://localhost", port);
+    client.annotateStreaming(documents, 2, finished::add);
+    client.shutdown();
+
+    assertEquals(documents.size(), finished.size());
+    assertEquals(documents.size(), served.get());
+    StanfordCoreNLP local = new StanfordCoreNLP(properties());
+    for (int i = 0; i < texts.length; ++i) {
+      Annotation annotation = documents.get(i);
+      assertNull(annotation.get(CoreAnnotations.ExceptionAnnotation.class));
+      Annotation expected = new Annotation(texts[i]);
+      local.annotate(expected);
+      assertEquals(words(expected), words(annotation));
+      assertEquals(expected.get(CoreAnnotations.SentencesAnnotation.class).size(),
+          annotation.get(CoreAnnotations.SentencesAnnotation.class).size());
+    }
+    // documents of one request come back in order
+    assertTrue(finished.indexOf(documents.get(0)) < finished.indexOf(documents.get(1)));
+    assertTrue(finished.indexOf(documents.get(2)) < finished.indexOf(documents.get(3)));
+  }
+
+}
@@ -0,0 +1,65 @@
+package edu.stanford.nlp.pipeline;
+
+import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.SentenceUtils;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Tests for TokensRegexNERAnnotator which need no models.
+ */
+public class TokensRegexNERAnnotatorTest extends TestCase {
+
+  private static TokensRegexNERAnnotator annotator(boolean ignoreCase, String... mappings) throws Exception {
+    File tempFile = File.createTempFile("tokensregexnertest.patterns", "txt");
+    tempFile.deleteOnExit();
+    PrintWriter pw = IOUtils.getPrintWriter(tempFile.getAbsolutePath());
+    for (String mapping : mappings) {
+      pw.println(mapping);
+    }
+    pw.close();
+    Properties props = new Properties();
+    props.setProperty("tokensregexner.mapping", tempFile.getAbsolutePath());
+    props.setProperty("tokensregexner.ignorecase", String.valueOf(ignoreCase));
+    return new TokensRegexNERAnnotator("tokensregexner", props);
+  }
+
+  private static List<CoreLabel> annotate(TokensRegexNERAnnotator annotator, String... words) {
+    List<CoreLabel> tokens = SentenceUtils.toCoreLabelList(words);
+    for (CoreLabel token : tokens) {
+      token.setTag("NNP");
+    }
+    Annotation annotation = new Annotation(String.join(" ", words));
+    annotation.set(CoreAnnotations.TokensAnnotation.class, tokens);
+    annotator.annotate(annotation);
+    return tokens;
+  }
+
+  public void testIgnoreCase() throws Exception {
+    TokensRegexNERAnnotator annotator = annotator(true, "new york\tCITY");
+    List<CoreLabel> tokens = annotate(annotator, "in", "New", "YORK");
+    assertNull(tokens.get(0).ner());
+    assertEquals("CITY", tokens.get(1).ner());
+    assertEquals("CITY", tokens.get(2).ner());
+  }
+
+  /**
+   * "\u0130stanbul" equals "istanbul" ignoring case, but it does not lowercase to it,
+   * so the entry is not triggered (as when it was matched with a TokensRegex pattern).
+   */
+  public void testIgnoreCaseDottedI() throws Exception {
+    TokensRegexNERAnnotator annotator = annotator(true, "istanbul\tCITY");
+    List<CoreLabel> tokens = annotate(annotator, "to", "\u0130stanbul");
+    assertNull(tokens.get(0).ner());
+    assertNull(tokens.get(1).ner());
+    tokens = annotate(annotator, "to", "Istanbul");
+    assertEquals("CITY", tokens.get(1).ner());
+  }
+
+}
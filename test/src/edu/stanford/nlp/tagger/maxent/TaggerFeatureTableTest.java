@@ -0,0 +1,43 @@
+package edu.stanford.nlp.tagger.maxent;
+
+import java.util.*;
+
+import junit.framework.TestCase;
+
+public class TaggerFeatureTableTest extends TestCase {
+
+  private static final double[] LAMBDA = { 0.5, -1.0, 0.0, 2.0 };
+
+  private static TaggerFeatureTable table() {
+    Map<String, int[]> words = new HashMap<>();
+    words.put("cat", new int[] { -1, 0, 1 });
+    words.put("dog", new int[] { 2, -1, -1 }); // only a zero weight
+    Map<String, int[]> suffixes = new HashMap<>();
+    suffixes.put("at", new int[] { 3, -1, 0 });
+    return new TaggerFeatureTable(Arrays.asList(words, suffixes), LAMBDA);
+  }
+
+  public void testScoresByTag() {
+    TaggerFeatureTable table = table();
+    double[] scores = new double[3];
+    table.addScores(0, "cat", scores, null);
+    table.addScores(1, "at", scores, null);
+    table.addScores(0, "unseen", scores, null);
+    table.addScores(0, "dog", scores, null);
+    assertEquals(2.0, scores[0], 0.0);
+    assertEquals(0.5, scores[1], 0.0);
+    assertEquals(-0.5, scores[2], 0.0);
+  }
+
+  public void testScoresByPosition() {
+    TaggerFeatureTable table = table();
+    // score only tags 2 and 0, in that order
+    int[] positions = { 1, -1, 0 };
+    double[] scores = new double[2];
+    table.addScores(0, "cat", scores, positions);
+    table.addScores(1, "at", scores, positions);
+    assertEquals(-0.5, scores[0], 0.0);
+    assertEquals(2.0, scores[1], 0.0);
+  }
+
+}
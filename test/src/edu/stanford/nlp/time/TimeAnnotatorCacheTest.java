@@ -0,0 +1,95 @@
+package edu.stanford.nlp.time;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.TokenizerAnnotator;
+import edu.stanford.nlp.pipeline.WordsToSentencesAnnotator;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * Checks that skipping sentences with the prefilter and the no-match cache
+ * does not change what SUTime finds.
+ */
+public class TimeAnnotatorCacheTest extends TestCase {
+
+  private static final String RULES =
+      "src/edu/stanford/nlp/time/rules/defs.sutime.txt,src/edu/stanford/nlp/time/rules/english.sutime.txt";
+
+  private static final String[] DOCUMENTS = {
+    "The meeting is on Friday. Nothing happens here. The report came out last week.",
+    "Nothing happens here. The cat sat on the mat. We met at 3 pm on June 5, 2014.",
+    "The cat sat on the mat. Nothing happens here. It rained for two days.",
+    "Nothing happens here. The report came out last week. The cat sat on the mat.",
+  };
+
+  private static TimeAnnotator timeAnnotator(boolean prefilter, int cacheSize) {
+    Properties props = new Properties();
+    props.setProperty("sutime.rules", RULES);
+    props.setProperty("sutime.binders", "0");
+    props.setProperty("sutime.prefilter", String.valueOf(prefilter));
+    props.setProperty("sutime.cacheSize", String.valueOf(cacheSize));
+    return new TimeAnnotator("sutime", props, true);
+  }
+
+  private static Annotation document(String text) {
+    Annotation annotation = new Annotation(text);
+    new TokenizerAnnotator(false, "en").annotate(annotation);
+    new WordsToSentencesAnnotator(false).annotate(annotation);
+    annotation.set(CoreAnnotations.DocDateAnnotation.class, "2014-06-01");
+    // A map on every token must not keep sentences out of the cache
+    for (CoreLabel token : annotation.get(CoreAnnotations.TokensAnnotation.class)) {
+      HashMap<String, String> feats = new HashMap<>();
+      feats.put("Number", "Sing");
+      token.set(CoreAnnotations.CoNLLUFeats.class, feats);
+    }
+    return annotation;
+  }
+
+  private static List<String> timexes(TimeAnnotator annotator) {
+    List<String> timexes = new ArrayList<>();
+    for (String text : DOCUMENTS) {
+      Annotation annotation = document(text);
+      annotator.annotate(annotation);
+      for (CoreMap timex : annotation.get(TimeAnnotations.TimexAnnotations.class)) {
+        timexes.add(timex.get(CoreAnnotations.CharacterOffsetBeginAnnotation.class) + " " +
+            timex.get(TimeAnnotations.TimexAnnotation.class));
+      }
+    }
+    return timexes;
+  }
+
+  private static long count(String statistics, String what) {
+    Matcher m = Pattern.compile("(\\d+) \\([^)]*\\) " + what).matcher(statistics);
+    assertTrue(statistics, m.find());
+    return Long.parseLong(m.group(1));
+  }
+
+  public void testSameOutputWithPrefilterAndCache() {
+    List<String> expected = timexes(timeAnnotator(false, 0));
+    assertFalse(expected.isEmpty());
+
+    TimeAnnotator annotator = timeAnnotator(true, 1000);
+    assertEquals(expected, timexes(annotator));
+    // the second pass sees only sentences it has seen before
+    assertEquals(expected, timexes(annotator));
+    String statistics = annotator.getStatistics();
+    assertTrue(statistics, count(statistics, "prefiltered") > 0);
+    assertTrue(statistics, count(statistics, "cache hits") > 0);
+
+    TimeAnnotator cacheOnly = timeAnnotator(false, 1000);
+    assertEquals(expected, timexes(cacheOnly));
+    assertTrue(cacheOnly.getStatistics(), count(cacheOnly.getStatistics(), "cache hits") > 0);
+    assertEquals(0, count(cacheOnly.getStatistics(), "prefiltered"));
+  }
+
+}
@@ -0,0 +1,55 @@
+package edu.stanford.nlp.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import junit.framework.TestCase;
+
+public class ConcurrentInternerTest extends TestCase {
+
+  public void testInternAndCounts() {
+    ConcurrentInterner<String> interner = new ConcurrentInterner<>();
+    String a = new String("salamander");
+    String b = new String("salamander");
+    assertSame(a, interner.intern(a));
+    assertSame(a, interner.intern(b));
+    assertSame(a, interner.intern(a));
+    assertNull(interner.intern(null));
+    assertEquals(1, interner.size());
+    assertEquals(2, interner.hits());
+    assertEquals(1, interner.misses());
+    interner.clear();
+    assertSame(b, interner.intern(b));
+  }
+
+  public void testManyThreads() throws InterruptedException {
+    final ConcurrentInterner<String> interner = new ConcurrentInterner<>();
+    final int words = 1000;
+    final AtomicReferenceArray<String> first = new AtomicReferenceArray<>(words);
+    Thread[] threads = new Thread[16];
+    final Throwable[] failure = new Throwable[1];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int w = 0; w < words; w++) {
+          String interned = interner.intern(new String("word" + w));
+          first.compareAndSet(w, null, interned);
+          if (first.get(w) != interned) {
+            synchronized (failure) {
+              failure[0] = new AssertionError("Two interned versions of word" + w);
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure[0]);
+    assertEquals(words, interner.size());
+    assertEquals(words, interner.misses());
+    assertEquals((long) words * (threads.length - 1), interner.hits());
+  }
+
+}